@@ -0,0 +1,81 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.bench;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.tmf.Sink;
+import java.util.Queue;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Sink that hands every event it receives to a JMH {@link Blackhole}. This
+ * prevents the JIT compiler from treating the output of a pipeline as dead
+ * code, which a {@link ca.uqac.lif.cep.tmf.BlackHole} processor does not
+ * guarantee.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class Consume extends Sink
+{
+  /**
+   * The blackhole receiving the events
+   */
+  protected final Blackhole m_blackhole;
+
+  /**
+   * Creates a new sink
+   * 
+   * @param in_arity
+   *          The input arity of the sink
+   * @param bh
+   *          The blackhole receiving the events
+   */
+  public Consume(int in_arity, Blackhole bh)
+  {
+    super(in_arity);
+    m_blackhole = bh;
+  }
+
+  /**
+   * Creates a new sink of input arity 1
+   * 
+   * @param bh
+   *          The blackhole receiving the events
+   */
+  public Consume(Blackhole bh)
+  {
+    this(1, bh);
+  }
+
+  @Override
+  protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    for (int i = 0; i < inputs.length; i++)
+    {
+      m_blackhole.consume(inputs[i]);
+    }
+    return true;
+  }
+
+  @Override
+  public Processor duplicate(boolean with_state)
+  {
+    return new Consume(getInputArity(), m_blackhole);
+  }
+}
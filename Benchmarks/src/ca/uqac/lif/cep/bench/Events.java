@@ -0,0 +1,83 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.bench;
+
+import java.util.Random;
+
+/**
+ * Generates the input streams shared by the benchmarks. The streams are
+ * computed once, before measurement, so that the cost of producing events
+ * is not attributed to the processors being measured. A fixed seed makes
+ * successive runs process exactly the same data.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class Events
+{
+  /**
+   * The number of distinct events in a generated stream. Benchmarks cycle
+   * through the stream; it is large enough for branch predictors not to
+   * learn it, and small enough to stay in cache.
+   */
+  public static final int SIZE = 4096;
+
+  /**
+   * The seed of the random generator
+   */
+  public static final long SEED = 42;
+
+  private Events()
+  {
+    // Utility class
+  }
+
+  /**
+   * Generates a stream of integers
+   * 
+   * @param bound
+   *          The exclusive upper bound of the values
+   * @return The stream
+   */
+  public static Integer[] integers(int bound)
+  {
+    Random r = new Random(SEED);
+    Integer[] events = new Integer[SIZE];
+    for (int i = 0; i < SIZE; i++)
+    {
+      events[i] = r.nextInt(bound);
+    }
+    return events;
+  }
+
+  /**
+   * Generates a stream of strings
+   * 
+   * @return The stream
+   */
+  public static String[] strings()
+  {
+    Random r = new Random(SEED);
+    String[] events = new String[SIZE];
+    for (int i = 0; i < SIZE; i++)
+    {
+      events[i] = Integer.toString(r.nextInt(1000000));
+    }
+    return events;
+  }
+}
@@ -0,0 +1,125 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.bench;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.util.Numbers;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of evaluating functions on a stream with
+ * {@link ApplyFunction} and {@link Cumulate}. Each operation is one event
+ * pushed into the processor.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FunctionBenchmark
+{
+  /**
+   * The events pushed into the processors
+   */
+  protected Integer[] m_events;
+
+  /**
+   * The index of the next event to push
+   */
+  protected int m_index;
+
+  /**
+   * Pushes into an {@link ApplyFunction} evaluating a unary function
+   */
+  protected Pushable m_unary;
+
+  /**
+   * Pushes into an {@link ApplyFunction} evaluating a
+   * {@link FunctionTree}
+   */
+  protected Pushable m_tree;
+
+  /**
+   * Pushes into a {@link Cumulate} computing a running sum
+   */
+  protected Pushable m_cumulate;
+
+  @Setup
+  public void setup(Blackhole bh)
+  {
+    m_events = Events.integers(1000);
+    m_index = 0;
+    m_unary = connect(new ApplyFunction(Numbers.absoluteValue), bh);
+    // (x * x + |x|) / 2, a tree of depth 3
+    m_tree = connect(new ApplyFunction(new FunctionTree(Numbers.division,
+        new FunctionTree(Numbers.addition,
+            new FunctionTree(Numbers.multiplication, StreamVariable.X, StreamVariable.X),
+            new FunctionTree(Numbers.absoluteValue, StreamVariable.X)),
+        new Constant(2))), bh);
+    m_cumulate = connect(new Cumulate(new CumulativeFunction<Number>(Numbers.addition)), bh);
+  }
+
+  @Benchmark
+  public void applyUnary()
+  {
+    m_unary.push(m_events[m_index++ & (Events.SIZE - 1)]);
+  }
+
+  @Benchmark
+  public void applyFunctionTree()
+  {
+    m_tree.push(m_events[m_index++ & (Events.SIZE - 1)]);
+  }
+
+  @Benchmark
+  public void cumulate()
+  {
+    m_cumulate.push(m_events[m_index++ & (Events.SIZE - 1)]);
+  }
+
+  /**
+   * Connects a processor to a sink
+   * 
+   * @param f
+   *          The processor
+   * @param bh
+   *          The blackhole receiving the output of the processor
+   * @return The pushable of the processor
+   */
+  protected static Pushable connect(ApplyFunction f, Blackhole bh)
+  {
+    Connector.connect(f, new Consume(bh));
+    return f.getPushableInput(0);
+  }
+}
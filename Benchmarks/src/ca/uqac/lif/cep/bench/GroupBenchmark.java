@@ -0,0 +1,117 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.bench;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.GroupProcessor;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.Fork;
+import ca.uqac.lif.cep.tmf.Multiplex;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of the structural processors: {@link GroupProcessor}s
+ * nested into one another, and a {@link Fork} whose branches are merged
+ * back by a {@link Multiplex}. Each operation is one event pushed into the
+ * pipeline.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GroupBenchmark
+{
+  /**
+   * The nesting depth of the groups, and the number of branches of the fork
+   */
+  @Param({"1", "4", "16"})
+  public int m_size;
+
+  /**
+   * The events pushed into the pipelines
+   */
+  protected String[] m_events;
+
+  /**
+   * The index of the next event to push
+   */
+  protected int m_index;
+
+  /**
+   * Pushes into the outermost group
+   */
+  protected Pushable m_group;
+
+  /**
+   * Pushes into the fork
+   */
+  protected Pushable m_fork;
+
+  @Setup
+  public void setup(Blackhole bh)
+  {
+    m_events = Events.strings();
+    m_index = 0;
+    Processor inner = new Passthrough(1);
+    for (int i = 0; i < m_size; i++)
+    {
+      GroupProcessor g = new GroupProcessor(1, 1);
+      g.addProcessor(inner);
+      g.associateInput(0, inner, 0);
+      g.associateOutput(0, inner, 0);
+      inner = g;
+    }
+    Connector.connect(inner, new Consume(bh));
+    m_group = inner.getPushableInput(0);
+    Fork f = new Fork(m_size);
+    Multiplex mux = new Multiplex(m_size);
+    for (int i = 0; i < m_size; i++)
+    {
+      Passthrough pt = new Passthrough(1);
+      Connector.connect(f, i, pt, 0);
+      Connector.connect(pt, 0, mux, i);
+    }
+    Connector.connect(mux, new Consume(bh));
+    m_fork = f.getPushableInput(0);
+  }
+
+  @Benchmark
+  public void nestedGroups()
+  {
+    m_group.push(m_events[m_index++ & (Events.SIZE - 1)]);
+  }
+
+  @Benchmark
+  public void forkMultiplex()
+  {
+    m_fork.push(m_events[m_index++ & (Events.SIZE - 1)]);
+  }
+}
@@ -0,0 +1,125 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.bench;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of moving an event through a chain of
+ * {@link Passthrough} processors, in push and in pull mode. This is the
+ * overhead the engine adds to every processor of a pipeline, independently
+ * of what the processor computes. Each operation is one event.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PassthroughBenchmark
+{
+  /**
+   * The number of processors in the chain
+   */
+  @Param({"1", "10", "100"})
+  public int m_length;
+
+  /**
+   * The events pushed into the chain
+   */
+  protected String[] m_events;
+
+  /**
+   * The index of the next event to push
+   */
+  protected int m_index;
+
+  /**
+   * The pushable of the first processor of the push chain
+   */
+  protected Pushable m_push;
+
+  /**
+   * The pullable of the last processor of the pull chain
+   */
+  protected Pullable m_pull;
+
+  @Setup
+  public void setup(Blackhole bh)
+  {
+    m_events = Events.strings();
+    m_index = 0;
+    // Push: events are pushed into the first processor of the chain
+    Processor first = new Passthrough(1);
+    Processor last = chain(first, m_length - 1);
+    Connector.connect(last, new Consume(bh));
+    m_push = first.getPushableInput(0);
+    // Pull: events are pulled from the last processor of the chain
+    QueueSource source = new QueueSource();
+    source.setEvents((Object[]) m_events);
+    m_pull = chain(source, m_length).getPullableOutput(0);
+  }
+
+  @Benchmark
+  public void push()
+  {
+    m_push.push(m_events[m_index++ & (Events.SIZE - 1)]);
+  }
+
+  @Benchmark
+  public Object pull()
+  {
+    return m_pull.pull();
+  }
+
+  /**
+   * Appends passthrough processors to a processor
+   * 
+   * @param start
+   *          The processor
+   * @param length
+   *          The number of passthrough processors to append
+   * @return The last processor of the chain
+   */
+  protected static Processor chain(Processor start, int length)
+  {
+    Processor last = start;
+    for (int i = 0; i < length; i++)
+    {
+      Passthrough pt = new Passthrough(1);
+      Connector.connect(last, pt);
+      last = pt;
+    }
+    return last;
+  }
+}
@@ -0,0 +1,146 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.bench;
+
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.io.ReadLines;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of reading a large text file line by line with
+ * {@link ReadLines}, from an input stream and from a memory-mapped file
+ * channel. Each invocation reads the whole file; results are expressed in
+ * lines per second.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReadLinesBenchmark
+{
+  /**
+   * The number of lines in the generated file
+   */
+  public static final int LINES = 1000000;
+
+  /**
+   * The generated file
+   */
+  protected File m_file;
+
+  @Setup
+  public void setup() throws IOException
+  {
+    m_file = File.createTempFile("beepbeep-bench", ".csv");
+    Random r = new Random(Events.SEED);
+    Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(m_file), "UTF-8"));
+    try
+    {
+      for (int i = 0; i < LINES; i++)
+      {
+        // Lines of varying length, similar to a CSV log
+        w.write(Integer.toString(i));
+        w.write(',');
+        w.write(Long.toString(r.nextLong(), 36));
+        w.write(',');
+        w.write(Integer.toString(r.nextInt(1000)));
+        w.write('\n');
+      }
+    }
+    finally
+    {
+      w.close();
+    }
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    if (!m_file.delete())
+    {
+      m_file.deleteOnExit();
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LINES)
+  public void stream(Blackhole bh) throws IOException
+  {
+    FileInputStream fis = new FileInputStream(m_file);
+    try
+    {
+      readAll(new ReadLines(fis), bh);
+    }
+    finally
+    {
+      fis.close();
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LINES)
+  public void mapped(Blackhole bh) throws IOException
+  {
+    FileInputStream fis = new FileInputStream(m_file);
+    try
+    {
+      readAll(new ReadLines(fis.getChannel(), true), bh);
+    }
+    finally
+    {
+      fis.close();
+    }
+  }
+
+  /**
+   * Pulls all the lines of a reader
+   * 
+   * @param reader
+   *          The reader
+   * @param bh
+   *          The blackhole receiving the lines
+   */
+  protected static void readAll(ReadLines reader, Blackhole bh)
+  {
+    Pullable p = reader.getPullableOutput();
+    while (p.hasNext())
+    {
+      bh.consume(p.pull());
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.bench;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.functions.IdentityFunction;
+import ca.uqac.lif.cep.tmf.Slice;
+import ca.uqac.lif.cep.util.Numbers;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of a {@link Slice} computing a running sum per key, for
+ * various numbers of distinct keys. Each operation is one event pushed into
+ * the slice. All the slices are created before measurement starts, so that
+ * the benchmark measures the steady state rather than the creation of
+ * slices.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SliceBenchmark
+{
+  /**
+   * The number of distinct keys in the stream
+   */
+  @Param({"1", "10", "100", "1000"})
+  public int m_keys;
+
+  /**
+   * The events pushed into the slice; each event is its own key
+   */
+  protected Integer[] m_events;
+
+  /**
+   * The index of the next event to push
+   */
+  protected int m_index;
+
+  /**
+   * Pushes into the slice
+   */
+  protected Pushable m_slice;
+
+  @Setup
+  public void setup(Blackhole bh)
+  {
+    m_events = Events.integers(m_keys);
+    m_index = 0;
+    Slice s = new Slice(new IdentityFunction(1),
+        new Cumulate(new CumulativeFunction<Number>(Numbers.addition)));
+    Connector.connect(s, new Consume(bh));
+    m_slice = s.getPushableInput(0);
+    for (int i = 0; i < m_keys; i++)
+    {
+      m_slice.push(i);
+    }
+  }
+
+  @Benchmark
+  public void slice()
+  {
+    m_slice.push(m_events[m_index++ & (Events.SIZE - 1)]);
+  }
+}
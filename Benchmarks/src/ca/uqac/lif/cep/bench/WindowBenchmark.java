@@ -0,0 +1,190 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.bench;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Context;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.tmf.Window;
+import ca.uqac.lif.cep.tmf.WindowFunction;
+import ca.uqac.lif.cep.util.Numbers;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of a sliding sum over windows of various widths, computed
+ * with a {@link Window} wrapping a {@link Cumulate}, and with a
+ * {@link WindowFunction}. Each operation is one event pushed into the
+ * processor; its cost is expected to grow with the width of the window.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WindowBenchmark
+{
+  /**
+   * The width of the window
+   */
+  @Param({"10", "100", "1000"})
+  public int m_width;
+
+  /**
+   * The events pushed into the processors
+   */
+  protected Integer[] m_events;
+
+  /**
+   * The index of the next event to push
+   */
+  protected int m_index;
+
+  /**
+   * Pushes into the {@link Window}
+   */
+  protected Pushable m_window;
+
+  /**
+   * Pushes into the {@link WindowFunction}
+   */
+  protected Pushable m_windowFunction;
+
+  @Setup
+  public void setup(Blackhole bh)
+  {
+    m_events = Events.integers(1000);
+    m_index = 0;
+    Window w = new Window(new Cumulate(new CumulativeFunction<Number>(Numbers.addition)), m_width);
+    Connector.connect(w, new Consume(bh));
+    m_window = w.getPushableInput(0);
+    WindowFunction wf = new WindowFunction(new Sum(m_width));
+    Connector.connect(wf, new Consume(bh));
+    m_windowFunction = wf.getPushableInput(0);
+    // Fill the windows, so that every measured event produces an output
+    for (int i = 0; i < m_width; i++)
+    {
+      push();
+    }
+  }
+
+  @Benchmark
+  public void window()
+  {
+    m_window.push(m_events[m_index++ & (Events.SIZE - 1)]);
+  }
+
+  @Benchmark
+  public void windowFunction()
+  {
+    m_windowFunction.push(m_events[m_index++ & (Events.SIZE - 1)]);
+  }
+
+  /**
+   * Pushes the same event into both processors
+   */
+  protected void push()
+  {
+    Integer e = m_events[m_index++ & (Events.SIZE - 1)];
+    m_window.push(e);
+    m_windowFunction.push(e);
+  }
+
+  /**
+   * An <i>n</i>-ary function computing the sum of its arguments
+   */
+  public static class Sum extends Function
+  {
+    /**
+     * The input arity of the function
+     */
+    protected final int m_arity;
+
+    /**
+     * Creates a new sum function
+     * 
+     * @param arity
+     *          The input arity of the function
+     */
+    public Sum(int arity)
+    {
+      super();
+      m_arity = arity;
+    }
+
+    @Override
+    public void evaluate(Object[] inputs, Object[] outputs, Context context)
+    {
+      float sum = 0;
+      for (int i = 0; i < inputs.length; i++)
+      {
+        sum += ((Number) inputs[i]).floatValue();
+      }
+      outputs[0] = sum;
+    }
+
+    @Override
+    public void evaluate(Object[] inputs, Object[] outputs)
+    {
+      evaluate(inputs, outputs, null);
+    }
+
+    @Override
+    public int getInputArity()
+    {
+      return m_arity;
+    }
+
+    @Override
+    public int getOutputArity()
+    {
+      return 1;
+    }
+
+    @Override
+    public void getInputTypesFor(Set<Class<?>> classes, int index)
+    {
+      classes.add(Number.class);
+    }
+
+    @Override
+    public Class<?> getOutputTypeFor(int index)
+    {
+      return Number.class;
+    }
+
+    @Override
+    public Sum duplicate(boolean with_state)
+    {
+      return new Sum(m_arity);
+    }
+  }
+}
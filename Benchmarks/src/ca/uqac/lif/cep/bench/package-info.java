@@ -0,0 +1,27 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Performance benchmarks for the core processors, written with JMH. Each
+ * benchmark pushes (or pulls) one event per operation, so that throughput
+ * is reported in events per second, and the allocation profiler reports
+ * bytes allocated per event.
+ * 
+ * @author Sylvain Hallé
+ */
+package ca.uqac.lif.cep.bench;
@@ -0,0 +1,485 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import ca.uqac.lif.petitpoucet.BrokenChain;
+import ca.uqac.lif.petitpoucet.DirectValue;
+import ca.uqac.lif.petitpoucet.NodeFunction;
+import ca.uqac.lif.petitpoucet.ProvenanceNode;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Event tracker that builds provenance trees out of recorded associations.
+ * Descendants of this class decide how associations are stored, and only
+ * need to retrieve the associations of a given output event (see
+ * {@link #readAssociations(int, int, int, Associations) readAssociations()});
+ * this class follows the connections between processors to reconstruct the
+ * whole chain of events.
+ * <p>
+ * In a provenance tree, the parents of a node are the nodes it depends on.
+ * An event whose associations are unknown to the tracker has
+ * {@link BrokenChain#instance} as its parent.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public abstract class AbstractEventTracker implements EventTracker
+{
+  /**
+   * Kind of an association to an input event of the processor
+   */
+  protected static final byte INPUT = 0;
+
+  /**
+   * Kind of an association to another output event of the processor
+   */
+  protected static final byte OUTPUT = 1;
+
+  /**
+   * Kind of an association to a node function
+   */
+  protected static final byte FUNCTION = 2;
+
+  /**
+   * Maps an input stream of a processor to the output stream of the
+   * processor it is connected to. Both are packed into a <tt>long</tt> by
+   * {@link #pack(int, int)}.
+   */
+  protected final Map<Long, Long> m_connections = new HashMap<Long, Long>();
+
+  /**
+   * A buffer receiving the associations read by
+   * {@link #readAssociations(int, int, int, Associations) readAssociations()}
+   */
+  private final Associations m_buffer = new Associations();
+
+  /**
+   * Reads the associations of an output event
+   * 
+   * @param proc_id
+   *          The ID of the processor
+   * @param stream_index
+   *          The index of the output stream
+   * @param stream_pos
+   *          The position of the event in the stream
+   * @param associations
+   *          The object to which the associations are added
+   */
+  protected abstract void readAssociations(int proc_id, int stream_index, int stream_pos,
+      Associations associations);
+
+  @Override
+  public synchronized void setConnection(int output_proc_id, int output_stream_index,
+      int input_proc_id, int input_stream_index)
+  {
+    m_connections.put(pack(input_proc_id, input_stream_index),
+        pack(output_proc_id, output_stream_index));
+  }
+
+  @Override
+  public void setTo(Processor ... processors)
+  {
+    for (Processor p : processors)
+    {
+      p.setEventTracker(this);
+    }
+  }
+
+  @Override
+  public synchronized ProvenanceNode getProvenanceTree(int proc_id, int stream_index,
+      int stream_pos)
+  {
+    EventFunction root_f = new EventFunction(proc_id, stream_index, stream_pos);
+    NodeFunction[] parents = resolve(root_f);
+    if (parents == null)
+    {
+      return BrokenChain.instance;
+    }
+    // The tree is built with an explicit stack rather than by recursion,
+    // as chains of events (e.g. in a Cumulate) can be very long
+    Map<EventFunction, ProvenanceNode> nodes = new HashMap<EventFunction, ProvenanceNode>();
+    Deque<EventFunction> to_expand = new ArrayDeque<EventFunction>();
+    ProvenanceNode root = new ProvenanceNode(root_f);
+    nodes.put(root_f, root);
+    to_expand.push(root_f);
+    while (!to_expand.isEmpty())
+    {
+      EventFunction ef = to_expand.pop();
+      ProvenanceNode node = nodes.get(ef);
+      if (ef != root_f)
+      {
+        parents = resolve(ef);
+      }
+      if (parents == null)
+      {
+        link(node, BrokenChain.instance);
+        continue;
+      }
+      for (NodeFunction f : parents)
+      {
+        if (!(f instanceof EventFunction) || ((EventFunction) f).m_input)
+        {
+          link(node, new ProvenanceNode(f));
+          continue;
+        }
+        EventFunction parent_f = (EventFunction) f;
+        ProvenanceNode parent = nodes.get(parent_f);
+        if (parent == null)
+        {
+          parent = new ProvenanceNode(parent_f);
+          nodes.put(parent_f, parent);
+          to_expand.push(parent_f);
+        }
+        link(node, parent);
+      }
+    }
+    return root;
+  }
+
+  /**
+   * Gets the node functions an output event directly depends on
+   * 
+   * @param ef
+   *          The output event
+   * @return The node functions, or <tt>null</tt> if the tracker knows
+   *         nothing about this event. An event of another processor is
+   *         designated by an {@link EventFunction} on one of its output
+   *         streams; an input event that is not connected to any processor
+   *         is designated by an {@link EventFunction} on an input stream.
+   */
+  protected NodeFunction[] resolve(EventFunction ef)
+  {
+    m_buffer.clear();
+    readAssociations(ef.m_processorId, ef.m_streamIndex, ef.m_position, m_buffer);
+    if (m_buffer.m_size == 0)
+    {
+      return null;
+    }
+    NodeFunction[] parents = new NodeFunction[m_buffer.m_size];
+    for (int i = 0; i < m_buffer.m_size; i++)
+    {
+      switch (m_buffer.m_kind[i])
+      {
+      case FUNCTION:
+        parents[i] = m_buffer.m_functions[i];
+        break;
+      case OUTPUT:
+        parents[i] = new EventFunction(ef.m_processorId, m_buffer.m_stream[i],
+            m_buffer.m_position[i]);
+        break;
+      default:
+        Long upstream = m_connections.get(pack(ef.m_processorId, m_buffer.m_stream[i]));
+        if (upstream == null)
+        {
+          // Nothing is known about where this input comes from
+          parents[i] = new EventFunction(ef.m_processorId, m_buffer.m_stream[i],
+              m_buffer.m_position[i], true);
+        }
+        else
+        {
+          parents[i] = new EventFunction((int) (upstream >>> 32), (int) upstream.longValue(),
+              m_buffer.m_position[i]);
+        }
+        break;
+      }
+    }
+    m_buffer.clear();
+    return parents;
+  }
+
+  /**
+   * Records that a node depends on another
+   * 
+   * @param child
+   *          The node
+   * @param parent
+   *          The node it depends on
+   */
+  protected static void link(ProvenanceNode child, ProvenanceNode parent)
+  {
+    child.addParent(parent);
+    if (parent != BrokenChain.instance)
+    {
+      parent.addChild(child);
+    }
+  }
+
+  /**
+   * Packs a processor ID and a stream index into a single value
+   * 
+   * @param id
+   *          The processor ID
+   * @param stream_index
+   *          The stream index
+   * @return The packed value
+   */
+  protected static long pack(int id, int stream_index)
+  {
+    return ((long) id << 32) | (stream_index & 0xFFFFFFFFL);
+  }
+
+  /**
+   * The associations of an output event, stored in parallel arrays
+   */
+  protected static class Associations
+  {
+    /**
+     * The number of associations
+     */
+    protected int m_size = 0;
+
+    /**
+     * The kind of each association
+     */
+    protected byte[] m_kind = new byte[8];
+
+    /**
+     * The index of the stream of the event the output event depends on
+     */
+    protected int[] m_stream = new int[8];
+
+    /**
+     * The position of the event the output event depends on
+     */
+    protected int[] m_position = new int[8];
+
+    /**
+     * The node function of associations of kind {@link #FUNCTION}
+     */
+    protected NodeFunction[] m_functions = new NodeFunction[8];
+
+    /**
+     * Adds an association
+     * 
+     * @param kind
+     *          The kind of association
+     * @param stream_index
+     *          The index of the stream of the event the output event
+     *          depends on
+     * @param stream_pos
+     *          The position of this event
+     * @param f
+     *          The node function, for an association of kind
+     *          {@link #FUNCTION}
+     */
+    public void add(byte kind, int stream_index, int stream_pos, NodeFunction f)
+    {
+      if (m_size == m_kind.length)
+      {
+        int capacity = m_size * 2;
+        m_kind = Arrays.copyOf(m_kind, capacity);
+        m_stream = Arrays.copyOf(m_stream, capacity);
+        m_position = Arrays.copyOf(m_position, capacity);
+        m_functions = Arrays.copyOf(m_functions, capacity);
+      }
+      m_kind[m_size] = kind;
+      m_stream[m_size] = stream_index;
+      m_position[m_size] = stream_pos;
+      m_functions[m_size] = f;
+      m_size++;
+    }
+
+    /**
+     * Gets the number of associations
+     * 
+     * @return The number of associations
+     */
+    public int size()
+    {
+      return m_size;
+    }
+
+    /**
+     * Reverses the order of the associations starting at a given index
+     * 
+     * @param from
+     *          The index of the first association to reverse
+     */
+    public void reverse(int from)
+    {
+      for (int i = from, j = m_size - 1; i < j; i++, j--)
+      {
+        byte kind = m_kind[i];
+        m_kind[i] = m_kind[j];
+        m_kind[j] = kind;
+        int stream = m_stream[i];
+        m_stream[i] = m_stream[j];
+        m_stream[j] = stream;
+        int position = m_position[i];
+        m_position[i] = m_position[j];
+        m_position[j] = position;
+        NodeFunction f = m_functions[i];
+        m_functions[i] = m_functions[j];
+        m_functions[j] = f;
+      }
+    }
+
+    /**
+     * Removes all the associations
+     */
+    public void clear()
+    {
+      Arrays.fill(m_functions, 0, m_size, null);
+      m_size = 0;
+    }
+  }
+
+  /**
+   * Node function designating an event in a stream of a processor
+   */
+  public static class EventFunction implements NodeFunction
+  {
+    /**
+     * The ID of the processor
+     */
+    protected final int m_processorId;
+
+    /**
+     * The index of the stream
+     */
+    protected final int m_streamIndex;
+
+    /**
+     * The position of the event in the stream
+     */
+    protected final int m_position;
+
+    /**
+     * Whether the stream is an input stream of the processor
+     */
+    protected final boolean m_input;
+
+    /**
+     * Creates a new function designating an output event
+     * 
+     * @param proc_id
+     *          The ID of the processor
+     * @param stream_index
+     *          The index of the output stream
+     * @param position
+     *          The position of the event in the stream
+     */
+    public EventFunction(int proc_id, int stream_index, int position)
+    {
+      this(proc_id, stream_index, position, false);
+    }
+
+    /**
+     * Creates a new function designating an event
+     * 
+     * @param proc_id
+     *          The ID of the processor
+     * @param stream_index
+     *          The index of the stream
+     * @param position
+     *          The position of the event in the stream
+     * @param input
+     *          <tt>true</tt> if the stream is an input stream of the
+     *          processor, <tt>false</tt> if it is an output stream
+     */
+    public EventFunction(int proc_id, int stream_index, int position, boolean input)
+    {
+      super();
+      m_processorId = proc_id;
+      m_streamIndex = stream_index;
+      m_position = position;
+      m_input = input;
+    }
+
+    /**
+     * Gets the ID of the processor
+     * 
+     * @return The ID
+     */
+    public int getProcessorId()
+    {
+      return m_processorId;
+    }
+
+    /**
+     * Gets the index of the stream
+     * 
+     * @return The index
+     */
+    public int getStreamIndex()
+    {
+      return m_streamIndex;
+    }
+
+    /**
+     * Gets the position of the event in the stream
+     * 
+     * @return The position
+     */
+    public int getPosition()
+    {
+      return m_position;
+    }
+
+    /**
+     * Determines whether the stream is an input stream of the processor
+     * 
+     * @return <tt>true</tt> for an input stream, <tt>false</tt> for an
+     *         output stream
+     */
+    public boolean isInput()
+    {
+      return m_input;
+    }
+
+    @Override
+    public String getDataPointId()
+    {
+      return "BP" + m_processorId + (m_input ? ".I" : ".O") + m_streamIndex + "." + m_position;
+    }
+
+    @Override
+    public NodeFunction dependsOn()
+    {
+      return DirectValue.instance;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return (m_processorId * 31 + m_streamIndex) * 31 + m_position;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof EventFunction))
+      {
+        return false;
+      }
+      EventFunction ef = (EventFunction) o;
+      return ef.m_processorId == m_processorId && ef.m_streamIndex == m_streamIndex
+          && ef.m_position == m_position && ef.m_input == m_input;
+    }
+
+    @Override
+    public String toString()
+    {
+      return getDataPointId();
+    }
+  }
+}
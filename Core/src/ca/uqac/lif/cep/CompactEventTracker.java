@@ -0,0 +1,563 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import ca.uqac.lif.petitpoucet.BrokenChain;
+import ca.uqac.lif.petitpoucet.NodeFunction;
+import ca.uqac.lif.petitpoucet.ProvenanceNode;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Event tracker storing associations in primitive arrays. Processors can
+ * call a tracker several times per event (for example, an
+ * {@link ca.uqac.lif.cep.functions.ApplyFunction ApplyFunction} records one
+ * association for every pair of input and output streams); creating objects
+ * for each of these calls quickly exhausts memory. This tracker rather keeps,
+ * for each output stream of each processor, a table of associations made of
+ * a few <tt>int</tt> columns, and creates {@link ProvenanceNode}s only when
+ * {@link #getProvenanceTree(int, int, int) getProvenanceTree()} is called.
+ * Processor IDs are mapped to small consecutive indices, so that tables can
+ * be found without hashing in the common case.
+ * <p>
+ * Two settings bound the cost of tracking:
+ * <ul>
+ * <li>the <em>retention</em>, which keeps only the associations for the
+ * last <i>n</i> positions of each stream (see {@link #setRetention(int)}),
+ * or a global number of bytes (see {@link #setMemoryBudget(long)}). When the
+ * budget is exceeded, the oldest quarter of every table is discarded;</li>
+ * <li>the <em>sampling interval</em> <i>k</i>, which records associations
+ * only for output events whose position is a multiple of <i>k</i> (see
+ * {@link #setSamplingInterval(int)}). Since the same positions are sampled
+ * in every processor, chains of processors that preserve positions (such as
+ * {@link ca.uqac.lif.cep.functions.ApplyFunction ApplyFunction}) keep a
+ * complete provenance for the sampled events; elsewhere, the chain may be
+ * broken.</li>
+ * </ul>
+ * The part of a provenance tree that depends on an event no longer known
+ * to the tracker is replaced by {@link BrokenChain#instance}.
+ * <p>
+ * Like the other trackers, this tracker relies on the connections declared
+ * with {@link #setConnection(int, int, int, int) setConnection()} (for
+ * example by calling {@link Connector#connect(EventTracker, Processor...)})
+ * to follow the chain of events from one processor to the next. All its
+ * methods are synchronized, so that it can be shared by processors running
+ * in different threads.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class CompactEventTracker extends AbstractEventTracker
+{
+  /**
+   * The approximate number of bytes taken by an association
+   */
+  public static final int BYTES_PER_ASSOCIATION = 13;
+
+  /**
+   * The number of positions kept for each stream, or 0 to keep them all
+   */
+  protected int m_retention = 0;
+
+  /**
+   * The maximum number of associations kept, or 0 for no limit
+   */
+  protected long m_maxAssociations = 0;
+
+  /**
+   * The interval between two sampled positions
+   */
+  protected int m_samplingInterval = 1;
+
+  /**
+   * Maps processor IDs to indices in {@link #m_tables}
+   */
+  protected final Map<Integer, Integer> m_dictionary = new HashMap<Integer, Integer>();
+
+  /**
+   * The tables of each processor, indexed by processor index, then by output
+   * stream index
+   */
+  protected Table[][] m_tables = new Table[16][];
+
+  /**
+   * The number of processors in the dictionary
+   */
+  protected int m_processorCount = 0;
+
+  /**
+   * The ID of the last processor looked up in the dictionary
+   */
+  protected int m_lastId = -1;
+
+  /**
+   * The index of the last processor looked up in the dictionary
+   */
+  protected int m_lastIndex = -1;
+
+  /**
+   * The number of associations currently kept
+   */
+  protected long m_associationCount = 0;
+
+  /**
+   * Creates a new tracker keeping all associations
+   */
+  public CompactEventTracker()
+  {
+    super();
+  }
+
+  /**
+   * Sets the number of positions kept for each output stream
+   * 
+   * @param n
+   *          The number of positions, or 0 to keep them all
+   * @return This tracker
+   */
+  public synchronized CompactEventTracker setRetention(int n)
+  {
+    m_retention = n;
+    return this;
+  }
+
+  /**
+   * Sets the approximate amount of memory the associations can take
+   * 
+   * @param bytes
+   *          The number of bytes, or 0 for no limit
+   * @return This tracker
+   */
+  public synchronized CompactEventTracker setMemoryBudget(long bytes)
+  {
+    m_maxAssociations = bytes / BYTES_PER_ASSOCIATION;
+    return this;
+  }
+
+  /**
+   * Sets the interval between two output positions whose associations are
+   * recorded
+   * 
+   * @param k
+   *          The interval; 1 records every position
+   * @return This tracker
+   */
+  public synchronized CompactEventTracker setSamplingInterval(int k)
+  {
+    if (k < 1)
+    {
+      throw new IllegalArgumentException("Sampling interval must be positive");
+    }
+    m_samplingInterval = k;
+    return this;
+  }
+
+  /**
+   * Gets the number of associations currently kept by the tracker
+   * 
+   * @return The number of associations
+   */
+  public synchronized long getAssociationCount()
+  {
+    return m_associationCount;
+  }
+
+  /**
+   * Discards all the associations and connections recorded so far
+   */
+  public synchronized void clear()
+  {
+    m_dictionary.clear();
+    m_tables = new Table[16][];
+    m_processorCount = 0;
+    m_lastId = -1;
+    m_lastIndex = -1;
+    m_connections.clear();
+    m_associationCount = 0;
+  }
+
+  @Override
+  public synchronized void associateTo(int id, NodeFunction f, int out_stream_index,
+      int out_stream_pos)
+  {
+    if (out_stream_pos % m_samplingInterval != 0)
+    {
+      return;
+    }
+    getTable(id, out_stream_index).add(out_stream_pos, FUNCTION, 0, 0, f);
+  }
+
+  @Override
+  public synchronized void associateToInput(int id, int in_stream_index, int in_stream_pos,
+      int out_stream_index, int out_stream_pos)
+  {
+    if (out_stream_pos % m_samplingInterval != 0)
+    {
+      return;
+    }
+    getTable(id, out_stream_index).add(out_stream_pos, INPUT, in_stream_index, in_stream_pos, null);
+  }
+
+  @Override
+  public synchronized void associateToOutput(int id, int in_stream_index, int in_stream_pos,
+      int out_stream_index, int out_stream_pos)
+  {
+    if (out_stream_pos % m_samplingInterval != 0)
+    {
+      return;
+    }
+    getTable(id, out_stream_index).add(out_stream_pos, OUTPUT, in_stream_index, in_stream_pos, null);
+  }
+
+  @Override
+  protected void readAssociations(int proc_id, int stream_index, int stream_pos,
+      Associations associations)
+  {
+    Table t = findTable(proc_id, stream_index);
+    if (t == null)
+    {
+      return;
+    }
+    int i = t.find(stream_pos);
+    if (i < 0)
+    {
+      return;
+    }
+    for (; i < t.m_end && t.m_outPos[i] == stream_pos; i++)
+    {
+      associations.add(t.m_kind[i], t.m_srcStream[i], t.m_srcPos[i],
+          t.m_functions == null ? null : t.m_functions[i]);
+    }
+  }
+
+  /**
+   * Gets the table of associations for an output stream of a processor,
+   * creating it if necessary
+   * 
+   * @param id
+   *          The ID of the processor
+   * @param stream_index
+   *          The index of the output stream
+   * @return The table
+   */
+  protected Table getTable(int id, int stream_index)
+  {
+    int index = indexOf(id);
+    if (index < 0)
+    {
+      index = m_processorCount++;
+      m_dictionary.put(id, index);
+      if (index == m_tables.length)
+      {
+        m_tables = Arrays.copyOf(m_tables, index * 2);
+      }
+      m_tables[index] = new Table[Math.max(1, stream_index + 1)];
+      m_lastId = id;
+      m_lastIndex = index;
+    }
+    Table[] streams = m_tables[index];
+    if (stream_index >= streams.length)
+    {
+      streams = Arrays.copyOf(streams, stream_index + 1);
+      m_tables[index] = streams;
+    }
+    Table t = streams[stream_index];
+    if (t == null)
+    {
+      t = new Table();
+      streams[stream_index] = t;
+    }
+    return t;
+  }
+
+  /**
+   * Gets the table of associations for an output stream of a processor
+   * 
+   * @param id
+   *          The ID of the processor
+   * @param stream_index
+   *          The index of the output stream
+   * @return The table, or <tt>null</tt> if nothing was recorded for this
+   *         stream
+   */
+  protected Table findTable(int id, int stream_index)
+  {
+    int index = indexOf(id);
+    if (index < 0 || stream_index < 0 || stream_index >= m_tables[index].length)
+    {
+      return null;
+    }
+    return m_tables[index][stream_index];
+  }
+
+  /**
+   * Gets the index of a processor in the dictionary
+   * 
+   * @param id
+   *          The ID of the processor
+   * @return The index, or -1 if the processor is not in the dictionary
+   */
+  protected int indexOf(int id)
+  {
+    if (id == m_lastId)
+    {
+      return m_lastIndex;
+    }
+    Integer index = m_dictionary.get(id);
+    if (index == null)
+    {
+      return -1;
+    }
+    m_lastId = id;
+    m_lastIndex = index;
+    return index;
+  }
+
+  /**
+   * Discards the oldest quarter of the associations of every table
+   */
+  protected void evict()
+  {
+    for (int p = 0; p < m_processorCount; p++)
+    {
+      for (Table t : m_tables[p])
+      {
+        if (t != null)
+        {
+          int size = t.m_end - t.m_start;
+          if (size >= 4)
+          {
+            t.evictUpTo(t.m_outPos[t.m_start + size / 4 - 1]);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The associations of a single output stream of a processor, sorted by
+   * output position. Each association occupies the same index in a few
+   * parallel arrays; the valid entries lie between {@link #m_start} and
+   * {@link #m_end}.
+   */
+  protected class Table
+  {
+    /**
+     * The position of the output event
+     */
+    protected int[] m_outPos = new int[16];
+
+    /**
+     * The kind of association
+     */
+    protected byte[] m_kind = new byte[16];
+
+    /**
+     * The index of the stream of the event the output event depends on
+     */
+    protected int[] m_srcStream = new int[16];
+
+    /**
+     * The position of the event the output event depends on
+     */
+    protected int[] m_srcPos = new int[16];
+
+    /**
+     * The node functions of associations of kind {@link #FUNCTION}. This
+     * array is only created when such an association is added.
+     */
+    protected NodeFunction[] m_functions = null;
+
+    /**
+     * The index of the first valid entry
+     */
+    protected int m_start = 0;
+
+    /**
+     * The index after the last valid entry
+     */
+    protected int m_end = 0;
+
+    /**
+     * Adds an association to the table
+     * 
+     * @param out_pos
+     *          The position of the output event
+     * @param kind
+     *          The kind of association
+     * @param src_stream
+     *          The index of the stream of the event the output event
+     *          depends on
+     * @param src_pos
+     *          The position of this event
+     * @param f
+     *          The node function, for an association of kind
+     *          {@link #FUNCTION}
+     */
+    protected void add(int out_pos, byte kind, int src_stream, int src_pos, NodeFunction f)
+    {
+      if (m_retention > 0)
+      {
+        evictUpTo(out_pos - m_retention);
+      }
+      if (m_end == m_outPos.length)
+      {
+        makeRoom();
+      }
+      // Positions are normally added in increasing order; otherwise the
+      // association is inserted at its place
+      int i = m_end;
+      while (i > m_start && m_outPos[i - 1] > out_pos)
+      {
+        i--;
+      }
+      if (i < m_end)
+      {
+        int len = m_end - i;
+        System.arraycopy(m_outPos, i, m_outPos, i + 1, len);
+        System.arraycopy(m_kind, i, m_kind, i + 1, len);
+        System.arraycopy(m_srcStream, i, m_srcStream, i + 1, len);
+        System.arraycopy(m_srcPos, i, m_srcPos, i + 1, len);
+        if (m_functions != null)
+        {
+          System.arraycopy(m_functions, i, m_functions, i + 1, len);
+        }
+      }
+      m_outPos[i] = out_pos;
+      m_kind[i] = kind;
+      m_srcStream[i] = src_stream;
+      m_srcPos[i] = src_pos;
+      if (f != null && m_functions == null)
+      {
+        m_functions = new NodeFunction[m_outPos.length];
+      }
+      if (m_functions != null)
+      {
+        m_functions[i] = f;
+      }
+      m_end++;
+      m_associationCount++;
+      if (m_maxAssociations > 0 && m_associationCount > m_maxAssociations)
+      {
+        evict();
+      }
+    }
+
+    /**
+     * Discards the associations of all output positions up to a given one
+     * 
+     * @param out_pos
+     *          The last position to discard
+     */
+    protected void evictUpTo(int out_pos)
+    {
+      int i = m_start;
+      while (i < m_end && m_outPos[i] <= out_pos)
+      {
+        if (m_functions != null)
+        {
+          m_functions[i] = null;
+        }
+        i++;
+      }
+      m_associationCount -= i - m_start;
+      m_start = i;
+      if (m_start == m_end)
+      {
+        m_start = 0;
+        m_end = 0;
+      }
+    }
+
+    /**
+     * Makes room for a new association at the end of the arrays, either by
+     * moving the valid entries to the beginning, or by growing the arrays
+     */
+    protected void makeRoom()
+    {
+      int size = m_end - m_start;
+      int capacity = m_outPos.length;
+      if (size > capacity / 2)
+      {
+        capacity *= 2;
+      }
+      m_outPos = move(m_outPos, capacity);
+      m_srcStream = move(m_srcStream, capacity);
+      m_srcPos = move(m_srcPos, capacity);
+      byte[] kind = new byte[capacity];
+      System.arraycopy(m_kind, m_start, kind, 0, size);
+      m_kind = kind;
+      if (m_functions != null)
+      {
+        NodeFunction[] functions = new NodeFunction[capacity];
+        System.arraycopy(m_functions, m_start, functions, 0, size);
+        m_functions = functions;
+      }
+      m_start = 0;
+      m_end = size;
+    }
+
+    /**
+     * Copies the valid entries of a column to the beginning of a new array
+     * 
+     * @param column
+     *          The column
+     * @param capacity
+     *          The size of the new array
+     * @return The new array
+     */
+    protected int[] move(int[] column, int capacity)
+    {
+      int[] a = new int[capacity];
+      System.arraycopy(column, m_start, a, 0, m_end - m_start);
+      return a;
+    }
+
+    /**
+     * Finds the first association of an output position
+     * 
+     * @param out_pos
+     *          The position
+     * @return The index of the association, or -1 if the position has no
+     *         association
+     */
+    protected int find(int out_pos)
+    {
+      int lo = m_start;
+      int hi = m_end;
+      while (lo < hi)
+      {
+        int mid = (lo + hi) >>> 1;
+        if (m_outPos[mid] < out_pos)
+        {
+          lo = mid + 1;
+        }
+        else
+        {
+          hi = mid;
+        }
+      }
+      if (lo < m_end && m_outPos[lo] == out_pos)
+      {
+        return lo;
+      }
+      return -1;
+    }
+  }
+}
@@ -87,6 +87,10 @@ public abstract class CompoundFuture<T,U> implements Future<T>
   {
     @SuppressWarnings("unchecked")
     U[] values = (U[]) new Object[m_futures.length];
+    for (int i = 0; i < m_futures.length; i++)
+    {
+      values[i] = m_futures[i].get();
+    }
     return compute(values);
   }
 
@@ -0,0 +1,106 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link Future} returned by {@link Pushable#pushFast(Object)} when the
+ * push operation has itself called <tt>pushFast</tt> on one or more
+ * downstream pushables. The future is done when all the downstream futures
+ * are done; this is how demand from bounded or asynchronous stages
+ * propagates back upstream through intermediate processors.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class CompoundPushFuture extends CompoundFuture<Pushable,Pushable>
+{
+  /**
+   * The pushable on which <tt>pushFast</tt> was called
+   */
+  protected final Pushable m_pushable;
+
+  /**
+   * Creates a new compound push future
+   * 
+   * @param p
+   *          The pushable on which <tt>pushFast</tt> was called
+   * @param futures
+   *          The futures returned by the downstream pushables
+   */
+  public CompoundPushFuture(Pushable p, /*@ non_null @*/ Future<Pushable>[] futures)
+  {
+    super(futures);
+    m_pushable = p;
+  }
+
+  @Override
+  public Pushable compute(Pushable[] values)
+  {
+    return m_pushable;
+  }
+
+  /**
+   * Creates a future that completes when all the futures in a list are
+   * done. Futures that are already done when this method is called are
+   * ignored.
+   * 
+   * @param p
+   *          The pushable on which <tt>pushFast</tt> was called
+   * @param futures
+   *          The futures returned by the downstream pushables
+   * @return The future. If all futures in the list are already done, this is
+   *         {@link Pushable#NULL_FUTURE}; if a single one is pending, it is
+   *         that future itself.
+   */
+  @SuppressWarnings("unchecked")
+  public static /*@ non_null @*/ Future<Pushable> of(Pushable p, 
+      /*@ non_null @*/ List<Future<Pushable>> futures)
+  {
+    int pending = 0;
+    Future<Pushable> last = null;
+    for (Future<Pushable> f : futures)
+    {
+      if (!f.isDone())
+      {
+        pending++;
+        last = f;
+      }
+    }
+    if (pending == 0)
+    {
+      return Pushable.NULL_FUTURE;
+    }
+    if (pending == 1)
+    {
+      return last;
+    }
+    Future<Pushable>[] array = (Future<Pushable>[]) new Future<?>[pending];
+    int i = 0;
+    for (Future<Pushable> f : futures)
+    {
+      if (!f.isDone())
+      {
+        array[i++] = f;
+      }
+    }
+    return new CompoundPushFuture(p, array);
+  }
+}
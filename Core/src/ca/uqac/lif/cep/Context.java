@@ -17,12 +17,44 @@
  */
 package ca.uqac.lif.cep;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Associative map used by processors to store persistent data. In addition, all
  * operations on a `Context` object are synchronized.
+ * <p>
+ * Besides its map interface, a context can be accessed through integer
+ * <em>slots</em>. A key is given a slot once and for all by
+ * {@link #slotOf(String)}, typically when a pipeline is built; objects that
+ * repeatedly access the same key, such as
+ * {@link ca.uqac.lif.cep.functions.ContextVariable ContextVariable}s, then
+ * read and write its value with {@link #getValue(int)} and
+ * {@link #putValue(int, Object)}. Reading a slot is an array access that
+ * takes no lock and computes no hash.
+ * <p>
+ * The map remains the reference for the contents of the context, and the
+ * slots act as a cache of it: values written through the slots are also
+ * written to the map, and values written through the map are seen by the
+ * slots. For this reason, the views returned by {@link #entrySet()},
+ * {@link #keySet()} and {@link #values()} are read-only, and the methods
+ * <tt>putIfAbsent</tt>, <tt>replace</tt> and <tt>remove(key, value)</tt>
+ * added to {@link Map} by Java 8 are overridden to update the slots. The
+ * only exception are the Java 8 methods that take a function
+ * (<tt>compute</tt>, <tt>computeIfAbsent</tt>, <tt>computeIfPresent</tt>,
+ * <tt>merge</tt> and <tt>replaceAll</tt>): their parameter types do not
+ * exist in Java 6, which this class must compile with, so they cannot be
+ * overridden. They bypass the slots and must not be used on a context.
  * 
  * @author Sylvain Hallé
  * @since 0.3
@@ -35,6 +67,37 @@ public class Context extends HashMap<String, Object>
    */
   private static final long serialVersionUID = 1L;
 
+  /**
+   * The slot given to each key
+   */
+  private static final ConcurrentHashMap<String, Integer> s_slots = new ConcurrentHashMap<String, Integer>();
+
+  /**
+   * The key of each slot
+   */
+  private static volatile String[] s_names = new String[0];
+
+  /**
+   * An empty array of slots
+   */
+  private static final Object[] NO_SLOTS = new Object[0];
+
+  /**
+   * Marks a slot whose key is associated to <tt>null</tt>
+   */
+  private static final Object NULL = new Object();
+
+  /**
+   * Marks a slot whose key is not in the map
+   */
+  private static final Object ABSENT = new Object();
+
+  /**
+   * The cached value of each slot. A <tt>null</tt> element means that the
+   * value of the slot is not known, and must be looked up in the map.
+   */
+  private transient volatile Object[] m_slots = NO_SLOTS;
+
   /**
    * Creates a new empty context
    */
@@ -57,11 +120,170 @@ public class Context extends HashMap<String, Object>
     }
   }
 
+  /**
+   * Gets the slot associated to a key, giving it a new slot if it does not
+   * have one. The slot of a key is the same for all contexts, and never
+   * changes.
+   * 
+   * @param key
+   *          The key
+   * @return The slot
+   */
+  public static int slotOf(/*@ non_null @*/ String key)
+  {
+    Integer slot = s_slots.get(key);
+    if (slot != null)
+    {
+      return slot;
+    }
+    synchronized (s_slots)
+    {
+      slot = s_slots.get(key);
+      if (slot == null)
+      {
+        String[] names = Arrays.copyOf(s_names, s_names.length + 1);
+        slot = names.length - 1;
+        names[slot] = key;
+        // The name must be visible before the slot is
+        s_names = names;
+        s_slots.put(key, slot);
+      }
+      return slot;
+    }
+  }
+
+  /**
+   * Gets the key associated to a slot
+   * 
+   * @param slot
+   *          The slot, as returned by {@link #slotOf(String)}
+   * @return The key
+   */
+  public static /*@ non_null @*/ String keyOf(int slot)
+  {
+    return s_names[slot];
+  }
+
+  /**
+   * Gets the value associated to a slot. This is equivalent to calling
+   * {@link #get(Object)} on the key of the slot.
+   * 
+   * @param slot
+   *          The slot, as returned by {@link #slotOf(String)}
+   * @return The value, or <tt>null</tt> if the key of the slot is not in
+   *         the context
+   */
+  public Object getValue(int slot)
+  {
+    Object[] slots = m_slots;
+    if (slot < slots.length)
+    {
+      Object o = slots[slot];
+      if (o != null)
+      {
+        return o == NULL || o == ABSENT ? null : o;
+      }
+    }
+    return load(slot);
+  }
+
+  /**
+   * Associates a value to a slot. This is equivalent to calling
+   * {@link #put(String, Object)} on the key of the slot.
+   * 
+   * @param slot
+   *          The slot, as returned by {@link #slotOf(String)}
+   * @param value
+   *          The value
+   */
+  public synchronized void putValue(int slot, Object value)
+  {
+    super.put(s_names[slot], value);
+    cache(slot, value == null ? NULL : value);
+  }
+
+  /**
+   * Looks up the value of a slot in the map, and caches it
+   * 
+   * @param slot
+   *          The slot
+   * @return The value
+   */
+  protected synchronized Object load(int slot)
+  {
+    String key = s_names[slot];
+    Object o = super.get(key);
+    if (o != null)
+    {
+      cache(slot, o);
+    }
+    else
+    {
+      cache(slot, super.containsKey(key) ? NULL : ABSENT);
+    }
+    return o;
+  }
+
+  /**
+   * Sets the cached value of a slot. This method must be called while
+   * holding the lock on the context.
+   * 
+   * @param slot
+   *          The slot
+   * @param o
+   *          The value, <tt>null</tt> if the value is not known
+   */
+  private void cache(int slot, Object o)
+  {
+    Object[] slots = m_slots;
+    if (slot >= slots.length)
+    {
+      if (o == null)
+      {
+        return;
+      }
+      slots = Arrays.copyOf(slots, Math.max(slot + 1, s_names.length));
+      slots[slot] = o;
+      m_slots = slots;
+      return;
+    }
+    slots[slot] = o;
+    // Writing the volatile field again publishes the element to readers
+    m_slots = slots;
+  }
+
+  /**
+   * Updates the cached value of the slot of a key that is written through
+   * the map interface, if the key has a slot
+   * 
+   * @param key
+   *          The key
+   * @param value
+   *          The new value, or <tt>null</tt> if the value is not known
+   */
+  private void update(Object key, Object value)
+  {
+    if (key == null)
+    {
+      return;
+    }
+    Integer slot = s_slots.get(key);
+    if (slot != null)
+    {
+      cache(slot, value);
+    }
+  }
+
   @Override
   @SuppressWarnings("squid:S1185")
   public synchronized void putAll(Map<? extends String, ? extends Object> o)
   {
     super.putAll(o);
+    for (Map.Entry<? extends String, ? extends Object> e : o.entrySet())
+    {
+      Object v = e.getValue();
+      update(e.getKey(), v == null ? NULL : v);
+    }
   }
 
   @Override
@@ -75,6 +297,7 @@ public class Context extends HashMap<String, Object>
   @SuppressWarnings("squid:S1185")
   public synchronized Object put(String key, Object value)
   {
+    update(key, value == null ? NULL : value);
     return super.put(key, value);
   }
 
@@ -84,4 +307,233 @@ public class Context extends HashMap<String, Object>
   {
     return super.containsKey(key);
   }
+
+  @Override
+  public synchronized Object remove(Object key)
+  {
+    update(key, null);
+    return super.remove(key);
+  }
+
+  @Override
+  public synchronized void clear()
+  {
+    super.clear();
+    m_slots = NO_SLOTS;
+  }
+
+  /**
+   * Associates a value to a key, if the key is not in the context or is
+   * associated to <tt>null</tt>. This overrides the method added to
+   * {@link Map} by Java 8, so that the slot of the key is updated.
+   * 
+   * @param key
+   *          The key
+   * @param value
+   *          The value
+   * @return The previous value of the key
+   */
+  public synchronized Object putIfAbsent(String key, Object value)
+  {
+    Object o = super.get(key);
+    if (o == null)
+    {
+      put(key, value);
+    }
+    return o;
+  }
+
+  /**
+   * Replaces the value of a key, if the key is in the context. This
+   * overrides the method added to {@link Map} by Java 8, so that the slot
+   * of the key is updated.
+   * 
+   * @param key
+   *          The key
+   * @param value
+   *          The new value
+   * @return The previous value of the key
+   */
+  public synchronized Object replace(String key, Object value)
+  {
+    if (super.containsKey(key))
+    {
+      return put(key, value);
+    }
+    return null;
+  }
+
+  /**
+   * Replaces the value of a key, if the key is associated to a given value.
+   * This overrides the method added to {@link Map} by Java 8, so that the
+   * slot of the key is updated.
+   * 
+   * @param key
+   *          The key
+   * @param old_value
+   *          The value the key must be associated to
+   * @param new_value
+   *          The new value
+   * @return <tt>true</tt> if the value was replaced
+   */
+  public synchronized boolean replace(String key, Object old_value, Object new_value)
+  {
+    if (!super.containsKey(key) || !equal(super.get(key), old_value))
+    {
+      return false;
+    }
+    put(key, new_value);
+    return true;
+  }
+
+  /**
+   * Removes a key, if it is associated to a given value. This overrides the
+   * method added to {@link Map} by Java 8, so that the slot of the key is
+   * updated.
+   * 
+   * @param key
+   *          The key
+   * @param value
+   *          The value the key must be associated to
+   * @return <tt>true</tt> if the key was removed
+   */
+  public synchronized boolean remove(Object key, Object value)
+  {
+    if (!super.containsKey(key) || !equal(super.get(key), value))
+    {
+      return false;
+    }
+    remove(key);
+    return true;
+  }
+
+  /**
+   * Checks if two objects are equal, or both <tt>null</tt>
+   * 
+   * @param o1
+   *          The first object
+   * @param o2
+   *          The second object
+   * @return <tt>true</tt> if they are equal
+   */
+  private static boolean equal(Object o1, Object o2)
+  {
+    return o1 == null ? o2 == null : o1.equals(o2);
+  }
+
+  /**
+   * Gets a read-only view of the entries of the context. Modifying the
+   * context through its views would bypass the slots; for the same reason,
+   * the entries do not support <tt>setValue</tt>.
+   * 
+   * @return The entries
+   */
+  @Override
+  public Set<Map.Entry<String, Object>> entrySet()
+  {
+    return new EntrySet(super.entrySet());
+  }
+
+  /**
+   * Gets a read-only view of the keys of the context
+   * 
+   * @return The keys
+   */
+  @Override
+  public Set<String> keySet()
+  {
+    return Collections.unmodifiableSet(super.keySet());
+  }
+
+  /**
+   * Gets a read-only view of the values of the context
+   * 
+   * @return The values
+   */
+  @Override
+  public Collection<Object> values()
+  {
+    return Collections.unmodifiableCollection(super.values());
+  }
+
+  @Override
+  public synchronized Object clone()
+  {
+    Context c = (Context) super.clone();
+    c.m_slots = m_slots.clone();
+    return c;
+  }
+
+  /**
+   * Read-only view of the entries of a context. Its entries are copies of
+   * the entries of the map, which cannot be modified.
+   */
+  private static class EntrySet extends AbstractSet<Map.Entry<String, Object>>
+  {
+    /**
+     * The entries of the map
+     */
+    private final Set<Map.Entry<String, Object>> m_entries;
+
+    /**
+     * Creates a new view
+     * 
+     * @param entries
+     *          The entries of the map
+     */
+    EntrySet(Set<Map.Entry<String, Object>> entries)
+    {
+      super();
+      m_entries = entries;
+    }
+
+    @Override
+    public int size()
+    {
+      return m_entries.size();
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, Object>> iterator()
+    {
+      final Iterator<Map.Entry<String, Object>> it = m_entries.iterator();
+      return new Iterator<Map.Entry<String, Object>>()
+      {
+        @Override
+        public boolean hasNext()
+        {
+          return it.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, Object> next()
+        {
+          return new AbstractMap.SimpleImmutableEntry<String, Object>(it.next());
+        }
+
+        @Override
+        public void remove()
+        {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+
+  /**
+   * Restores a context, whose slots are looked up again when they are
+   * first accessed
+   * 
+   * @param in
+   *          The stream to read from
+   * @throws IOException
+   *           If the stream cannot be read
+   * @throws ClassNotFoundException
+   *           If the class of a value cannot be found
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+    m_slots = NO_SLOTS;
+  }
 }
@@ -0,0 +1,192 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+/**
+ * Receives notifications of what happens inside the engine: computations
+ * of processors, creation and removal of slices, recomputation of windows,
+ * queue overflows and the propagation of the end of a trace. A monitor is
+ * installed globally with {@link #install(ExecutionMonitor)}; it is meant
+ * to forward these notifications to a diagnostic tool, such as Java Flight
+ * Recorder.
+ * <p>
+ * When no monitor is installed, the only cost for the engine is the read of
+ * a static field at each notification point. Descendants only override the
+ * methods for the notifications they are interested in; all the methods of
+ * this class do nothing. They are called synchronously, by the thread
+ * running the processor, and must therefore return quickly.
+ * <p>
+ * Durations are measured by the monitor itself: the engine calls a
+ * <tt>begin</tt> method before an operation, and passes the object it
+ * returns to the matching <tt>end</tt> method. If the <tt>begin</tt> method
+ * returns <tt>null</tt>, the <tt>end</tt> method is not called; this lets a
+ * monitor skip operations it is currently not interested in at no cost.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public abstract class ExecutionMonitor
+{
+  /**
+   * The monitor currently installed, if any
+   */
+  private static volatile ExecutionMonitor s_current = null;
+
+  /**
+   * Installs a monitor, replacing the one currently installed
+   * 
+   * @param m
+   *          The monitor, or <tt>null</tt> to remove the current monitor
+   */
+  public static void install(/*@ null @*/ ExecutionMonitor m)
+  {
+    s_current = m;
+  }
+
+  /**
+   * Gets the monitor currently installed
+   * 
+   * @return The monitor, or <tt>null</tt> if no monitor is installed
+   */
+  public static /*@ null @*/ ExecutionMonitor current()
+  {
+    return s_current;
+  }
+
+  /**
+   * Called before a processor performs a computation on an input front
+   * 
+   * @param p
+   *          The processor
+   * @return An object passed to
+   *         {@link #endCompute(Object, Processor, int)}, or <tt>null</tt> to
+   *         ignore this computation
+   */
+  public /*@ null @*/ Object beginCompute(Processor p)
+  {
+    return null;
+  }
+
+  /**
+   * Called after a processor performed a computation
+   * 
+   * @param token
+   *          The object returned by {@link #beginCompute(Processor)}
+   * @param p
+   *          The processor
+   * @param fronts
+   *          The number of output fronts produced by the computation
+   */
+  public void endCompute(Object token, Processor p, int fronts)
+  {
+    // Do nothing
+  }
+
+  /**
+   * Called after a {@link ca.uqac.lif.cep.tmf.Slice Slice} created a new
+   * slice
+   * 
+   * @param slice
+   *          The slice processor
+   * @param key
+   *          The value of the slicing function for the new slice
+   * @param active
+   *          The number of slices after the creation
+   */
+  public void sliceCreated(Processor slice, Object key, int active)
+  {
+    // Do nothing
+  }
+
+  /**
+   * Called after a {@link ca.uqac.lif.cep.tmf.Slice Slice} removed a slice
+   * for which its cleaning function returned <tt>true</tt>
+   * 
+   * @param slice
+   *          The slice processor
+   * @param key
+   *          The value of the slicing function for the removed slice
+   * @param active
+   *          The number of slices after the removal
+   */
+  public void sliceEvicted(Processor slice, Object key, int active)
+  {
+    // Do nothing
+  }
+
+  /**
+   * Called before a {@link ca.uqac.lif.cep.tmf.Window Window} runs its
+   * processor on the contents of the window
+   * 
+   * @param window
+   *          The window processor
+   * @return An object passed to {@link #endWindow(Object, Processor, int)},
+   *         or <tt>null</tt> to ignore this recomputation
+   */
+  public /*@ null @*/ Object beginWindow(Processor window)
+  {
+    return null;
+  }
+
+  /**
+   * Called after a {@link ca.uqac.lif.cep.tmf.Window Window} ran its
+   * processor on the contents of the window
+   * 
+   * @param token
+   *          The object returned by {@link #beginWindow(Processor)}
+   * @param window
+   *          The window processor
+   * @param width
+   *          The width of the window
+   */
+  public void endWindow(Object token, Processor window, int width)
+  {
+    // Do nothing
+  }
+
+  /**
+   * Called when an event is handed to a bounded queue that is full
+   * 
+   * @param p
+   *          The processor that owns the queue, or the processor that pushed
+   *          the event to it
+   * @param index
+   *          The index of the stream the queue is attached to
+   * @param dropped
+   *          <tt>true</tt> if an event was discarded, <tt>false</tt> if the
+   *          caller waits for room in the queue
+   */
+  public void queueOverflow(Processor p, int index, boolean dropped)
+  {
+    // Do nothing
+  }
+
+  /**
+   * Called when a processor is notified of the end of an input trace, or
+   * notifies its outputs of the end of its trace
+   * 
+   * @param p
+   *          The processor
+   * @param index
+   *          The index of the input stream
+   */
+  public void endOfTrace(Processor p, int index)
+  {
+    // Do nothing
+  }
+}
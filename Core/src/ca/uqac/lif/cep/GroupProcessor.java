@@ -19,11 +19,13 @@ package ca.uqac.lif.cep;
 
 import ca.uqac.lif.cep.tmf.Source;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Future;
 
 /**
@@ -189,6 +191,16 @@ public class GroupProcessor extends Processor
     return this;
   }
 
+  /**
+   * Gets the processors included in the group
+   * 
+   * @return An unmodifiable view of the set of processors
+   */
+  public synchronized Set<Processor> getProcessors()
+  {
+    return Collections.unmodifiableSet(m_processors);
+  }
+
   /**
    * Declares that the <i>i</i>-th input of the group is linked to the <i>j</i>-th
    * input of processor <code>p</code>
@@ -498,10 +510,15 @@ public class GroupProcessor extends Processor
     }
   }
 
-  public class ProxyPullable implements Pullable
+  public class ProxyPullable implements NotifyingPullable
   {
     protected Pullable m_pullable;
 
+    /**
+     * Relays readiness notifications from the inner pullable
+     */
+    private final Readiness.Upstream m_upstream = new Readiness.Upstream(this);
+
     @Override
     public synchronized void remove()
     {
@@ -591,6 +608,18 @@ public class GroupProcessor extends Processor
     {
       m_pullable.dispose();
     }
+
+    @Override
+    public boolean addReadyListener(ReadyListener l)
+    {
+      return m_upstream.add(new Pullable[] {m_pullable}, l);
+    }
+
+    @Override
+    public void removeReadyListener(ReadyListener l)
+    {
+      m_upstream.remove(l);
+    }
   }
 
   public class ProxyPushable implements Pushable
@@ -625,8 +654,11 @@ public class GroupProcessor extends Processor
     @Override
     public synchronized Future<Pushable> pushFast(Object o)
     {
-      push(o);
-      return Pushable.NULL_FUTURE;
+      // Return the inner future, so that demand from bounded processors
+      // inside the group is seen by the group's upstream
+      Future<Pushable> f = m_pushable.pushFast(o);
+      notifySources();
+      return f;
     }
 
     /**
@@ -698,4 +730,32 @@ public class GroupProcessor extends Processor
     }
     return m_inputPullableAssociations.get(index).m_processor;
   }
+
+  /**
+   * Gets the processor and the input number associated to the i-th input of
+   * the group
+   * 
+   * @param index
+   *          The index
+   * @return The association, or <tt>null</tt> if no processor is associated
+   *         to this index
+   */
+  synchronized ProcessorAssociation getInputAssociation(int index)
+  {
+    return m_inputPullableAssociations.get(index);
+  }
+
+  /**
+   * Gets the processor and the output number associated to the i-th output
+   * of the group
+   * 
+   * @param index
+   *          The index
+   * @return The association, or <tt>null</tt> if no processor is associated
+   *         to this index
+   */
+  synchronized ProcessorAssociation getOutputAssociation(int index)
+  {
+    return m_outputPushableAssociations.get(index);
+  }
 }
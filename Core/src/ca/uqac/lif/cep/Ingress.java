@@ -0,0 +1,130 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+/**
+ * Side channel carrying the time at which the event being processed entered
+ * the pipeline. In push mode, an event is processed by all the downstream
+ * processors within the call that pushed it; the time at which this call
+ * started is therefore attached to the current thread, rather than to the
+ * event objects, which are left untouched. A processor whose metrics track
+ * latencies (see {@link ProcessorMetrics#setLatencyTracking(boolean)})
+ * reads it to compute how long the event took to reach it.
+ * <p>
+ * A {@link ca.uqac.lif.cep.tmf.Source Source} stamps the events it pushes
+ * once enabled with
+ * {@link ca.uqac.lif.cep.tmf.Source#setIngressTimestamping(boolean)
+ * setIngressTimestamping()}. Events pushed directly into a processor can be
+ * stamped by surrounding the call with {@link #begin()} and {@link #end()}.
+ * Calls can be nested: only the outermost one sets the time, so that an
+ * event produced by a source inside a pipeline is still measured from the
+ * moment the original event entered it.
+ * <p>
+ * The time is lost when an event crosses a thread boundary, or is
+ * buffered and output later by a processor in response to another input
+ * event; in the latter case, the output is measured from the entry of that
+ * other event, which is the latency of the output event as seen from
+ * outside.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public final class Ingress
+{
+  /**
+   * The value returned by {@link #getTimestamp()} when no event is being
+   * processed
+   */
+  public static final long NONE = Long.MIN_VALUE;
+
+  /**
+   * The ingress time and nesting depth of the current thread
+   */
+  private static final ThreadLocal<long[]> s_stamp = new ThreadLocal<long[]>()
+  {
+    @Override
+    protected long[] initialValue()
+    {
+      return new long[] {NONE, 0};
+    }
+  };
+
+  private Ingress()
+  {
+    // Utility class
+  }
+
+  /**
+   * Signals that an event enters the pipeline in the current thread. Each
+   * call must be matched by a call to {@link #end()}.
+   */
+  public static void begin()
+  {
+    long[] stamp = s_stamp.get();
+    if (stamp[1]++ == 0)
+    {
+      stamp[0] = System.nanoTime();
+    }
+  }
+
+  /**
+   * Signals that the processing of an event started with {@link #begin()}
+   * is over
+   */
+  public static void end()
+  {
+    long[] stamp = s_stamp.get();
+    if (stamp[1] > 0 && --stamp[1] == 0)
+    {
+      stamp[0] = NONE;
+    }
+  }
+
+  /**
+   * Gets the time at which the event being processed in the current thread
+   * entered the pipeline
+   * 
+   * @return The time, as given by {@link System#nanoTime()}, or
+   *         {@link #NONE} if no event is being processed
+   */
+  public static long getTimestamp()
+  {
+    return s_stamp.get()[0];
+  }
+
+  /**
+   * Pushes an event into a pushable, stamping it with the current time
+   * 
+   * @param p
+   *          The pushable
+   * @param o
+   *          The event
+   */
+  public static void push(/*@ non_null @*/ Pushable p, Object o)
+  {
+    begin();
+    try
+    {
+      p.push(o);
+    }
+    finally
+    {
+      end();
+    }
+  }
+}
@@ -0,0 +1,405 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of latencies, from which percentiles can be read. The
+ * histogram follows the log-linear layout of HDR histograms: values below
+ * 128 are counted exactly, and larger values are counted in buckets whose
+ * width doubles with each power of two, each power of two being split into
+ * 64 buckets. The value reported for a percentile is therefore within
+ * 1/64 (about 1.6%) of the exact value, whatever its order of magnitude,
+ * while the histogram uses a fixed amount of memory and recording a value
+ * takes constant time.
+ * <p>
+ * Values can be recorded concurrently from several threads, and read at any
+ * time; a {@link Snapshot} gives a consistent view of the distribution.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class LatencyHistogram
+{
+  /**
+   * The percentiles reported by default, which are those given by the
+   * accessors of {@link Snapshot}
+   */
+  public static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+  /**
+   * The number of bits of precision of a value
+   */
+  protected static final int PRECISION_BITS = 7;
+
+  /**
+   * The number of values counted exactly
+   */
+  protected static final int SUB_BUCKETS = 1 << PRECISION_BITS;
+
+  /**
+   * The number of buckets in each power of two above {@link #SUB_BUCKETS}
+   */
+  protected static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+  /**
+   * The number of buckets, which is enough to hold any positive long
+   */
+  protected static final int BUCKETS = indexOf(Long.MAX_VALUE) + 1;
+
+  /**
+   * The number of values in each bucket
+   */
+  protected final AtomicLongArray m_counts = new AtomicLongArray(BUCKETS);
+
+  /**
+   * The number of values recorded
+   */
+  protected final AtomicLong m_count = new AtomicLong();
+
+  /**
+   * The sum of the values recorded
+   */
+  protected final AtomicLong m_sum = new AtomicLong();
+
+  /**
+   * The largest value recorded
+   */
+  protected final AtomicLong m_max = new AtomicLong();
+
+  /**
+   * Records a value
+   * 
+   * @param value
+   *          The value. Negative values are recorded as 0.
+   */
+  public void record(long value)
+  {
+    long v = Math.max(0, value);
+    m_counts.incrementAndGet(indexOf(v));
+    m_count.incrementAndGet();
+    m_sum.addAndGet(v);
+    long max = m_max.get();
+    while (v > max && !m_max.compareAndSet(max, v))
+    {
+      max = m_max.get();
+    }
+  }
+
+  /**
+   * Gets the number of values recorded
+   * 
+   * @return The number of values
+   */
+  public long getCount()
+  {
+    return m_count.get();
+  }
+
+  /**
+   * Gets the largest value recorded
+   * 
+   * @return The value, or 0 if no value was recorded
+   */
+  public long getMax()
+  {
+    return m_max.get();
+  }
+
+  /**
+   * Gets the value below which a given percentage of the recorded values
+   * fall
+   * 
+   * @param percentile
+   *          The percentage, between 0 and 100
+   * @return The value, or 0 if no value was recorded
+   */
+  public long getValueAtPercentile(double percentile)
+  {
+    return getSnapshot().getValueAtPercentile(percentile);
+  }
+
+  /**
+   * Discards all the recorded values
+   */
+  public void reset()
+  {
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      m_counts.set(i, 0);
+    }
+    m_count.set(0);
+    m_sum.set(0);
+    m_max.set(0);
+  }
+
+  /**
+   * Gets the current distribution of the recorded values
+   * 
+   * @return The snapshot
+   */
+  public Snapshot getSnapshot()
+  {
+    return new Snapshot(this);
+  }
+
+  /**
+   * Gets the bucket in which a value is counted
+   * 
+   * @param v
+   *          The value, which must be positive
+   * @return The index of the bucket
+   */
+  protected static int indexOf(long v)
+  {
+    if (v < SUB_BUCKETS)
+    {
+      return (int) v;
+    }
+    // Number of low-order bits dropped, so that PRECISION_BITS remain
+    int shift = 64 - PRECISION_BITS - Long.numberOfLeadingZeros(v);
+    return shift * HALF_SUB_BUCKETS + (int) (v >>> shift);
+  }
+
+  /**
+   * Gets the largest value counted in a bucket
+   * 
+   * @param index
+   *          The index of the bucket
+   * @return The value
+   */
+  protected static long highestValueOf(int index)
+  {
+    if (index < SUB_BUCKETS)
+    {
+      return index;
+    }
+    int shift = index / HALF_SUB_BUCKETS - 1;
+    long sub = index % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+    return ((sub + 1) << shift) - 1;
+  }
+
+  /**
+   * The distribution of the values recorded by a histogram at a given moment
+   */
+  public static class Snapshot
+  {
+    /**
+     * The number of values in each bucket
+     */
+    protected final long[] m_counts;
+
+    /**
+     * The number of values
+     */
+    protected final long m_count;
+
+    /**
+     * The sum of the values
+     */
+    protected final long m_sum;
+
+    /**
+     * The largest value
+     */
+    protected final long m_max;
+
+    /**
+     * Creates a snapshot of a histogram
+     * 
+     * @param h
+     *          The histogram
+     */
+    protected Snapshot(LatencyHistogram h)
+    {
+      super();
+      m_counts = new long[BUCKETS];
+      long count = 0;
+      for (int i = 0; i < BUCKETS; i++)
+      {
+        m_counts[i] = h.m_counts.get(i);
+        count += m_counts[i];
+      }
+      // Computed from the buckets, so that it is consistent with them even
+      // if values are recorded while the snapshot is taken
+      m_count = count;
+      m_sum = h.m_sum.get();
+      m_max = h.m_max.get();
+    }
+
+    /**
+     * Gets the number of values
+     * 
+     * @return The number of values
+     */
+    public long getCount()
+    {
+      return m_count;
+    }
+
+    /**
+     * Gets the largest value
+     * 
+     * @return The value, or 0 if there are no values
+     */
+    public long getMax()
+    {
+      return m_max;
+    }
+
+    /**
+     * Gets the average of the values
+     * 
+     * @return The average, or 0 if there are no values
+     */
+    public double getMean()
+    {
+      if (m_count == 0)
+      {
+        return 0;
+      }
+      return (double) m_sum / m_count;
+    }
+
+    /**
+     * Gets the value below which a given percentage of the values fall
+     * 
+     * @param percentile
+     *          The percentage, between 0 and 100
+     * @return The value, or 0 if there are no values
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+      if (m_count == 0)
+      {
+        return 0;
+      }
+      long rank = (long) Math.ceil(Math.min(100, percentile) / 100 * m_count);
+      rank = Math.max(1, rank);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++)
+      {
+        seen += m_counts[i];
+        if (seen >= rank)
+        {
+          return Math.min(highestValueOf(i), m_max);
+        }
+      }
+      return m_max;
+    }
+
+    /**
+     * Gets the median of the values
+     * 
+     * @return The value
+     */
+    public long getP50()
+    {
+      return getValueAtPercentile(50);
+    }
+
+    /**
+     * Gets the 90th percentile of the values
+     * 
+     * @return The value
+     */
+    public long getP90()
+    {
+      return getValueAtPercentile(90);
+    }
+
+    /**
+     * Gets the 99th percentile of the values
+     * 
+     * @return The value
+     */
+    public long getP99()
+    {
+      return getValueAtPercentile(99);
+    }
+
+    /**
+     * Gets the 99.9th percentile of the values
+     * 
+     * @return The value
+     */
+    public long getP999()
+    {
+      return getValueAtPercentile(99.9);
+    }
+
+    /**
+     * Gets the 99.99th percentile of the values
+     * 
+     * @return The value
+     */
+    public long getP9999()
+    {
+      return getValueAtPercentile(99.99);
+    }
+
+    /**
+     * Gets the values at each of the {@link LatencyHistogram#PERCENTILES
+     * default percentiles}
+     * 
+     * @return An array with one value per percentile
+     */
+    public long[] getPercentiles()
+    {
+      long[] values = new long[PERCENTILES.length];
+      for (int i = 0; i < values.length; i++)
+      {
+        values[i] = getValueAtPercentile(PERCENTILES[i]);
+      }
+      return values;
+    }
+
+    @Override
+    public String toString()
+    {
+      StringBuilder out = new StringBuilder();
+      out.append("n=").append(m_count);
+      long[] values = getPercentiles();
+      for (int i = 0; i < values.length; i++)
+      {
+        out.append(" p").append(formatPercentile(PERCENTILES[i])).append('=')
+            .append(values[i]);
+      }
+      out.append(" max=").append(m_max);
+      return out.toString();
+    }
+
+    /**
+     * Formats a percentile without trailing zeros
+     * 
+     * @param p
+     *          The percentile
+     * @return The formatted percentile
+     */
+    protected static String formatPercentile(double p)
+    {
+      if (p == Math.floor(p))
+      {
+        return Long.toString((long) p);
+      }
+      return Double.toString(p);
+    }
+  }
+}
@@ -0,0 +1,225 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Enables the collection of {@link ProcessorMetrics} on a set of
+ * processors, and exposes these metrics as MBeans. Each processor is
+ * registered under the name
+ * <tt>ca.uqac.lif.cep:type=Processor,name=<i>class</i>,id=<i>id</i></tt>,
+ * where <i>class</i> is the simple name of the processor's class and
+ * <i>id</i> its unique ID, so that it can be inspected with any JMX
+ * client (such as JConsole). The metrics of all the registered processors
+ * can also be read programmatically with {@link #getSnapshots()}.
+ * <p>
+ * For example, the following enables metrics on all the processors
+ * connected to <tt>source</tt>:
+ * <pre>
+ * MetricsRegistry registry = new MetricsRegistry();
+ * registry.registerAll(source);
+ * ...
+ * for (ProcessorMetrics.Snapshot s : registry.getSnapshots())
+ *   System.out.println(s);
+ * registry.unregisterAll();
+ * </pre>
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class MetricsRegistry
+{
+  /**
+   * The domain of the names of the MBeans
+   */
+  public static final String DOMAIN = "ca.uqac.lif.cep";
+
+  /**
+   * The server where MBeans are registered, or <tt>null</tt> to only
+   * collect metrics
+   */
+  protected final MBeanServer m_server;
+
+  /**
+   * The registered processors, and the names of their MBeans
+   */
+  protected final Map<Processor, ObjectName> m_processors = new LinkedHashMap<Processor, ObjectName>();
+
+  /**
+   * Creates a new registry using the platform MBean server
+   */
+  public MetricsRegistry()
+  {
+    this(ManagementFactory.getPlatformMBeanServer());
+  }
+
+  /**
+   * Creates a new registry
+   * 
+   * @param server
+   *          The server where MBeans are registered, or <tt>null</tt> to
+   *          only collect metrics
+   */
+  public MetricsRegistry(/* @Null */ MBeanServer server)
+  {
+    super();
+    m_server = server;
+  }
+
+  /**
+   * Enables metrics on processors and registers their MBeans. Processors
+   * already registered are ignored.
+   * 
+   * @param processors
+   *          The processors
+   * @return This registry
+   */
+  public synchronized MetricsRegistry register(Processor ... processors)
+  {
+    for (Processor p : processors)
+    {
+      if (m_processors.containsKey(p))
+      {
+        continue;
+      }
+      p.setMetricsEnabled(true);
+      ObjectName name = null;
+      if (m_server != null)
+      {
+        try
+        {
+          name = getObjectName(p);
+          m_server.registerMBean(p.getMetrics(), name);
+        }
+        catch (JMException e)
+        {
+          throw new IllegalStateException(e);
+        }
+      }
+      m_processors.put(p, name);
+    }
+    return this;
+  }
+
+  /**
+   * Registers all the processors connected, directly or not, to a
+   * processor, including the processors inside {@link GroupProcessor}s
+   * 
+   * @param start
+   *          The processor
+   * @return This registry
+   */
+  public MetricsRegistry registerAll(Processor start)
+  {
+    for (Processor p : PipeCrawler.getAllProcessors(start))
+    {
+      register(p);
+    }
+    return this;
+  }
+
+  /**
+   * Disables metrics on processors and unregisters their MBeans
+   * 
+   * @param processors
+   *          The processors
+   * @return This registry
+   */
+  public synchronized MetricsRegistry unregister(Processor ... processors)
+  {
+    for (Processor p : processors)
+    {
+      if (!m_processors.containsKey(p))
+      {
+        continue;
+      }
+      ObjectName name = m_processors.remove(p);
+      p.setMetricsEnabled(false);
+      if (name != null)
+      {
+        try
+        {
+          m_server.unregisterMBean(name);
+        }
+        catch (JMException e)
+        {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Unregisters all the processors of this registry
+   */
+  public synchronized void unregisterAll()
+  {
+    unregister(m_processors.keySet().toArray(new Processor[m_processors.size()]));
+  }
+
+  /**
+   * Gets the current metrics of all the registered processors, in the order
+   * they were registered
+   * 
+   * @return The list of snapshots
+   */
+  public synchronized List<ProcessorMetrics.Snapshot> getSnapshots()
+  {
+    List<ProcessorMetrics.Snapshot> snapshots = new ArrayList<ProcessorMetrics.Snapshot>(
+        m_processors.size());
+    for (Processor p : m_processors.keySet())
+    {
+      ProcessorMetrics m = p.getMetrics();
+      if (m != null)
+      {
+        snapshots.add(m.getSnapshot());
+      }
+    }
+    return snapshots;
+  }
+
+  /**
+   * Gets the name of the MBean of a processor
+   * 
+   * @param p
+   *          The processor
+   * @return The name
+   * @throws JMException
+   *           If the name is malformed
+   */
+  public static ObjectName getObjectName(Processor p) throws JMException
+  {
+    String type = p.getClass().getSimpleName();
+    if (type.isEmpty())
+    {
+      // Anonymous class
+      type = "Processor";
+    }
+    return new ObjectName(DOMAIN + ":type=Processor,name=" + ObjectName.quote(type) + ",id="
+        + p.getId());
+  }
+}
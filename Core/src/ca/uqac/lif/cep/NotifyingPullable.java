@@ -0,0 +1,77 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+/**
+ * A {@link Pullable} that can tell interested parties when it may have
+ * something new to say. A consumer that receives <code>MAYBE</code> from
+ * {@link #hasNextSoft()} can register a {@link ReadyListener}, and park its
+ * thread until the listener is called, instead of polling the pullable over
+ * and over. See {@link Readiness#await(Pullable, long, java.util.concurrent.TimeUnit)
+ * Readiness.await()} for a ready-made implementation of this pattern.
+ * <p>
+ * Notifications are <em>level-triggered</em>: if the pullable already has
+ * an event available (or has reached the end of its trace) when a listener
+ * is registered, the listener is called right away. A notification is only a
+ * hint; after being woken up, the consumer must call {@link #hasNextSoft()}
+ * again, which may still answer <code>MAYBE</code> (for example if the new
+ * input event was discarded by a filter).
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public interface NotifyingPullable extends Pullable
+{
+  /**
+   * Registers a listener to be called when this pullable may have a new
+   * event, or has reached the end of its trace.
+   * 
+   * @param l
+   *          The listener
+   * @return <tt>true</tt> if the listener has been registered, <tt>false</tt>
+   *         if this pullable cannot notify readiness (for example because one
+   *         of its upstream pullables cannot). In the latter case, the caller
+   *         has to fall back to polling.
+   */
+  public boolean addReadyListener(/*@ non_null @*/ ReadyListener l);
+
+  /**
+   * Unregisters a listener. Nothing happens if the listener is not
+   * registered.
+   * 
+   * @param l
+   *          The listener
+   */
+  public void removeReadyListener(/*@ non_null @*/ ReadyListener l);
+
+  /**
+   * Receives readiness notifications from a {@link NotifyingPullable}
+   */
+  public interface ReadyListener
+  {
+    /**
+     * Called when a pullable may have a new event. This method may be called
+     * from any thread, possibly while locks are held in the pullable; it
+     * should return quickly and must not call back into the pullable.
+     * 
+     * @param p
+     *          The pullable the listener has been registered on
+     */
+    public void ready(Pullable p);
+  }
+}
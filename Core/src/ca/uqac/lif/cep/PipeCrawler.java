@@ -17,15 +17,17 @@
  */
 package ca.uqac.lif.cep;
 
+import java.util.ArrayDeque;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 
 /**
  * An object that visits every processor in a chain, from a processor
  * used as a starting point. Currently, this crawler is only used to clone
- * {@link GroupProcessor}s.
+ * {@link GroupProcessor}s. To get the whole topology of a chain of
+ * processors, use a {@link PipelineGraph}.
  * 
  * @author Sylvain Hallé
  * @since 0.3
@@ -33,31 +35,30 @@ import java.util.Set;
 public abstract class PipeCrawler
 {
   /**
-   * The maximum number of loops that the crawler can do during a traversal. This
-   * is intended as a safety measure to make sure that method
-   * {@link #crawl(Processor)} always terminates.
+   * The maximum number of loops that the crawler could do during a traversal.
+   * 
+   * @deprecated A traversal no longer has a limit, as each processor is
+   *             visited exactly once
    */
+  @Deprecated
   protected static final int s_maxCrawls = 10000;
 
   /**
    * Crawls a graph from some starting point
    * 
-   * @param start The processor to start fromS
+   * @param start The processor to start from
    */
   public synchronized void crawl(Processor start)
   {
-    Queue<Processor> to_visit = new LinkedList<Processor>();
-    Set<Processor> visited = new HashSet<Processor>();
+    Queue<Processor> to_visit = new ArrayDeque<Processor>();
+    // Processors that have been added to the queue, visited or not
+    Set<Processor> found = new HashSet<Processor>();
     to_visit.add(start);
-    /*
-     * This is actually while(!to_visit.isEmpty()), whose number of iterations is
-     * bounded by s_maxCrawls for safety.
-     */
-    for (int num_crawls = 0; num_crawls < s_maxCrawls && !to_visit.isEmpty(); num_crawls++)
+    found.add(start);
+    while (!to_visit.isEmpty())
     {
       Processor proc = to_visit.remove();
       visit(proc);
-      visited.add(proc);
       int in_arity = proc.getInputArity();
       int out_arity = proc.getOutputArity();
       for (int i = 0; i < out_arity; i++)
@@ -68,7 +69,7 @@ public abstract class PipeCrawler
           continue;
         }
         Processor target = p.getProcessor();
-        if (!to_visit.contains(target) && !visited.contains(target))
+        if (found.add(target))
         {
           to_visit.add(target);
         }
@@ -81,7 +82,7 @@ public abstract class PipeCrawler
           continue;
         }
         Processor target = p.getProcessor();
-        if (!to_visit.contains(target) && !visited.contains(target))
+        if (found.add(target))
         {
           to_visit.add(target);
         }
@@ -89,6 +90,20 @@ public abstract class PipeCrawler
     }
   }
 
+  /**
+   * Gets all the processors connected, directly or not, to a processor,
+   * including the processors inside {@link GroupProcessor}s
+   * 
+   * @param start
+   *          The processor to start from
+   * @return The list of processors, in the order they were found
+   * @see PipelineGraph#getProcessors()
+   */
+  public static List<Processor> getAllProcessors(Processor start)
+  {
+    return PipelineGraph.of(start).getProcessors();
+  }
+
   /**
    * Do something on a processor. Upon a call to {@link #crawl(Processor)}, this
    * method is called exactly once for every reachable processor in the pipe
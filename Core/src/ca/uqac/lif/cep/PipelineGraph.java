@@ -0,0 +1,933 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import ca.uqac.lif.cep.GroupProcessor.ProcessorAssociation;
+
+/**
+ * Immutable description of the topology of a chain of processors. The graph
+ * is made of:
+ * <ul>
+ * <li>{@link Node}s, one for every processor connected, directly or not, to
+ * the processors it is built from, including the processors inside
+ * {@link GroupProcessor}s. The node of a processor inside a group has the
+ * node of the group as its parent.</li>
+ * <li>{@link Port}s, one for every input and output of each processor, with
+ * the types of events declared for it by the processor.</li>
+ * <li>{@link Edge}s between an output port and an input port. An edge is
+ * either a connection made with {@link Connector}, between two processors
+ * of the same group (or outside any group), or the association of an input
+ * or an output of a group to a processor of that group.</li>
+ * </ul>
+ * Since the inner processor associated to an input or an output of a group
+ * is wired directly to the processor on the other side of the group, this
+ * wire is not an edge of the graph; it is represented by the association
+ * and the connection of the group.
+ * <p>
+ * The graph also computes an <em>execution plan</em>: the list of the
+ * processors in an order where each processor comes after all the processors
+ * it receives events from (see {@link #getExecutionPlan()}).
+ * <p>
+ * The graph is a snapshot of the connections at the time it is built: it
+ * does not change if processors are connected differently afterwards.
+ * Building it visits each processor and each connection once, so that it
+ * can be used on pipelines of any size. Note that a group cannot be found
+ * from the processors it contains; to include a group, the graph must be
+ * built from the group or from a processor connected to it.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class PipelineGraph
+{
+  /**
+   * The kinds of edges of a graph
+   */
+  public static enum EdgeType
+  {
+    /**
+     * A connection between two processors
+     */
+    CONNECTION,
+
+    /**
+     * The association of an input of a group to an input of one of its
+     * processors
+     */
+    INPUT_ASSOCIATION,
+
+    /**
+     * The association of an output of a processor of a group to an output of
+     * the group
+     */
+    OUTPUT_ASSOCIATION
+  }
+
+  /**
+   * The nodes of the graph, in the order they were found
+   */
+  protected final List<Node> m_nodes;
+
+  /**
+   * The node of each processor
+   */
+  protected final Map<Processor, Node> m_index;
+
+  /**
+   * The edges of the graph
+   */
+  protected final List<Edge> m_edges;
+
+  /**
+   * The execution plan
+   */
+  protected final List<Node> m_plan;
+
+  /**
+   * Whether all the processors of the graph are in the execution plan
+   */
+  protected final boolean m_acyclic;
+
+  /**
+   * Builds the graph of all the processors connected, directly or not, to
+   * some processors
+   * 
+   * @param start
+   *          The processors to start from
+   * @return The graph
+   */
+  public static /*@ non_null @*/ PipelineGraph of(Processor ... start)
+  {
+    return new PipelineGraph(start);
+  }
+
+  /**
+   * Creates a new graph
+   * 
+   * @param start
+   *          The processors to start from
+   */
+  protected PipelineGraph(Processor ... start)
+  {
+    super();
+    List<Node> nodes = new ArrayList<Node>();
+    Map<Processor, Node> index = new HashMap<Processor, Node>();
+    Queue<Node> to_visit = new ArrayDeque<Node>();
+    for (Processor p : start)
+    {
+      discover(p, nodes, index, to_visit);
+    }
+    while (!to_visit.isEmpty())
+    {
+      Node n = to_visit.remove();
+      Processor p = n.m_processor;
+      for (int i = 0; i < n.m_outputs.length; i++)
+      {
+        Pushable push = getPushableOutput(p, i);
+        if (push != null)
+        {
+          discover(push.getProcessor(), nodes, index, to_visit);
+        }
+      }
+      for (int i = 0; i < n.m_inputs.length; i++)
+      {
+        Pullable pull = getPullableInput(p, i);
+        if (pull != null)
+        {
+          discover(pull.getProcessor(), nodes, index, to_visit);
+        }
+      }
+      if (p instanceof GroupProcessor)
+      {
+        for (Processor inner : ((GroupProcessor) p).getProcessors())
+        {
+          discover(inner, nodes, index, to_visit);
+        }
+      }
+    }
+    m_nodes = Collections.unmodifiableList(nodes);
+    m_index = index;
+    for (Node n : nodes)
+    {
+      if (n.m_processor instanceof GroupProcessor)
+      {
+        for (Processor inner : ((GroupProcessor) n.m_processor).getProcessors())
+        {
+          index.get(inner).m_parent = n;
+        }
+      }
+    }
+    for (Node n : nodes)
+    {
+      // Done in a separate pass, so that children are in discovery order
+      if (n.m_parent != null)
+      {
+        n.m_parent.m_children.add(n);
+      }
+    }
+    m_edges = Collections.unmodifiableList(findEdges());
+    for (Node n : nodes)
+    {
+      n.freeze();
+    }
+    List<Node> plan = new ArrayList<Node>();
+    m_acyclic = plan(plan);
+    m_plan = Collections.unmodifiableList(plan);
+  }
+
+  /**
+   * Adds a processor to the graph, if it is not already in it
+   */
+  private static void discover(Processor p, List<Node> nodes, Map<Processor, Node> index,
+      Queue<Node> to_visit)
+  {
+    if (p == null || index.containsKey(p))
+    {
+      return;
+    }
+    Node n = new Node(nodes.size(), p);
+    nodes.add(n);
+    index.put(p, n);
+    to_visit.add(n);
+  }
+
+  /**
+   * Finds the edges between the nodes of the graph
+   * 
+   * @return The list of edges
+   */
+  private List<Edge> findEdges()
+  {
+    List<Edge> edges = new ArrayList<Edge>();
+    Set<Edge> found = new HashSet<Edge>();
+    for (Node n : m_nodes)
+    {
+      Processor p = n.m_processor;
+      for (int i = 0; i < n.m_outputs.length; i++)
+      {
+        Pushable push = getPushableOutput(p, i);
+        if (push != null)
+        {
+          Node target = m_index.get(push.getProcessor());
+          if (target != null && target.m_parent == n.m_parent)
+          {
+            addEdge(n.m_outputs[i], getPort(target.m_inputs, push.getPosition()),
+                EdgeType.CONNECTION, edges, found);
+          }
+        }
+      }
+      for (int i = 0; i < n.m_inputs.length; i++)
+      {
+        Pullable pull = getPullableInput(p, i);
+        if (pull != null)
+        {
+          Node source = m_index.get(pull.getProcessor());
+          if (source != null && source.m_parent == n.m_parent)
+          {
+            addEdge(getPort(source.m_outputs, pull.getPosition()), n.m_inputs[i],
+                EdgeType.CONNECTION, edges, found);
+          }
+        }
+      }
+      if (p instanceof GroupProcessor)
+      {
+        GroupProcessor g = (GroupProcessor) p;
+        for (int i = 0; i < n.m_inputs.length; i++)
+        {
+          ProcessorAssociation a = g.getInputAssociation(i);
+          if (a != null)
+          {
+            Node inner = m_index.get(a.m_processor);
+            addEdge(n.m_inputs[i], getPort(inner.m_inputs, a.m_ioNumber),
+                EdgeType.INPUT_ASSOCIATION, edges, found);
+          }
+        }
+        for (int i = 0; i < n.m_outputs.length; i++)
+        {
+          ProcessorAssociation a = g.getOutputAssociation(i);
+          if (a != null)
+          {
+            Node inner = m_index.get(a.m_processor);
+            addEdge(getPort(inner.m_outputs, a.m_ioNumber), n.m_outputs[i],
+                EdgeType.OUTPUT_ASSOCIATION, edges, found);
+          }
+        }
+      }
+    }
+    return edges;
+  }
+
+  /**
+   * Adds an edge to the graph, if it is not already in it
+   */
+  private static void addEdge(Port source, Port target, EdgeType type, List<Edge> edges,
+      Set<Edge> found)
+  {
+    if (source == null || target == null)
+    {
+      return;
+    }
+    Edge e = new Edge(source, target, type);
+    if (found.add(e))
+    {
+      edges.add(e);
+      source.m_edges.add(e);
+      target.m_edges.add(e);
+    }
+  }
+
+  /**
+   * Computes the execution plan of the graph, with Kahn's algorithm. The
+   * connections to and from a group are replaced by connections to and from
+   * the processors associated to its inputs and outputs.
+   * 
+   * @param plan
+   *          The list where the plan is written
+   * @return <tt>true</tt> if all the processors are in the plan,
+   *         <tt>false</tt> if some of them are part of a cycle
+   */
+  private boolean plan(List<Node> plan)
+  {
+    int size = m_nodes.size();
+    int[] in_degree = new int[size];
+    List<List<Node>> next = new ArrayList<List<Node>>(size);
+    for (int i = 0; i < size; i++)
+    {
+      next.add(null);
+    }
+    List<Node> targets = new ArrayList<Node>();
+    for (Edge e : m_edges)
+    {
+      if (e.m_type != EdgeType.CONNECTION)
+      {
+        continue;
+      }
+      Node source = getLeafSource(e.m_source);
+      if (source == null)
+      {
+        continue;
+      }
+      targets.clear();
+      getLeafTargets(e.m_target, targets);
+      for (Node target : targets)
+      {
+        List<Node> list = next.get(source.m_index);
+        if (list == null)
+        {
+          list = new ArrayList<Node>(2);
+          next.set(source.m_index, list);
+        }
+        list.add(target);
+        in_degree[target.m_index]++;
+      }
+    }
+    Queue<Node> ready = new ArrayDeque<Node>();
+    int leaves = 0;
+    for (Node n : m_nodes)
+    {
+      if (!n.isGroup())
+      {
+        leaves++;
+        if (in_degree[n.m_index] == 0)
+        {
+          ready.add(n);
+        }
+      }
+    }
+    while (!ready.isEmpty())
+    {
+      Node n = ready.remove();
+      plan.add(n);
+      List<Node> list = next.get(n.m_index);
+      if (list == null)
+      {
+        continue;
+      }
+      for (Node target : list)
+      {
+        if (--in_degree[target.m_index] == 0)
+        {
+          ready.add(target);
+        }
+      }
+    }
+    return plan.size() == leaves;
+  }
+
+  /**
+   * Gets the processor that actually produces the events of an output port,
+   * by following the associations of groups
+   * 
+   * @param port
+   *          The output port
+   * @return The node of the processor, or <tt>null</tt> if the port is the
+   *         output of a group that is not associated to any processor
+   */
+  private static Node getLeafSource(Port port)
+  {
+    while (port.m_node.isGroup())
+    {
+      Port inner = null;
+      for (Edge e : port.m_edges)
+      {
+        if (e.m_type == EdgeType.OUTPUT_ASSOCIATION && e.m_target == port)
+        {
+          inner = e.m_source;
+          break;
+        }
+      }
+      if (inner == null)
+      {
+        return null;
+      }
+      port = inner;
+    }
+    return port.m_node;
+  }
+
+  /**
+   * Gets the processors that actually receive the events of an input port,
+   * by following the associations of groups
+   * 
+   * @param port
+   *          The input port
+   * @param targets
+   *          The list where the nodes of the processors are added
+   */
+  private static void getLeafTargets(Port port, List<Node> targets)
+  {
+    if (!port.m_node.isGroup())
+    {
+      targets.add(port.m_node);
+      return;
+    }
+    for (Edge e : port.m_edges)
+    {
+      if (e.m_type == EdgeType.INPUT_ASSOCIATION && e.m_source == port)
+      {
+        getLeafTargets(e.m_target, targets);
+      }
+    }
+  }
+
+  /**
+   * Gets the port at some position, if it exists
+   */
+  private static Port getPort(Port[] ports, int position)
+  {
+    if (position < 0 || position >= ports.length)
+    {
+      return null;
+    }
+    return ports[position];
+  }
+
+  /**
+   * Gets the pushable an output of a processor is connected to. Contrary to
+   * {@link Processor#getPushableOutput(int)}, this method returns
+   * <tt>null</tt> for an output of a group that is not associated to any
+   * processor.
+   */
+  private static Pushable getPushableOutput(Processor p, int i)
+  {
+    if (p instanceof GroupProcessor)
+    {
+      ProcessorAssociation a = ((GroupProcessor) p).getOutputAssociation(i);
+      return a == null ? null : getPushableOutput(a.m_processor, a.m_ioNumber);
+    }
+    return p.getPushableOutput(i);
+  }
+
+  /**
+   * Gets the pullable an input of a processor is connected to. Contrary to
+   * {@link Processor#getPullableInput(int)}, this method returns
+   * <tt>null</tt> for an input of a group that is not associated to any
+   * processor.
+   */
+  private static Pullable getPullableInput(Processor p, int i)
+  {
+    if (p instanceof GroupProcessor)
+    {
+      ProcessorAssociation a = ((GroupProcessor) p).getInputAssociation(i);
+      return a == null ? null : getPullableInput(a.m_processor, a.m_ioNumber);
+    }
+    return p.getPullableInput(i);
+  }
+
+  /**
+   * Gets the nodes of the graph
+   * 
+   * @return The nodes, in the order they were found
+   */
+  public /*@ non_null @*/ List<Node> getNodes()
+  {
+    return m_nodes;
+  }
+
+  /**
+   * Gets the processors of the graph
+   * 
+   * @return The processors, in the order they were found
+   */
+  public /*@ non_null @*/ List<Processor> getProcessors()
+  {
+    List<Processor> procs = new ArrayList<Processor>(m_nodes.size());
+    for (Node n : m_nodes)
+    {
+      procs.add(n.m_processor);
+    }
+    return procs;
+  }
+
+  /**
+   * Gets the node of a processor
+   * 
+   * @param p
+   *          The processor
+   * @return The node, or <tt>null</tt> if the processor is not in the graph
+   */
+  public /*@ null @*/ Node getNode(Processor p)
+  {
+    return m_index.get(p);
+  }
+
+  /**
+   * Gets the edges of the graph
+   * 
+   * @return The edges
+   */
+  public /*@ non_null @*/ List<Edge> getEdges()
+  {
+    return m_edges;
+  }
+
+  /**
+   * Gets the number of processors in the graph
+   * 
+   * @return The number of processors
+   */
+  public int size()
+  {
+    return m_nodes.size();
+  }
+
+  /**
+   * Gets the execution plan of the graph. The plan contains every processor
+   * of the graph, except {@link GroupProcessor}s (which do no computation of
+   * their own), in an order where each processor comes after the processors
+   * it receives events from, inside or outside groups. Processors that are
+   * part of a cycle, and the processors that come after them, are not in the
+   * plan (see {@link #isAcyclic()}).
+   * 
+   * @return The list of nodes
+   */
+  public /*@ non_null @*/ List<Node> getExecutionPlan()
+  {
+    return m_plan;
+  }
+
+  /**
+   * Determines if the execution plan contains all the processors of the
+   * graph other than groups, that is, if the processors are not connected in
+   * a cycle
+   * 
+   * @return <tt>true</tt> if the graph has no cycle, <tt>false</tt> otherwise
+   */
+  public boolean isAcyclic()
+  {
+    return m_acyclic;
+  }
+
+  /**
+   * A processor in a graph
+   */
+  public static class Node
+  {
+    /**
+     * The position of the node in the graph
+     */
+    protected final int m_index;
+
+    /**
+     * The processor
+     */
+    protected final Processor m_processor;
+
+    /**
+     * The input ports of the processor
+     */
+    protected final Port[] m_inputs;
+
+    /**
+     * The output ports of the processor
+     */
+    protected final Port[] m_outputs;
+
+    /**
+     * The node of the group that contains the processor, if any
+     */
+    protected Node m_parent = null;
+
+    /**
+     * The nodes of the processors contained in this node, if it is a group
+     */
+    protected List<Node> m_children = new ArrayList<Node>(0);
+
+    /**
+     * Creates a new node
+     * 
+     * @param index
+     *          The position of the node in the graph
+     * @param p
+     *          The processor
+     */
+    Node(int index, Processor p)
+    {
+      super();
+      m_index = index;
+      m_processor = p;
+      m_inputs = new Port[p.getInputArity()];
+      for (int i = 0; i < m_inputs.length; i++)
+      {
+        m_inputs[i] = new Port(this, i, true, p.getInputType(i));
+      }
+      m_outputs = new Port[p.getOutputArity()];
+      for (int i = 0; i < m_outputs.length; i++)
+      {
+        Set<Class<?>> types = new HashSet<Class<?>>(1);
+        types.add(p.getOutputType(i));
+        m_outputs[i] = new Port(this, i, false, types);
+      }
+    }
+
+    /**
+     * Makes the lists of the node unmodifiable, once the graph is built
+     */
+    void freeze()
+    {
+      m_children = Collections.unmodifiableList(m_children);
+      for (Port port : m_inputs)
+      {
+        port.m_edges = Collections.unmodifiableList(port.m_edges);
+      }
+      for (Port port : m_outputs)
+      {
+        port.m_edges = Collections.unmodifiableList(port.m_edges);
+      }
+    }
+
+    /**
+     * Gets the position of the node in the graph
+     * 
+     * @return The position, starting at 0
+     */
+    public int getIndex()
+    {
+      return m_index;
+    }
+
+    /**
+     * Gets the processor of the node
+     * 
+     * @return The processor
+     */
+    public /*@ non_null @*/ Processor getProcessor()
+    {
+      return m_processor;
+    }
+
+    /**
+     * Gets the node of the group that contains the processor
+     * 
+     * @return The node, or <tt>null</tt> if the processor is not in a group
+     */
+    public /*@ null @*/ Node getParent()
+    {
+      return m_parent;
+    }
+
+    /**
+     * Gets the nodes of the processors contained in this node
+     * 
+     * @return The nodes, empty if the processor is not a group
+     */
+    public /*@ non_null @*/ List<Node> getChildren()
+    {
+      return m_children;
+    }
+
+    /**
+     * Determines if the processor of this node is a group
+     * 
+     * @return <tt>true</tt> if it is a group, <tt>false</tt> otherwise
+     */
+    public boolean isGroup()
+    {
+      return m_processor instanceof GroupProcessor;
+    }
+
+    /**
+     * Gets an input port of the node
+     * 
+     * @param index
+     *          The index of the input
+     * @return The port
+     */
+    public /*@ non_null @*/ Port getInput(int index)
+    {
+      return m_inputs[index];
+    }
+
+    /**
+     * Gets an output port of the node
+     * 
+     * @param index
+     *          The index of the output
+     * @return The port
+     */
+    public /*@ non_null @*/ Port getOutput(int index)
+    {
+      return m_outputs[index];
+    }
+
+    @Override
+    public String toString()
+    {
+      return m_processor.getClass().getSimpleName() + "#" + m_processor.getId();
+    }
+  }
+
+  /**
+   * An input or an output of a processor in a graph
+   */
+  public static class Port
+  {
+    /**
+     * The node the port belongs to
+     */
+    protected final Node m_node;
+
+    /**
+     * The index of the input or output
+     */
+    protected final int m_index;
+
+    /**
+     * Whether the port is an input
+     */
+    protected final boolean m_input;
+
+    /**
+     * The types of events declared for the port
+     */
+    protected final Set<Class<?>> m_types;
+
+    /**
+     * The edges that start or end at this port
+     */
+    protected List<Edge> m_edges = new ArrayList<Edge>(1);
+
+    /**
+     * Creates a new port
+     * 
+     * @param node
+     *          The node the port belongs to
+     * @param index
+     *          The index of the input or output
+     * @param input
+     *          <tt>true</tt> for an input, <tt>false</tt> for an output
+     * @param types
+     *          The types of events declared for the port
+     */
+    Port(Node node, int index, boolean input, Set<Class<?>> types)
+    {
+      super();
+      m_node = node;
+      m_index = index;
+      m_input = input;
+      m_types = Collections.unmodifiableSet(types);
+    }
+
+    /**
+     * Gets the node the port belongs to
+     * 
+     * @return The node
+     */
+    public /*@ non_null @*/ Node getNode()
+    {
+      return m_node;
+    }
+
+    /**
+     * Gets the index of the input or output
+     * 
+     * @return The index
+     */
+    public int getIndex()
+    {
+      return m_index;
+    }
+
+    /**
+     * Determines if the port is an input
+     * 
+     * @return <tt>true</tt> for an input, <tt>false</tt> for an output
+     */
+    public boolean isInput()
+    {
+      return m_input;
+    }
+
+    /**
+     * Gets the types of events declared for the port, as given by
+     * {@link Processor#getInputType(int)} or
+     * {@link Processor#getOutputType(int)}. The type
+     * {@link Connector.Variant} means that events of any type are accepted
+     * or produced.
+     * 
+     * @return The set of types. For an output, it contains a single type.
+     */
+    public /*@ non_null @*/ Set<Class<?>> getTypes()
+    {
+      return m_types;
+    }
+
+    /**
+     * Gets the edges that start or end at this port
+     * 
+     * @return The edges
+     */
+    public /*@ non_null @*/ List<Edge> getEdges()
+    {
+      return m_edges;
+    }
+
+    @Override
+    public String toString()
+    {
+      return m_node + (m_input ? ".in" : ".out") + m_index;
+    }
+  }
+
+  /**
+   * A link from an output port to an input port, or between the ports of a
+   * group and of the processors it contains
+   */
+  public static class Edge
+  {
+    /**
+     * The port where events come from
+     */
+    protected final Port m_source;
+
+    /**
+     * The port where events go
+     */
+    protected final Port m_target;
+
+    /**
+     * The kind of edge
+     */
+    protected final EdgeType m_type;
+
+    /**
+     * Creates a new edge
+     * 
+     * @param source
+     *          The port where events come from
+     * @param target
+     *          The port where events go
+     * @param type
+     *          The kind of edge
+     */
+    Edge(Port source, Port target, EdgeType type)
+    {
+      super();
+      m_source = source;
+      m_target = target;
+      m_type = type;
+    }
+
+    /**
+     * Gets the port where events come from. This is an output port for a
+     * connection or the association of an output, and the input port of a
+     * group for the association of an input.
+     * 
+     * @return The port
+     */
+    public /*@ non_null @*/ Port getSource()
+    {
+      return m_source;
+    }
+
+    /**
+     * Gets the port where events go. This is an input port for a connection
+     * or the association of an input, and the output port of a group for the
+     * association of an output.
+     * 
+     * @return The port
+     */
+    public /*@ non_null @*/ Port getTarget()
+    {
+      return m_target;
+    }
+
+    /**
+     * Gets the kind of edge
+     * 
+     * @return The kind
+     */
+    public /*@ non_null @*/ EdgeType getType()
+    {
+      return m_type;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * System.identityHashCode(m_source) + System.identityHashCode(m_target);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof Edge))
+      {
+        return false;
+      }
+      Edge e = (Edge) o;
+      return m_source == e.m_source && m_target == e.m_target && m_type == e.m_type;
+    }
+
+    @Override
+    public String toString()
+    {
+      return m_source + " -> " + m_target;
+    }
+  }
+}
@@ -0,0 +1,1323 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.uqac.lif.cep.tmf.Source;
+
+/**
+ * Measures where the time is spent in a chain of processors. The profiler
+ * is installed on all the processors reachable from a given one (including
+ * those inside {@link GroupProcessor}s); it replaces every connection
+ * between two processors by a <em>probe</em>, which times the calls that go
+ * through it. Since a call to {@link Pushable#push(Object) push()} (or to
+ * {@link Pullable#hasNext() hasNext()}) on a processor generally makes
+ * calls on the next processors in the chain, the probes form a call stack;
+ * the time of a call is split between the <em>self</em> time of the
+ * processor, and the time spent in the processors it calls (the
+ * <em>downstream</em> time in push mode, or the upstream time in pull
+ * mode).
+ * <p>
+ * The profiler reports, for each processor, its self and total time, the
+ * number of events it received and produced, its selectivity (number of
+ * output events per input event), its event rate, and the number of bytes
+ * it allocated per input event (when the JVM supports per-thread
+ * allocation counters). The results are available as
+ * {@link ProcessorProfile} objects, as a text tree (see
+ * {@link #getReport()}) and in the "collapsed stack" format read by
+ * flame graph tools (see {@link #writeCollapsedStacks(Appendable)}).
+ * <p>
+ * Calls made by the user on the first processor of the chain do not go
+ * through a probe; to time them, use {@link #wrap(Pushable)},
+ * {@link #wrap(Pullable)} or {@link #push(Source)}. For example:
+ * <pre>
+ * PipelineProfiler profiler = new PipelineProfiler();
+ * profiler.install(source);
+ * Pullable p = profiler.wrap(last.getPullableOutput());
+ * ... pull events from p ...
+ * profiler.uninstall();
+ * System.out.println(profiler.getReport());
+ * </pre>
+ * The work done by a processor that receives the input (or produces the
+ * output) of a group directly is attributed to the group, as the
+ * connection between them is internal to the group.
+ * <p>
+ * Each thread has its own call stack, so that processors running in
+ * multiple threads are measured correctly; results should nevertheless be
+ * read when the processors are idle.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class PipelineProfiler
+{
+  /**
+   * The bean used to measure the memory allocated by a thread, or
+   * <tt>null</tt> if the JVM does not support it
+   */
+  private static final ThreadMXBean s_threadBean = getAllocationBean();
+
+  /**
+   * Whether allocations are measured
+   */
+  protected boolean m_allocations = s_threadBean != null;
+
+  /**
+   * The probes created by this profiler
+   */
+  protected final List<Probe> m_probes = new ArrayList<Probe>();
+
+  /**
+   * The call trees of each thread
+   */
+  protected final List<CallNode> m_roots = new ArrayList<CallNode>();
+
+  /**
+   * The call stack of the current thread
+   */
+  protected final ThreadLocal<CallStack> m_stacks = new ThreadLocal<CallStack>()
+  {
+    @Override
+    protected CallStack initialValue()
+    {
+      CallStack s = new CallStack();
+      synchronized (m_roots)
+      {
+        m_roots.add(s.m_root);
+      }
+      return s;
+    }
+  };
+
+  /**
+   * The time at which the profiler was installed, as given by
+   * {@link System#nanoTime()}
+   */
+  protected long m_startTime = 0;
+
+  /**
+   * The time at which the profiler was uninstalled, or 0 if it is still
+   * installed
+   */
+  protected long m_stopTime = 0;
+
+  /**
+   * Creates a new profiler
+   */
+  public PipelineProfiler()
+  {
+    super();
+  }
+
+  /**
+   * Sets whether the memory allocated by processors is measured. This is
+   * enabled by default when the JVM supports it, and adds a small cost to
+   * every call.
+   * 
+   * @param b
+   *          <tt>true</tt> to measure allocations, <tt>false</tt> otherwise
+   * @return This profiler
+   */
+  public PipelineProfiler setAllocationTracking(boolean b)
+  {
+    m_allocations = b && s_threadBean != null;
+    return this;
+  }
+
+  /**
+   * Installs probes between all the processors connected, directly or not,
+   * to a processor
+   * 
+   * @param start
+   *          The processor
+   * @return This profiler
+   */
+  public synchronized PipelineProfiler install(Processor start)
+  {
+    for (Processor p : PipeCrawler.getAllProcessors(start))
+    {
+      if (p instanceof GroupProcessor)
+      {
+        // The connections of a group are those of the processors it contains
+        continue;
+      }
+      for (int i = 0; i < p.getOutputArity(); i++)
+      {
+        Pushable push = p.getPushableOutput(i);
+        if (push != null && !(push instanceof Probe))
+        {
+          ProbePushable probe = new ProbePushable(push, p, i);
+          p.setPushableOutput(i, probe);
+          m_probes.add(probe);
+        }
+      }
+      for (int i = 0; i < p.getInputArity(); i++)
+      {
+        Pullable pull = p.getPullableInput(i);
+        if (pull != null && !(pull instanceof Probe))
+        {
+          ProbePullable probe = new ProbePullable(pull, p, i);
+          p.setPullableInput(i, probe);
+          m_probes.add(probe);
+        }
+      }
+    }
+    if (m_startTime == 0)
+    {
+      m_startTime = System.nanoTime();
+    }
+    return this;
+  }
+
+  /**
+   * Removes all the probes, restoring the original connections between
+   * processors. The results collected so far are kept.
+   */
+  public synchronized void uninstall()
+  {
+    for (Probe probe : m_probes)
+    {
+      probe.restore();
+    }
+    m_stopTime = System.nanoTime();
+  }
+
+  /**
+   * Wraps a pushable into a probe, so that the calls made on it are timed.
+   * This is used to time the calls made on the first processor of a chain.
+   * 
+   * @param p
+   *          The pushable
+   * @return The probe
+   */
+  public synchronized Pushable wrap(Pushable p)
+  {
+    ProbePushable probe = new ProbePushable(p, null, -1);
+    m_probes.add(probe);
+    return probe;
+  }
+
+  /**
+   * Wraps a pullable into a probe, so that the calls made on it are timed.
+   * This is used to time the calls made on the last processor of a chain.
+   * 
+   * @param p
+   *          The pullable
+   * @return The probe
+   */
+  public synchronized Pullable wrap(Pullable p)
+  {
+    ProbePullable probe = new ProbePullable(p, null, -1);
+    m_probes.add(probe);
+    return probe;
+  }
+
+  /**
+   * Tells a source to push an event, timing the call
+   * 
+   * @param s
+   *          The source
+   */
+  public void push(Source s)
+  {
+    CallStack stack = enter(s);
+    try
+    {
+      s.push();
+    }
+    finally
+    {
+      exit(stack);
+    }
+  }
+
+  /**
+   * Discards the results collected so far
+   */
+  public synchronized void clear()
+  {
+    synchronized (m_roots)
+    {
+      for (CallNode root : m_roots)
+      {
+        root.m_children.clear();
+      }
+    }
+    for (Probe probe : m_probes)
+    {
+      probe.getCounter().set(0);
+    }
+    m_startTime = System.nanoTime();
+    m_stopTime = 0;
+  }
+
+  /**
+   * Gets the results for each processor, sorted by decreasing self time
+   * 
+   * @return The list of results
+   */
+  public synchronized List<ProcessorProfile> getProfiles()
+  {
+    Map<Processor, ProcessorProfile> profiles = new LinkedHashMap<Processor, ProcessorProfile>();
+    for (CallNode n : getCallTree().m_children.values())
+    {
+      addToProfiles(n, profiles);
+    }
+    for (Probe probe : m_probes)
+    {
+      long count = probe.getCounter().get();
+      if (count == 0)
+      {
+        continue;
+      }
+      if (probe.getSender() != null)
+      {
+        getProfile(probe.getSender(), profiles).m_eventsOut += count;
+      }
+      if (probe.getReceiver() != null)
+      {
+        getProfile(probe.getReceiver(), profiles).m_eventsIn += count;
+      }
+    }
+    double seconds = ((m_stopTime == 0 ? System.nanoTime() : m_stopTime) - m_startTime) / 1e9;
+    List<ProcessorProfile> list = new ArrayList<ProcessorProfile>(profiles.values());
+    for (ProcessorProfile pp : list)
+    {
+      pp.m_duration = seconds;
+    }
+    Collections.sort(list, new Comparator<ProcessorProfile>()
+    {
+      @Override
+      public int compare(ProcessorProfile p1, ProcessorProfile p2)
+      {
+        return Long.valueOf(p2.m_selfTime).compareTo(p1.m_selfTime);
+      }
+    });
+    return list;
+  }
+
+  /**
+   * Gets the results for a processor
+   * 
+   * @param p
+   *          The processor
+   * @return The results, or <tt>null</tt> if nothing was measured for this
+   *         processor
+   */
+  public ProcessorProfile getProfile(Processor p)
+  {
+    for (ProcessorProfile pp : getProfiles())
+    {
+      if (pp.m_processor == p)
+      {
+        return pp;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Produces a text report of the results. The report contains the call
+   * tree, with the total and self time of each node, followed by a table of
+   * the results for each processor.
+   * 
+   * @return The report
+   */
+  public synchronized String getReport()
+  {
+    StringBuilder out = new StringBuilder();
+    out.append(String.format("%12s %12s %10s  %s%n", "total (ms)", "self (ms)", "calls",
+        "call tree"));
+    for (CallNode n : getCallTree().m_children.values())
+    {
+      printTree(out, n, 0);
+    }
+    out.append(String.format("%n%-30s %10s %10s %8s %12s %12s %10s %12s %10s%n", "processor",
+        "in", "out", "sel", "self (ms)", "down (ms)", "ns/event", "events/s", "B/event"));
+    for (ProcessorProfile pp : getProfiles())
+    {
+      out.append(String.format("%-30s %10d %10d %8.3f %12.3f %12.3f %10.1f %12.1f %10.1f%n",
+          getName(pp.m_processor), pp.m_eventsIn, pp.m_eventsOut, pp.getSelectivity(),
+          pp.m_selfTime / 1e6, pp.getDownstreamTime() / 1e6, pp.getSelfTimePerEvent(),
+          pp.getRate(), pp.getAllocatedBytesPerEvent()));
+    }
+    return out.toString();
+  }
+
+  /**
+   * Writes the call tree in the "collapsed stack" format used by flame graph
+   * tools: one line per call path, made of the names of the processors
+   * separated by semicolons, followed by the self time of the last
+   * processor of the path in microseconds.
+   * 
+   * @param out
+   *          Where to write the stacks
+   * @throws IOException
+   *           If writing fails
+   */
+  public synchronized void writeCollapsedStacks(Appendable out) throws IOException
+  {
+    for (CallNode n : getCallTree().m_children.values())
+    {
+      writeStacks(out, n, "");
+    }
+  }
+
+  /**
+   * Gets the name of a processor in reports
+   * 
+   * @param p
+   *          The processor
+   * @return The name
+   */
+  protected static String getName(Processor p)
+  {
+    String name = p.getClass().getSimpleName();
+    if (name.isEmpty())
+    {
+      name = "Processor";
+    }
+    return name + "#" + p.getId();
+  }
+
+  /**
+   * Merges the call trees of all the threads
+   * 
+   * @return The root of the merged tree
+   */
+  protected CallNode getCallTree()
+  {
+    CallNode root = new CallNode(null, null);
+    synchronized (m_roots)
+    {
+      for (CallNode r : m_roots)
+      {
+        root.merge(r);
+      }
+    }
+    return root;
+  }
+
+  /**
+   * Adds the results of a node of the call tree and its descendants to the
+   * results of their processors
+   * 
+   * @param n
+   *          The node
+   * @param profiles
+   *          The results for each processor
+   */
+  protected static void addToProfiles(CallNode n, Map<Processor, ProcessorProfile> profiles)
+  {
+    ProcessorProfile pp = getProfile(n.m_processor, profiles);
+    pp.m_calls += n.m_calls;
+    pp.m_selfTime += n.m_selfTime;
+    pp.m_totalTime += n.m_totalTime;
+    pp.m_allocatedBytes += n.m_allocatedBytes;
+    for (CallNode child : n.m_children.values())
+    {
+      addToProfiles(child, profiles);
+    }
+  }
+
+  /**
+   * Gets the results of a processor, creating them if necessary
+   * 
+   * @param p
+   *          The processor
+   * @param profiles
+   *          The results for each processor
+   * @return The results
+   */
+  protected static ProcessorProfile getProfile(Processor p,
+      Map<Processor, ProcessorProfile> profiles)
+  {
+    ProcessorProfile pp = profiles.get(p);
+    if (pp == null)
+    {
+      pp = new ProcessorProfile(p);
+      profiles.put(p, pp);
+    }
+    return pp;
+  }
+
+  /**
+   * Prints a node of the call tree and its descendants
+   * 
+   * @param out
+   *          Where to print
+   * @param n
+   *          The node
+   * @param depth
+   *          The depth of the node in the tree
+   */
+  protected static void printTree(StringBuilder out, CallNode n, int depth)
+  {
+    char[] indent = new char[depth * 2];
+    Arrays.fill(indent, ' ');
+    out.append(String.format("%12.3f %12.3f %10d  %s%s%n", n.m_totalTime / 1e6,
+        n.m_selfTime / 1e6, n.m_calls, new String(indent), getName(n.m_processor)));
+    for (CallNode child : n.m_children.values())
+    {
+      printTree(out, child, depth + 1);
+    }
+  }
+
+  /**
+   * Writes the collapsed stacks of a node of the call tree and its
+   * descendants
+   * 
+   * @param out
+   *          Where to write
+   * @param n
+   *          The node
+   * @param prefix
+   *          The path of the node's parent
+   * @throws IOException
+   *           If writing fails
+   */
+  protected static void writeStacks(Appendable out, CallNode n, String prefix)
+      throws IOException
+  {
+    String path = prefix + getName(n.m_processor);
+    long micros = n.m_selfTime / 1000;
+    if (micros > 0)
+    {
+      out.append(path).append(' ').append(Long.toString(micros)).append('\n');
+    }
+    for (CallNode child : n.m_children.values())
+    {
+      writeStacks(out, child, path + ";");
+    }
+  }
+
+  /**
+   * Starts timing a call to a processor
+   * 
+   * @param p
+   *          The processor
+   * @return The call stack of the current thread
+   */
+  protected CallStack enter(Processor p)
+  {
+    CallStack stack = m_stacks.get();
+    stack.enter(p, m_allocations ? allocatedBytes() : 0);
+    return stack;
+  }
+
+  /**
+   * Stops timing the current call
+   * 
+   * @param stack
+   *          The call stack of the current thread
+   */
+  protected void exit(CallStack stack)
+  {
+    long now = System.nanoTime();
+    stack.exit(now, m_allocations ? allocatedBytes() : 0);
+  }
+
+  /**
+   * Gets the number of bytes allocated so far by the current thread
+   * 
+   * @return The number of bytes
+   */
+  protected static long allocatedBytes()
+  {
+    return ((com.sun.management.ThreadMXBean) s_threadBean).getThreadAllocatedBytes(Thread
+        .currentThread().getId());
+  }
+
+  /**
+   * Gets the bean used to measure the memory allocated by a thread
+   * 
+   * @return The bean, or <tt>null</tt> if the JVM does not support it
+   */
+  private static ThreadMXBean getAllocationBean()
+  {
+    try
+    {
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean
+          && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported())
+      {
+        ((com.sun.management.ThreadMXBean) bean).setThreadAllocatedMemoryEnabled(true);
+        return bean;
+      }
+    }
+    catch (Throwable t)
+    {
+      // Not a HotSpot JVM: allocations are not measured
+    }
+    return null;
+  }
+
+  /**
+   * A node of a call tree, representing all the calls to a processor made
+   * through the same path
+   */
+  protected static class CallNode
+  {
+    /**
+     * The processor
+     */
+    protected final Processor m_processor;
+
+    /**
+     * The parent of this node
+     */
+    protected final CallNode m_parent;
+
+    /**
+     * The children of this node
+     */
+    protected final Map<Processor, CallNode> m_children = new LinkedHashMap<Processor, CallNode>();
+
+    /**
+     * The number of calls
+     */
+    protected long m_calls;
+
+    /**
+     * The total duration of the calls, in nanoseconds
+     */
+    protected long m_totalTime;
+
+    /**
+     * The duration of the calls, excluding the time spent in children
+     */
+    protected long m_selfTime;
+
+    /**
+     * The number of bytes allocated during the calls, excluding the
+     * children
+     */
+    protected long m_allocatedBytes;
+
+    /**
+     * Creates a new node
+     * 
+     * @param p
+     *          The processor
+     * @param parent
+     *          The parent of this node
+     */
+    public CallNode(Processor p, CallNode parent)
+    {
+      super();
+      m_processor = p;
+      m_parent = parent;
+    }
+
+    /**
+     * Gets the child of this node for a processor, creating it if necessary
+     * 
+     * @param p
+     *          The processor
+     * @return The child
+     */
+    public CallNode getChild(Processor p)
+    {
+      CallNode child = m_children.get(p);
+      if (child == null)
+      {
+        child = new CallNode(p, this);
+        m_children.put(p, child);
+      }
+      return child;
+    }
+
+    /**
+     * Adds the values of another tree to this one
+     * 
+     * @param n
+     *          The root of the other tree
+     */
+    public void merge(CallNode n)
+    {
+      m_calls += n.m_calls;
+      m_totalTime += n.m_totalTime;
+      m_selfTime += n.m_selfTime;
+      m_allocatedBytes += n.m_allocatedBytes;
+      for (CallNode child : n.m_children.values())
+      {
+        getChild(child.m_processor).merge(child);
+      }
+    }
+  }
+
+  /**
+   * The stack of calls being timed in a thread
+   */
+  protected static class CallStack
+  {
+    /**
+     * The root of the call tree of the thread
+     */
+    protected final CallNode m_root = new CallNode(null, null);
+
+    /**
+     * The node of the call on top of the stack
+     */
+    protected CallNode m_current = m_root;
+
+    /**
+     * The number of calls in the stack
+     */
+    protected int m_depth = 0;
+
+    /**
+     * The time at which each call started
+     */
+    protected long[] m_start = new long[16];
+
+    /**
+     * The time spent in the children of each call
+     */
+    protected long[] m_childTime = new long[16];
+
+    /**
+     * The number of allocated bytes when each call started
+     */
+    protected long[] m_startBytes = new long[16];
+
+    /**
+     * The number of bytes allocated by the children of each call
+     */
+    protected long[] m_childBytes = new long[16];
+
+    /**
+     * Pushes a call on the stack
+     * 
+     * @param p
+     *          The processor called
+     * @param bytes
+     *          The number of bytes allocated so far by the thread
+     */
+    public void enter(Processor p, long bytes)
+    {
+      if (m_depth == m_start.length)
+      {
+        int capacity = m_depth * 2;
+        m_start = Arrays.copyOf(m_start, capacity);
+        m_childTime = Arrays.copyOf(m_childTime, capacity);
+        m_startBytes = Arrays.copyOf(m_startBytes, capacity);
+        m_childBytes = Arrays.copyOf(m_childBytes, capacity);
+      }
+      m_current = m_current.getChild(p);
+      m_childTime[m_depth] = 0;
+      m_childBytes[m_depth] = 0;
+      m_startBytes[m_depth] = bytes;
+      m_start[m_depth] = System.nanoTime();
+      m_depth++;
+    }
+
+    /**
+     * Pops the call on top of the stack
+     * 
+     * @param now
+     *          The current time
+     * @param bytes
+     *          The number of bytes allocated so far by the thread
+     */
+    public void exit(long now, long bytes)
+    {
+      m_depth--;
+      long elapsed = now - m_start[m_depth];
+      long allocated = bytes - m_startBytes[m_depth];
+      CallNode n = m_current;
+      n.m_calls++;
+      n.m_totalTime += elapsed;
+      n.m_selfTime += elapsed - m_childTime[m_depth];
+      n.m_allocatedBytes += allocated - m_childBytes[m_depth];
+      if (m_depth > 0)
+      {
+        m_childTime[m_depth - 1] += elapsed;
+        m_childBytes[m_depth - 1] += allocated;
+      }
+      m_current = n.m_parent;
+    }
+  }
+
+  /**
+   * A connection replaced by the profiler
+   */
+  protected interface Probe
+  {
+    /**
+     * Puts back the original connection
+     */
+    public void restore();
+
+    /**
+     * Gets the counter of events that went through the connection
+     * 
+     * @return The counter
+     */
+    public AtomicLong getCounter();
+
+    /**
+     * Gets the processor producing the events of the connection
+     * 
+     * @return The processor, or <tt>null</tt> if unknown
+     */
+    public Processor getSender();
+
+    /**
+     * Gets the processor receiving the events of the connection
+     * 
+     * @return The processor, or <tt>null</tt> if unknown
+     */
+    public Processor getReceiver();
+  }
+
+  /**
+   * Probe replacing the output pushable of a processor
+   */
+  protected class ProbePushable implements Pushable, Probe
+  {
+    /**
+     * The original pushable
+     */
+    protected final Pushable m_pushable;
+
+    /**
+     * The processor whose output is replaced, or <tt>null</tt>
+     */
+    protected final Processor m_sender;
+
+    /**
+     * The index of the output of this processor
+     */
+    protected final int m_index;
+
+    /**
+     * The number of events pushed
+     */
+    protected final AtomicLong m_count = new AtomicLong();
+
+    /**
+     * Creates a new probe
+     * 
+     * @param p
+     *          The original pushable
+     * @param sender
+     *          The processor whose output is replaced, or <tt>null</tt>
+     * @param index
+     *          The index of the output of this processor
+     */
+    public ProbePushable(Pushable p, Processor sender, int index)
+    {
+      super();
+      m_pushable = p;
+      m_sender = sender;
+      m_index = index;
+    }
+
+    @Override
+    public Pushable push(Object o)
+    {
+      m_count.incrementAndGet();
+      CallStack stack = enter(m_pushable.getProcessor());
+      try
+      {
+        m_pushable.push(o);
+      }
+      finally
+      {
+        exit(stack);
+      }
+      return this;
+    }
+
+    @Override
+    public Future<Pushable> pushFast(Object o)
+    {
+      m_count.incrementAndGet();
+      CallStack stack = enter(m_pushable.getProcessor());
+      try
+      {
+        return m_pushable.pushFast(o);
+      }
+      finally
+      {
+        exit(stack);
+      }
+    }
+
+    @Override
+    public void notifyEndOfTrace()
+    {
+      CallStack stack = enter(m_pushable.getProcessor());
+      try
+      {
+        m_pushable.notifyEndOfTrace();
+      }
+      finally
+      {
+        exit(stack);
+      }
+    }
+
+    @Override
+    public Processor getProcessor()
+    {
+      return m_pushable.getProcessor();
+    }
+
+    @Override
+    public int getPosition()
+    {
+      return m_pushable.getPosition();
+    }
+
+    @Override
+    public void restore()
+    {
+      if (m_sender != null && m_sender.getPushableOutput(m_index) == this)
+      {
+        m_sender.setPushableOutput(m_index, m_pushable);
+      }
+    }
+
+    @Override
+    public AtomicLong getCounter()
+    {
+      return m_count;
+    }
+
+    @Override
+    public Processor getSender()
+    {
+      return m_sender;
+    }
+
+    @Override
+    public Processor getReceiver()
+    {
+      return m_pushable.getProcessor();
+    }
+  }
+
+  /**
+   * Probe replacing the input pullable of a processor
+   */
+  protected class ProbePullable implements NotifyingPullable, Probe
+  {
+    /**
+     * The original pullable
+     */
+    protected final Pullable m_pullable;
+
+    /**
+     * The processor whose input is replaced, or <tt>null</tt>
+     */
+    protected final Processor m_receiver;
+
+    /**
+     * The index of the input of this processor
+     */
+    protected final int m_index;
+
+    /**
+     * The number of events pulled
+     */
+    protected final AtomicLong m_count = new AtomicLong();
+
+    /**
+     * Creates a new probe
+     * 
+     * @param p
+     *          The original pullable
+     * @param receiver
+     *          The processor whose input is replaced, or <tt>null</tt>
+     * @param index
+     *          The index of the input of this processor
+     */
+    public ProbePullable(Pullable p, Processor receiver, int index)
+    {
+      super();
+      m_pullable = p;
+      m_receiver = receiver;
+      m_index = index;
+    }
+
+    @Override
+    public Object pullSoft()
+    {
+      CallStack stack = enter(m_pullable.getProcessor());
+      try
+      {
+        Object o = m_pullable.pullSoft();
+        if (o != null)
+        {
+          m_count.incrementAndGet();
+        }
+        return o;
+      }
+      finally
+      {
+        exit(stack);
+      }
+    }
+
+    @Override
+    public Object pull()
+    {
+      CallStack stack = enter(m_pullable.getProcessor());
+      try
+      {
+        Object o = m_pullable.pull();
+        m_count.incrementAndGet();
+        return o;
+      }
+      finally
+      {
+        exit(stack);
+      }
+    }
+
+    @Override
+    public Object next()
+    {
+      return pull();
+    }
+
+    @Override
+    public NextStatus hasNextSoft()
+    {
+      CallStack stack = enter(m_pullable.getProcessor());
+      try
+      {
+        return m_pullable.hasNextSoft();
+      }
+      finally
+      {
+        exit(stack);
+      }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      CallStack stack = enter(m_pullable.getProcessor());
+      try
+      {
+        return m_pullable.hasNext();
+      }
+      finally
+      {
+        exit(stack);
+      }
+    }
+
+    @Override
+    public Processor getProcessor()
+    {
+      return m_pullable.getProcessor();
+    }
+
+    @Override
+    public int getPosition()
+    {
+      return m_pullable.getPosition();
+    }
+
+    @Override
+    public Iterator<Object> iterator()
+    {
+      return this;
+    }
+
+    @Override
+    public void remove()
+    {
+      m_pullable.remove();
+    }
+
+    @Override
+    public void start()
+    {
+      m_pullable.start();
+    }
+
+    @Override
+    public void stop()
+    {
+      m_pullable.stop();
+    }
+
+    @Override
+    public void dispose()
+    {
+      m_pullable.dispose();
+    }
+
+    @Override
+    public boolean addReadyListener(ReadyListener l)
+    {
+      return m_pullable instanceof NotifyingPullable
+          && ((NotifyingPullable) m_pullable).addReadyListener(l);
+    }
+
+    @Override
+    public void removeReadyListener(ReadyListener l)
+    {
+      if (m_pullable instanceof NotifyingPullable)
+      {
+        ((NotifyingPullable) m_pullable).removeReadyListener(l);
+      }
+    }
+
+    @Override
+    public void restore()
+    {
+      if (m_receiver != null && m_receiver.getPullableInput(m_index) == this)
+      {
+        m_receiver.setPullableInput(m_index, m_pullable);
+      }
+    }
+
+    @Override
+    public AtomicLong getCounter()
+    {
+      return m_count;
+    }
+
+    @Override
+    public Processor getSender()
+    {
+      return m_pullable.getProcessor();
+    }
+
+    @Override
+    public Processor getReceiver()
+    {
+      return m_receiver;
+    }
+  }
+
+  /**
+   * The results of the profiler for a processor
+   */
+  public static class ProcessorProfile
+  {
+    /**
+     * The processor
+     */
+    protected final Processor m_processor;
+
+    /**
+     * The number of calls made on the processor
+     */
+    protected long m_calls;
+
+    /**
+     * The total duration of the calls, in nanoseconds
+     */
+    protected long m_totalTime;
+
+    /**
+     * The duration of the calls, excluding the time spent in other
+     * processors
+     */
+    protected long m_selfTime;
+
+    /**
+     * The number of bytes allocated by the processor
+     */
+    protected long m_allocatedBytes;
+
+    /**
+     * The number of events received by the processor
+     */
+    protected long m_eventsIn;
+
+    /**
+     * The number of events produced by the processor
+     */
+    protected long m_eventsOut;
+
+    /**
+     * The duration of the profiling, in seconds
+     */
+    protected double m_duration;
+
+    /**
+     * Creates new results
+     * 
+     * @param p
+     *          The processor
+     */
+    protected ProcessorProfile(Processor p)
+    {
+      super();
+      m_processor = p;
+    }
+
+    /**
+     * Gets the processor
+     * 
+     * @return The processor
+     */
+    public Processor getProcessor()
+    {
+      return m_processor;
+    }
+
+    /**
+     * Gets the number of calls made on the processor
+     * 
+     * @return The number of calls
+     */
+    public long getCalls()
+    {
+      return m_calls;
+    }
+
+    /**
+     * Gets the total duration of the calls made on the processor
+     * 
+     * @return The duration, in nanoseconds
+     */
+    public long getTotalTime()
+    {
+      return m_totalTime;
+    }
+
+    /**
+     * Gets the duration of the calls made on the processor, excluding the
+     * time spent in other processors
+     * 
+     * @return The duration, in nanoseconds
+     */
+    public long getSelfTime()
+    {
+      return m_selfTime;
+    }
+
+    /**
+     * Gets the time spent in other processors during the calls made on
+     * this processor
+     * 
+     * @return The duration, in nanoseconds
+     */
+    public long getDownstreamTime()
+    {
+      return m_totalTime - m_selfTime;
+    }
+
+    /**
+     * Gets the number of events received by the processor
+     * 
+     * @return The number of events
+     */
+    public long getEventsIn()
+    {
+      return m_eventsIn;
+    }
+
+    /**
+     * Gets the number of events produced by the processor
+     * 
+     * @return The number of events
+     */
+    public long getEventsOut()
+    {
+      return m_eventsOut;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the processor, excluding other
+     * processors
+     * 
+     * @return The number of bytes, or 0 if allocations are not measured
+     */
+    public long getAllocatedBytes()
+    {
+      return m_allocatedBytes;
+    }
+
+    /**
+     * Gets the number of output events per input event
+     * 
+     * @return The ratio, or 0 if the processor received no event
+     */
+    public double getSelectivity()
+    {
+      return m_eventsIn == 0 ? 0 : (double) m_eventsOut / m_eventsIn;
+    }
+
+    /**
+     * Gets the self time of the processor per input event
+     * 
+     * @return The time, in nanoseconds; if the processor received no event
+     *         (e.g. a source), the time per output event
+     */
+    public double getSelfTimePerEvent()
+    {
+      long events = m_eventsIn == 0 ? m_eventsOut : m_eventsIn;
+      return events == 0 ? 0 : (double) m_selfTime / events;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the processor per input event
+     * 
+     * @return The number of bytes; if the processor received no event, the
+     *         number of bytes per output event
+     */
+    public double getAllocatedBytesPerEvent()
+    {
+      long events = m_eventsIn == 0 ? m_eventsOut : m_eventsIn;
+      return events == 0 ? 0 : (double) m_allocatedBytes / events;
+    }
+
+    /**
+     * Gets the number of events received by the processor per second of
+     * profiling
+     * 
+     * @return The rate; if the processor received no event, the rate of
+     *         output events
+     */
+    public double getRate()
+    {
+      long events = m_eventsIn == 0 ? m_eventsOut : m_eventsIn;
+      return m_duration <= 0 ? 0 : events / m_duration;
+    }
+
+    @Override
+    public String toString()
+    {
+      return getName(m_processor) + " self=" + m_selfTime + "ns total=" + m_totalTime + "ns in="
+          + m_eventsIn + " out=" + m_eventsOut;
+    }
+  }
+}
@@ -81,6 +81,12 @@ public abstract class Processor implements DuplicableProcessor, Contextualizable
    */
   protected transient EventTracker m_eventTracker = null;
 
+  /**
+   * An object collecting runtime metrics about this processor, or
+   * <tt>null</tt> if no metrics are collected
+   */
+  protected transient volatile ProcessorMetrics m_metrics = null;
+
   /**
    * An array of output event queues. This is where the output events will be
    * stored when the processor does its computation. There are as many output
@@ -210,7 +216,7 @@ public abstract class Processor implements DuplicableProcessor, Contextualizable
    */
   public final synchronized /*@ null @*/ Object getContext(/*@ non_null @*/ String key)
   {
-    if (m_context == null || !m_context.containsKey(key))
+    if (m_context == null)
     {
       return null;
     }
@@ -643,6 +649,38 @@ public abstract class Processor implements DuplicableProcessor, Contextualizable
     return this;
   }
 
+  /**
+   * Gets the object collecting runtime metrics about this processor
+   * 
+   * @return The metrics, or <tt>null</tt> if no metrics are collected
+   */
+  public final /* @Null */ ProcessorMetrics getMetrics()
+  {
+    return m_metrics;
+  }
+
+  /**
+   * Sets whether runtime metrics are collected for this processor. When
+   * they are not, the processor does not pay any cost for them.
+   * 
+   * @param b
+   *          <tt>true</tt> to collect metrics, <tt>false</tt> otherwise
+   * @return This processor
+   * @see ProcessorMetrics
+   */
+  public final Processor setMetricsEnabled(boolean b)
+  {
+    if (!b)
+    {
+      m_metrics = null;
+    }
+    else if (m_metrics == null)
+    {
+      m_metrics = new ProcessorMetrics(this);
+    }
+    return this;
+  }
+
   /**
    * Associates an input event to an output event.
    * @param in_stream_index The index of the processor's input stream 
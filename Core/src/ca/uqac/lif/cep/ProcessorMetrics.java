@@ -0,0 +1,647 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import ca.uqac.lif.cep.tmf.Slice;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runtime metrics about a processor. Metrics are collected for a processor
+ * once enabled with {@link Processor#setMetricsEnabled(boolean)}; they
+ * include:
+ * <ul>
+ * <li>the number of events received on each input stream and produced on
+ * each output stream;</li>
+ * <li>the number of calls to the processor's computation, and the time
+ * spent in them. This time only includes the computation of the processor
+ * itself, and not the time spent by downstream processors in push mode or
+ * upstream processors in pull mode;</li>
+ * <li>the number of events waiting in the processor's queues, whether the
+ * end of the trace has been reached, and the number of active slices of a
+ * {@link Slice};</li>
+ * <li>optionally, the distribution of the time taken by events to reach
+ * the processor since they entered the pipeline (see
+ * {@link #setLatencyTracking(boolean)}).</li>
+ * </ul>
+ * Counters are maintained by {@link SynchronousProcessor}; processors that
+ * do not descend from it only report the state of their queues. The
+ * metrics can be read at any time, from any thread, either one by one or
+ * as a consistent {@link Snapshot}. A {@link MetricsRegistry} exposes them
+ * through JMX.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class ProcessorMetrics implements ProcessorMetricsMBean
+{
+  /**
+   * The processor these metrics are about
+   */
+  protected final Processor m_processor;
+
+  /**
+   * The number of events received on each input stream
+   */
+  protected final AtomicLongArray m_eventsIn;
+
+  /**
+   * The number of events produced on each output stream
+   */
+  protected final AtomicLongArray m_eventsOut;
+
+  /**
+   * The number of computations
+   */
+  protected final AtomicLong m_computeCount = new AtomicLong();
+
+  /**
+   * The time spent in computations, in nanoseconds
+   */
+  protected final AtomicLong m_computeTime = new AtomicLong();
+
+  /**
+   * The distribution of latencies, or <tt>null</tt> if latencies are not
+   * tracked
+   */
+  protected volatile LatencyHistogram m_latency = null;
+
+  /**
+   * Creates new metrics for a processor
+   * 
+   * @param p
+   *          The processor
+   */
+  public ProcessorMetrics(/*@ non_null @*/ Processor p)
+  {
+    super();
+    m_processor = p;
+    m_eventsIn = new AtomicLongArray(p.getInputArity());
+    m_eventsOut = new AtomicLongArray(p.getOutputArity());
+  }
+
+  /**
+   * Gets the processor these metrics are about
+   * 
+   * @return The processor
+   */
+  public Processor getProcessor()
+  {
+    return m_processor;
+  }
+
+  /**
+   * Records that an event has been received on an input stream
+   * 
+   * @param index
+   *          The index of the input stream
+   */
+  public void countInput(int index)
+  {
+    m_eventsIn.incrementAndGet(index);
+  }
+
+  /**
+   * Records that an event has been received on every input stream
+   */
+  public void countInputFront()
+  {
+    for (int i = 0; i < m_eventsIn.length(); i++)
+    {
+      m_eventsIn.incrementAndGet(i);
+    }
+  }
+
+  /**
+   * Records a computation
+   * 
+   * @param nanos
+   *          The duration of the computation, in nanoseconds
+   * @param fronts
+   *          The number of output fronts it produced
+   */
+  public void recordCompute(long nanos, int fronts)
+  {
+    m_computeCount.incrementAndGet();
+    m_computeTime.addAndGet(nanos);
+    if (fronts > 0)
+    {
+      for (int i = 0; i < m_eventsOut.length(); i++)
+      {
+        m_eventsOut.addAndGet(i, fronts);
+      }
+    }
+  }
+
+  /**
+   * Sets whether the metrics track the latency of the events reaching the
+   * processor. The latency of an event is the time elapsed between its
+   * entry into the pipeline, as given by {@link Ingress}, and the moment
+   * the processor starts processing it; events that carry no ingress time
+   * are ignored. Latencies are typically tracked on the sinks of a
+   * pipeline.
+   * 
+   * @param b
+   *          <tt>true</tt> to track latencies, <tt>false</tt> to stop and
+   *          discard the latencies recorded so far
+   * @return These metrics
+   */
+  public ProcessorMetrics setLatencyTracking(boolean b)
+  {
+    if (!b)
+    {
+      m_latency = null;
+    }
+    else if (m_latency == null)
+    {
+      m_latency = new LatencyHistogram();
+    }
+    return this;
+  }
+
+  /**
+   * Gets the distribution of latencies
+   * 
+   * @return The histogram, or <tt>null</tt> if latencies are not tracked
+   */
+  public /*@ null @*/ LatencyHistogram getLatencyHistogram()
+  {
+    return m_latency;
+  }
+
+  /**
+   * Records that the processor starts processing an event, if latencies are
+   * tracked
+   * 
+   * @param now
+   *          The current time, as given by {@link System#nanoTime()}
+   */
+  public void recordArrival(long now)
+  {
+    LatencyHistogram h = m_latency;
+    if (h == null)
+    {
+      return;
+    }
+    long ingress = Ingress.getTimestamp();
+    if (ingress != Ingress.NONE)
+    {
+      h.record(now - ingress);
+    }
+  }
+
+  @Override
+  public int getProcessorId()
+  {
+    return m_processor.getId();
+  }
+
+  @Override
+  public String getProcessorType()
+  {
+    return m_processor.getClass().getName();
+  }
+
+  @Override
+  public long[] getEventsIn()
+  {
+    return toArray(m_eventsIn);
+  }
+
+  @Override
+  public long[] getEventsOut()
+  {
+    return toArray(m_eventsOut);
+  }
+
+  @Override
+  public long getComputeCount()
+  {
+    return m_computeCount.get();
+  }
+
+  @Override
+  public long getComputeTime()
+  {
+    return m_computeTime.get();
+  }
+
+  @Override
+  public int[] getInputQueueSizes()
+  {
+    int[] sizes = new int[m_processor.m_inputQueues.length];
+    for (int i = 0; i < sizes.length; i++)
+    {
+      sizes[i] = m_processor.m_inputQueues[i].size();
+    }
+    return sizes;
+  }
+
+  @Override
+  public int[] getOutputQueueSizes()
+  {
+    int[] sizes = new int[m_processor.m_outputQueues.length];
+    for (int i = 0; i < sizes.length; i++)
+    {
+      sizes[i] = m_processor.m_outputQueues[i].size();
+    }
+    return sizes;
+  }
+
+  @Override
+  public boolean isEndOfTrace()
+  {
+    return m_processor.m_hasBeenNotifiedOfEndOfTrace;
+  }
+
+  @Override
+  public int getActiveSliceCount()
+  {
+    if (m_processor instanceof Slice)
+    {
+      return ((Slice) m_processor).getActiveSliceCount();
+    }
+    return -1;
+  }
+
+  @Override
+  public long getLatencyCount()
+  {
+    LatencyHistogram h = m_latency;
+    return h == null ? -1 : h.getCount();
+  }
+
+  @Override
+  public long getLatencyP50()
+  {
+    return getLatencyPercentile(50);
+  }
+
+  @Override
+  public long getLatencyP90()
+  {
+    return getLatencyPercentile(90);
+  }
+
+  @Override
+  public long getLatencyP99()
+  {
+    return getLatencyPercentile(99);
+  }
+
+  @Override
+  public long getLatencyP999()
+  {
+    return getLatencyPercentile(99.9);
+  }
+
+  @Override
+  public long getLatencyP9999()
+  {
+    return getLatencyPercentile(99.99);
+  }
+
+  @Override
+  public long getLatencyMax()
+  {
+    LatencyHistogram h = m_latency;
+    return h == null ? -1 : h.getMax();
+  }
+
+  /**
+   * Gets a percentile of the latencies
+   * 
+   * @param percentile
+   *          The percentile, between 0 and 100
+   * @return The latency, in nanoseconds, or -1 if latencies are not tracked
+   */
+  protected long getLatencyPercentile(double percentile)
+  {
+    LatencyHistogram h = m_latency;
+    return h == null ? -1 : h.getValueAtPercentile(percentile);
+  }
+
+  @Override
+  public void reset()
+  {
+    for (int i = 0; i < m_eventsIn.length(); i++)
+    {
+      m_eventsIn.set(i, 0);
+    }
+    for (int i = 0; i < m_eventsOut.length(); i++)
+    {
+      m_eventsOut.set(i, 0);
+    }
+    m_computeCount.set(0);
+    m_computeTime.set(0);
+    LatencyHistogram h = m_latency;
+    if (h != null)
+    {
+      h.reset();
+    }
+  }
+
+  /**
+   * Gets the current value of all the metrics
+   * 
+   * @return The snapshot
+   */
+  public Snapshot getSnapshot()
+  {
+    return new Snapshot(this);
+  }
+
+  /**
+   * Copies the values of an array of counters
+   * 
+   * @param a
+   *          The counters
+   * @return The values
+   */
+  protected static long[] toArray(AtomicLongArray a)
+  {
+    long[] values = new long[a.length()];
+    for (int i = 0; i < values.length; i++)
+    {
+      values[i] = a.get(i);
+    }
+    return values;
+  }
+
+  /**
+   * The values of the metrics of a processor at a given moment
+   */
+  public static class Snapshot
+  {
+    /**
+     * The time at which the snapshot was taken, as given by
+     * {@link System#currentTimeMillis()}
+     */
+    protected final long m_timestamp;
+
+    /**
+     * The ID of the processor
+     */
+    protected final int m_processorId;
+
+    /**
+     * The name of the class of the processor
+     */
+    protected final String m_processorType;
+
+    /**
+     * The number of events received on each input stream
+     */
+    protected final long[] m_eventsIn;
+
+    /**
+     * The number of events produced on each output stream
+     */
+    protected final long[] m_eventsOut;
+
+    /**
+     * The number of computations
+     */
+    protected final long m_computeCount;
+
+    /**
+     * The time spent in computations, in nanoseconds
+     */
+    protected final long m_computeTime;
+
+    /**
+     * The number of events waiting in each input queue
+     */
+    protected final int[] m_inputQueueSizes;
+
+    /**
+     * The number of events waiting in each output queue
+     */
+    protected final int[] m_outputQueueSizes;
+
+    /**
+     * Whether the end of the trace has been reached
+     */
+    protected final boolean m_endOfTrace;
+
+    /**
+     * The number of active slices, or -1
+     */
+    protected final int m_activeSlices;
+
+    /**
+     * The distribution of latencies, or <tt>null</tt> if latencies are not
+     * tracked
+     */
+    protected final LatencyHistogram.Snapshot m_latency;
+
+    /**
+     * Creates a snapshot of metrics
+     * 
+     * @param m
+     *          The metrics
+     */
+    protected Snapshot(ProcessorMetrics m)
+    {
+      super();
+      m_timestamp = System.currentTimeMillis();
+      m_processorId = m.getProcessorId();
+      m_processorType = m.getProcessorType();
+      m_eventsIn = m.getEventsIn();
+      m_eventsOut = m.getEventsOut();
+      m_computeCount = m.getComputeCount();
+      m_computeTime = m.getComputeTime();
+      m_inputQueueSizes = m.getInputQueueSizes();
+      m_outputQueueSizes = m.getOutputQueueSizes();
+      m_endOfTrace = m.isEndOfTrace();
+      m_activeSlices = m.getActiveSliceCount();
+      LatencyHistogram h = m.m_latency;
+      m_latency = h == null ? null : h.getSnapshot();
+    }
+
+    /**
+     * Gets the time at which the snapshot was taken
+     * 
+     * @return The time, as given by {@link System#currentTimeMillis()}
+     */
+    public long getTimestamp()
+    {
+      return m_timestamp;
+    }
+
+    /**
+     * Gets the ID of the processor
+     * 
+     * @return The ID
+     */
+    public int getProcessorId()
+    {
+      return m_processorId;
+    }
+
+    /**
+     * Gets the name of the class of the processor
+     * 
+     * @return The name
+     */
+    public String getProcessorType()
+    {
+      return m_processorType;
+    }
+
+    /**
+     * Gets the number of events received on an input stream
+     * 
+     * @param index
+     *          The index of the input stream
+     * @return The number of events
+     */
+    public long getEventsIn(int index)
+    {
+      return m_eventsIn[index];
+    }
+
+    /**
+     * Gets the number of events produced on an output stream
+     * 
+     * @param index
+     *          The index of the output stream
+     * @return The number of events
+     */
+    public long getEventsOut(int index)
+    {
+      return m_eventsOut[index];
+    }
+
+    /**
+     * Gets the number of computations
+     * 
+     * @return The number of computations
+     */
+    public long getComputeCount()
+    {
+      return m_computeCount;
+    }
+
+    /**
+     * Gets the time spent in computations
+     * 
+     * @return The time, in nanoseconds
+     */
+    public long getComputeTime()
+    {
+      return m_computeTime;
+    }
+
+    /**
+     * Gets the average duration of a computation
+     * 
+     * @return The duration, in nanoseconds, or 0 if no computation was made
+     */
+    public double getMeanComputeTime()
+    {
+      if (m_computeCount == 0)
+      {
+        return 0;
+      }
+      return (double) m_computeTime / m_computeCount;
+    }
+
+    /**
+     * Gets the number of events waiting in an input queue
+     * 
+     * @param index
+     *          The index of the input stream
+     * @return The number of events
+     */
+    public int getInputQueueSize(int index)
+    {
+      return m_inputQueueSizes[index];
+    }
+
+    /**
+     * Gets the number of events waiting in an output queue
+     * 
+     * @param index
+     *          The index of the output stream
+     * @return The number of events
+     */
+    public int getOutputQueueSize(int index)
+    {
+      return m_outputQueueSizes[index];
+    }
+
+    /**
+     * Determines whether the end of the trace had been reached
+     * 
+     * @return <tt>true</tt> if the end of the trace had been reached
+     */
+    public boolean isEndOfTrace()
+    {
+      return m_endOfTrace;
+    }
+
+    /**
+     * Gets the number of active slices
+     * 
+     * @return The number of slices, or -1 if the processor is not a slice
+     */
+    public int getActiveSliceCount()
+    {
+      return m_activeSlices;
+    }
+
+    /**
+     * Gets the distribution of latencies
+     * 
+     * @return The distribution, or <tt>null</tt> if latencies are not
+     *         tracked
+     */
+    public /*@ null @*/ LatencyHistogram.Snapshot getLatency()
+    {
+      return m_latency;
+    }
+
+    @Override
+    public String toString()
+    {
+      StringBuilder out = new StringBuilder();
+      out.append(m_processorType).append(" #").append(m_processorId);
+      out.append(" in=").append(Arrays.toString(m_eventsIn));
+      out.append(" out=").append(Arrays.toString(m_eventsOut));
+      out.append(" compute=").append(m_computeCount).append('/').append(m_computeTime)
+          .append("ns");
+      out.append(" queues=").append(Arrays.toString(m_inputQueueSizes)).append('/')
+          .append(Arrays.toString(m_outputQueueSizes));
+      if (m_endOfTrace)
+      {
+        out.append(" EOT");
+      }
+      if (m_activeSlices >= 0)
+      {
+        out.append(" slices=").append(m_activeSlices);
+      }
+      if (m_latency != null)
+      {
+        out.append(" latency=[").append(m_latency).append(']');
+      }
+      return out.toString();
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+/**
+ * Management interface of {@link ProcessorMetrics}, through which the
+ * metrics of a processor are exposed as a platform MBean by a
+ * {@link MetricsRegistry}.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public interface ProcessorMetricsMBean
+{
+  /**
+   * Gets the ID of the processor
+   * 
+   * @return The ID
+   */
+  public int getProcessorId();
+
+  /**
+   * Gets the name of the class of the processor
+   * 
+   * @return The name
+   */
+  public String getProcessorType();
+
+  /**
+   * Gets the number of events received on each input stream
+   * 
+   * @return An array with one element per input stream
+   */
+  public long[] getEventsIn();
+
+  /**
+   * Gets the number of events produced on each output stream
+   * 
+   * @return An array with one element per output stream
+   */
+  public long[] getEventsOut();
+
+  /**
+   * Gets the number of times the processor performed a computation
+   * 
+   * @return The number of computations
+   */
+  public long getComputeCount();
+
+  /**
+   * Gets the total time spent by the processor in its computations
+   * 
+   * @return The time, in nanoseconds
+   */
+  public long getComputeTime();
+
+  /**
+   * Gets the number of events waiting in each input queue of the processor
+   * 
+   * @return An array with one element per input stream
+   */
+  public int[] getInputQueueSizes();
+
+  /**
+   * Gets the number of events waiting in each output queue of the processor
+   * 
+   * @return An array with one element per output stream
+   */
+  public int[] getOutputQueueSizes();
+
+  /**
+   * Determines whether the processor has been notified of the end of its
+   * input trace
+   * 
+   * @return <tt>true</tt> if the end of the trace has been reached
+   */
+  public boolean isEndOfTrace();
+
+  /**
+   * Gets the number of slices of the processor, if it is a
+   * {@link ca.uqac.lif.cep.tmf.Slice Slice}
+   * 
+   * @return The number of slices, or -1 if the processor is not a slice
+   */
+  public int getActiveSliceCount();
+
+  /**
+   * Gets the number of latencies recorded
+   * 
+   * @return The number of latencies, or -1 if latencies are not tracked
+   */
+  public long getLatencyCount();
+
+  /**
+   * Gets the median latency of the events reaching the processor
+   * 
+   * @return The latency, in nanoseconds, or -1 if latencies are not tracked
+   */
+  public long getLatencyP50();
+
+  /**
+   * Gets the 90th percentile of the latency of the events reaching the
+   * processor
+   * 
+   * @return The latency, in nanoseconds, or -1 if latencies are not tracked
+   */
+  public long getLatencyP90();
+
+  /**
+   * Gets the 99th percentile of the latency of the events reaching the
+   * processor
+   * 
+   * @return The latency, in nanoseconds, or -1 if latencies are not tracked
+   */
+  public long getLatencyP99();
+
+  /**
+   * Gets the 99.9th percentile of the latency of the events reaching the
+   * processor
+   * 
+   * @return The latency, in nanoseconds, or -1 if latencies are not tracked
+   */
+  public long getLatencyP999();
+
+  /**
+   * Gets the 99.99th percentile of the latency of the events reaching the
+   * processor
+   * 
+   * @return The latency, in nanoseconds, or -1 if latencies are not tracked
+   */
+  public long getLatencyP9999();
+
+  /**
+   * Gets the largest latency of the events reaching the processor
+   * 
+   * @return The latency, in nanoseconds, or -1 if latencies are not tracked
+   */
+  public long getLatencyMax();
+
+  /**
+   * Sets the counters of the metrics back to zero, and discards the
+   * latencies recorded so far
+   */
+  public void reset();
+}
@@ -124,6 +124,12 @@ public interface Pullable extends Iterator<Object>, Iterable<Object>
    * </ul>
    * Therefore, the method is lazy in that it asks events from its input only
    * once, and attempts to produce an output event only once.
+   * <p>
+   * A caller receiving <code>MAYBE</code> should not call this method again
+   * in a tight loop. If the pullable is a {@link NotifyingPullable}, the
+   * caller can instead wait to be notified that a new event may be
+   * available; {@link Readiness#await(Pullable, long, java.util.concurrent.TimeUnit)}
+   * does exactly that.
    * 
    * @return Whether a next event exists
    */
@@ -54,6 +54,17 @@ public interface Pushable
    * call to <code>push()</code> that returns control to the caller immediately.
    * In order to resynchronize the caller with the result of the push operation,
    * one must use the <tt>Future</tt> object that the method returns.
+   * <p>
+   * The returned future also acts as a demand signal. A future that is
+   * already done (such as {@link #NULL_FUTURE}) means that the event has been
+   * accepted, and that the pushable can take more events right away. A future
+   * that is not done means that some processor downstream (such as a bounded
+   * {@link ca.uqac.lif.cep.tmf.Tank} or an
+   * {@link ca.uqac.lif.cep.concurrency.AsyncBuffer}) has accepted the event,
+   * but is currently saturated; a well-behaved caller should wait on the future
+   * before pushing the next event. Processors that call <tt>pushFast</tt>
+   * downstream return the futures they receive (see {@link CompoundPushFuture}),
+   * so that this signal propagates upstream through a chain of processors.
    * 
    * @param o
    *          The event. Although you can technically push <code>null</code>, the
@@ -0,0 +1,402 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import ca.uqac.lif.cep.NotifyingPullable.ReadyListener;
+import ca.uqac.lif.cep.Pullable.NextStatus;
+import ca.uqac.lif.cep.concurrency.WaitStrategy;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utilities to implement and use {@link NotifyingPullable}s.
+ * <ul>
+ * <li>{@link #await(Pullable, long, TimeUnit) await()} waits until a
+ * pullable answers something other than <code>MAYBE</code>, parking the
+ * calling thread between attempts instead of spinning</li>
+ * <li>{@link ListenerList} holds the listeners of a pullable that produces
+ * events by itself, such as the output of a
+ * {@link ca.uqac.lif.cep.tmf.Tank Tank}</li>
+ * <li>{@link Upstream} relays the notifications of a processor's input
+ * pullables to the listeners of one of its output pullables</li>
+ * </ul>
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class Readiness
+{
+  /**
+   * The strategy used to poll pullables that cannot notify readiness
+   */
+  protected static final WaitStrategy s_pollStrategy = WaitStrategy.Park.instance;
+
+  private Readiness()
+  {
+    throw new IllegalAccessError("Utility class");
+  }
+
+  /**
+   * Waits until a pullable has an event, or reaches the end of its trace. If
+   * the pullable is a {@link NotifyingPullable}, the thread sleeps until it is
+   * notified; otherwise, it polls the pullable with an increasing delay
+   * between attempts.
+   * 
+   * @param p
+   *          The pullable
+   * @param timeout
+   *          The maximum time to wait
+   * @param unit
+   *          The unit of the timeout
+   * @return The last answer of {@link Pullable#hasNextSoft()}; this is
+   *         <code>MAYBE</code> only if the timeout has expired
+   * @throws InterruptedException
+   *           If the thread is interrupted while waiting
+   */
+  public static NextStatus await(/*@ non_null @*/ Pullable p, long timeout, 
+      /*@ non_null @*/ TimeUnit unit) throws InterruptedException
+  {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    Latch latch = new Latch();
+    int attempts = 0;
+    for (;;)
+    {
+      NextStatus s = p.hasNextSoft();
+      if (s != NextStatus.MAYBE)
+      {
+        return s;
+      }
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0)
+      {
+        return NextStatus.MAYBE;
+      }
+      if (p instanceof NotifyingPullable 
+          && ((NotifyingPullable) p).addReadyListener(latch))
+      {
+        // Registration is level-triggered: if an event arrived since the
+        // call to hasNextSoft, the latch is already open
+        try
+        {
+          latch.await(remaining);
+        }
+        finally
+        {
+          ((NotifyingPullable) p).removeReadyListener(latch);
+        }
+      }
+      else
+      {
+        s_pollStrategy.idle(attempts++);
+      }
+    }
+  }
+
+  /**
+   * Listener that a thread can wait on
+   */
+  protected static class Latch implements ReadyListener
+  {
+    /**
+     * Whether the listener has been notified since the last call to
+     * {@link #await(long)}
+     */
+    private boolean m_ready = false;
+
+    @Override
+    public synchronized void ready(Pullable p)
+    {
+      m_ready = true;
+      notifyAll();
+    }
+
+    /**
+     * Waits until the listener is notified, and resets it
+     * 
+     * @param nanos
+     *          The maximum time to wait, in nanoseconds
+     * @throws InterruptedException
+     *           If the thread is interrupted while waiting
+     */
+    public synchronized void await(long nanos) throws InterruptedException
+    {
+      long deadline = System.nanoTime() + nanos;
+      while (!m_ready)
+      {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0)
+        {
+          break;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      }
+      m_ready = false;
+    }
+  }
+
+  /**
+   * The listeners registered on a pullable that produces events by itself
+   */
+  public static class ListenerList
+  {
+    /**
+     * The pullable the listeners are registered on
+     */
+    protected final Pullable m_pullable;
+
+    /**
+     * The listeners
+     */
+    protected final CopyOnWriteArrayList<ReadyListener> m_listeners;
+
+    /**
+     * Creates a new empty list of listeners
+     * 
+     * @param p
+     *          The pullable the listeners are registered on
+     */
+    public ListenerList(Pullable p)
+    {
+      super();
+      m_pullable = p;
+      m_listeners = new CopyOnWriteArrayList<ReadyListener>();
+    }
+
+    /**
+     * Adds a listener. To avoid missing a notification, the caller should
+     * check whether the pullable already has an event <em>after</em> calling
+     * this method, and notify the listener itself if so.
+     * 
+     * @param l
+     *          The listener
+     */
+    public void add(ReadyListener l)
+    {
+      m_listeners.addIfAbsent(l);
+    }
+
+    /**
+     * Removes a listener
+     * 
+     * @param l
+     *          The listener
+     */
+    public void remove(ReadyListener l)
+    {
+      m_listeners.remove(l);
+    }
+
+    /**
+     * Notifies all listeners
+     */
+    public void fire()
+    {
+      if (m_listeners.isEmpty())
+      {
+        return;
+      }
+      for (ReadyListener l : m_listeners)
+      {
+        l.ready(m_pullable);
+      }
+    }
+  }
+
+  /**
+   * Relays the notifications of a processor's input pullables to the
+   * listeners of one of its output pullables. A listener is notified once
+   * <em>every</em> input has notified, since a synchronous processor needs
+   * an event on each of its inputs to produce something.
+   */
+  public static class Upstream
+  {
+    /**
+     * The pullable the listeners are registered on
+     */
+    protected final Pullable m_pullable;
+
+    /**
+     * The relays created for each listener
+     */
+    protected final Map<ReadyListener,Relay> m_relays;
+
+    /**
+     * Creates a new relay
+     * 
+     * @param p
+     *          The pullable the listeners are registered on
+     */
+    public Upstream(Pullable p)
+    {
+      super();
+      m_pullable = p;
+      m_relays = new IdentityHashMap<ReadyListener,Relay>();
+    }
+
+    /**
+     * Registers a listener on a set of input pullables
+     * 
+     * @param inputs
+     *          The input pullables
+     * @param l
+     *          The listener
+     * @return <tt>true</tt> if the listener has been registered,
+     *         <tt>false</tt> if one of the inputs cannot notify readiness,
+     *         or if there are no inputs
+     */
+    public synchronized boolean add(Pullable[] inputs, ReadyListener l)
+    {
+      if (m_relays.containsKey(l))
+      {
+        return true;
+      }
+      if (inputs.length == 0)
+      {
+        // A source produces events by itself; it has to notify on its own
+        return false;
+      }
+      for (Pullable p : inputs)
+      {
+        if (!(p instanceof NotifyingPullable))
+        {
+          return false;
+        }
+      }
+      Relay r = new Relay(inputs, l);
+      for (int i = 0; i < inputs.length; i++)
+      {
+        if (!((NotifyingPullable) inputs[i]).addReadyListener(r.m_inputListeners[i]))
+        {
+          r.detach(i);
+          return false;
+        }
+      }
+      m_relays.put(l, r);
+      return true;
+    }
+
+    /**
+     * Unregisters a listener
+     * 
+     * @param l
+     *          The listener
+     */
+    public synchronized void remove(ReadyListener l)
+    {
+      Relay r = m_relays.remove(l);
+      if (r != null)
+      {
+        r.detach(r.m_inputs.length);
+      }
+    }
+
+    /**
+     * The listeners registered on each input on behalf of one downstream
+     * listener
+     */
+    protected class Relay
+    {
+      /**
+       * The input pullables
+       */
+      protected final Pullable[] m_inputs;
+
+      /**
+       * The listener registered on each input
+       */
+      protected final ReadyListener[] m_inputListeners;
+
+      /**
+       * Which inputs have notified so far
+       */
+      protected final boolean[] m_ready;
+
+      /**
+       * The downstream listener
+       */
+      protected final ReadyListener m_listener;
+
+      /**
+       * Creates a new relay
+       * 
+       * @param inputs
+       *          The input pullables
+       * @param l
+       *          The downstream listener
+       */
+      public Relay(Pullable[] inputs, ReadyListener l)
+      {
+        super();
+        m_inputs = inputs.clone();
+        m_listener = l;
+        m_ready = new boolean[inputs.length];
+        m_inputListeners = new ReadyListener[inputs.length];
+        for (int i = 0; i < inputs.length; i++)
+        {
+          final int index = i;
+          m_inputListeners[i] = new ReadyListener()
+          {
+            @Override
+            public void ready(Pullable p)
+            {
+              inputReady(index);
+            }
+          };
+        }
+      }
+
+      /**
+       * Called when one of the inputs notifies
+       * 
+       * @param index
+       *          The index of the input
+       */
+      protected void inputReady(int index)
+      {
+        synchronized (this)
+        {
+          m_ready[index] = true;
+          for (boolean b : m_ready)
+          {
+            if (!b)
+            {
+              return;
+            }
+          }
+        }
+        m_listener.ready(m_pullable);
+      }
+
+      /**
+       * Unregisters the listeners of the first inputs
+       * 
+       * @param count
+       *          The number of inputs to unregister from
+       */
+      protected void detach(int count)
+      {
+        for (int i = 0; i < count; i++)
+        {
+          ((NotifyingPullable) m_inputs[i]).removeReadyListener(m_inputListeners[i]);
+        }
+      }
+    }
+  }
+}
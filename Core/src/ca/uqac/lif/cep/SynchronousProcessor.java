@@ -18,7 +18,9 @@
 package ca.uqac.lif.cep;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.concurrent.Future;
@@ -118,6 +120,45 @@ public abstract class SynchronousProcessor extends Processor
    */
   protected abstract boolean compute(Object[] inputs, Queue<Object[]> outputs);
 
+  /**
+   * Calls {@link #compute(Object[], Queue)}, and records its duration and
+   * the number of fronts it produces if metrics are collected for this
+   * processor. The computation is also reported to the
+   * {@link ExecutionMonitor} currently installed, if any.
+   * 
+   * @param inputs
+   *          An array of input events
+   * @param outputs
+   *          A queue of arrays of objects
+   * @return The value returned by {@link #compute(Object[], Queue)}
+   */
+  protected final boolean computeMeasured(Object[] inputs, Queue<Object[]> outputs)
+  {
+    ProcessorMetrics metrics = m_metrics;
+    ExecutionMonitor monitor = ExecutionMonitor.current();
+    if (metrics == null && monitor == null)
+    {
+      return compute(inputs, outputs);
+    }
+    Object token = monitor == null ? null : monitor.beginCompute(this);
+    long start = 0;
+    if (metrics != null)
+    {
+      start = System.nanoTime();
+      metrics.recordArrival(start);
+    }
+    boolean b = compute(inputs, outputs);
+    if (metrics != null)
+    {
+      metrics.recordCompute(System.nanoTime() - start, outputs.size());
+    }
+    if (token != null)
+    {
+      monitor.endCompute(token, this, outputs.size());
+    }
+    return b;
+  }
+
   /**
    * Implementation of a {@link Pushable} for a single processor.
    * 
@@ -146,8 +187,12 @@ public abstract class SynchronousProcessor extends Processor
     @Override
     public final synchronized Future<Pushable> pushFast(Object o)
     {
-      push(o);
-      return Pushable.NULL_FUTURE;
+      List<Future<Pushable>> futures = push(o, true);
+      if (futures == null)
+      {
+        return Pushable.NULL_FUTURE;
+      }
+      return CompoundPushFuture.of(this, futures);
     }
 
     @Override
@@ -158,11 +203,34 @@ public abstract class SynchronousProcessor extends Processor
 
     @Override
     public synchronized Pushable push(Object o)
+    {
+      push(o, false);
+      return this;
+    }
+
+    /**
+     * Pushes an event, optionally collecting the futures returned by the
+     * downstream pushables.
+     * 
+     * @param o
+     *          The event
+     * @param fast
+     *          Whether to call {@link Pushable#pushFast(Object)} downstream
+     *          instead of {@link Pushable#push(Object)}
+     * @return The futures of the downstream pushables that are not done
+     *         yet, or <tt>null</tt> if there are none
+     */
+    private final List<Future<Pushable>> push(Object o, boolean fast)
     {
       try
       {
         Queue<Object> q = m_inputQueues[m_index];
         q.add(o);
+        ProcessorMetrics metrics = m_metrics;
+        if (metrics != null)
+        {
+          metrics.countInput(m_index);
+        }
       }
       catch (ArrayIndexOutOfBoundsException e)
       {
@@ -175,7 +243,7 @@ public abstract class SynchronousProcessor extends Processor
         if (queue.isEmpty())
         {
           // One of them doesn't: we can't produce an output yet
-          return this;
+          return null;
         }
       }
       // Pick an event from each input queue
@@ -191,15 +259,14 @@ public abstract class SynchronousProcessor extends Processor
       boolean outs;
       try
       {
-        outs = compute(inputs, m_tempQueue);
+        outs = computeMeasured(inputs, m_tempQueue);
       }
       catch (ProcessorException e)
       {
         throw new PushableException(e);
       }
       // put everything in outputEvent, because of duplicated code in notifyEndOfTrace
-      outputEvent(outs);
-      return this;
+      return outputEvent(outs, fast);
     }
 
     @Override
@@ -211,6 +278,11 @@ public abstract class SynchronousProcessor extends Processor
         return;
       }
       m_hasBeenNotifiedOfEndOfTrace = true;
+      ExecutionMonitor monitor = ExecutionMonitor.current();
+      if (monitor != null)
+      {
+        monitor.endOfTrace(SynchronousProcessor.this, m_index);
+      }
 
       m_tempQueue.clear();
       boolean outs;
@@ -222,7 +294,7 @@ public abstract class SynchronousProcessor extends Processor
       {
         throw new PushableException(e);
       }
-      outputEvent(outs);
+      outputEvent(outs, false);
 
       // Notifies the output pushables of the end of the trace
       for (int i = 0; i < m_outputPushables.length; i++)
@@ -242,9 +314,15 @@ public abstract class SynchronousProcessor extends Processor
      *
      * @param outs Set to <tt>true</tt> to enable the output of an event,
      * <tt>false</tt> otherwise.
+     * @param fast Whether to call <tt>pushFast</tt> on the output pushables
+     * instead of <tt>push</tt>
+     * @return The pending futures returned by the output pushables, or
+     * <tt>null</tt> if there are none. The list is only created when a
+     * first pending future is found.
      */
-    private final void outputEvent(boolean outs)
+    private final List<Future<Pushable>> outputEvent(boolean outs, boolean fast)
     {
+      List<Future<Pushable>> futures = null;
       if (outs && !m_tempQueue.isEmpty())
       {
         for (Object[] evt : m_tempQueue)
@@ -259,11 +337,27 @@ public abstract class SynchronousProcessor extends Processor
                 throw new PushableException(
                     "Output " + i + " of this processor is connected to nothing", getProcessor());
               }
-              p.push(evt[i]);
+              if (!fast)
+              {
+                p.push(evt[i]);
+              }
+              else
+              {
+                Future<Pushable> f = p.pushFast(evt[i]);
+                if (!f.isDone())
+                {
+                  if (futures == null)
+                  {
+                    futures = new ArrayList<Future<Pushable>>(m_outputPushables.length);
+                  }
+                  futures.add(f);
+                }
+              }
             }
           }
         }
       }
+      return futures;
     }
 
     @Override
@@ -278,13 +372,18 @@ public abstract class SynchronousProcessor extends Processor
    * 
    * @author Sylvain Hallé
    */
-  protected class OutputPullable implements Pullable
+  protected class OutputPullable implements NotifyingPullable
   {
     /**
      * The index of the processor's output this pullable refers to
      */
     private final int m_index;
 
+    /**
+     * Relays readiness notifications from the processor's inputs
+     */
+    private final Readiness.Upstream m_upstream = new Readiness.Upstream(this);
+
     /**
      * Creates a pullable associated to some of a processor's output traces.
      * 
@@ -407,12 +506,17 @@ public abstract class SynchronousProcessor extends Processor
           Object o = p.pull();
           inputs[i] = o;
         }
+        ProcessorMetrics metrics = m_metrics;
+        if (metrics != null)
+        {
+          metrics.countInputFront();
+        }
         // Compute output event(s)
         m_tempQueue.clear();
         boolean computed;
         try
         {
-          computed = compute(inputs, m_tempQueue);
+          computed = computeMeasured(inputs, m_tempQueue);
         }
         catch (ProcessorException e)
         {
@@ -508,13 +612,18 @@ public abstract class SynchronousProcessor extends Processor
           i++;
         }
       }
+      ProcessorMetrics metrics = m_metrics;
+      if (metrics != null)
+      {
+        metrics.countInputFront();
+      }
       // Compute output event(s)
       NextStatus status_to_return = NextStatus.MAYBE;
       m_tempQueue.clear();
       boolean computed;
       try
       {
-        computed = compute(inputs, m_tempQueue);
+        computed = computeMeasured(inputs, m_tempQueue);
       }
       catch (ProcessorException e)
       {
@@ -580,5 +689,25 @@ public abstract class SynchronousProcessor extends Processor
     {
       // Do nothing
     }
+
+    @Override
+    public boolean addReadyListener(ReadyListener l)
+    {
+      if (!m_upstream.add(m_inputPullables, l))
+      {
+        return false;
+      }
+      if (!m_outputQueues[m_index].isEmpty())
+      {
+        l.ready(this);
+      }
+      return true;
+    }
+
+    @Override
+    public void removeReadyListener(ReadyListener l)
+    {
+      m_upstream.remove(l);
+    }
   }
 }
@@ -78,6 +78,45 @@ public abstract class UniformProcessor extends SynchronousProcessor
    */
   protected abstract boolean compute(Object[] inputs, Object[] outputs);
 
+  /**
+   * Calls {@link #compute(Object[], Object[])} on a single input event, and
+   * records the computation if metrics are collected for this processor or
+   * an {@link ExecutionMonitor} is installed. This is used by the pushables
+   * and pullables of processors of arity 1, which bypass
+   * {@link SynchronousProcessor}.
+   * 
+   * @param o
+   *          The input event
+   * @return The value returned by {@link #compute(Object[], Object[])}
+   */
+  protected final boolean computeUnary(Object o)
+  {
+    ProcessorMetrics metrics = m_metrics;
+    ExecutionMonitor monitor = ExecutionMonitor.current();
+    if (metrics == null && monitor == null)
+    {
+      return compute(new Object[] { o }, m_outputArray);
+    }
+    Object token = monitor == null ? null : monitor.beginCompute(this);
+    long start = 0;
+    if (metrics != null)
+    {
+      metrics.countInput(0);
+      start = System.nanoTime();
+      metrics.recordArrival(start);
+    }
+    boolean b = compute(new Object[] { o }, m_outputArray);
+    if (metrics != null)
+    {
+      metrics.recordCompute(System.nanoTime() - start, b ? 1 : 0);
+    }
+    if (token != null)
+    {
+      monitor.endCompute(token, this, b ? 1 : 0);
+    }
+    return b;
+  }
+
   @Override
   protected final boolean onEndOfTrace(Queue<Object[]> outputs)
   {
@@ -158,7 +197,7 @@ public abstract class UniformProcessor extends SynchronousProcessor
     {
       try
       {
-        compute(new Object[] { o }, m_outputArray);
+        computeUnary(o);
       }
       catch (ProcessorException e)
       {
@@ -176,25 +215,56 @@ public abstract class UniformProcessor extends SynchronousProcessor
     @Override
     public synchronized Future<Pushable> pushFast(Object o)
     {
-      push(o);
-      return Pushable.NULL_FUTURE;
+      try
+      {
+        computeUnary(o);
+      }
+      catch (ProcessorException e)
+      {
+        throw new PushableException(e);
+      }
+      if (m_outputPushables[0] == null)
+      {
+        throw new PushableException(
+            "Output 0 of processor " + getProcessor() + " is connected to nothing");
+      }
+      return m_outputPushables[0].pushFast(m_outputArray[0]);
     }
 
     @Override
     public synchronized void notifyEndOfTrace() throws PushableException
     {
+      // nothing to do if the pushable has already been notified
+      if (m_hasBeenNotifiedOfEndOfTrace)
+      {
+        return;
+      }
+      m_hasBeenNotifiedOfEndOfTrace = true;
+      ExecutionMonitor monitor = ExecutionMonitor.current();
+      if (monitor != null)
+      {
+        monitor.endOfTrace(UniformProcessor.this, 0);
+      }
+      boolean outs;
       try
       {
-        onEndOfTrace(m_outputArray);
+        outs = onEndOfTrace(m_outputArray);
       }
       catch (ProcessorException e)
       {
         throw new PushableException(e);
       }
-      if (m_outputArray[0] != null)
+      if (m_outputPushables[0] == null)
+      {
+        throw new PushableException(
+            "Output 0 of processor " + getProcessor() + " is connected to nothing");
+      }
+      if (outs && m_outputArray[0] != null)
       {
         m_outputPushables[0].push(m_outputArray[0]);
       }
+      // Notifies the output pushable of the end of the trace
+      m_outputPushables[0].notifyEndOfTrace();
     }
 
     @Override
@@ -220,8 +290,12 @@ public abstract class UniformProcessor extends SynchronousProcessor
    * Simple experiments with a {@link Passthrough} processor have shown a speed
    * boost of about 2.5&times; compared to {@link OutputPullable}.
    */
-  public class UnaryPullable implements Pullable
+  public class UnaryPullable implements NotifyingPullable
   {
+    /**
+     * Relays readiness notifications from the processor's input
+     */
+    private final Readiness.Upstream m_upstream = new Readiness.Upstream(this);
 
     @Override
     public Iterator<Object> iterator()
@@ -245,7 +319,7 @@ public abstract class UniformProcessor extends SynchronousProcessor
       Object o = m_inputPullables[0].pullSoft();
       try
       {
-        if (o == null || !compute(new Object[] { o }, m_outputArray))
+        if (o == null || !computeUnary(o))
         {
           return null;
         }
@@ -272,7 +346,7 @@ public abstract class UniformProcessor extends SynchronousProcessor
       Object o = m_inputPullables[0].pull();
       try
       {
-        if (o == null || !compute(new Object[] { o }, m_outputArray))
+        if (o == null || !computeUnary(o))
         {
           throw new NoSuchElementException();
         }
@@ -361,6 +435,25 @@ public abstract class UniformProcessor extends SynchronousProcessor
       // Nothing to do
     }
 
+    @Override
+    public boolean addReadyListener(ReadyListener l)
+    {
+      if (!m_upstream.add(m_inputPullables, l))
+      {
+        return false;
+      }
+      if (!m_inputQueues[0].isEmpty())
+      {
+        l.ready(this);
+      }
+      return true;
+    }
+
+    @Override
+    public void removeReadyListener(ReadyListener l)
+    {
+      m_upstream.remove(l);
+    }
   }
 
 }
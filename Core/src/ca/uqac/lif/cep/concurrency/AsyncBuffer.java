@@ -0,0 +1,699 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.concurrency;
+
+import ca.uqac.lif.cep.NotifyingPullable;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.Readiness;
+import java.util.Iterator;
+import java.util.concurrent.Future;
+
+/**
+ * Puts a thread boundary between two processors. The buffer owns a bounded
+ * {@link SpscRingBuffer} and a thread of its own, so that the part of a
+ * chain upstream of the buffer and the part downstream of it are evaluated
+ * independently and concurrently:
+ * <ul>
+ * <li>In <em>push</em> mode, a call to <tt>push</tt> stores the event in the
+ * ring buffer and returns immediately. The buffer's thread takes events out
+ * of the ring and pushes them downstream. When the ring is full, the
+ * upstream pusher waits until room becomes available.</li>
+ * <li>In <em>pull</em> mode, the buffer's thread pulls events from upstream
+ * ahead of time and stores them into the ring, where downstream pulls take
+ * them from.</li>
+ * </ul>
+ * How each thread waits for the other is determined by a
+ * {@link WaitStrategy}. Upon the end of the trace in push mode, the buffer
+ * waits until all its events have been pushed downstream before returning;
+ * once <tt>notifyEndOfTrace</tt> returns, the downstream part of the chain
+ * has processed every event.
+ * <p>
+ * The {@link AsyncConnector} class provides shortcuts to insert a buffer
+ * between two processors.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class AsyncBuffer extends Processor
+{
+  /**
+   * The default number of slots in the ring buffer
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * A special object stored into the ring to signal the end of the trace
+   */
+  protected static final Object END_OF_TRACE = new Object();
+
+  /**
+   * The number of slots in the ring buffer
+   */
+  protected final int m_capacity;
+
+  /**
+   * How threads wait for one another
+   */
+  protected final WaitStrategy m_waitStrategy;
+
+  /**
+   * The ring buffer shared by the two threads
+   */
+  protected transient volatile SpscRingBuffer m_ring;
+
+  /**
+   * The thread owned by this buffer
+   */
+  protected transient Thread m_thread = null;
+
+  /**
+   * The pushable of this processor's input
+   */
+  protected transient BufferPushable m_pushable = null;
+
+  /**
+   * The pullable of this processor's output
+   */
+  protected transient BufferPullable m_pullable = null;
+
+  /**
+   * The first exception thrown in the buffer's thread, if any
+   */
+  protected transient volatile Throwable m_error = null;
+
+  /**
+   * Creates a new buffer with default settings
+   */
+  public AsyncBuffer()
+  {
+    this(DEFAULT_CAPACITY, WaitStrategy.Park.instance);
+  }
+
+  /**
+   * Creates a new buffer
+   * 
+   * @param capacity
+   *          The number of slots in the ring buffer
+   * @param strategy
+   *          How threads wait for one another
+   */
+  public AsyncBuffer(int capacity, WaitStrategy strategy)
+  {
+    super(1, 1);
+    m_capacity = capacity;
+    m_waitStrategy = strategy;
+    m_ring = new SpscRingBuffer(capacity);
+  }
+
+  @Override
+  public synchronized Pushable getPushableInput(int index)
+  {
+    if (m_pushable == null)
+    {
+      m_pushable = new BufferPushable();
+    }
+    return m_pushable;
+  }
+
+  @Override
+  public synchronized Pullable getPullableOutput(int index)
+  {
+    if (m_pullable == null)
+    {
+      m_pullable = new BufferPullable();
+    }
+    return m_pullable;
+  }
+
+  /**
+   * Stops the buffer's thread. Events that are still in the ring buffer are
+   * lost. This method can be called while another thread is blocked
+   * pushing an event to the buffer, or waiting for the end of the trace to
+   * reach downstream.
+   */
+  @Override
+  public void stop()
+  {
+    Thread t;
+    synchronized (this)
+    {
+      t = m_thread;
+    }
+    if (t == null)
+    {
+      return;
+    }
+    t.interrupt();
+    joinThread(t);
+  }
+
+  @Override
+  public void reset()
+  {
+    stop();
+    synchronized (this)
+    {
+      super.reset();
+      m_ring = new SpscRingBuffer(m_capacity);
+      m_error = null;
+      if (m_pushable != null)
+      {
+        m_pushable.m_gate.clear();
+      }
+      if (m_pullable != null)
+      {
+        m_pullable.clear();
+      }
+    }
+  }
+
+  /**
+   * Gets the number of events currently waiting in the ring buffer
+   * 
+   * @return The number of events
+   */
+  public int getBacklog()
+  {
+    return m_ring.size();
+  }
+
+  @Override
+  public AsyncBuffer duplicate(boolean with_state)
+  {
+    return new AsyncBuffer(m_capacity, m_waitStrategy);
+  }
+
+  /**
+   * Starts the buffer's thread with a given task, if it is not already
+   * running
+   * 
+   * @param task
+   *          The task
+   * @return The buffer's thread
+   */
+  protected synchronized Thread startThread(Runnable task)
+  {
+    if (m_thread == null)
+    {
+      m_thread = new Thread(task, "AsyncBuffer-" + getId());
+      m_thread.setDaemon(true);
+      m_thread.start();
+    }
+    return m_thread;
+  }
+
+  /**
+   * Waits until a thread has terminated, and forgets it if it is still the
+   * buffer's thread. This method must not be called while holding the lock
+   * on the processor, so that other threads can stop it in the meantime.
+   * 
+   * @param t
+   *          The thread
+   */
+  protected void joinThread(Thread t)
+  {
+    boolean interrupted = false;
+    while (t.isAlive())
+    {
+      try
+      {
+        t.join();
+      }
+      catch (InterruptedException e)
+      {
+        interrupted = true;
+      }
+    }
+    synchronized (this)
+    {
+      if (m_thread == t)
+      {
+        m_thread = null;
+      }
+    }
+    if (interrupted)
+    {
+      // Restore interrupted state
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Records an exception thrown in the buffer's thread
+   * 
+   * @param t
+   *          The exception or error
+   */
+  protected void setError(Throwable t)
+  {
+    if (m_error == null)
+    {
+      m_error = t;
+    }
+  }
+
+  /**
+   * Pushable that stores events into the ring buffer
+   */
+  protected class BufferPushable implements Pushable
+  {
+    /**
+     * The gate through which events are stored in the ring buffer
+     */
+    protected final PendingPushes m_gate = new PendingPushes(this, m_waitStrategy, m_capacity)
+    {
+      @Override
+      protected boolean tryOffer(Object o)
+      {
+        return m_ring.offer(o);
+      }
+
+      @Override
+      protected void checkError()
+      {
+        BufferPushable.this.checkError();
+      }
+    };
+
+    @Override
+    public synchronized Pushable push(Object o)
+    {
+      startThread(new PushTask());
+      put(o);
+      return this;
+    }
+
+    /**
+     * Stores an event in the ring buffer without waiting. If the buffer is
+     * full, the event is kept aside, and the method returns a future that
+     * becomes done once the event has been stored.
+     */
+    @Override
+    public synchronized Future<Pushable> pushFast(Object o)
+    {
+      startThread(new PushTask());
+      checkError();
+      return m_gate.offer(o);
+    }
+
+    @Override
+    public void notifyEndOfTrace() throws PushableException
+    {
+      Thread t;
+      synchronized (this)
+      {
+        if (m_hasBeenNotifiedOfEndOfTrace)
+        {
+          return;
+        }
+        m_hasBeenNotifiedOfEndOfTrace = true;
+        t = startThread(new PushTask());
+        put(END_OF_TRACE);
+      }
+      // The thread is joined without holding any lock, so that the buffer
+      // can still be stopped if downstream never returns
+      joinThread(t);
+      checkError();
+    }
+
+    /**
+     * Stores an event in the ring buffer, waiting for room if necessary
+     * 
+     * @param o
+     *          The event
+     */
+    protected void put(Object o)
+    {
+      try
+      {
+        m_gate.put(o);
+      }
+      catch (InterruptedException e)
+      {
+        // Restore interrupted state
+        Thread.currentThread().interrupt();
+        throw new PushableException(e, AsyncBuffer.this);
+      }
+      checkError();
+    }
+
+    /**
+     * Throws the exception raised in the buffer's thread, if any
+     */
+    protected void checkError()
+    {
+      Throwable t = m_error;
+      if (t != null)
+      {
+        throw new PushableException(t, AsyncBuffer.this);
+      }
+    }
+
+    @Override
+    public Processor getProcessor()
+    {
+      return AsyncBuffer.this;
+    }
+
+    @Override
+    public int getPosition()
+    {
+      return 0;
+    }
+  }
+
+  /**
+   * Task that takes events out of the ring buffer and pushes them
+   * downstream
+   */
+  protected class PushTask implements Runnable
+  {
+    @Override
+    public void run()
+    {
+      SpscRingBuffer ring = m_ring;
+      PendingPushes gate = m_pushable.m_gate;
+      try
+      {
+        for (;;)
+        {
+          Object o = ring.poll();
+          int attempts = 0;
+          while (o == null)
+          {
+            m_waitStrategy.idle(attempts++);
+            o = ring.poll();
+          }
+          // Events waiting for room go into the slot just freed
+          gate.drain();
+          Pushable p = m_outputPushables[0];
+          if (p == null)
+          {
+            throw new Pushable.PushableException(
+                "Output 0 of this processor is connected to nothing", AsyncBuffer.this);
+          }
+          if (o == END_OF_TRACE)
+          {
+            p.notifyEndOfTrace();
+            return;
+          }
+          p.push(o);
+        }
+      }
+      catch (InterruptedException e)
+      {
+        // The processor has been stopped
+      }
+      catch (Throwable e)
+      {
+        // The upstream pusher checks for this error while it waits for
+        // room, so it never blocks on a ring that is no longer read. Errors
+        // are caught as well, as they would otherwise end the thread
+        // without anyone noticing.
+        setError(e);
+      }
+    }
+  }
+
+  /**
+   * Task that pulls events from upstream and stores them into the ring
+   * buffer
+   */
+  protected class PullTask implements Runnable
+  {
+    @Override
+    public void run()
+    {
+      SpscRingBuffer ring = m_ring;
+      try
+      {
+        Pullable p = m_inputPullables[0];
+        if (p == null)
+        {
+          throw new Pullable.PullableException(
+              "Input 0 of this processor is connected to nothing", AsyncBuffer.this);
+        }
+        while (p.hasNext())
+        {
+          offer(ring, p.pull());
+        }
+      }
+      catch (InterruptedException e)
+      {
+        // The processor has been stopped
+        return;
+      }
+      catch (Throwable e)
+      {
+        setError(e);
+      }
+      try
+      {
+        offer(ring, END_OF_TRACE);
+      }
+      catch (InterruptedException e)
+      {
+        // The processor has been stopped
+      }
+    }
+
+    /**
+     * Stores an event in the ring buffer, waiting for room if necessary
+     * 
+     * @param ring
+     *          The ring buffer
+     * @param o
+     *          The event
+     * @throws InterruptedException
+     *           If the thread is interrupted while waiting
+     */
+    protected void offer(SpscRingBuffer ring, Object o) throws InterruptedException
+    {
+      int attempts = 0;
+      while (!ring.offer(o))
+      {
+        m_waitStrategy.idle(attempts++);
+      }
+      BufferPullable p = m_pullable;
+      if (p != null)
+      {
+        p.m_listeners.fire();
+      }
+    }
+  }
+
+  /**
+   * Pullable that takes events out of the ring buffer
+   */
+  protected class BufferPullable implements NotifyingPullable
+  {
+    /**
+     * The listeners notified when an event is put in the ring buffer
+     */
+    protected final Readiness.ListenerList m_listeners = new Readiness.ListenerList(this);
+
+    /**
+     * An event taken out of the ring, but not yet returned by a call to
+     * <tt>pull</tt>
+     */
+    protected Object m_next = null;
+
+    /**
+     * Whether the end of the trace has been reached
+     */
+    protected boolean m_ended = false;
+
+    /**
+     * Forgets the state of this pullable
+     */
+    protected synchronized void clear()
+    {
+      m_next = null;
+      m_ended = false;
+    }
+
+    @Override
+    public Iterator<Object> iterator()
+    {
+      return this;
+    }
+
+    @Override
+    public void remove()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized boolean addReadyListener(ReadyListener l)
+    {
+      startThread(new PullTask());
+      m_listeners.add(l);
+      if (m_next != null || m_ended || !m_ring.isEmpty())
+      {
+        l.ready(this);
+      }
+      return true;
+    }
+
+    @Override
+    public void removeReadyListener(ReadyListener l)
+    {
+      m_listeners.remove(l);
+    }
+
+    @Override
+    public synchronized Object pullSoft()
+    {
+      if (hasNextSoft() != NextStatus.YES)
+      {
+        return null;
+      }
+      Object o = m_next;
+      m_next = null;
+      return o;
+    }
+
+    @Override
+    public synchronized Object pull()
+    {
+      if (!hasNext())
+      {
+        return null;
+      }
+      Object o = m_next;
+      m_next = null;
+      return o;
+    }
+
+    @Override
+    @SuppressWarnings("squid:S2272")
+    public Object next()
+    {
+      return pull();
+    }
+
+    @Override
+    public synchronized NextStatus hasNextSoft()
+    {
+      if (m_next != null)
+      {
+        return NextStatus.YES;
+      }
+      if (m_ended)
+      {
+        return NextStatus.NO;
+      }
+      startThread(new PullTask());
+      Object o = m_ring.poll();
+      if (o == null)
+      {
+        return NextStatus.MAYBE;
+      }
+      return accept(o) ? NextStatus.YES : NextStatus.NO;
+    }
+
+    @Override
+    public synchronized boolean hasNext()
+    {
+      if (m_next != null)
+      {
+        return true;
+      }
+      if (m_ended)
+      {
+        return false;
+      }
+      startThread(new PullTask());
+      Object o = m_ring.poll();
+      int attempts = 0;
+      while (o == null)
+      {
+        try
+        {
+          m_waitStrategy.idle(attempts++);
+        }
+        catch (InterruptedException e)
+        {
+          // Restore interrupted state
+          Thread.currentThread().interrupt();
+          throw new PullableException(e, AsyncBuffer.this);
+        }
+        o = m_ring.poll();
+      }
+      return accept(o);
+    }
+
+    /**
+     * Processes an object taken out of the ring buffer
+     * 
+     * @param o
+     *          The object
+     * @return <tt>true</tt> if the object is an event, <tt>false</tt> if it
+     *         marks the end of the trace
+     */
+    protected boolean accept(Object o)
+    {
+      if (o == END_OF_TRACE)
+      {
+        m_ended = true;
+        Throwable t = m_error;
+        if (t != null)
+        {
+          throw new PullableException(t, AsyncBuffer.this);
+        }
+        return false;
+      }
+      m_next = o;
+      return true;
+    }
+
+    @Override
+    public Processor getProcessor()
+    {
+      return AsyncBuffer.this;
+    }
+
+    @Override
+    public int getPosition()
+    {
+      return 0;
+    }
+
+    @Override
+    public void start()
+    {
+      AsyncBuffer.this.start();
+    }
+
+    @Override
+    public void stop()
+    {
+      AsyncBuffer.this.stop();
+    }
+
+    @Override
+    public void dispose()
+    {
+      // Nothing to do
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.concurrency;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+
+/**
+ * Provides a number of convenient methods for connecting the outputs of
+ * processors to the inputs of others through a thread boundary. Each
+ * connection made through this class inserts an {@link AsyncBuffer} between
+ * the two processors, so that they are evaluated in different threads.
+ * <p>
+ * In push mode, a processor must receive its events from a single thread:
+ * processors only synchronize each of their inputs, and not the processor
+ * as a whole. A processor with more than one input must therefore not be
+ * fed by more than one buffer, nor by a buffer and another thread. In pull
+ * mode, the processor downstream pulls from each buffer in its own thread,
+ * and this restriction does not apply.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class AsyncConnector
+{
+  private AsyncConnector()
+  {
+    throw new IllegalAccessError("Utility class");
+  }
+
+  /**
+   * Connects the <i>i</i>-th output of a processor to the <i>j</i>-th input
+   * of another one, through an {@link AsyncBuffer}
+   * 
+   * @param p1
+   *          The first processor
+   * @param i
+   *          The output number of the first processor
+   * @param p2
+   *          The second processor
+   * @param j
+   *          The input number of the second processor
+   * @param capacity
+   *          The number of slots in the buffer
+   * @param strategy
+   *          How threads wait for one another
+   * @return The buffer inserted between the two processors
+   */
+  public static AsyncBuffer connect(Processor p1, int i, Processor p2, int j, int capacity,
+      WaitStrategy strategy)
+  {
+    AsyncBuffer buffer = new AsyncBuffer(capacity, strategy);
+    Connector.connect(p1, i, buffer, 0);
+    Connector.connect(buffer, 0, p2, j);
+    return buffer;
+  }
+
+  /**
+   * Connects the <i>i</i>-th output of a processor to the <i>j</i>-th input
+   * of another one, through an {@link AsyncBuffer} with default settings
+   * 
+   * @param p1
+   *          The first processor
+   * @param i
+   *          The output number of the first processor
+   * @param p2
+   *          The second processor
+   * @param j
+   *          The input number of the second processor
+   * @return The buffer inserted between the two processors
+   */
+  public static AsyncBuffer connect(Processor p1, int i, Processor p2, int j)
+  {
+    return connect(p1, i, p2, j, AsyncBuffer.DEFAULT_CAPACITY, WaitStrategy.Park.instance);
+  }
+
+  /**
+   * Connects a chain of processors, by associating the outputs of one to the
+   * inputs of the next, with a thread boundary between each pair. Every
+   * processor in the chain must have an output arity equal to the input
+   * arity of the next one.
+   * <p>
+   * Since each buffer pushes events from its own thread, and a processor
+   * must receive its events from a single thread, the processors of the
+   * chain (except the first) must have an input arity of 1.
+   * 
+   * @param procs
+   *          The list of processors
+   * @return The last processor of the chain
+   * @throws UnsupportedOperationException
+   *           If a processor of the chain other than the first has more than
+   *           one input
+   */
+  public static Processor connect(Processor ... procs)
+  {
+    for (int k = 1; k < procs.length; k++)
+    {
+      if (procs[k].getInputArity() > 1)
+      {
+        throw new UnsupportedOperationException("Processor #" + procs[k].getId()
+            + " has more than one input, and cannot be fed by more than one thread");
+      }
+    }
+    for (int k = 0; k < procs.length - 1; k++)
+    {
+      Processor p1 = procs[k];
+      Processor p2 = procs[k + 1];
+      int arity = p1.getOutputArity();
+      for (int i = 0; i < arity; i++)
+      {
+        connect(p1, i, p2, i);
+      }
+    }
+    return procs[procs.length - 1];
+  }
+}
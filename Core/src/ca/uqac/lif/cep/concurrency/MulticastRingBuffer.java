@@ -0,0 +1,311 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.concurrency;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded ring buffer written by a single producer thread and read by
+ * multiple consumer threads, each of which sees every event. The buffer is
+ * lock-free and follows the design of the LMAX Disruptor: the producer
+ * publishes events by advancing a <em>cursor</em>, and each consumer
+ * advances its own <em>sequence</em> as it reads events. The producer can
+ * only reuse a slot once every consumer has gone past it; the slowest
+ * consumer therefore acts as a barrier for the producer, while each consumer
+ * proceeds at its own pace.
+ * <p>
+ * When the slowest consumer lags by the full capacity of the buffer, the
+ * producer either waits for it ({@link OverflowPolicy#BLOCK}), or skips that
+ * consumer's oldest unread event ({@link OverflowPolicy#DROP_OLDEST}). In the
+ * latter case, only the lagging consumer loses events; the others are not
+ * affected.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class MulticastRingBuffer
+{
+  /**
+   * The slots of the buffer
+   */
+  protected final Object[] m_slots;
+
+  /**
+   * A bit mask used to compute the index of a slot from a sequence number
+   */
+  protected final int m_mask;
+
+  /**
+   * The sequence number of the last event published by the producer
+   */
+  protected final AtomicLong m_cursor;
+
+  /**
+   * The sequence number of the last event read by each consumer
+   */
+  protected final AtomicLong[] m_sequences;
+
+  /**
+   * What the producer does when the buffer is full
+   */
+  protected final OverflowPolicy m_policy;
+
+  /**
+   * How threads wait for one another
+   */
+  protected final WaitStrategy m_waitStrategy;
+
+  /**
+   * The number of events dropped for each consumer
+   */
+  protected final long[] m_dropped;
+
+  /**
+   * Creates a new ring buffer
+   * 
+   * @param consumers
+   *          The number of consumers reading from this buffer
+   * @param capacity
+   *          The number of slots in the buffer. This number is rounded up to
+   *          the next power of 2.
+   * @param policy
+   *          What the producer does when the buffer is full
+   * @param strategy
+   *          How threads wait for one another
+   */
+  public MulticastRingBuffer(int consumers, int capacity, OverflowPolicy policy,
+      WaitStrategy strategy)
+  {
+    super();
+    if (capacity < 1)
+    {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+    if (policy != OverflowPolicy.BLOCK && policy != OverflowPolicy.DROP_OLDEST)
+    {
+      throw new IllegalArgumentException("Unsupported overflow policy: " + policy);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity)
+    {
+      size <<= 1;
+    }
+    m_slots = new Object[size];
+    m_mask = size - 1;
+    m_policy = policy;
+    m_waitStrategy = strategy;
+    m_cursor = new AtomicLong(-1);
+    m_sequences = new AtomicLong[consumers];
+    for (int i = 0; i < consumers; i++)
+    {
+      m_sequences[i] = new AtomicLong(-1);
+    }
+    m_dropped = new long[consumers];
+  }
+
+  /**
+   * Gets the number of slots in this buffer
+   * 
+   * @return The capacity
+   */
+  public int getCapacity()
+  {
+    return m_slots.length;
+  }
+
+  /**
+   * Publishes an event to all consumers. This method must only be called by
+   * the producer thread.
+   * 
+   * @param o
+   *          The event
+   * @throws InterruptedException
+   *           If the producer is interrupted while waiting for a slot
+   */
+  public void publish(Object o) throws InterruptedException
+  {
+    publish(o, m_policy == OverflowPolicy.DROP_OLDEST);
+  }
+
+  /**
+   * Publishes an event to all consumers. This method must only be called by
+   * the producer thread.
+   * 
+   * @param o
+   *          The event
+   * @param may_drop
+   *          Set to <tt>true</tt> to drop the oldest unread events of
+   *          lagging consumers, <tt>false</tt> to wait for them
+   * @throws InterruptedException
+   *           If the producer is interrupted while waiting for a slot
+   */
+  protected void publish(Object o, boolean may_drop) throws InterruptedException
+  {
+    long seq = m_cursor.get() + 1;
+    long wrap_point = seq - m_slots.length;
+    for (int i = 0; i < m_sequences.length; i++)
+    {
+      AtomicLong consumer_seq = m_sequences[i];
+      int attempts = 0;
+      long s;
+      while ((s = consumer_seq.get()) < wrap_point)
+      {
+        if (may_drop)
+        {
+          // Skip the oldest event this consumer has not read yet. The
+          // consumer also advances its sequence with a CAS, so exactly one
+          // of the two threads gets to claim the event.
+          if (consumer_seq.compareAndSet(s, s + 1))
+          {
+            m_dropped[i]++;
+          }
+        }
+        else
+        {
+          m_waitStrategy.idle(attempts++);
+        }
+      }
+    }
+    m_slots[(int) seq & m_mask] = o;
+    m_cursor.set(seq);
+  }
+
+  /**
+   * Publishes an event to all consumers, waiting for lagging consumers
+   * regardless of the overflow policy. This is used for events that must not
+   * be lost, such as end-of-trace markers.
+   * 
+   * @param o
+   *          The event
+   * @throws InterruptedException
+   *           If the producer is interrupted while waiting for a slot
+   */
+  public void publishNoDrop(Object o) throws InterruptedException
+  {
+    publish(o, false);
+  }
+
+  /**
+   * Attempts to publish an event to all consumers without waiting. Under
+   * policy {@link OverflowPolicy#DROP_OLDEST}, this always succeeds. This
+   * method must only be called by the producer thread, or by threads that
+   * take turns under a common lock.
+   * 
+   * @param o
+   *          The event
+   * @return <tt>true</tt> if the event was published, <tt>false</tt> if
+   *         some consumer has no room for it
+   */
+  public boolean tryPublish(Object o)
+  {
+    if (m_policy != OverflowPolicy.DROP_OLDEST)
+    {
+      long wrap_point = m_cursor.get() + 1 - m_slots.length;
+      for (int i = 0; i < m_sequences.length; i++)
+      {
+        if (m_sequences[i].get() < wrap_point)
+        {
+          return false;
+        }
+      }
+    }
+    try
+    {
+      publish(o, m_policy == OverflowPolicy.DROP_OLDEST);
+    }
+    catch (InterruptedException e)
+    {
+      // Cannot happen: publish does not wait when there is room
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Takes the next event for a consumer, waiting until one is available.
+   * 
+   * @param consumer
+   *          The index of the consumer
+   * @return The event
+   * @throws InterruptedException
+   *           If the consumer is interrupted while waiting
+   */
+  public Object take(int consumer) throws InterruptedException
+  {
+    AtomicLong consumer_seq = m_sequences[consumer];
+    for (;;)
+    {
+      long s = consumer_seq.get();
+      long next = s + 1;
+      int attempts = 0;
+      while (m_cursor.get() < next)
+      {
+        m_waitStrategy.idle(attempts++);
+      }
+      Object o = m_slots[(int) next & m_mask];
+      if (consumer_seq.compareAndSet(s, next))
+      {
+        return o;
+      }
+      // Otherwise, the producer dropped this event in the meantime: retry
+    }
+  }
+
+  /**
+   * Detaches a consumer from the buffer. From then on, the producer no
+   * longer waits for this consumer.
+   * 
+   * @param consumer
+   *          The index of the consumer
+   */
+  public void detach(int consumer)
+  {
+    m_sequences[consumer].set(Long.MAX_VALUE);
+  }
+
+  /**
+   * Gets the number of events dropped for a consumer. This method must only
+   * be called by the producer thread.
+   * 
+   * @param consumer
+   *          The index of the consumer
+   * @return The number of events
+   */
+  public long getDropCount(int consumer)
+  {
+    return m_dropped[consumer];
+  }
+
+  /**
+   * Gets the number of events published but not yet read by a consumer
+   * 
+   * @param consumer
+   *          The index of the consumer
+   * @return The number of events
+   */
+  public long getBacklog(int consumer)
+  {
+    long s = m_sequences[consumer].get();
+    if (s == Long.MAX_VALUE)
+    {
+      return 0;
+    }
+    return Math.max(0, m_cursor.get() - s);
+  }
+}
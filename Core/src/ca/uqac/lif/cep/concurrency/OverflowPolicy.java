@@ -0,0 +1,54 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.concurrency;
+
+/**
+ * Determines what happens when an event is handed to a bounded buffer that
+ * is already full.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public enum OverflowPolicy
+{
+  /**
+   * The thread handing the event waits until space becomes available. This
+   * propagates backpressure to the producer of events.
+   */
+  BLOCK,
+
+  /**
+   * The new event is discarded, and the contents of the buffer are left
+   * untouched.
+   */
+  DROP_NEWEST,
+
+  /**
+   * The oldest event in the buffer that has not yet been consumed is
+   * discarded to make room for the new one.
+   */
+  DROP_OLDEST,
+
+  /**
+   * While the buffer is full, only one incoming event out of every
+   * <i>n</i> is kept, replacing the oldest event in the buffer; the others
+   * are discarded. This thins out the stream uniformly instead of
+   * discarding a contiguous run of events.
+   */
+  SAMPLE;
+}
@@ -0,0 +1,501 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.concurrency;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import java.util.concurrent.Future;
+
+/**
+ * Duplicates an input trace into two or more output traces, each of which is
+ * pushed downstream by its own thread. This processor behaves like a
+ * {@link ca.uqac.lif.cep.tmf.Fork Fork}, except that the branches connected
+ * to its outputs are evaluated in parallel: a call to <tt>push</tt> only
+ * publishes the event into a {@link MulticastRingBuffer}, and returns as soon
+ * as it has been stored. One worker thread per output then reads events from
+ * that buffer and pushes them to the corresponding branch, at its own pace.
+ * <p>
+ * When one branch lags behind the others by the full capacity of the buffer,
+ * the processor either blocks the upstream pusher until the branch catches
+ * up ({@link OverflowPolicy#BLOCK}), or makes the lagging branch skip its
+ * oldest pending events ({@link OverflowPolicy#DROP_OLDEST}).
+ * <p>
+ * Upon the end of the trace, the fork waits until every branch has consumed
+ * all its pending events and has itself been notified of the end of the
+ * trace; hence, once <tt>notifyEndOfTrace</tt> returns, all the branches are
+ * done.
+ * <p>
+ * Since each branch runs in a different thread, the branches should not
+ * share processors downstream, unless these processors are safe to push
+ * to from multiple threads. A parallel fork only works in push mode.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class ParallelFork extends Processor
+{
+  /**
+   * The default number of slots in the buffer
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * A special object published into the buffer to signal the end of the
+   * trace to the worker threads
+   */
+  protected static final Object END_OF_TRACE = new Object();
+
+  /**
+   * The number of slots in the buffer
+   */
+  protected final int m_capacity;
+
+  /**
+   * What happens when a branch lags by the full capacity of the buffer
+   */
+  protected final OverflowPolicy m_policy;
+
+  /**
+   * How threads wait for one another
+   */
+  protected final WaitStrategy m_waitStrategy;
+
+  /**
+   * The buffer shared by the upstream pusher and the workers
+   */
+  protected transient volatile MulticastRingBuffer m_buffer;
+
+  /**
+   * The worker threads, one for each output
+   */
+  protected transient Thread[] m_workers;
+
+  /**
+   * The pushable of this processor's input
+   */
+  protected transient ForkPushable m_pushable = null;
+
+  /**
+   * The first exception thrown by a branch, if any
+   */
+  protected transient volatile Throwable m_error = null;
+
+  /**
+   * Creates a new parallel fork with default settings
+   * 
+   * @param out_arity
+   *          The output arity
+   */
+  public ParallelFork(int out_arity)
+  {
+    this(out_arity, DEFAULT_CAPACITY, OverflowPolicy.BLOCK, WaitStrategy.Park.instance);
+  }
+
+  /**
+   * Creates a new parallel fork
+   * 
+   * @param out_arity
+   *          The output arity
+   * @param capacity
+   *          The number of slots in the buffer shared by the branches
+   * @param policy
+   *          What happens when a branch lags by the full capacity of the
+   *          buffer
+   * @param strategy
+   *          How threads wait for one another
+   */
+  public ParallelFork(int out_arity, int capacity, OverflowPolicy policy, WaitStrategy strategy)
+  {
+    super(1, out_arity);
+    m_capacity = capacity;
+    m_policy = policy;
+    m_waitStrategy = strategy;
+    m_buffer = new MulticastRingBuffer(out_arity, capacity, policy, strategy);
+  }
+
+  @Override
+  public synchronized Pushable getPushableInput(int index)
+  {
+    if (m_pushable == null)
+    {
+      m_pushable = new ForkPushable();
+    }
+    return m_pushable;
+  }
+
+  @Override
+  public Pullable getPullableOutput(int index)
+  {
+    // A parallel fork only works in push mode
+    return new Pullable.PullNotSupported(this, index);
+  }
+
+  /**
+   * Starts the worker threads, if they are not already running. Calling this
+   * method is optional: the workers are started upon the first event pushed
+   * to the processor.
+   */
+  @Override
+  public synchronized void start()
+  {
+    if (m_workers != null)
+    {
+      return;
+    }
+    if (m_pushable == null)
+    {
+      // The workers drain the gate of the pushable
+      m_pushable = new ForkPushable();
+    }
+    m_workers = new Thread[m_outputArity];
+    for (int i = 0; i < m_outputArity; i++)
+    {
+      Thread t = new Thread(new Worker(i), "ParallelFork-" + getId() + "-" + i);
+      t.setDaemon(true);
+      m_workers[i] = t;
+    }
+    for (Thread t : m_workers)
+    {
+      t.start();
+    }
+  }
+
+  /**
+   * Stops the worker threads. Events that have not yet been pushed to the
+   * branches are lost. This method can be called while another thread is
+   * blocked pushing an event to the processor; that thread then returns.
+   */
+  @Override
+  public void stop()
+  {
+    Thread[] workers;
+    synchronized (this)
+    {
+      workers = m_workers;
+    }
+    if (workers == null)
+    {
+      return;
+    }
+    for (Thread t : workers)
+    {
+      t.interrupt();
+    }
+    joinWorkers(workers);
+  }
+
+  @Override
+  public void reset()
+  {
+    stop();
+    synchronized (this)
+    {
+      super.reset();
+      m_buffer = new MulticastRingBuffer(m_outputArity, m_capacity, m_policy, m_waitStrategy);
+      m_error = null;
+      if (m_pushable != null)
+      {
+        m_pushable.m_gate.clear();
+      }
+    }
+  }
+
+  /**
+   * Gets the number of events that were dropped for a given branch, because
+   * it lagged behind the others. When called from another thread than the
+   * one pushing events, the value may lag behind slightly.
+   * 
+   * @param index
+   *          The index of the output
+   * @return The number of events
+   */
+  public long getDropCount(int index)
+  {
+    return m_buffer.getDropCount(index);
+  }
+
+  /**
+   * Gets the number of events that have been received but not yet pushed to
+   * a given branch
+   * 
+   * @param index
+   *          The index of the output
+   * @return The number of events
+   */
+  public long getBacklog(int index)
+  {
+    return m_buffer.getBacklog(index);
+  }
+
+  @Override
+  public ParallelFork duplicate(boolean with_state)
+  {
+    return new ParallelFork(m_outputArity, m_capacity, m_policy, m_waitStrategy);
+  }
+
+  /**
+   * Waits until worker threads have terminated, and forgets them if they
+   * are still the current workers. This method must not be called while
+   * holding the lock on the processor, so that other threads can stop it in
+   * the meantime.
+   * 
+   * @param workers
+   *          The threads
+   */
+  protected void joinWorkers(Thread[] workers)
+  {
+    boolean interrupted = false;
+    for (Thread t : workers)
+    {
+      while (t.isAlive())
+      {
+        try
+        {
+          t.join();
+        }
+        catch (InterruptedException e)
+        {
+          interrupted = true;
+        }
+      }
+    }
+    synchronized (this)
+    {
+      if (m_workers == workers)
+      {
+        m_workers = null;
+      }
+    }
+    if (interrupted)
+    {
+      // Restore interrupted state
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Throws the first exception raised by one of the branches, if any
+   */
+  protected void checkError()
+  {
+    Throwable t = m_error;
+    if (t != null)
+    {
+      throw new Pushable.PushableException(t, this);
+    }
+  }
+
+  /**
+   * Pushable that publishes events into the buffer shared by the workers.
+   * Concurrent pushes are serialized by the lock of the gate; the pushable
+   * never holds the lock on the processor while waiting for room in the
+   * buffer, so that the processor can be stopped or queried meanwhile.
+   */
+  protected class ForkPushable implements Pushable
+  {
+    /**
+     * The gate through which events are published in the ring buffer
+     */
+    protected final PendingPushes m_gate = new PendingPushes(this, m_waitStrategy, m_capacity)
+    {
+      @Override
+      protected boolean tryOffer(Object o)
+      {
+        return m_buffer.tryPublish(o);
+      }
+
+      @Override
+      protected void checkError()
+      {
+        ParallelFork.this.checkError();
+      }
+
+      @Override
+      protected void checkOpen()
+      {
+        // The end of the trace has been published; workers may have detached
+        if (m_hasBeenNotifiedOfEndOfTrace)
+        {
+          throw new PushableException("The processor has already received the end of the trace", ParallelFork.this);
+        }
+      }
+    };
+
+    @Override
+    public Pushable push(Object o)
+    {
+      checkError();
+      start();
+      try
+      {
+        m_gate.put(o);
+      }
+      catch (InterruptedException e)
+      {
+        // Restore interrupted state
+        Thread.currentThread().interrupt();
+        throw new PushableException(e, ParallelFork.this);
+      }
+      return this;
+    }
+
+    /**
+     * Publishes an event without waiting. Under policy
+     * {@link OverflowPolicy#BLOCK}, if some branch has no room for the event,
+     * the event is kept aside, and the method returns a future that becomes
+     * done once it has been published.
+     */
+    @Override
+    public Future<Pushable> pushFast(Object o)
+    {
+      checkError();
+      start();
+      return m_gate.offer(o);
+    }
+
+    @Override
+    public void notifyEndOfTrace() throws PushableException
+    {
+      Thread[] workers;
+      // The gate's lock keeps other pushers out of the buffer
+      m_gate.lock();
+      try
+      {
+        if (m_hasBeenNotifiedOfEndOfTrace)
+        {
+          return;
+        }
+        m_hasBeenNotifiedOfEndOfTrace = true;
+        start();
+        synchronized (ParallelFork.this)
+        {
+          workers = m_workers;
+        }
+        try
+        {
+          int attempts = 0;
+          while (!m_gate.flush())
+          {
+            checkError();
+            m_waitStrategy.idle(attempts++);
+          }
+          m_buffer.publishNoDrop(END_OF_TRACE);
+        }
+        catch (InterruptedException e)
+        {
+          // Restore interrupted state
+          Thread.currentThread().interrupt();
+          throw new PushableException(e, ParallelFork.this);
+        }
+      }
+      finally
+      {
+        m_gate.unlock();
+      }
+      if (workers != null)
+      {
+        joinWorkers(workers);
+      }
+      checkError();
+    }
+
+    @Override
+    public Processor getProcessor()
+    {
+      return ParallelFork.this;
+    }
+
+    @Override
+    public int getPosition()
+    {
+      return 0;
+    }
+  }
+
+  /**
+   * Reads events from the buffer and pushes them to one of the branches
+   */
+  protected class Worker implements Runnable
+  {
+    /**
+     * The index of the output this worker pushes to
+     */
+    protected final int m_index;
+
+    /**
+     * Creates a new worker
+     * 
+     * @param index
+     *          The index of the output this worker pushes to
+     */
+    public Worker(int index)
+    {
+      super();
+      m_index = index;
+    }
+
+    @Override
+    public void run()
+    {
+      MulticastRingBuffer buffer = m_buffer;
+      PendingPushes gate = m_pushable.m_gate;
+      try
+      {
+        for (;;)
+        {
+          Object o = buffer.take(m_index);
+          // Events waiting for room go into the slot just freed, if any
+          gate.drain();
+          Pushable p = m_outputPushables[m_index];
+          if (p == null)
+          {
+            throw new Pushable.PushableException(
+                "Output " + m_index + " of this processor is connected to nothing",
+                ParallelFork.this);
+          }
+          if (o == END_OF_TRACE)
+          {
+            p.notifyEndOfTrace();
+            break;
+          }
+          p.push(o);
+        }
+      }
+      catch (InterruptedException e)
+      {
+        // The processor has been stopped
+      }
+      catch (Throwable e)
+      {
+        // Errors too, so that a failed branch is never mistaken for a
+        // branch that completed
+        if (m_error == null)
+        {
+          m_error = e;
+        }
+      }
+      finally
+      {
+        // Make sure the upstream pusher never waits for this worker again
+        buffer.detach(m_index);
+      }
+    }
+  }
+}
@@ -0,0 +1,422 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.concurrency;
+
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.Pushable.PushableException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Producer-side gate in front of a bounded buffer. Events are offered to the
+ * buffer in order; when it is full, {@link #offer(Object)} keeps the event in
+ * a small overflow queue and returns a pending {@link Future}, which becomes
+ * done once the event has made its way into the buffer. This is what allows
+ * thread-boundary processors to implement {@link Pushable#pushFast(Object)}
+ * as a demand signal: the caller gets control back immediately, and waits on
+ * the future before producing more.
+ * <p>
+ * The overflow queue is bounded: a caller that ignores the futures and
+ * keeps offering events eventually waits, as with {@link #put(Object)}.
+ * Events in the queue are moved to the buffer by the producer, and also by
+ * the consumer, which calls {@link #drain()} after taking events out of the
+ * buffer; they therefore do not wait for the next call to the gate.
+ * <p>
+ * All operations on the buffer go through the lock of this object, so
+ * that events offered with {@link #offer(Object)} and {@link #put(Object)}
+ * are never reordered.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+abstract class PendingPushes
+{
+  /**
+   * The pushable that hands events to this gate
+   */
+  protected final Pushable m_pushable;
+
+  /**
+   * The strategy used to wait for room in the buffer
+   */
+  protected final WaitStrategy m_waitStrategy;
+
+  /**
+   * The events that have been accepted but not yet stored in the buffer
+   */
+  protected final Queue<Object> m_queue;
+
+  /**
+   * The maximum number of events in the overflow queue
+   */
+  protected final int m_limit;
+
+  /**
+   * The lock serializing the operations on the buffer
+   */
+  protected final ReentrantLock m_lock = new ReentrantLock();
+
+  /**
+   * The number of events in the overflow queue, which the consumer reads
+   * without taking the lock
+   */
+  protected volatile int m_queued = 0;
+
+  /**
+   * The number of events that have been put in the overflow queue so far
+   */
+  protected long m_enqueued;
+
+  /**
+   * The number of events from the overflow queue that have been stored in
+   * the buffer so far
+   */
+  protected long m_flushed;
+
+  /**
+   * Creates a new gate
+   * 
+   * @param p
+   *          The pushable that hands events to this gate
+   * @param strategy
+   *          The strategy used to wait for room in the buffer
+   * @param limit
+   *          The maximum number of events in the overflow queue
+   */
+  public PendingPushes(Pushable p, WaitStrategy strategy, int limit)
+  {
+    super();
+    m_pushable = p;
+    m_waitStrategy = strategy;
+    m_limit = Math.max(1, limit);
+    m_queue = new ArrayDeque<Object>();
+  }
+
+  /**
+   * Takes the lock serializing the operations on the buffer. Callers that
+   * must keep other producers out of the buffer for a while use this
+   * method, and must then call {@link #unlock()}.
+   */
+  public void lock()
+  {
+    m_lock.lock();
+  }
+
+  /**
+   * Releases the lock taken by {@link #lock()}
+   */
+  public void unlock()
+  {
+    m_lock.unlock();
+  }
+
+  /**
+   * Attempts to store an event in the buffer without waiting
+   * 
+   * @param o
+   *          The event
+   * @return <tt>true</tt> if the event was stored, <tt>false</tt> if the
+   *         buffer is full
+   */
+  protected abstract boolean tryOffer(Object o);
+
+  /**
+   * Called while waiting for room in the buffer. Descendants can throw an
+   * exception here if the consumer side of the buffer has failed, and will
+   * never make room again.
+   */
+  protected void checkError()
+  {
+    // Nothing to do
+  }
+
+  /**
+   * Called under the lock before a new event is accepted. Descendants can
+   * throw an exception here if the buffer no longer accepts events.
+   */
+  protected void checkOpen()
+  {
+    // Nothing to do
+  }
+
+  /**
+   * Moves as many events as possible from the overflow queue to the buffer
+   * 
+   * @return <tt>true</tt> if the overflow queue is empty
+   */
+  public boolean flush()
+  {
+    m_lock.lock();
+    try
+    {
+      while (!m_queue.isEmpty())
+      {
+        if (!tryOffer(m_queue.peek()))
+        {
+          return false;
+        }
+        m_queue.remove();
+        m_queued = m_queue.size();
+        m_flushed++;
+      }
+      return true;
+    }
+    finally
+    {
+      m_lock.unlock();
+    }
+  }
+
+  /**
+   * Moves events from the overflow queue to the buffer, unless the queue is
+   * empty or another thread is already operating on the buffer. This method
+   * is meant to be called by the consumer after it has made room in the
+   * buffer; it never waits.
+   */
+  public void drain()
+  {
+    if (m_queued == 0 || !m_lock.tryLock())
+    {
+      return;
+    }
+    try
+    {
+      flush();
+    }
+    finally
+    {
+      m_lock.unlock();
+    }
+  }
+
+  /**
+   * Stores an event in the buffer, waiting for room if necessary
+   * 
+   * @param o
+   *          The event
+   * @throws InterruptedException
+   *           If the thread is interrupted while waiting
+   */
+  public void put(Object o) throws InterruptedException
+  {
+    m_lock.lock();
+    try
+    {
+      checkOpen();
+      int attempts = 0;
+      while (!flush())
+      {
+        checkError();
+        m_waitStrategy.idle(attempts++);
+      }
+      attempts = 0;
+      while (!tryOffer(o))
+      {
+        checkError();
+        m_waitStrategy.idle(attempts++);
+      }
+    }
+    finally
+    {
+      m_lock.unlock();
+    }
+  }
+
+  /**
+   * Hands an event to the buffer without waiting
+   * 
+   * @param o
+   *          The event
+   * @return {@link Pushable#NULL_FUTURE} if the event was stored in the
+   *         buffer, or a pending future that becomes done when it is
+   * @throws PushableException
+   *           If the thread is interrupted while waiting for room in the
+   *           overflow queue
+   */
+  public Future<Pushable> offer(Object o)
+  {
+    m_lock.lock();
+    try
+    {
+      checkOpen();
+      if (flush() && tryOffer(o))
+      {
+        return Pushable.NULL_FUTURE;
+      }
+      int attempts = 0;
+      while (m_queue.size() >= m_limit)
+      {
+        // The caller does not wait on the futures; it waits here instead
+        checkError();
+        try
+        {
+          m_waitStrategy.idle(attempts++);
+        }
+        catch (InterruptedException e)
+        {
+          // Restore interrupted state
+          Thread.currentThread().interrupt();
+          throw new PushableException(e, m_pushable.getProcessor());
+        }
+        flush();
+      }
+      m_queue.add(o);
+      m_queued = m_queue.size();
+      m_enqueued++;
+      return new Ticket(m_enqueued);
+    }
+    finally
+    {
+      m_lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of events in the overflow queue
+   * 
+   * @return The number of events
+   */
+  public int size()
+  {
+    return m_queued;
+  }
+
+  /**
+   * Discards all the events in the overflow queue. Pending futures for
+   * these events become done.
+   */
+  public void clear()
+  {
+    m_lock.lock();
+    try
+    {
+      m_flushed += m_queue.size();
+      m_queue.clear();
+      m_queued = 0;
+    }
+    finally
+    {
+      m_lock.unlock();
+    }
+  }
+
+  /**
+   * Future associated to an event in the overflow queue
+   */
+  protected class Ticket implements Future<Pushable>
+  {
+    /**
+     * The position of the event in the sequence of queued events
+     */
+    protected final long m_number;
+
+    /**
+     * Creates a new ticket
+     * 
+     * @param number
+     *          The position of the event in the sequence of queued events
+     */
+    public Ticket(long number)
+    {
+      super();
+      m_number = number;
+    }
+
+    @Override
+    public boolean cancel(boolean may_interrupt_if_running)
+    {
+      // An accepted event cannot be withdrawn
+      return false;
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+      return false;
+    }
+
+    @Override
+    public boolean isDone()
+    {
+      m_lock.lock();
+      try
+      {
+        flush();
+        return m_flushed >= m_number;
+      }
+      finally
+      {
+        m_lock.unlock();
+      }
+    }
+
+    @Override
+    public Pushable get() throws InterruptedException, ExecutionException
+    {
+      int attempts = 0;
+      while (!isDone())
+      {
+        check();
+        m_waitStrategy.idle(attempts++);
+      }
+      return m_pushable;
+    }
+
+    @Override
+    public Pushable get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      int attempts = 0;
+      while (!isDone())
+      {
+        check();
+        if (System.nanoTime() - deadline >= 0)
+        {
+          throw new TimeoutException();
+        }
+        m_waitStrategy.idle(attempts++);
+      }
+      return m_pushable;
+    }
+
+    /**
+     * Calls {@link PendingPushes#checkError()} and wraps the exception it
+     * throws, if any
+     * 
+     * @throws ExecutionException
+     *           If the consumer side of the buffer has failed
+     */
+    protected void check() throws ExecutionException
+    {
+      try
+      {
+        checkError();
+      }
+      catch (PushableException e)
+      {
+        throw new ExecutionException(e);
+      }
+    }
+  }
+}
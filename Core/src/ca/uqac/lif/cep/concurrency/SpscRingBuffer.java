@@ -0,0 +1,176 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.concurrency;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded ring buffer written by a single producer thread and read by a
+ * single consumer thread. The buffer is lock-free: each side advances its
+ * own counter, and only reads the counter of the other side when its cached
+ * copy indicates that the buffer is full (for the producer) or empty (for
+ * the consumer). Methods of this class never block; threads that need to
+ * wait for room or for an event should call them in a loop, using a
+ * {@link WaitStrategy}.
+ * <p>
+ * Calling {@link #offer(Object)} from more than one thread, or
+ * {@link #poll()} from more than one thread, results in undefined behavior.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class SpscRingBuffer
+{
+  /**
+   * The slots of the buffer
+   */
+  protected final Object[] m_slots;
+
+  /**
+   * A bit mask used to compute the index of a slot from a sequence number
+   */
+  protected final int m_mask;
+
+  /**
+   * The number of events written so far by the producer
+   */
+  protected final AtomicLong m_writeCount = new AtomicLong(0);
+
+  /**
+   * The number of events read so far by the consumer
+   */
+  protected final AtomicLong m_readCount = new AtomicLong(0);
+
+  /**
+   * The producer's copy of {@link #m_readCount}
+   */
+  protected long m_cachedReadCount = 0;
+
+  /**
+   * The consumer's copy of {@link #m_writeCount}
+   */
+  protected long m_cachedWriteCount = 0;
+
+  /**
+   * Creates a new ring buffer
+   * 
+   * @param capacity
+   *          The number of slots in the buffer. This number is rounded up to
+   *          the next power of 2.
+   */
+  public SpscRingBuffer(int capacity)
+  {
+    super();
+    if (capacity < 1)
+    {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity)
+    {
+      size <<= 1;
+    }
+    m_slots = new Object[size];
+    m_mask = size - 1;
+  }
+
+  /**
+   * Gets the number of slots in this buffer
+   * 
+   * @return The capacity
+   */
+  public int getCapacity()
+  {
+    return m_slots.length;
+  }
+
+  /**
+   * Adds an event to the buffer, if there is room for it. This method must
+   * only be called by the producer thread, or by threads that take turns
+   * under a common lock.
+   * 
+   * @param o
+   *          The event. Must not be <tt>null</tt>.
+   * @return <tt>true</tt> if the event was added, <tt>false</tt> if the
+   *         buffer is full
+   */
+  public boolean offer(/*@ non_null @*/ Object o)
+  {
+    long w = m_writeCount.get();
+    if (w - m_cachedReadCount >= m_slots.length)
+    {
+      m_cachedReadCount = m_readCount.get();
+      if (w - m_cachedReadCount >= m_slots.length)
+      {
+        return false;
+      }
+    }
+    m_slots[(int) w & m_mask] = o;
+    m_writeCount.lazySet(w + 1);
+    return true;
+  }
+
+  /**
+   * Removes the oldest event from the buffer. This method must only be
+   * called by the consumer thread.
+   * 
+   * @return The event, or <tt>null</tt> if the buffer is empty
+   */
+  public /*@ null @*/ Object poll()
+  {
+    long r = m_readCount.get();
+    if (r >= m_cachedWriteCount)
+    {
+      m_cachedWriteCount = m_writeCount.get();
+      if (r >= m_cachedWriteCount)
+      {
+        return null;
+      }
+    }
+    int index = (int) r & m_mask;
+    Object o = m_slots[index];
+    // Don't keep a reference to the event once it has been read
+    m_slots[index] = null;
+    m_readCount.lazySet(r + 1);
+    return o;
+  }
+
+  /**
+   * Gets the number of events currently in the buffer. As the producer and
+   * the consumer may be running concurrently, the value is only a snapshot.
+   * 
+   * @return The number of events
+   */
+  public int size()
+  {
+    long r = m_readCount.get();
+    long w = m_writeCount.get();
+    return (int) Math.max(0, w - r);
+  }
+
+  /**
+   * Determines if the buffer is empty. As the producer and the consumer may
+   * be running concurrently, the value is only a snapshot.
+   * 
+   * @return <tt>true</tt> if the buffer is empty, <tt>false</tt> otherwise
+   */
+  public boolean isEmpty()
+  {
+    return size() == 0;
+  }
+}
@@ -0,0 +1,182 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.concurrency;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Determines what a thread does while it waits for a condition to become
+ * true, such as a slot becoming free in a ring buffer, or a new event becoming
+ * available. Each strategy offers a different tradeoff between latency and
+ * CPU usage:
+ * <ul>
+ * <li>{@link BusySpin} never gives up the processor; it has the lowest
+ * latency, but keeps a core fully busy while waiting</li>
+ * <li>{@link Yield} spins for a few iterations, and then lets other threads
+ * run by calling {@link Thread#yield()}</li>
+ * <li>{@link Park} spins and yields for a short time, and then parks the
+ * thread for increasingly longer periods; an idle thread uses almost no CPU</li>
+ * </ul>
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public abstract class WaitStrategy
+{
+  /**
+   * Called by a thread each time it checks a condition that is not yet
+   * satisfied.
+   * 
+   * @param attempts
+   *          The number of times the condition has been checked so far
+   *          (starting at 0)
+   * @throws InterruptedException
+   *           If the waiting thread has been interrupted
+   */
+  public abstract void idle(int attempts) throws InterruptedException;
+
+  /**
+   * Throws an exception if the current thread has been interrupted
+   * 
+   * @throws InterruptedException
+   *           If the current thread has been interrupted
+   */
+  protected static void checkInterrupted() throws InterruptedException
+  {
+    if (Thread.interrupted())
+    {
+      throw new InterruptedException();
+    }
+  }
+
+  /**
+   * Wait strategy that loops without ever giving up the processor
+   */
+  public static class BusySpin extends WaitStrategy
+  {
+    /**
+     * A single instance of this strategy
+     */
+    public static final BusySpin instance = new BusySpin();
+
+    private BusySpin()
+    {
+      super();
+    }
+
+    @Override
+    public void idle(int attempts) throws InterruptedException
+    {
+      checkInterrupted();
+    }
+  }
+
+  /**
+   * Wait strategy that spins for a few iterations, and then yields the
+   * processor to other threads
+   */
+  public static class Yield extends WaitStrategy
+  {
+    /**
+     * A single instance of this strategy
+     */
+    public static final Yield instance = new Yield();
+
+    /**
+     * The number of iterations spent spinning before yielding
+     */
+    protected static final int SPIN_TRIES = 100;
+
+    private Yield()
+    {
+      super();
+    }
+
+    @Override
+    public void idle(int attempts) throws InterruptedException
+    {
+      checkInterrupted();
+      if (attempts >= SPIN_TRIES)
+      {
+        Thread.yield();
+      }
+    }
+  }
+
+  /**
+   * Wait strategy that spins, then yields, and then parks the thread for
+   * periods of time that double at every attempt, up to a maximum
+   */
+  public static class Park extends WaitStrategy
+  {
+    /**
+     * A single instance of this strategy, with a maximum park time of one
+     * millisecond
+     */
+    public static final Park instance = new Park(1000000);
+
+    /**
+     * The number of iterations spent spinning before yielding
+     */
+    protected static final int SPIN_TRIES = 100;
+
+    /**
+     * The number of iterations spent yielding before parking
+     */
+    protected static final int YIELD_TRIES = 200;
+
+    /**
+     * The shortest time, in nanoseconds, a thread is parked
+     */
+    protected static final long MIN_PARK_NANOS = 1000;
+
+    /**
+     * The longest time, in nanoseconds, a thread is parked
+     */
+    protected final long m_maxParkNanos;
+
+    /**
+     * Creates a new park strategy
+     * 
+     * @param max_park_nanos
+     *          The longest time, in nanoseconds, a thread is parked
+     */
+    public Park(long max_park_nanos)
+    {
+      super();
+      m_maxParkNanos = Math.max(MIN_PARK_NANOS, max_park_nanos);
+    }
+
+    @Override
+    public void idle(int attempts) throws InterruptedException
+    {
+      checkInterrupted();
+      if (attempts < SPIN_TRIES)
+      {
+        return;
+      }
+      if (attempts < YIELD_TRIES)
+      {
+        Thread.yield();
+        return;
+      }
+      int shift = Math.min(attempts - YIELD_TRIES, 20);
+      LockSupport.parkNanos(Math.min(m_maxParkNanos, MIN_PARK_NANOS << shift));
+    }
+  }
+}
@@ -33,6 +33,12 @@ public class ContextAssignment
    */
   /*@ non_null @*/ protected String m_lvalue;
 
+  /**
+   * The slot of the context element to modify, as given by
+   * {@link Context#slotOf(String)}
+   */
+  protected int m_slot;
+
   /**
    * The function computing the value to assign to the context element. It is
    * assumed that this function has an output arity of 1.
@@ -48,6 +54,7 @@ public class ContextAssignment
   {
     super();
     m_lvalue = left;
+    m_slot = Context.slotOf(left);
     m_value = right;
   }
 
@@ -87,7 +94,7 @@ public class ContextAssignment
       /*@ non_null @*/ Object[] outputs, /*@ non_null @*/ Context context)
   {
     m_value.evaluate(inputs, outputs, context);
-    context.put(m_lvalue, outputs[0]);
+    context.putValue(m_slot, outputs[0]);
   }
 
   /**
@@ -33,6 +33,12 @@ public class ContextVariable extends Variable
    */
   protected final String m_name;
 
+  /**
+   * The slot of the context holding the value of this placeholder, as given
+   * by {@link Context#slotOf(String)}
+   */
+  protected final int m_slot;
+
   /**
    * Creates a new argument placeholder
    * 
@@ -43,6 +49,7 @@ public class ContextVariable extends Variable
   {
     super();
     m_name = name;
+    m_slot = Context.slotOf(name);
   }
 
   /**
@@ -75,12 +82,12 @@ public class ContextVariable extends Variable
   @SuppressWarnings("squid:S1168")
   public void evaluate(Object[] inputs, Object[] outputs, Context context)
   {
-    if (context == null || !context.containsKey(m_name))
+    if (context == null)
     {
       outputs[0] = null;
       return;
     }
-    outputs[0] = context.get(m_name);
+    outputs[0] = context.getValue(m_slot);
   }
 
   @Override
@@ -0,0 +1,969 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import ca.uqac.lif.cep.util.Multiset;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary encoding of events. The codec handles <tt>null</tt>,
+ * booleans, numbers of the primitive wrapper types, strings, byte arrays,
+ * arrays of objects, lists, sets, maps and {@link Multiset}s, nested in
+ * any way. Every value starts with a one-byte tag giving its type:
+ * <ul>
+ * <li>integers are written as variable-length, zig-zag encoded numbers
+ * (small values, positive or negative, take a single byte)</li>
+ * <li>floating-point numbers are written in their IEEE 754 form</li>
+ * <li>strings are written in UTF-8 the first time they are seen, and added
+ * to a dictionary; further occurrences of the same string are written as a
+ * reference to their dictionary entry</li>
+ * <li>collections are written as their number of elements, followed by the
+ * elements themselves</li>
+ * </ul>
+ * Used as an {@link EventCodec}, the codec starts a new dictionary for each
+ * event, so that each event can be decoded on its own. The {@link Encoder}
+ * and {@link Decoder} classes can instead keep the dictionary from one event
+ * to the next, as is done by {@link WriteBinaryStream} and
+ * {@link ReadBinaryStream}.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class BinaryCodec implements EventCodec
+{
+  /**
+   * A single publicly visible instance of the codec
+   */
+  public static final BinaryCodec instance = new BinaryCodec();
+
+  /**
+   * The default maximum number of entries in a string dictionary
+   */
+  public static final int DEFAULT_DICTIONARY_SIZE = 4096;
+
+  /**
+   * Strings longer than this number of characters are never added to the
+   * dictionary
+   */
+  public static final int MAX_DICTIONARY_STRING = 256;
+
+  /**
+   * The largest number of bytes or elements a decoder allocates at once for
+   * a value whose length is read from its input. Longer values are read into
+   * arrays that grow as their contents arrive, so that a corrupted length
+   * does not make the decoder allocate a huge array.
+   */
+  protected static final int MAX_PREALLOCATION = 65536;
+
+  /*
+   * Type tags
+   */
+  protected static final int TAG_NULL = 0;
+  protected static final int TAG_FALSE = 1;
+  protected static final int TAG_TRUE = 2;
+  protected static final int TAG_INT = 3;
+  protected static final int TAG_LONG = 4;
+  protected static final int TAG_SHORT = 5;
+  protected static final int TAG_BYTE = 6;
+  protected static final int TAG_FLOAT = 7;
+  protected static final int TAG_DOUBLE = 8;
+  protected static final int TAG_STRING = 9;
+  protected static final int TAG_STRING_DEF = 10;
+  protected static final int TAG_STRING_REF = 11;
+  protected static final int TAG_BYTES = 12;
+  protected static final int TAG_ARRAY = 13;
+  protected static final int TAG_LIST = 14;
+  protected static final int TAG_SET = 15;
+  protected static final int TAG_MAP = 16;
+  protected static final int TAG_MULTISET = 17;
+
+  /**
+   * The charset used to encode strings
+   */
+  protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+  protected BinaryCodec()
+  {
+    super();
+  }
+
+  @Override
+  public byte[] encode(Object o) throws IOException
+  {
+    Encoder enc = new Encoder();
+    enc.write(o);
+    return enc.toByteArray();
+  }
+
+  @Override
+  public Object decode(ByteBuffer buffer) throws IOException
+  {
+    return new BufferDecoder(buffer).read();
+  }
+
+  /**
+   * Writes events into a growing array of bytes
+   */
+  public static class Encoder
+  {
+    /**
+     * The bytes written so far
+     */
+    protected byte[] m_bytes = new byte[256];
+
+    /**
+     * The number of bytes written so far
+     */
+    protected int m_length = 0;
+
+    /**
+     * The index of each string in the dictionary
+     */
+    protected final Map<String,Integer> m_dictionary = new HashMap<String,Integer>();
+
+    /**
+     * The maximum number of entries in the dictionary
+     */
+    protected final int m_maxEntries;
+
+    /**
+     * Creates a new encoder with a dictionary of the default size
+     */
+    public Encoder()
+    {
+      this(DEFAULT_DICTIONARY_SIZE);
+    }
+
+    /**
+     * Creates a new encoder
+     * 
+     * @param dictionary_size
+     *          The maximum number of entries in the string dictionary. Once
+     *          it is full, new strings are written in full every time.
+     */
+    public Encoder(int dictionary_size)
+    {
+      super();
+      m_maxEntries = dictionary_size;
+    }
+
+    /**
+     * Gets the number of bytes written since the last call to
+     * {@link #clear()}
+     * 
+     * @return The number of bytes
+     */
+    public int size()
+    {
+      return m_length;
+    }
+
+    /**
+     * Gets a copy of the bytes written since the last call to
+     * {@link #clear()}
+     * 
+     * @return The bytes
+     */
+    /*@ non_null @*/ public byte[] toByteArray()
+    {
+      byte[] out = new byte[m_length];
+      System.arraycopy(m_bytes, 0, out, 0, m_length);
+      return out;
+    }
+
+    /**
+     * Writes the bytes written since the last call to {@link #clear()} to an
+     * output stream
+     * 
+     * @param os
+     *          The output stream
+     * @throws IOException
+     *           If writing to the stream fails
+     */
+    public void writeTo(/*@ non_null @*/ OutputStream os) throws IOException
+    {
+      os.write(m_bytes, 0, m_length);
+    }
+
+    /**
+     * Discards the bytes written so far. The dictionary is kept.
+     */
+    public void clear()
+    {
+      m_length = 0;
+    }
+
+    /**
+     * Discards the bytes written so far, and empties the dictionary
+     */
+    public void reset()
+    {
+      m_length = 0;
+      m_dictionary.clear();
+    }
+
+    /**
+     * Writes a value. If the value cannot be written, the encoder is left
+     * as it was before the call.
+     * 
+     * @param o
+     *          The value
+     * @throws IOException
+     *           If the value, or one of the values it contains, is of a type
+     *           the codec does not handle
+     */
+    public void write(Object o) throws IOException
+    {
+      int length = m_length;
+      int entries = m_dictionary.size();
+      try
+      {
+        writeValue(o);
+      }
+      catch (IOException e)
+      {
+        m_length = length;
+        if (m_dictionary.size() > entries)
+        {
+          Iterator<Integer> it = m_dictionary.values().iterator();
+          while (it.hasNext())
+          {
+            if (it.next() >= entries)
+            {
+              it.remove();
+            }
+          }
+        }
+        throw e;
+      }
+    }
+
+    /**
+     * Writes a value and the values it contains
+     * 
+     * @param o
+     *          The value
+     * @throws IOException
+     *           If a value is of a type the codec does not handle
+     */
+    protected void writeValue(Object o) throws IOException
+    {
+      if (o == null)
+      {
+        writeByte(TAG_NULL);
+      }
+      else if (o instanceof String)
+      {
+        writeString((String) o);
+      }
+      else if (o instanceof Integer)
+      {
+        writeByte(TAG_INT);
+        writeVarint(zigzag((Integer) o));
+      }
+      else if (o instanceof Boolean)
+      {
+        writeByte(((Boolean) o) ? TAG_TRUE : TAG_FALSE);
+      }
+      else if (o instanceof Float)
+      {
+        writeByte(TAG_FLOAT);
+        writeFixed(Float.floatToIntBits((Float) o), 4);
+      }
+      else if (o instanceof Double)
+      {
+        writeByte(TAG_DOUBLE);
+        writeFixed(Double.doubleToLongBits((Double) o), 8);
+      }
+      else if (o instanceof Long)
+      {
+        writeByte(TAG_LONG);
+        writeVarint(zigzag((Long) o));
+      }
+      else if (o instanceof Short)
+      {
+        writeByte(TAG_SHORT);
+        writeVarint(zigzag((Short) o));
+      }
+      else if (o instanceof Byte)
+      {
+        writeByte(TAG_BYTE);
+        writeByte((Byte) o);
+      }
+      else if (o instanceof byte[])
+      {
+        byte[] b = (byte[]) o;
+        writeByte(TAG_BYTES);
+        writeVarint(b.length);
+        writeBytes(b, 0, b.length);
+      }
+      else if (o instanceof Object[])
+      {
+        Object[] a = (Object[]) o;
+        writeByte(TAG_ARRAY);
+        writeVarint(a.length);
+        for (Object e : a)
+        {
+          writeValue(e);
+        }
+      }
+      else if (o instanceof List)
+      {
+        List<?> l = (List<?>) o;
+        writeByte(TAG_LIST);
+        writeVarint(l.size());
+        for (Object e : l)
+        {
+          writeValue(e);
+        }
+      }
+      else if (o instanceof Multiset)
+      {
+        // Must come before Set, which Multiset implements
+        Multiset m = (Multiset) o;
+        Set<Object> keys = m.keySet();
+        writeByte(TAG_MULTISET);
+        writeVarint(keys.size());
+        for (Object e : keys)
+        {
+          writeValue(e);
+          writeVarint(m.get(e));
+        }
+      }
+      else if (o instanceof Set)
+      {
+        Set<?> s = (Set<?>) o;
+        writeByte(TAG_SET);
+        writeVarint(s.size());
+        for (Object e : s)
+        {
+          writeValue(e);
+        }
+      }
+      else if (o instanceof Map)
+      {
+        Map<?,?> m = (Map<?,?>) o;
+        writeByte(TAG_MAP);
+        writeVarint(m.size());
+        for (Map.Entry<?,?> e : m.entrySet())
+        {
+          writeValue(e.getKey());
+          writeValue(e.getValue());
+        }
+      }
+      else
+      {
+        throw new IOException("Cannot encode an object of type " + o.getClass().getName());
+      }
+    }
+
+    /**
+     * Writes a string, using the dictionary when possible
+     * 
+     * @param s
+     *          The string
+     */
+    protected void writeString(String s)
+    {
+      Integer index = m_dictionary.get(s);
+      if (index != null)
+      {
+        writeByte(TAG_STRING_REF);
+        writeVarint(index);
+        return;
+      }
+      if (m_dictionary.size() < m_maxEntries && s.length() <= MAX_DICTIONARY_STRING)
+      {
+        m_dictionary.put(s, m_dictionary.size());
+        writeByte(TAG_STRING_DEF);
+      }
+      else
+      {
+        writeByte(TAG_STRING);
+      }
+      int len = s.length();
+      ensure(len + 5);
+      int start = m_length;
+      writeVarint(len);
+      for (int i = 0; i < len; i++)
+      {
+        char c = s.charAt(i);
+        if (c >= 0x80)
+        {
+          // Not plain ASCII: start over with a full UTF-8 encoding
+          m_length = start;
+          byte[] b = s.getBytes(UTF8);
+          writeVarint(b.length);
+          writeBytes(b, 0, b.length);
+          return;
+        }
+        m_bytes[m_length++] = (byte) c;
+      }
+    }
+
+    /**
+     * Writes a non-negative number in 7-bit groups, least significant group
+     * first
+     * 
+     * @param v
+     *          The number
+     */
+    protected void writeVarint(long v)
+    {
+      ensure(10);
+      while ((v & ~0x7FL) != 0)
+      {
+        m_bytes[m_length++] = (byte) ((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      m_bytes[m_length++] = (byte) v;
+    }
+
+    /**
+     * Writes a number on a fixed number of bytes, most significant byte
+     * first
+     * 
+     * @param v
+     *          The number
+     * @param num_bytes
+     *          The number of bytes
+     */
+    protected void writeFixed(long v, int num_bytes)
+    {
+      ensure(num_bytes);
+      for (int i = num_bytes - 1; i >= 0; i--)
+      {
+        m_bytes[m_length++] = (byte) (v >>> (8 * i));
+      }
+    }
+
+    /**
+     * Writes a single byte
+     * 
+     * @param b
+     *          The byte
+     */
+    protected void writeByte(int b)
+    {
+      ensure(1);
+      m_bytes[m_length++] = (byte) b;
+    }
+
+    /**
+     * Writes a sequence of bytes
+     * 
+     * @param b
+     *          The array containing the bytes
+     * @param off
+     *          The position of the first byte in the array
+     * @param len
+     *          The number of bytes
+     */
+    protected void writeBytes(byte[] b, int off, int len)
+    {
+      ensure(len);
+      System.arraycopy(b, off, m_bytes, m_length, len);
+      m_length += len;
+    }
+
+    /**
+     * Makes sure the array has room for a number of bytes
+     * 
+     * @param n
+     *          The number of bytes
+     */
+    protected void ensure(int n)
+    {
+      if (m_length + n > m_bytes.length)
+      {
+        byte[] bytes = new byte[Math.max(m_bytes.length * 2, m_length + n)];
+        System.arraycopy(m_bytes, 0, bytes, 0, m_length);
+        m_bytes = bytes;
+      }
+    }
+  }
+
+  /**
+   * Reads events written by an {@link Encoder}
+   */
+  public abstract static class Decoder
+  {
+    /**
+     * The strings of the dictionary, in the order they were added
+     */
+    protected final List<String> m_dictionary = new ArrayList<String>();
+
+    /**
+     * A buffer used to read strings
+     */
+    protected byte[] m_stringBuffer = new byte[256];
+
+    /**
+     * Empties the dictionary
+     */
+    public void reset()
+    {
+      m_dictionary.clear();
+    }
+
+    /**
+     * Reads a value
+     * 
+     * @return The value
+     * @throws IOException
+     *           If the input ends before the value is complete, or does not
+     *           contain a valid value
+     */
+    public Object read() throws IOException
+    {
+      int tag = readByte();
+      switch (tag)
+      {
+      case TAG_NULL:
+        return null;
+      case TAG_FALSE:
+        return Boolean.FALSE;
+      case TAG_TRUE:
+        return Boolean.TRUE;
+      case TAG_INT:
+        return (int) unzigzag(readVarint());
+      case TAG_LONG:
+        return unzigzag(readVarint());
+      case TAG_SHORT:
+        return (short) unzigzag(readVarint());
+      case TAG_BYTE:
+        return (byte) readByte();
+      case TAG_FLOAT:
+        return Float.intBitsToFloat((int) readFixed(4));
+      case TAG_DOUBLE:
+        return Double.longBitsToDouble(readFixed(8));
+      case TAG_STRING:
+        return readString();
+      case TAG_STRING_DEF:
+      {
+        String s = readString();
+        m_dictionary.add(s);
+        return s;
+      }
+      case TAG_STRING_REF:
+      {
+        int index = readLength();
+        if (index >= m_dictionary.size())
+        {
+          throw new IOException("Invalid string reference " + index);
+        }
+        return m_dictionary.get(index);
+      }
+      case TAG_BYTES:
+      {
+        int len = readLength(1);
+        return readBytes(new byte[Math.min(len, MAX_PREALLOCATION)], len);
+      }
+      case TAG_ARRAY:
+      {
+        int len = readLength(1);
+        Object[] a = new Object[Math.min(len, MAX_PREALLOCATION)];
+        for (int i = 0; i < len; i++)
+        {
+          if (i == a.length)
+          {
+            a = Arrays.copyOf(a, (int) Math.min(len, 2L * a.length));
+          }
+          a[i] = read();
+        }
+        return a;
+      }
+      case TAG_LIST:
+      {
+        int len = readLength(1);
+        List<Object> l = new ArrayList<Object>(Math.min(len, MAX_PREALLOCATION));
+        for (int i = 0; i < len; i++)
+        {
+          l.add(read());
+        }
+        return l;
+      }
+      case TAG_SET:
+      {
+        int len = readLength(1);
+        Set<Object> s = new HashSet<Object>();
+        for (int i = 0; i < len; i++)
+        {
+          s.add(read());
+        }
+        return s;
+      }
+      case TAG_MAP:
+      {
+        int len = readLength(2);
+        Map<Object,Object> m = new HashMap<Object,Object>();
+        for (int i = 0; i < len; i++)
+        {
+          Object k = read();
+          m.put(k, read());
+        }
+        return m;
+      }
+      case TAG_MULTISET:
+      {
+        int len = readLength(2);
+        Multiset m = new Multiset();
+        for (int i = 0; i < len; i++)
+        {
+          Object e = read();
+          m.addElement(e, readLength());
+        }
+        return m;
+      }
+      default:
+        throw new IOException("Invalid type tag " + tag);
+      }
+    }
+
+    /**
+     * Reads a string written in UTF-8
+     * 
+     * @return The string
+     * @throws IOException
+     *           If the input ends before the string is complete
+     */
+    protected String readString() throws IOException
+    {
+      int len = readLength(1);
+      m_stringBuffer = readBytes(m_stringBuffer, len);
+      return new String(m_stringBuffer, 0, len, UTF8);
+    }
+
+    /**
+     * Reads a sequence of bytes into an array, which is grown as the bytes
+     * arrive if it is too small
+     * 
+     * @param b
+     *          The array
+     * @param len
+     *          The number of bytes to read
+     * @return The array containing the bytes, which is <tt>b</tt> or a
+     *         larger copy of it
+     * @throws IOException
+     *           If the input ends before all bytes are read
+     */
+    protected byte[] readBytes(byte[] b, int len) throws IOException
+    {
+      int pos = 0;
+      while (pos < len)
+      {
+        if (pos == b.length)
+        {
+          b = Arrays.copyOf(b, (int) Math.min(len, Math.max(2L * b.length, MAX_PREALLOCATION)));
+        }
+        int n = Math.min(len, b.length) - pos;
+        readBytes(b, pos, n);
+        pos += n;
+      }
+      return b;
+    }
+
+    /**
+     * Reads a length or an index
+     * 
+     * @return The value
+     * @throws IOException
+     *           If the input ends before the value is complete, or if the
+     *           value is not a valid length
+     */
+    protected int readLength() throws IOException
+    {
+      long v = readVarint();
+      if (v < 0 || v > Integer.MAX_VALUE)
+      {
+        throw new IOException("Invalid length " + v);
+      }
+      return (int) v;
+    }
+
+    /**
+     * Reads the length of a value, and checks that the input can contain a
+     * value of that length
+     * 
+     * @param min_bytes
+     *          The minimum number of bytes taken by each element of the value
+     * @return The length
+     * @throws IOException
+     *           If the input ends before the length is complete, or if the
+     *           remaining input is too short for a value of that length
+     */
+    protected int readLength(int min_bytes) throws IOException
+    {
+      int len = readLength();
+      if ((long) len * min_bytes > available())
+      {
+        throw new IOException("Length " + len + " exceeds the remaining input");
+      }
+      return len;
+    }
+
+    /**
+     * Gets an upper bound on the number of bytes left in the input
+     * 
+     * @return The number of bytes, or {@link Integer#MAX_VALUE} if it is not
+     *         known
+     */
+    protected int available()
+    {
+      return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Reads a number written in 7-bit groups
+     * 
+     * @return The number
+     * @throws IOException
+     *           If the input ends before the number is complete
+     */
+    protected long readVarint() throws IOException
+    {
+      long v = 0;
+      for (int shift = 0; shift < 64; shift += 7)
+      {
+        int b = readByte();
+        v |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0)
+        {
+          return v;
+        }
+      }
+      throw new IOException("Malformed variable-length number");
+    }
+
+    /**
+     * Reads a number written on a fixed number of bytes
+     * 
+     * @param num_bytes
+     *          The number of bytes
+     * @return The number
+     * @throws IOException
+     *           If the input ends before the number is complete
+     */
+    protected long readFixed(int num_bytes) throws IOException
+    {
+      long v = 0;
+      for (int i = 0; i < num_bytes; i++)
+      {
+        v = (v << 8) | readByte();
+      }
+      return v;
+    }
+
+    /**
+     * Reads a single byte
+     * 
+     * @return The byte, as a value between 0 and 255
+     * @throws IOException
+     *           If the input has ended
+     */
+    protected abstract int readByte() throws IOException;
+
+    /**
+     * Reads a sequence of bytes
+     * 
+     * @param b
+     *          The array where the bytes are written
+     * @param off
+     *          The position of the first byte in the array
+     * @param len
+     *          The number of bytes to read
+     * @throws IOException
+     *           If the input ends before all bytes are read
+     */
+    protected abstract void readBytes(byte[] b, int off, int len) throws IOException;
+  }
+
+  /**
+   * Decoder reading from a {@link ByteBuffer}
+   */
+  public static class BufferDecoder extends Decoder
+  {
+    /**
+     * The buffer to read from
+     */
+    protected final ByteBuffer m_buffer;
+
+    /**
+     * Creates a new buffer decoder
+     * 
+     * @param buffer
+     *          The buffer to read from, starting at its current position
+     */
+    public BufferDecoder(/*@ non_null @*/ ByteBuffer buffer)
+    {
+      super();
+      m_buffer = buffer;
+    }
+
+    @Override
+    protected int available()
+    {
+      return m_buffer.remaining();
+    }
+
+    @Override
+    protected int readByte() throws IOException
+    {
+      if (!m_buffer.hasRemaining())
+      {
+        throw new EOFException();
+      }
+      return m_buffer.get() & 0xFF;
+    }
+
+    @Override
+    protected void readBytes(byte[] b, int off, int len) throws IOException
+    {
+      if (m_buffer.remaining() < len)
+      {
+        throw new EOFException();
+      }
+      m_buffer.get(b, off, len);
+    }
+  }
+
+  /**
+   * Decoder reading from an {@link InputStream}. Reads block until enough
+   * bytes are available.
+   */
+  public static class StreamDecoder extends Decoder
+  {
+    /**
+     * The stream to read from
+     */
+    protected final InputStream m_stream;
+
+    /**
+     * A byte read in advance by {@link #hasNext()}, or -1
+     */
+    protected int m_peek = -1;
+
+    /**
+     * Creates a new stream decoder
+     * 
+     * @param is
+     *          The stream to read from. It is a good idea to give a
+     *          buffered stream, as the decoder reads it one byte at a time.
+     */
+    public StreamDecoder(/*@ non_null @*/ InputStream is)
+    {
+      super();
+      m_stream = is;
+    }
+
+    /**
+     * Determines if the stream contains another value. This method blocks
+     * until the first byte of the next value arrives, or until the stream
+     * ends.
+     * 
+     * @return <tt>true</tt> if another value follows, <tt>false</tt> if the
+     *         stream has ended
+     * @throws IOException
+     *           If reading from the stream fails
+     */
+    public boolean hasNext() throws IOException
+    {
+      if (m_peek < 0)
+      {
+        m_peek = m_stream.read();
+      }
+      return m_peek >= 0;
+    }
+
+    @Override
+    protected int readByte() throws IOException
+    {
+      if (m_peek >= 0)
+      {
+        int b = m_peek;
+        m_peek = -1;
+        return b;
+      }
+      int b = m_stream.read();
+      if (b < 0)
+      {
+        throw new EOFException();
+      }
+      return b;
+    }
+
+    @Override
+    protected void readBytes(byte[] b, int off, int len) throws IOException
+    {
+      if (len > 0 && m_peek >= 0)
+      {
+        b[off++] = (byte) m_peek;
+        m_peek = -1;
+        len--;
+      }
+      while (len > 0)
+      {
+        int n = m_stream.read(b, off, len);
+        if (n < 0)
+        {
+          throw new EOFException();
+        }
+        off += n;
+        len -= n;
+      }
+    }
+  }
+
+  /**
+   * Maps a signed number to a non-negative one, so that numbers of small
+   * absolute value have a short encoding
+   * 
+   * @param v
+   *          The number
+   * @return The encoded number
+   */
+  protected static long zigzag(long v)
+  {
+    return (v << 1) ^ (v >> 63);
+  }
+
+  /**
+   * Reverses the effect of {@link #zigzag(long)}
+   * 
+   * @param v
+   *          The encoded number
+   * @return The number
+   */
+  protected static long unzigzag(long v)
+  {
+    return (v >>> 1) ^ -(v & 1);
+  }
+}
@@ -27,6 +27,18 @@ import java.io.IOException;
  * graphically as:
  * <p>
  * <img src="{@docRoot}/doc-files/io/Call.png" alt="Call">
+ * <p>
+ * By default, a new process is started for each event. When the command
+ * can handle a sequence of requests, it is much faster to start it once and
+ * keep it running: this is done by calling {@link #setPoolSize(int)
+ * setPoolSize()}, which makes the processor send events to a
+ * {@link CoProcessPool}. In that case, the command must follow the framing
+ * protocol described in {@link CoProcessPool}. Copies of the processor
+ * obtained with {@link #duplicate(boolean) duplicate()} share the same pool,
+ * so that copies running in parallel use different processes. Each copy
+ * that has received an event is a user of the pool until its trace ends or
+ * it is stopped; the processes are terminated when no copy uses them
+ * anymore.
  * 
  * @author Sylvain Hallé
  * @since 0.2.1
@@ -39,6 +51,23 @@ public class Call extends UniformProcessor
    */
   protected final String[] m_command;
 
+  /**
+   * The pool of processes to send events to, or <tt>null</tt> to start a new
+   * process for each event
+   */
+  protected CoProcessPool m_pool = null;
+
+  /**
+   * Whether this processor is attached to the pool as one of its users
+   */
+  protected boolean m_attached = false;
+
+  /**
+   * Creates a new call processor
+   * 
+   * @param command
+   *          The command to call, followed by its arguments
+   */
   public Call(String ... command)
   {
     super(1, 1);
@@ -50,13 +79,37 @@ public class Call extends UniformProcessor
    */
   protected static long s_waitInterval = 100;
 
+  /**
+   * Sets the number of long-running processes events are sent to
+   * 
+   * @param size
+   *          The maximum number of processes, or 0 to start a new process
+   *          for each event (default)
+   * @return This call processor
+   */
+  public Call setPoolSize(int size)
+  {
+    detach();
+    m_pool = size > 0 ? new CoProcessPool(m_command, size) : null;
+    return this;
+  }
+
   @Override
   protected boolean compute(Object[] inputs, Object[] outputs)
   {
     // Pass the event (as is) to the standard input of the command
     try
     {
-      byte[] contents = CommandRunner.runAndGet(m_command, (byte[]) inputs[0]);
+      byte[] contents;
+      if (m_pool != null)
+      {
+        attach();
+        contents = m_pool.call((byte[]) inputs[0]);
+      }
+      else
+      {
+        contents = CommandRunner.runAndGet(m_command, (byte[]) inputs[0]);
+      }
       outputs[0] = contents;
       return true;
     }
@@ -66,9 +119,53 @@ public class Call extends UniformProcessor
     }
   }
 
+  @Override
+  protected boolean onEndOfTrace(Object[] outputs)
+  {
+    detach();
+    return false;
+  }
+
+  /**
+   * Stops using the pool, if any. Its processes are terminated if no other
+   * copy of the processor uses them. The pool is used again if more events
+   * are received.
+   */
+  @Override
+  public void stop()
+  {
+    detach();
+  }
+
+  /**
+   * Registers this processor as a user of the pool, if it is not already
+   */
+  protected synchronized void attach()
+  {
+    if (!m_attached)
+    {
+      m_pool.attach();
+      m_attached = true;
+    }
+  }
+
+  /**
+   * Unregisters this processor as a user of the pool, if it is one
+   */
+  protected synchronized void detach()
+  {
+    if (m_attached)
+    {
+      m_attached = false;
+      m_pool.detach();
+    }
+  }
+
   @Override
   public Call duplicate(boolean with_state)
   {
-    return new Call(m_command);
+    Call c = new Call(m_command);
+    c.m_pool = m_pool;
+    return c;
   }
 }
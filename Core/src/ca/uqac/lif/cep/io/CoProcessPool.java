@@ -0,0 +1,374 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of long-running instances of an external command. Rather than
+ * starting a new process for every request, the pool keeps up to a given
+ * number of child processes alive, and exchanges requests and responses
+ * with them through their standard input and output.
+ * <p>
+ * Requests and responses are <em>framed</em>: each one is written as its
+ * length (a 4-byte, big-endian integer) followed by that many bytes. The
+ * command must therefore read a frame from its standard input, and answer
+ * with exactly one frame on its standard output, for as long as its input
+ * remains open. Whatever the command writes to its standard error is
+ * discarded.
+ * <p>
+ * Each request is handled by one process at a time; requests issued
+ * concurrently from multiple threads are spread over different processes,
+ * and wait if all the processes are busy. Processes are started when they
+ * are first needed. A process whose exchange fails is destroyed, and
+ * replaced by a new one on a subsequent request.
+ * <p>
+ * A pool can be shared by several users, such as the copies of a
+ * {@link Call} processor. Each user calls {@link #attach()} before sending
+ * its first request, and {@link #detach()} once it is done; the processes
+ * are terminated when the last user detaches, rather than under the feet
+ * of users still sending requests.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class CoProcessPool implements Closeable
+{
+  /**
+   * The command to run
+   */
+  protected final String[] m_command;
+
+  /**
+   * The maximum number of processes
+   */
+  protected final int m_size;
+
+  /**
+   * The processes that are waiting for a request
+   */
+  protected final BlockingQueue<CoProcess> m_idle;
+
+  /**
+   * All the processes currently alive
+   */
+  protected final List<CoProcess> m_processes;
+
+  /**
+   * The number of users attached to the pool
+   */
+  protected int m_users = 0;
+
+  /**
+   * Creates a new pool of processes
+   * 
+   * @param command
+   *          The command to run
+   * @param size
+   *          The maximum number of processes in the pool
+   */
+  public CoProcessPool(/*@ non_null @*/ String[] command, int size)
+  {
+    super();
+    if (size < 1)
+    {
+      throw new IllegalArgumentException("The pool must have at least one process");
+    }
+    m_command = command;
+    m_size = size;
+    m_idle = new LinkedBlockingQueue<CoProcess>();
+    m_processes = new ArrayList<CoProcess>(size);
+  }
+
+  /**
+   * Gets the maximum number of processes in the pool
+   * 
+   * @return The number of processes
+   */
+  public int getSize()
+  {
+    return m_size;
+  }
+
+  /**
+   * Registers a new user of the pool
+   */
+  public void attach()
+  {
+    synchronized (m_processes)
+    {
+      m_users++;
+    }
+  }
+
+  /**
+   * Unregisters a user of the pool. When no user remains, the processes of
+   * the pool are terminated, as by {@link #close()}.
+   */
+  public void detach()
+  {
+    synchronized (m_processes)
+    {
+      if (m_users == 0 || --m_users > 0)
+      {
+        return;
+      }
+    }
+    close();
+  }
+
+  /**
+   * Sends a request to one of the processes of the pool, and waits for its
+   * response
+   * 
+   * @param request
+   *          The request
+   * @return The response
+   * @throws IOException
+   *           If a process cannot be started, or if the exchange with the
+   *           process fails
+   */
+  /*@ non_null @*/ public byte[] call(/*@ non_null @*/ byte[] request) throws IOException
+  {
+    CoProcess p = lease();
+    try
+    {
+      byte[] response = p.exchange(request);
+      release(p);
+      return response;
+    }
+    catch (IOException e)
+    {
+      discard(p);
+      throw e;
+    }
+  }
+
+  /**
+   * Terminates all the processes of the pool. Processes handling a request
+   * at this moment are terminated as well, and the corresponding calls
+   * fail. The pool can still be used afterwards; new processes are started
+   * as needed.
+   */
+  @Override
+  public void close()
+  {
+    List<CoProcess> processes;
+    synchronized (m_processes)
+    {
+      processes = new ArrayList<CoProcess>(m_processes);
+      m_processes.clear();
+      m_idle.clear();
+    }
+    for (CoProcess p : processes)
+    {
+      p.destroy();
+    }
+  }
+
+  /**
+   * Gets an idle process, starting a new one if the pool is not full
+   * 
+   * @return The process
+   * @throws IOException
+   *           If a new process cannot be started
+   */
+  protected CoProcess lease() throws IOException
+  {
+    for (;;)
+    {
+      CoProcess p = m_idle.poll();
+      if (p != null)
+      {
+        return p;
+      }
+      synchronized (m_processes)
+      {
+        if (m_processes.size() < m_size)
+        {
+          p = new CoProcess(new ProcessBuilder(m_command).start());
+          m_processes.add(p);
+          return p;
+        }
+      }
+      try
+      {
+        // Check again from time to time, in case a process is discarded
+        p = m_idle.poll(50, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for a process");
+      }
+      if (p != null)
+      {
+        return p;
+      }
+    }
+  }
+
+  /**
+   * Puts a process back in the pool once it has handled a request, unless
+   * the pool has been closed in the meantime
+   * 
+   * @param p
+   *          The process
+   */
+  protected void release(CoProcess p)
+  {
+    synchronized (m_processes)
+    {
+      if (m_processes.contains(p))
+      {
+        m_idle.add(p);
+      }
+    }
+  }
+
+  /**
+   * Destroys a process and removes it from the pool
+   * 
+   * @param p
+   *          The process
+   */
+  protected void discard(CoProcess p)
+  {
+    synchronized (m_processes)
+    {
+      m_processes.remove(p);
+    }
+    p.destroy();
+  }
+
+  /**
+   * One of the processes of the pool
+   */
+  protected static class CoProcess
+  {
+    /**
+     * The process
+     */
+    protected final Process m_process;
+
+    /**
+     * The process' standard input
+     */
+    protected final DataOutputStream m_stdin;
+
+    /**
+     * The process' standard output
+     */
+    protected final DataInputStream m_stdout;
+
+    /**
+     * Wraps a process that has just been started
+     * 
+     * @param p
+     *          The process
+     */
+    public CoProcess(Process p)
+    {
+      super();
+      m_process = p;
+      m_stdin = new DataOutputStream(new BufferedOutputStream(p.getOutputStream()));
+      m_stdout = new DataInputStream(new BufferedInputStream(p.getInputStream()));
+      Thread t = new Thread(new Drain(p.getErrorStream()), "CoProcess-stderr");
+      t.setDaemon(true);
+      t.start();
+    }
+
+    /**
+     * Sends a request to the process and reads its response
+     * 
+     * @param request
+     *          The request
+     * @return The response
+     * @throws IOException
+     *           If writing the request or reading the response fails
+     */
+    public byte[] exchange(byte[] request) throws IOException
+    {
+      m_stdin.writeInt(request.length);
+      m_stdin.write(request);
+      m_stdin.flush();
+      int len = m_stdout.readInt();
+      if (len < 0)
+      {
+        throw new IOException("Invalid response length " + len);
+      }
+      byte[] response = new byte[len];
+      m_stdout.readFully(response);
+      return response;
+    }
+
+    /**
+     * Terminates the process
+     */
+    public void destroy()
+    {
+      m_process.destroy();
+    }
+  }
+
+  /**
+   * Reads an input stream until it ends, and discards its contents
+   */
+  protected static class Drain implements Runnable
+  {
+    /**
+     * The stream to read
+     */
+    private final InputStream m_is;
+
+    public Drain(InputStream is)
+    {
+      super();
+      m_is = is;
+    }
+
+    @Override
+    public void run()
+    {
+      byte[] buffer = new byte[1024];
+      try
+      {
+        while (m_is.read(buffer) >= 0)
+        {
+          // Discard
+        }
+        m_is.close();
+      }
+      catch (IOException e)
+      {
+        // The process has ended
+      }
+    }
+  }
+}
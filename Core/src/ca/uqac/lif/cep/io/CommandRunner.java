@@ -17,10 +17,10 @@
  */
 package ca.uqac.lif.cep.io;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -94,13 +94,13 @@ public class CommandRunner extends Thread
   protected class StreamGobbler extends Thread
   {
     InputStream m_is;
-    ArrayList<Byte> m_contents;
+    ByteArrayOutputStream m_contents;
     String m_name;
 
     private StreamGobbler(InputStream is, String name)
     {
       super();
-      m_contents = new ArrayList<Byte>();
+      m_contents = new ByteArrayOutputStream();
       this.m_is = is;
       m_name = name;
     }
@@ -116,10 +116,7 @@ public class CommandRunner extends Thread
         {
           synchronized (this)
           {
-            for (int i = 0; i < len; i++)
-            {
-              m_contents.add(buffer[i]);
-            }
+            m_contents.write(buffer, 0, len);
           }
         }
         m_is.close();
@@ -137,14 +134,7 @@ public class CommandRunner extends Thread
      */
     public synchronized byte[] getBytes()
     {
-      int size = m_contents.size();
-      byte[] out = new byte[size];
-      int i = 0;
-      for (byte b : m_contents)
-      {
-        out[i++] = b;
-      }
-      return out;
+      return m_contents.toByteArray();
     }
   }
 
@@ -206,22 +196,22 @@ public class CommandRunner extends Thread
       process = builder.start();
       m_stderrGobbler = new StreamGobbler(process.getErrorStream(), "ERR");
       m_stdoutGobbler = new StreamGobbler(process.getInputStream(), "IN");
+      // Start gobblers first, so that a command producing a lot of output
+      // before reading all its input does not block
+      m_stderrGobbler.start();
+      m_stdoutGobbler.start();
       // Send data into stdin of process
+      OutputStream process_stdin = process.getOutputStream();
       if (m_stdin != null)
       {
-        OutputStream process_stdin = process.getOutputStream();
         process_stdin.write(m_stdin, 0, m_stdin.length);
         process_stdin.flush();
-        process_stdin.close();
       }
-      // Start gobblers
-      m_stderrGobbler.start();
-      m_stdoutGobbler.start();
+      process_stdin.close();
       m_errorCode = process.waitFor();
-      do
-      {
-        // Wait for both gobblers to finish
-      } while (!m_stop && (m_stderrGobbler.isAlive() || m_stdoutGobbler.isAlive()));
+      // Wait for both gobblers to finish
+      m_stderrGobbler.join();
+      m_stdoutGobbler.join();
     }
     catch (InterruptedException e)
     {
@@ -0,0 +1,911 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import ca.uqac.lif.cep.AbstractEventTracker;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.petitpoucet.DirectValue;
+import ca.uqac.lif.petitpoucet.NodeFunction;
+import ca.uqac.lif.petitpoucet.ProvenanceNode;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Event tracker storing associations on disk, so that the provenance of an
+ * event can be queried long after it was produced, without keeping the
+ * associations in memory. The tracker uses a directory containing:
+ * <ul>
+ * <li>an <em>association log</em>, to which every association is appended
+ * as a fixed-size record;</li>
+ * <li>for each output stream of each processor, an <em>index</em> giving,
+ * for each position of the stream, the number of the last record
+ * associated to this position. Each record in turn contains the number of
+ * the previous record for the same position, so that the associations of
+ * an event are found by following a short chain of records;</li>
+ * <li>a log of the {@link NodeFunction}s passed to
+ * {@link #associateTo(int, NodeFunction, int, int) associateTo()}. Only
+ * their data point ID and their string representation are kept; they are
+ * read back as {@link StoredFunction}s;</li>
+ * <li>the list of connections between processors.</li>
+ * </ul>
+ * Writes are buffered; the buffers are written to the files when they are
+ * full, before a query, and when {@link #flush()} or {@link #close()} is
+ * called. Provenance trees are reconstructed lazily from the index, reading
+ * only the records of the events they contain; the parents of the most
+ * recently resolved events are kept in a cache (see
+ * {@link #setCacheSize(int)}). At most
+ * {@link #setMaxOpenIndexes(int) a fixed number} of index files are kept
+ * open at any time; the least recently used one is written and closed
+ * when another one must be opened.
+ * <p>
+ * A directory written by a previous tracker can be reopened, either to
+ * query it or to append more associations. Beware that processor IDs are
+ * only unique within a run of the JVM; queries must use the IDs the
+ * processors had when the associations were recorded.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class DiskEventTracker extends AbstractEventTracker implements Closeable
+{
+  /**
+   * The size of a record of the association log, in bytes. A record
+   * contains the processor ID, the output stream index, the output
+   * position, the kind of association, the index and position of the event
+   * the output event depends on, and the number of the previous record for
+   * the same output event.
+   */
+  protected static final int RECORD_SIZE = 32;
+
+  /**
+   * The default number of events whose parents are kept in the cache
+   */
+  public static final int DEFAULT_CACHE_SIZE = 4096;
+
+  /**
+   * The default maximum number of index files kept open
+   */
+  public static final int DEFAULT_MAX_OPEN_INDEXES = 64;
+
+  /**
+   * The size of the write buffer of the association log, in bytes
+   */
+  protected static final int BUFFER_SIZE = 65536;
+
+  /**
+   * The number of consecutive index entries buffered before being written
+   */
+  protected static final int INDEX_RUN = 1024;
+
+  /**
+   * The charset used to store node functions
+   */
+  protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * The directory of the tracker
+   */
+  protected final File m_directory;
+
+  /**
+   * The channel of the association log
+   */
+  protected final FileChannel m_log;
+
+  /**
+   * The write buffer of the association log
+   */
+  protected final ByteBuffer m_logBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+  /**
+   * The number of records in the association log, including those still in
+   * the buffer
+   */
+  protected long m_recordCount;
+
+  /**
+   * The channel of the log of node functions
+   */
+  protected final FileChannel m_functions;
+
+  /**
+   * The size of the log of node functions
+   */
+  protected long m_functionsSize;
+
+  /**
+   * The channel of the list of connections
+   */
+  protected final FileChannel m_connectionFile;
+
+  /**
+   * The open indexes of the output streams, in access order
+   */
+  protected final LinkedHashMap<Long, StreamIndex> m_indexes = new LinkedHashMap<Long, StreamIndex>(
+      16, 0.75f, true);
+
+  /**
+   * The maximum number of index files kept open
+   */
+  protected int m_maxOpenIndexes = DEFAULT_MAX_OPEN_INDEXES;
+
+  /**
+   * The output streams whose index was closed since the last call to
+   * {@link #sync()}, and must still be forced to the storage device
+   */
+  protected final Set<Long> m_closedIndexes = new HashSet<Long>();
+
+  /**
+   * The index written to last
+   */
+  protected StreamIndex m_lastIndex = null;
+
+  /**
+   * The maximum number of events whose parents are cached
+   */
+  protected int m_cacheSize = DEFAULT_CACHE_SIZE;
+
+  /**
+   * The parents of recently resolved events, in access order
+   */
+  protected final LinkedHashMap<EventFunction, NodeFunction[]> m_cache = new LinkedHashMap<EventFunction, NodeFunction[]>(
+      16, 0.75f, true)
+  {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<EventFunction, NodeFunction[]> e)
+    {
+      return size() > m_cacheSize;
+    }
+  };
+
+  /**
+   * Creates a new tracker, or reopens an existing one
+   * 
+   * @param directory
+   *          The directory of the tracker. It is created if it does not
+   *          exist.
+   * @throws IOException
+   *           If the directory cannot be opened
+   */
+  @SuppressWarnings("resource")
+  public DiskEventTracker(/*@ non_null @*/ File directory) throws IOException
+  {
+    super();
+    m_directory = directory;
+    if (!directory.isDirectory() && !directory.mkdirs())
+    {
+      throw new IOException("Cannot create directory " + directory);
+    }
+    m_log = new RandomAccessFile(new File(directory, "associations.log"), "rw").getChannel();
+    // A partially written record at the end of the log is removed
+    m_recordCount = m_log.size() / RECORD_SIZE;
+    m_log.truncate(m_recordCount * RECORD_SIZE);
+    m_log.position(m_recordCount * RECORD_SIZE);
+    m_functions = new RandomAccessFile(new File(directory, "functions.log"), "rw").getChannel();
+    m_functionsSize = m_functions.size();
+    m_connectionFile = new RandomAccessFile(new File(directory, "connections.log"), "rw").getChannel();
+    ByteBuffer b = ByteBuffer.allocate((int) (m_connectionFile.size() / 16 * 16));
+    readFully(m_connectionFile, b, 0);
+    b.flip();
+    while (b.hasRemaining())
+    {
+      super.setConnection(b.getInt(), b.getInt(), b.getInt(), b.getInt());
+    }
+    m_connectionFile.position(b.limit());
+  }
+
+  /**
+   * Sets the number of events whose parents are kept in memory after being
+   * read
+   * 
+   * @param size
+   *          The number of events
+   * @return This tracker
+   */
+  public synchronized DiskEventTracker setCacheSize(int size)
+  {
+    m_cacheSize = size;
+    m_cache.clear();
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of index files kept open. Each output stream
+   * of each processor has its own index; when a stream not among the
+   * open ones is written to or queried, the least recently used index is
+   * written and closed.
+   * 
+   * @param max
+   *          The maximum number of open index files; must be at least 1
+   * @return This tracker
+   */
+  public synchronized DiskEventTracker setMaxOpenIndexes(int max)
+  {
+    if (max < 1)
+    {
+      throw new IllegalArgumentException("At least one index must be open");
+    }
+    m_maxOpenIndexes = max;
+    try
+    {
+      closeIndexes(max);
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    return this;
+  }
+
+  /**
+   * Gets the number of associations stored by the tracker
+   * 
+   * @return The number of associations
+   */
+  public synchronized long getAssociationCount()
+  {
+    return m_recordCount;
+  }
+
+  @Override
+  public synchronized void associateTo(int id, NodeFunction f, int out_stream_index,
+      int out_stream_pos)
+  {
+    try
+    {
+      long offset = appendFunction(f);
+      append(id, out_stream_index, out_stream_pos, FUNCTION, (int) (offset >>> 32), (int) offset);
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+
+  @Override
+  public synchronized void associateToInput(int id, int in_stream_index, int in_stream_pos,
+      int out_stream_index, int out_stream_pos)
+  {
+    try
+    {
+      append(id, out_stream_index, out_stream_pos, INPUT, in_stream_index, in_stream_pos);
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+
+  @Override
+  public synchronized void associateToOutput(int id, int in_stream_index, int in_stream_pos,
+      int out_stream_index, int out_stream_pos)
+  {
+    try
+    {
+      append(id, out_stream_index, out_stream_pos, OUTPUT, in_stream_index, in_stream_pos);
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+
+  @Override
+  public synchronized void setConnection(int output_proc_id, int output_stream_index,
+      int input_proc_id, int input_stream_index)
+  {
+    super.setConnection(output_proc_id, output_stream_index, input_proc_id, input_stream_index);
+    ByteBuffer b = ByteBuffer.allocate(16);
+    b.putInt(output_proc_id).putInt(output_stream_index).putInt(input_proc_id)
+        .putInt(input_stream_index);
+    b.flip();
+    try
+    {
+      while (b.hasRemaining())
+      {
+        m_connectionFile.write(b);
+      }
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    m_cache.clear();
+  }
+
+  @Override
+  public synchronized ProvenanceNode getProvenanceTree(int proc_id, int stream_index,
+      int stream_pos)
+  {
+    // The records still in the buffer are written once for the whole tree;
+    // the entries buffered by the indexes are read from memory
+    try
+    {
+      flushLog();
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    return super.getProvenanceTree(proc_id, stream_index, stream_pos);
+  }
+
+  @Override
+  protected NodeFunction[] resolve(EventFunction ef)
+  {
+    NodeFunction[] parents = m_cache.get(ef);
+    if (parents == null)
+    {
+      parents = super.resolve(ef);
+      if (parents != null && m_cacheSize > 0)
+      {
+        m_cache.put(ef, parents);
+      }
+    }
+    return parents;
+  }
+
+  @Override
+  protected void readAssociations(int proc_id, int stream_index, int stream_pos,
+      Associations associations)
+  {
+    try
+    {
+      StreamIndex index = getIndex(proc_id, stream_index, false);
+      if (index == null)
+      {
+        return;
+      }
+      long record = index.get(stream_pos);
+      ByteBuffer b = ByteBuffer.allocate(RECORD_SIZE);
+      int first = associations.size();
+      // The chain of records gives the associations from last to first
+      while (record > 0 && record <= m_recordCount)
+      {
+        b.clear();
+        readFully(m_log, b, (record - 1) * RECORD_SIZE);
+        b.flip();
+        if (b.getInt() != proc_id || b.getInt() != stream_index || b.getInt() != stream_pos)
+        {
+          // The index refers to a record that was lost
+          break;
+        }
+        byte kind = (byte) b.getInt();
+        int src_stream = b.getInt();
+        int src_pos = b.getInt();
+        NodeFunction f = null;
+        if (kind == FUNCTION)
+        {
+          f = readFunction(((long) src_stream << 32) | (src_pos & 0xFFFFFFFFL));
+        }
+        associations.add(kind, src_stream, src_pos, f);
+        record = b.getLong();
+      }
+      associations.reverse(first);
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+
+  /**
+   * Writes the buffered associations to the files of the tracker
+   */
+  public synchronized void flush()
+  {
+    try
+    {
+      flushLog();
+      for (StreamIndex index : m_indexes.values())
+      {
+        index.flush();
+      }
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+
+  /**
+   * Writes the buffered associations to the files of the tracker, and
+   * forces the files to the storage device
+   */
+  public synchronized void sync()
+  {
+    flush();
+    try
+    {
+      m_log.force(false);
+      m_functions.force(false);
+      m_connectionFile.force(false);
+      for (StreamIndex index : m_indexes.values())
+      {
+        index.m_channel.force(false);
+      }
+      for (Long key : m_closedIndexes)
+      {
+        if (!m_indexes.containsKey(key))
+        {
+          File f = indexFile((int) (key >>> 32), (int) (long) key);
+          RandomAccessFile raf = new RandomAccessFile(f, "rw");
+          try
+          {
+            raf.getChannel().force(false);
+          }
+          finally
+          {
+            raf.close();
+          }
+        }
+      }
+      m_closedIndexes.clear();
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException
+  {
+    flushLog();
+    closeIndexes(0);
+    m_closedIndexes.clear();
+    m_log.close();
+    m_functions.close();
+    m_connectionFile.close();
+  }
+
+  /**
+   * Writes the buffered records to the association log
+   * 
+   * @throws IOException
+   *           If writing fails
+   */
+  protected void flushLog() throws IOException
+  {
+    if (m_logBuffer.position() > 0)
+    {
+      m_logBuffer.flip();
+      while (m_logBuffer.hasRemaining())
+      {
+        m_log.write(m_logBuffer);
+      }
+      m_logBuffer.clear();
+    }
+  }
+
+  /**
+   * Writes and closes the least recently used indexes, until no more than
+   * a given number of them are open
+   * 
+   * @param max
+   *          The number of indexes that can remain open
+   * @throws IOException
+   *           If writing fails
+   */
+  protected void closeIndexes(int max) throws IOException
+  {
+    Iterator<Map.Entry<Long, StreamIndex>> it = m_indexes.entrySet().iterator();
+    while (m_indexes.size() > max && it.hasNext())
+    {
+      Map.Entry<Long, StreamIndex> e = it.next();
+      StreamIndex index = e.getValue();
+      it.remove();
+      if (index == m_lastIndex)
+      {
+        m_lastIndex = null;
+      }
+      index.flush();
+      index.m_channel.close();
+      m_closedIndexes.add(e.getKey());
+    }
+  }
+
+  /**
+   * Appends an association to the log and updates the index of its output
+   * stream
+   * 
+   * @param id
+   *          The ID of the processor
+   * @param out_stream_index
+   *          The index of the output stream
+   * @param out_stream_pos
+   *          The position of the output event
+   * @param kind
+   *          The kind of association
+   * @param src_stream
+   *          The index of the stream of the event the output event depends
+   *          on
+   * @param src_pos
+   *          The position of this event
+   * @throws IOException
+   *           If writing fails
+   */
+  protected void append(int id, int out_stream_index, int out_stream_pos, byte kind,
+      int src_stream, int src_pos) throws IOException
+  {
+    StreamIndex index = m_lastIndex;
+    if (index == null || index.m_processorId != id || index.m_streamIndex != out_stream_index)
+    {
+      index = getIndex(id, out_stream_index, true);
+      m_lastIndex = index;
+    }
+    long previous = index.get(out_stream_pos);
+    if (m_logBuffer.remaining() < RECORD_SIZE)
+    {
+      flush();
+    }
+    m_logBuffer.putInt(id).putInt(out_stream_index).putInt(out_stream_pos).putInt(kind)
+        .putInt(src_stream).putInt(src_pos).putLong(previous);
+    m_recordCount++;
+    index.set(out_stream_pos, m_recordCount);
+    if (!m_cache.isEmpty())
+    {
+      m_cache.remove(new EventFunction(id, out_stream_index, out_stream_pos));
+    }
+  }
+
+  /**
+   * Appends a node function to the log of functions
+   * 
+   * @param f
+   *          The function
+   * @return The offset of the function in the log
+   * @throws IOException
+   *           If writing fails
+   */
+  protected long appendFunction(NodeFunction f) throws IOException
+  {
+    byte[] id = String.valueOf(f.getDataPointId()).getBytes(UTF8);
+    byte[] description = String.valueOf(f).getBytes(UTF8);
+    ByteBuffer b = ByteBuffer.allocate(8 + id.length + description.length);
+    b.putInt(id.length).put(id).putInt(description.length).put(description);
+    b.flip();
+    long offset = m_functionsSize;
+    while (b.hasRemaining())
+    {
+      m_functions.write(b, m_functionsSize + b.position());
+    }
+    m_functionsSize += b.limit();
+    return offset;
+  }
+
+  /**
+   * Reads a node function from the log of functions
+   * 
+   * @param offset
+   *          The offset of the function in the log
+   * @return The function
+   * @throws IOException
+   *           If reading fails
+   */
+  protected StoredFunction readFunction(long offset) throws IOException
+  {
+    String id = readString(offset);
+    String description = readString(offset + 4 + id.getBytes(UTF8).length);
+    return new StoredFunction(id, description);
+  }
+
+  /**
+   * Reads a length-prefixed string from the log of functions
+   * 
+   * @param offset
+   *          The offset of the string
+   * @return The string
+   * @throws IOException
+   *           If reading fails
+   */
+  protected String readString(long offset) throws IOException
+  {
+    ByteBuffer b = ByteBuffer.allocate(4);
+    readFully(m_functions, b, offset);
+    b.flip();
+    ByteBuffer s = ByteBuffer.allocate(b.getInt());
+    readFully(m_functions, s, offset + 4);
+    return new String(s.array(), UTF8);
+  }
+
+  /**
+   * Gets the index of an output stream
+   * 
+   * @param id
+   *          The ID of the processor
+   * @param stream_index
+   *          The index of the output stream
+   * @param create
+   *          Whether to create the index if it does not exist
+   * @return The index, or <tt>null</tt> if it does not exist and
+   *         <tt>create</tt> is <tt>false</tt>
+   * @throws IOException
+   *           If the index cannot be opened
+   */
+  protected StreamIndex getIndex(int id, int stream_index, boolean create) throws IOException
+  {
+    Long key = pack(id, stream_index);
+    StreamIndex index = m_indexes.get(key);
+    if (index == null)
+    {
+      File f = indexFile(id, stream_index);
+      if (!create && !f.exists())
+      {
+        return null;
+      }
+      closeIndexes(m_maxOpenIndexes - 1);
+      index = new StreamIndex(id, stream_index, f);
+      m_indexes.put(key, index);
+    }
+    return index;
+  }
+
+  /**
+   * Gets the index file of an output stream
+   * 
+   * @param id
+   *          The ID of the processor
+   * @param stream_index
+   *          The index of the output stream
+   * @return The file
+   */
+  protected File indexFile(int id, int stream_index)
+  {
+    return new File(m_directory, id + "-" + stream_index + ".idx");
+  }
+
+  /**
+   * Reads bytes from a channel until a buffer is full or the end of the
+   * channel is reached
+   * 
+   * @param channel
+   *          The channel
+   * @param b
+   *          The buffer
+   * @param position
+   *          The position in the channel where to start reading
+   * @throws IOException
+   *           If reading fails
+   */
+  protected static void readFully(FileChannel channel, ByteBuffer b, long position)
+      throws IOException
+  {
+    while (b.hasRemaining())
+    {
+      int read = channel.read(b, position);
+      if (read < 0)
+      {
+        break;
+      }
+      position += read;
+    }
+  }
+
+  /**
+   * The index of an output stream. Entry <i>i</i> of the index file is a
+   * <tt>long</tt> giving the number (starting at 1) of the last record
+   * associated to position <i>i</i>, or 0 if there is none. Consecutive
+   * entries are buffered before being written.
+   */
+  protected static class StreamIndex
+  {
+    /**
+     * The ID of the processor
+     */
+    protected final int m_processorId;
+
+    /**
+     * The index of the output stream
+     */
+    protected final int m_streamIndex;
+
+    /**
+     * The channel of the index file
+     */
+    protected final FileChannel m_channel;
+
+    /**
+     * The buffered entries
+     */
+    protected final long[] m_run = new long[INDEX_RUN];
+
+    /**
+     * The position of the first buffered entry
+     */
+    protected int m_runStart = 0;
+
+    /**
+     * The number of buffered entries
+     */
+    protected int m_runLength = 0;
+
+    /**
+     * A buffer used to read and write entries
+     */
+    protected final ByteBuffer m_bytes = ByteBuffer.allocate(INDEX_RUN * 8);
+
+    /**
+     * Opens the index of an output stream
+     * 
+     * @param id
+     *          The ID of the processor
+     * @param stream_index
+     *          The index of the output stream
+     * @param f
+     *          The index file
+     * @throws IOException
+     *           If the file cannot be opened
+     */
+    @SuppressWarnings("resource")
+    public StreamIndex(int id, int stream_index, File f) throws IOException
+    {
+      super();
+      m_processorId = id;
+      m_streamIndex = stream_index;
+      m_channel = new RandomAccessFile(f, "rw").getChannel();
+    }
+
+    /**
+     * Gets the entry of a position
+     * 
+     * @param pos
+     *          The position
+     * @return The entry
+     * @throws IOException
+     *           If reading fails
+     */
+    public long get(int pos) throws IOException
+    {
+      if (pos < 0)
+      {
+        return 0;
+      }
+      if (pos >= m_runStart && pos < m_runStart + m_runLength)
+      {
+        return m_run[pos - m_runStart];
+      }
+      m_bytes.clear();
+      m_bytes.limit(8);
+      readFully(m_channel, m_bytes, (long) pos * 8);
+      if (m_bytes.position() < 8)
+      {
+        return 0;
+      }
+      return m_bytes.getLong(0);
+    }
+
+    /**
+     * Sets the entry of a position
+     * 
+     * @param pos
+     *          The position
+     * @param record
+     *          The entry
+     * @throws IOException
+     *           If writing fails
+     */
+    public void set(int pos, long record) throws IOException
+    {
+      if (pos < 0)
+      {
+        return;
+      }
+      if (pos >= m_runStart && pos < m_runStart + m_runLength)
+      {
+        m_run[pos - m_runStart] = record;
+        return;
+      }
+      if (pos != m_runStart + m_runLength || m_runLength == INDEX_RUN)
+      {
+        flush();
+        m_runStart = pos;
+      }
+      m_run[m_runLength++] = record;
+    }
+
+    /**
+     * Writes the buffered entries to the index file
+     * 
+     * @throws IOException
+     *           If writing fails
+     */
+    public void flush() throws IOException
+    {
+      if (m_runLength == 0)
+      {
+        return;
+      }
+      m_bytes.clear();
+      for (int i = 0; i < m_runLength; i++)
+      {
+        m_bytes.putLong(m_run[i]);
+      }
+      m_bytes.flip();
+      long position = (long) m_runStart * 8;
+      while (m_bytes.hasRemaining())
+      {
+        position += m_channel.write(m_bytes, position);
+      }
+      m_runStart += m_runLength;
+      m_runLength = 0;
+    }
+  }
+
+  /**
+   * Node function read back from the log of functions. It only keeps the
+   * data point ID and the string representation of the original function.
+   */
+  public static class StoredFunction implements NodeFunction
+  {
+    /**
+     * The data point ID of the original function
+     */
+    protected final String m_dataPointId;
+
+    /**
+     * The string representation of the original function
+     */
+    protected final String m_description;
+
+    /**
+     * Creates a new stored function
+     * 
+     * @param id
+     *          The data point ID of the original function
+     * @param description
+     *          The string representation of the original function
+     */
+    public StoredFunction(String id, String description)
+    {
+      super();
+      m_dataPointId = id;
+      m_description = description;
+    }
+
+    @Override
+    public String getDataPointId()
+    {
+      return m_dataPointId;
+    }
+
+    @Override
+    public NodeFunction dependsOn()
+    {
+      return DirectValue.instance;
+    }
+
+    @Override
+    public String toString()
+    {
+      return m_description;
+    }
+  }
+}
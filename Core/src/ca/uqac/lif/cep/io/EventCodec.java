@@ -0,0 +1,150 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Turns events into sequences of bytes, and back. Codecs are used by
+ * processors that store events outside of the JVM, such as
+ * {@link WriteEventLog} and {@link ReadEventLog}.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public interface EventCodec
+{
+  /**
+   * Encodes an event
+   * 
+   * @param o
+   *          The event
+   * @return The bytes
+   * @throws IOException
+   *           If the event cannot be encoded
+   */
+  /*@ non_null @*/ public byte[] encode(Object o) throws IOException;
+
+  /**
+   * Decodes an event. The bytes to decode are those between the buffer's
+   * current position and its limit.
+   * 
+   * @param buffer
+   *          The buffer containing the bytes
+   * @return The event
+   * @throws IOException
+   *           If the bytes do not represent a valid event
+   */
+  public Object decode(/*@ non_null @*/ ByteBuffer buffer) throws IOException;
+
+  /**
+   * Codec that relies on Java serialization. It can handle any
+   * {@link java.io.Serializable} event, at the price of a fairly verbose
+   * encoding.
+   */
+  public static class JavaSerialization implements EventCodec
+  {
+    /**
+     * A single publicly visible instance of the codec
+     */
+    public static final JavaSerialization instance = new JavaSerialization();
+
+    protected JavaSerialization()
+    {
+      super();
+    }
+
+    @Override
+    public byte[] encode(Object o) throws IOException
+    {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(baos);
+      oos.writeObject(o);
+      oos.close();
+      return baos.toByteArray();
+    }
+
+    @Override
+    public Object decode(ByteBuffer buffer) throws IOException
+    {
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+      try
+      {
+        return ois.readObject();
+      }
+      catch (ClassNotFoundException e)
+      {
+        throw new IOException(e);
+      }
+      finally
+      {
+        ois.close();
+      }
+    }
+  }
+
+  /**
+   * Codec writing events as they are. Byte arrays are written unchanged,
+   * and any other event is written as the UTF-8 encoding of its
+   * {@link Object#toString() toString()} form. Decoding produces byte
+   * arrays.
+   */
+  public static class Raw implements EventCodec
+  {
+    /**
+     * A single publicly visible instance of the codec
+     */
+    public static final Raw instance = new Raw();
+
+    /**
+     * The charset used to encode strings
+     */
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    protected Raw()
+    {
+      super();
+    }
+
+    @Override
+    public byte[] encode(Object o)
+    {
+      if (o instanceof byte[])
+      {
+        return (byte[]) o;
+      }
+      return String.valueOf(o).getBytes(UTF8);
+    }
+
+    @Override
+    public Object decode(ByteBuffer buffer)
+    {
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return bytes;
+    }
+  }
+}
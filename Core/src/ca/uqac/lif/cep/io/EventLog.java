@@ -0,0 +1,172 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Layout of the append-only event logs written by {@link WriteEventLog} and
+ * read by {@link ReadEventLog}.
+ * <p>
+ * A log is a directory containing one or more <em>segment</em> files. Each
+ * event of the log has an <em>offset</em>, which is its position in the
+ * stream (the first event has offset 0). A segment is named after the offset
+ * of its first event, padded to 20 digits, followed by {@link #SUFFIX}; its
+ * events follow the events of the previous segment. Each event is stored as a
+ * record made of:
+ * <ol>
+ * <li>the length <i>n</i> of the encoded event, as a 4-byte integer</li>
+ * <li>the CRC-32 of the encoded event, as a 4-byte integer</li>
+ * <li>the <i>n</i> bytes of the encoded event</li>
+ * </ol>
+ * The checksum makes it possible to detect a record that was only partially
+ * written, for example because the writer crashed.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class EventLog
+{
+  /**
+   * The extension of segment files
+   */
+  public static final String SUFFIX = ".log";
+
+  /**
+   * The number of bytes before the encoded event in a record
+   */
+  public static final int HEADER_SIZE = 8;
+
+  private EventLog()
+  {
+    // Utility class
+  }
+
+  /**
+   * Gets the file of a segment
+   * 
+   * @param dir
+   *          The directory of the log
+   * @param base
+   *          The offset of the first event of the segment
+   * @return The file
+   */
+  public static File segmentFile(File dir, long base)
+  {
+    return new File(dir, String.format("%020d", base) + SUFFIX);
+  }
+
+  /**
+   * Lists the segments of a log
+   * 
+   * @param dir
+   *          The directory of the log
+   * @return The offsets of the first event of each segment, in increasing
+   *         order. The array is empty if the directory does not exist.
+   */
+  public static long[] listSegments(File dir)
+  {
+    String[] names = dir.list(new FilenameFilter()
+    {
+      @Override
+      public boolean accept(File d, String name)
+      {
+        return name.endsWith(SUFFIX) && name.length() == 20 + SUFFIX.length();
+      }
+    });
+    if (names == null)
+    {
+      return new long[0];
+    }
+    long[] bases = new long[names.length];
+    int n = 0;
+    for (String name : names)
+    {
+      try
+      {
+        bases[n] = Long.parseLong(name.substring(0, 20));
+        n++;
+      }
+      catch (NumberFormatException e)
+      {
+        // Not a segment: ignore
+      }
+    }
+    bases = Arrays.copyOf(bases, n);
+    Arrays.sort(bases);
+    return bases;
+  }
+
+  /**
+   * Computes the checksum of an encoded event
+   * 
+   * @param bytes
+   *          The bytes of the event
+   * @param offset
+   *          The index of the first byte
+   * @param length
+   *          The number of bytes
+   * @return The checksum
+   */
+  public static int checksum(byte[] bytes, int offset, int length)
+  {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, offset, length);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Reads the encoded event of a record, if a complete and valid record
+   * starts at some position of a buffer
+   * 
+   * @param buffer
+   *          The buffer; only the bytes before its limit are considered
+   * @param pos
+   *          The position
+   * @return The bytes of the encoded event (the record then occupies
+   *         {@link #HEADER_SIZE} more bytes), or <tt>null</tt> if there is no
+   *         complete valid record at this position
+   */
+  public static byte[] readRecord(ByteBuffer buffer, int pos)
+  {
+    int limit = buffer.limit();
+    if (limit - pos < HEADER_SIZE)
+    {
+      return null;
+    }
+    int length = buffer.getInt(pos);
+    if (length < 0 || limit - pos - HEADER_SIZE < length)
+    {
+      return null;
+    }
+    int crc = buffer.getInt(pos + 4);
+    byte[] bytes = new byte[length];
+    ByteBuffer b = buffer.duplicate();
+    b.position(pos + HEADER_SIZE);
+    b.get(bytes);
+    if (checksum(bytes, 0, length) != crc)
+    {
+      return null;
+    }
+    return bytes;
+  }
+}
@@ -20,12 +20,19 @@ package ca.uqac.lif.cep.io;
 import ca.uqac.lif.cep.Processor;
 import ca.uqac.lif.cep.ProcessorException;
 import ca.uqac.lif.cep.tmf.Source;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.Queue;
-import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Reads chunks of data from an URL, using an HTTP request. These chunks are
@@ -33,6 +40,28 @@ import java.util.Scanner;
  * graphically as:
  * <p>
  * <img src="{@docRoot}/doc-files/io/HttpGet.png" alt="HttpGet">
+ * <p>
+ * Each call to the processor sends a new request to the URL, and the
+ * whole body of the response becomes a single event. The response is not
+ * streamed: it is read completely into memory before being output, so that
+ * the underlying connection can be kept alive and reused by the next
+ * request to the same server. The buffers used to read responses are kept
+ * from one request to the next; they grow to the size of the largest
+ * response received.
+ * The processor can also be configured to:
+ * <ul>
+ * <li>send <em>conditional</em> requests (see {@link #setConditional(boolean)
+ * setConditional()}). The processor then remembers the <tt>ETag</tt> and
+ * <tt>Last-Modified</tt> headers of the last response; if the server answers
+ * that the resource has not changed since (status 304), no event is
+ * produced.</li>
+ * <li>send requests <em>asynchronously</em> (see {@link #setAsync(boolean)
+ * setAsync()}). A call to the processor then starts a request in the
+ * background and returns immediately; the response is output by a later
+ * call, once it has arrived. In the meantime, <tt>hasNextSoft</tt> answers
+ * <code>MAYBE</code>. This lets a single thread poll many sources without
+ * waiting for each of them in turn.</li>
+ * </ul>
  * 
  * @author Sylvain Hallé
  * @since 0.2.1
@@ -45,11 +74,69 @@ public class HttpGet extends Source
    */
   public static final String s_userAgent = "BeepBeep3/" + Processor.s_versionString + "/HttpGet";
 
+  /**
+   * The executor running asynchronous requests, unless another one is
+   * given with {@link #setExecutor(ExecutorService)}. Its threads are
+   * created as needed and are daemon threads.
+   */
+  protected static final ExecutorService s_executor = Executors.newCachedThreadPool(
+      new ThreadFactory()
+      {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+          Thread t = new Thread(r, "HttpGet");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+
   /**
    * The URL to read from
    */
   protected final String m_url;
 
+  /**
+   * Whether to send conditional requests
+   */
+  protected boolean m_conditional = false;
+
+  /**
+   * Whether to send requests asynchronously
+   */
+  protected boolean m_async = false;
+
+  /**
+   * The executor running asynchronous requests
+   */
+  protected transient ExecutorService m_executor = s_executor;
+
+  /**
+   * The value of the <tt>ETag</tt> header of the last response, if any
+   */
+  protected String m_etag = null;
+
+  /**
+   * The value of the <tt>Last-Modified</tt> header of the last response, if
+   * any
+   */
+  protected String m_lastModified = null;
+
+  /**
+   * The request running in the background, if any
+   */
+  protected transient Future<String> m_pending = null;
+
+  /**
+   * The buffer into which responses are read, created by the first request
+   */
+  protected transient byte[] m_readBuffer = null;
+
+  /**
+   * The body of the response being read, created by the first request
+   */
+  protected transient ByteArrayOutputStream m_body = null;
+
   /**
    * Instantiates an HTTP reader with an URL. Note that no request is sent over
    * the network until the first call to {@link #compute(Object[], Queue)}.
@@ -63,33 +150,221 @@ public class HttpGet extends Source
     m_url = url;
   }
 
+  /**
+   * Sets whether to send conditional requests, which produce no event when
+   * the resource has not changed since the last response
+   * 
+   * @param b
+   *          <tt>true</tt> to send conditional requests, <tt>false</tt>
+   *          otherwise (default)
+   * @return This HTTP reader
+   */
+  public HttpGet setConditional(boolean b)
+  {
+    m_conditional = b;
+    return this;
+  }
+
+  /**
+   * Sets whether to send requests in the background
+   * 
+   * @param b
+   *          <tt>true</tt> to send requests asynchronously, <tt>false</tt>
+   *          otherwise (default)
+   * @return This HTTP reader
+   */
+  public HttpGet setAsync(boolean b)
+  {
+    m_async = b;
+    return this;
+  }
+
+  /**
+   * Sets the executor running asynchronous requests. By default, all HTTP
+   * readers share the same executor.
+   * 
+   * @param executor
+   *          The executor
+   * @return This HTTP reader
+   */
+  public HttpGet setExecutor(/*@ non_null @*/ ExecutorService executor)
+  {
+    m_executor = executor;
+    return this;
+  }
+
   @Override
   protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
   {
-    try
+    String response;
+    if (m_async)
     {
-      InputStream is = sendGet(m_url);
-      if (is == null)
+      if (m_pending == null)
       {
-        throw new ProcessorException("No response");
+        m_pending = m_executor.submit(new Callable<String>()
+        {
+          @Override
+          public String call() throws IOException
+          {
+            return fetch();
+          }
+        });
       }
-      String response = null;
-      Scanner s = new Scanner(is);
-      s.useDelimiter("\\A");
-      if (s.hasNext())
+      if (!m_pending.isDone())
       {
-        response = s.next();
+        return true;
+      }
+      Future<String> f = m_pending;
+      m_pending = null;
+      try
+      {
+        response = f.get();
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new ProcessorException(e);
+      }
+      catch (ExecutionException e)
+      {
+        throw new ProcessorException(e.getCause());
       }
-      s.close();
-      outputs.add(new Object[] { response });
     }
-    catch (IOException e)
+    else
     {
-      throw new ProcessorException(e);
+      try
+      {
+        response = fetch();
+      }
+      catch (IOException e)
+      {
+        throw new ProcessorException(e);
+      }
+    }
+    if (response != null)
+    {
+      outputs.add(new Object[] { response });
     }
     return true;
   }
 
+  /**
+   * Sends a request to the URL and reads the response. The method is
+   * synchronized, as a request started in the background may still be
+   * running when another one is sent (for example after a call to
+   * {@link #reset()}), and both would use the same buffers.
+   * 
+   * @return The body of the response, or <tt>null</tt> if the request is
+   *         conditional and the resource has not changed
+   * @throws IOException
+   *           If the request fails, or if the server answers with an error
+   */
+  protected synchronized String fetch() throws IOException
+  {
+    if (m_readBuffer == null)
+    {
+      m_readBuffer = new byte[8192];
+      m_body = new ByteArrayOutputStream(8192);
+    }
+    HttpURLConnection con = (HttpURLConnection) new URL(m_url).openConnection();
+    con.setRequestMethod("GET");
+    con.setRequestProperty("User-Agent", s_userAgent);
+    if (m_conditional)
+    {
+      if (m_etag != null)
+      {
+        con.setRequestProperty("If-None-Match", m_etag);
+      }
+      if (m_lastModified != null)
+      {
+        con.setRequestProperty("If-Modified-Since", m_lastModified);
+      }
+    }
+    int code = con.getResponseCode();
+    if (code == HttpURLConnection.HTTP_NOT_MODIFIED)
+    {
+      drain(con.getInputStream(), m_readBuffer);
+      return null;
+    }
+    if (code >= 400)
+    {
+      // Read the error body anyway, so that the connection can be reused
+      drain(con.getErrorStream(), m_readBuffer);
+      throw new IOException("Server returned HTTP response code " + code + " for URL " + m_url);
+    }
+    m_etag = con.getHeaderField("ETag");
+    m_lastModified = con.getHeaderField("Last-Modified");
+    InputStream is = con.getInputStream();
+    try
+    {
+      m_body.reset();
+      int len;
+      while ((len = is.read(m_readBuffer)) >= 0)
+      {
+        m_body.write(m_readBuffer, 0, len);
+      }
+      return m_body.toString(getCharset(con.getContentType()).name());
+    }
+    finally
+    {
+      is.close();
+    }
+  }
+
+  /**
+   * Reads a stream until its end and closes it
+   * 
+   * @param is
+   *          The stream, or <tt>null</tt>
+   * @param buffer
+   *          A buffer into which the contents of the stream are read
+   * @throws IOException
+   *           If reading fails
+   */
+  protected static void drain(InputStream is, byte[] buffer) throws IOException
+  {
+    if (is == null)
+    {
+      return;
+    }
+    while (is.read(buffer) >= 0)
+    {
+      // Discard
+    }
+    is.close();
+  }
+
+  /**
+   * Gets the charset of a response from its <tt>Content-Type</tt> header
+   * 
+   * @param content_type
+   *          The value of the header, or <tt>null</tt>
+   * @return The charset given in the header, or the platform's default
+   *         charset if there is none
+   */
+  protected static Charset getCharset(String content_type)
+  {
+    if (content_type != null)
+    {
+      for (String param : content_type.split(";"))
+      {
+        param = param.trim();
+        if (param.regionMatches(true, 0, "charset=", 0, 8))
+        {
+          try
+          {
+            return Charset.forName(param.substring(8).replace("\"", "").trim());
+          }
+          catch (IllegalArgumentException e)
+          {
+            // Unknown charset: use the default one
+          }
+        }
+      }
+    }
+    return Charset.defaultCharset();
+  }
+
   /**
    * Sends a GET request to the specified URL, and obtains an input stream with
    * the contents of the response
@@ -110,9 +385,27 @@ public class HttpGet extends Source
     return is;
   }
 
+  @Override
+  public void reset()
+  {
+    super.reset();
+    m_etag = null;
+    m_lastModified = null;
+    m_pending = null;
+  }
+
   @Override
   public HttpGet duplicate(boolean with_state)
   {
-    return new HttpGet(m_url);
+    HttpGet hg = new HttpGet(m_url);
+    hg.m_conditional = m_conditional;
+    hg.m_async = m_async;
+    hg.m_executor = m_executor;
+    if (with_state)
+    {
+      hg.m_etag = m_etag;
+      hg.m_lastModified = m_lastModified;
+    }
+    return hg;
   }
 }
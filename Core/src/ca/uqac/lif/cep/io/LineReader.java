@@ -0,0 +1,382 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Splits the contents of a byte channel into text lines. The reader fills a
+ * large byte buffer from the channel, looks for line feeds directly in the
+ * bytes, and decodes each line with a decoder and a character buffer that
+ * are reused from one line to the next. Lines are terminated by
+ * <tt>\n</tt> or <tt>\r\n</tt>; the terminator is not part of the line.
+ * <p>
+ * When created for a {@link FileChannel} in <em>mapped</em> mode, the reader
+ * maps the file into memory by large windows instead of copying its
+ * contents into a buffer.
+ * <p>
+ * Since line feeds are searched for in the encoded bytes, the charset must
+ * encode <tt>\n</tt> as the single byte 0x0A, and must not use this byte
+ * for anything else. This is the case of UTF-8, ISO-8859-1, US-ASCII and
+ * most single-byte charsets, but not of UTF-16.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class LineReader implements Closeable
+{
+  /**
+   * The default size of the byte buffer, in bytes
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+  /**
+   * The default size of a window in mapped mode, in bytes
+   */
+  public static final int DEFAULT_MAP_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * The line feed byte
+   */
+  protected static final byte LF = '\n';
+
+  /**
+   * The carriage return byte
+   */
+  protected static final byte CR = '\r';
+
+  /**
+   * The channel to read from
+   */
+  protected final ReadableByteChannel m_channel;
+
+  /**
+   * Whether the file is mapped into memory
+   */
+  protected final boolean m_mapped;
+
+  /**
+   * The decoder used to turn bytes into characters
+   */
+  protected final CharsetDecoder m_decoder;
+
+  /**
+   * The buffer containing the bytes that have not been split yet. Its
+   * position is the start of the next line, and its limit the end of the
+   * bytes read so far.
+   */
+  protected ByteBuffer m_bytes;
+
+  /**
+   * The buffer in which each line is decoded
+   */
+  protected CharBuffer m_chars;
+
+  /**
+   * In mapped mode, the offset in the file of the beginning of the current
+   * window
+   */
+  protected long m_windowStart = 0;
+
+  /**
+   * In mapped mode, the size of a window
+   */
+  protected int m_mapSize;
+
+  /**
+   * The index in {@link #m_bytes} where the search for the next line feed
+   * resumes
+   */
+  protected int m_scanFrom;
+
+  /**
+   * Whether the end of the channel has been reached
+   */
+  protected boolean m_eof = false;
+
+  /**
+   * Creates a line reader that copies the contents of a channel into a
+   * buffer
+   * 
+   * @param channel
+   *          The channel to read from
+   * @param charset
+   *          The charset of the text
+   * @param buffer_size
+   *          The initial size of the buffer, in bytes. The buffer grows if a
+   *          line does not fit into it.
+   */
+  public LineReader(ReadableByteChannel channel, Charset charset, int buffer_size)
+  {
+    this(channel, charset, false, buffer_size);
+  }
+
+  /**
+   * Creates a line reader for a file
+   * 
+   * @param channel
+   *          The channel to read from
+   * @param charset
+   *          The charset of the text
+   * @param mapped
+   *          Set to <tt>true</tt> to map the file into memory, <tt>false</tt>
+   *          to copy its contents into a buffer
+   */
+  public LineReader(FileChannel channel, Charset charset, boolean mapped)
+  {
+    this(channel, charset, mapped, mapped ? DEFAULT_MAP_SIZE : DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Creates a line reader
+   * 
+   * @param channel
+   *          The channel to read from
+   * @param charset
+   *          The charset of the text
+   * @param mapped
+   *          Whether to map the file into memory. This requires the channel
+   *          to be a {@link FileChannel}.
+   * @param size
+   *          The size of the buffer, or of the mapped windows
+   */
+  protected LineReader(ReadableByteChannel channel, Charset charset, boolean mapped, int size)
+  {
+    super();
+    byte[] lf = "\n".getBytes(charset);
+    if (lf.length != 1 || lf[0] != LF)
+    {
+      throw new IllegalArgumentException("Charset " + charset 
+          + " does not encode line feeds as a single byte");
+    }
+    if (size <= 0)
+    {
+      throw new IllegalArgumentException("Buffer size must be positive");
+    }
+    m_channel = channel;
+    m_mapped = mapped;
+    m_decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    m_chars = CharBuffer.allocate(256);
+    if (mapped)
+    {
+      m_mapSize = size;
+      m_bytes = ByteBuffer.allocate(0);
+    }
+    else
+    {
+      m_bytes = ByteBuffer.allocateDirect(size);
+      m_bytes.flip();
+    }
+    m_scanFrom = 0;
+  }
+
+  /**
+   * Reads the next line
+   * 
+   * @return The line, or <tt>null</tt> if the end of the channel has been
+   *         reached
+   * @throws IOException
+   *           If reading from the channel fails
+   */
+  public String readLine() throws IOException
+  {
+    for (;;)
+    {
+      ByteBuffer bytes = m_bytes;
+      int limit = bytes.limit();
+      for (int i = m_scanFrom; i < limit; i++)
+      {
+        if (bytes.get(i) == LF)
+        {
+          int start = bytes.position();
+          int end = i;
+          if (end > start && bytes.get(end - 1) == CR)
+          {
+            end--;
+          }
+          String line = decode(start, end);
+          bytes.position(i + 1);
+          m_scanFrom = i + 1;
+          return line;
+        }
+      }
+      m_scanFrom = limit;
+      if (!fill())
+      {
+        // End of channel: whatever remains is the last line
+        bytes = m_bytes;
+        limit = bytes.limit();
+        int start = bytes.position();
+        if (start == limit)
+        {
+          return null;
+        }
+        int end = limit;
+        if (bytes.get(end - 1) == CR)
+        {
+          end--;
+        }
+        String line = decode(start, end);
+        bytes.position(limit);
+        return line;
+      }
+    }
+  }
+
+  /**
+   * Makes more bytes available after the current limit of {@link #m_bytes},
+   * keeping the bytes of the current line
+   * 
+   * @return <tt>true</tt> if new bytes have been made available,
+   *         <tt>false</tt> if the end of the channel has been reached
+   * @throws IOException
+   *           If reading from the channel fails
+   */
+  protected boolean fill() throws IOException
+  {
+    if (m_eof)
+    {
+      return false;
+    }
+    if (m_mapped)
+    {
+      return map();
+    }
+    ByteBuffer bytes = m_bytes;
+    int offset = bytes.position();
+    if (offset == 0 && bytes.limit() == bytes.capacity())
+    {
+      // The current line does not fit in the buffer: make it bigger
+      ByteBuffer bigger = ByteBuffer.allocateDirect(bytes.capacity() * 2);
+      bigger.put(bytes);
+      bigger.flip();
+      m_bytes = bytes = bigger;
+    }
+    bytes.compact();
+    m_scanFrom -= offset;
+    int read;
+    do
+    {
+      read = m_channel.read(bytes);
+    } while (read == 0 && bytes.hasRemaining());
+    bytes.flip();
+    if (read < 0)
+    {
+      m_eof = true;
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Maps the next window of the file, starting at the beginning of the
+   * current line
+   * 
+   * @return <tt>true</tt> if new bytes have been made available,
+   *         <tt>false</tt> if the end of the file has been reached
+   * @throws IOException
+   *           If mapping the file fails
+   */
+  protected boolean map() throws IOException
+  {
+    FileChannel fc = (FileChannel) m_channel;
+    ByteBuffer bytes = m_bytes;
+    int offset = bytes.position();
+    long start = m_windowStart + offset;
+    long file_size = fc.size();
+    long remaining = file_size - start;
+    if (remaining <= bytes.limit() - offset)
+    {
+      // The current window already extends to the end of the file
+      m_eof = true;
+      return false;
+    }
+    int size = m_mapSize;
+    if (bytes.limit() - offset >= size)
+    {
+      // The current line is larger than a window
+      size = (int) Math.min(Integer.MAX_VALUE, 2L * (bytes.limit() - offset));
+    }
+    size = (int) Math.min(size, remaining);
+    m_bytes = fc.map(FileChannel.MapMode.READ_ONLY, start, size);
+    m_scanFrom = m_scanFrom - offset;
+    m_windowStart = start;
+    return true;
+  }
+
+  /**
+   * Decodes a range of {@link #m_bytes} into a string
+   * 
+   * @param start
+   *          The index of the first byte
+   * @param end
+   *          The index after the last byte
+   * @return The string
+   */
+  protected String decode(int start, int end)
+  {
+    ByteBuffer bytes = m_bytes;
+    int length = end - start;
+    if (length == 0)
+    {
+      return "";
+    }
+    int max_chars = (int) Math.ceil(length * (double) m_decoder.maxCharsPerByte());
+    if (m_chars.capacity() < max_chars)
+    {
+      m_chars = CharBuffer.allocate(Math.max(max_chars, m_chars.capacity() * 2));
+    }
+    CharBuffer chars = m_chars;
+    chars.clear();
+    int limit = bytes.limit();
+    bytes.limit(end);
+    bytes.position(start);
+    m_decoder.reset();
+    CoderResult cr = m_decoder.decode(bytes, chars, true);
+    if (cr.isUnderflow())
+    {
+      m_decoder.flush(chars);
+    }
+    bytes.limit(limit);
+    chars.flip();
+    return chars.toString();
+  }
+
+  /**
+   * Closes the underlying channel
+   * 
+   * @throws IOException
+   *           If closing the channel fails
+   */
+  @Override
+  public void close() throws IOException
+  {
+    m_channel.close();
+  }
+}
@@ -17,6 +17,7 @@
  */
 package ca.uqac.lif.cep.io;
 
+import ca.uqac.lif.cep.ProcessorException;
 import ca.uqac.lif.cep.tmf.Sink;
 import java.io.PrintStream;
 import java.util.Queue;
@@ -36,6 +37,17 @@ import java.util.Queue;
  * defines the symbol that is inserted between each event. Further customization
  * of the output can be achieved by passing to a fancier type of print stream,
  * such as an ANSI-aware printer.
+ * <p>
+ * By default, each event is printed to the stream as soon as it is received.
+ * When printing many events, it is much faster to switch the processor to
+ * <em>buffered</em> mode with {@link #setBuffered(boolean) setBuffered()}.
+ * In this mode, events are formatted into a buffer, and a separate thread
+ * writes the buffer to the print stream when it is full, when some time has
+ * elapsed since the last write (see {@link #setFlushInterval(long)
+ * setFlushInterval()}), and at the end of the trace. Calls to
+ * {@link #flush()} and {@link #close()} also empty the buffer. Note that the
+ * methods {@link #beforeEvent(PrintStream) beforeEvent()} and the like are
+ * not called in buffered mode.
  * 
  * @author Sylvain Hallé
  * @since 0.1
@@ -63,6 +75,66 @@ public class Print extends Sink
    */
   protected String m_suffix = "";
 
+  /**
+   * The default number of characters after which the buffer is written to
+   * the print stream, in buffered mode
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  /**
+   * The default maximum time during which events stay in the buffer, in
+   * milliseconds
+   */
+  public static final long DEFAULT_FLUSH_INTERVAL = 100;
+
+  /**
+   * Whether the processor is in buffered mode
+   */
+  protected boolean m_buffered = false;
+
+  /**
+   * The number of characters after which the buffer is written to the print
+   * stream
+   */
+  protected int m_bufferSize = DEFAULT_BUFFER_SIZE;
+
+  /**
+   * The maximum time during which events stay in the buffer, in milliseconds
+   */
+  protected long m_flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+  /**
+   * A lock protecting the buffers in buffered mode
+   */
+  protected final transient Object m_lock = new Object();
+
+  /**
+   * The buffer into which events are currently formatted
+   */
+  protected transient StringBuilder m_current = null;
+
+  /**
+   * The other buffer, or <tt>null</tt> if it is being written by the writer
+   * thread
+   */
+  protected transient StringBuilder m_other = null;
+
+  /**
+   * A buffer waiting to be written by the writer thread, or <tt>null</tt>
+   */
+  protected transient StringBuilder m_full = null;
+
+  /**
+   * The thread writing buffers to the print stream, or <tt>null</tt> if it
+   * is not started
+   */
+  protected transient Thread m_writer = null;
+
+  /**
+   * Whether the writer thread has been asked to stop
+   */
+  protected transient boolean m_closing = false;
+
   /**
    * Creates a new printer with an input arity of 1 and sending its output to the
    * standard output.
@@ -166,10 +238,76 @@ public class Print extends Sink
     return this;
   }
 
+  /**
+   * Sets whether the processor formats events into a buffer written to the
+   * print stream by a separate thread, rather than printing each event
+   * directly.
+   * 
+   * @param b
+   *          <tt>true</tt> to buffer the output, <tt>false</tt> otherwise
+   *          (default)
+   * @return This print processor
+   */
+  public Print setBuffered(boolean b)
+  {
+    if (!b)
+    {
+      stopWriter();
+    }
+    m_buffered = b;
+    return this;
+  }
+
+  /**
+   * Sets the number of characters after which the buffer is written to the
+   * print stream, in buffered mode
+   * 
+   * @param size
+   *          The number of characters
+   * @return This print processor
+   */
+  public Print setBufferSize(int size)
+  {
+    m_bufferSize = size;
+    return this;
+  }
+
+  /**
+   * Sets the maximum time during which events stay in the buffer, in
+   * buffered mode
+   * 
+   * @param millis
+   *          The time, in milliseconds
+   * @return This print processor
+   */
+  public Print setFlushInterval(long millis)
+  {
+    m_flushInterval = millis;
+    return this;
+  }
+
   @Override
   @SuppressWarnings("squid:S1168")
   protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
   {
+    if (m_buffered)
+    {
+      synchronized (m_lock)
+      {
+        if (m_writer == null)
+        {
+          startWriter();
+        }
+        m_current.append(m_prefix);
+        prettyPrint(m_current, inputs[0]);
+        m_current.append(m_suffix).append(m_separator);
+        if (m_current.length() >= m_bufferSize)
+        {
+          handOff();
+        }
+      }
+      return true;
+    }
     beforeEvent(m_out);
     m_out.print(m_prefix);
     prettyPrint(m_out, inputs[0]);
@@ -252,6 +390,38 @@ public class Print extends Sink
     }
   }
 
+  /**
+   * Formats an object in the same way as
+   * {@link #prettyPrint(PrintStream, Object)}, in buffered mode. Integer
+   * values are appended to the buffer directly, without creating an
+   * intermediate string.
+   * 
+   * @param sb
+   *          The buffer to format into
+   * @param o
+   *          The object to format
+   */
+  protected void prettyPrint(/* @NotNull */ StringBuilder sb, /* @NotNull */ Object o)
+  {
+    if (o instanceof Number)
+    {
+      Number n = (Number) o;
+      float f = n.floatValue();
+      if (f == Math.round(f))
+      {
+        sb.append(n.intValue());
+      }
+      else
+      {
+        sb.append(n);
+      }
+    }
+    else
+    {
+      sb.append(o);
+    }
+  }
+
   /**
    * Prints a number in an eye-pleasing way. In this case, the printer trims the
    * decimals from a number if it is an integer
@@ -272,16 +442,210 @@ public class Print extends Sink
   }
   
   /**
-   * Closes the underlying PrintStream
+   * In buffered mode, writes all the events received so far to the print
+   * stream, and waits until they are written. In normal mode, flushes the
+   * print stream.
+   */
+  public void flush()
+  {
+    synchronized (m_lock)
+    {
+      if (m_writer != null)
+      {
+        try
+        {
+          if (m_current.length() > 0)
+          {
+            handOff();
+          }
+          while (m_full != null || m_other == null)
+          {
+            m_lock.wait();
+          }
+        }
+        catch (InterruptedException e)
+        {
+          // Restore interrupted state
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+    m_out.flush();
+  }
+
+  /**
+   * Closes the underlying PrintStream, after writing the events that are
+   * still in the buffer
    */
   public void close()
   {
+    stopWriter();
     m_out.close();
   }
 
+  @Override
+  protected boolean onEndOfTrace(Queue<Object[]> outputs)
+  {
+    stopWriter();
+    return false;
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    stopWriter();
+  }
+
   @Override
   public /* @NotNull */ Print duplicate(boolean with_state)
   {
-    return new Print(getInputArity(), m_out);
+    Print p = new Print(getInputArity(), m_out);
+    p.m_buffered = m_buffered;
+    p.m_bufferSize = m_bufferSize;
+    p.m_flushInterval = m_flushInterval;
+    return p;
+  }
+
+  /**
+   * Starts the writer thread. Must be called while holding the lock.
+   */
+  protected void startWriter()
+  {
+    m_current = new StringBuilder(m_bufferSize + 256);
+    m_other = new StringBuilder(m_bufferSize + 256);
+    m_full = null;
+    m_closing = false;
+    m_writer = new Thread(new BufferWriter(), "Print-" + getId());
+    m_writer.setDaemon(true);
+    m_writer.start();
+  }
+
+  /**
+   * Writes the remaining events and stops the writer thread, if it is
+   * running
+   */
+  protected void stopWriter()
+  {
+    Thread writer;
+    synchronized (m_lock)
+    {
+      writer = m_writer;
+      if (writer == null)
+      {
+        return;
+      }
+      m_closing = true;
+      m_lock.notifyAll();
+    }
+    try
+    {
+      writer.join();
+    }
+    catch (InterruptedException e)
+    {
+      // Restore interrupted state
+      Thread.currentThread().interrupt();
+    }
+    synchronized (m_lock)
+    {
+      m_writer = null;
+      m_current = null;
+      m_other = null;
+    }
+    m_out.flush();
+  }
+
+  /**
+   * Passes the current buffer to the writer thread, and continues with the
+   * other one. If the writer thread is still busy with the other buffer,
+   * waits until it is done. Must be called while holding the lock.
+   */
+  protected void handOff()
+  {
+    try
+    {
+      while (m_other == null)
+      {
+        m_lock.wait();
+      }
+    }
+    catch (InterruptedException e)
+    {
+      // Restore interrupted state
+      Thread.currentThread().interrupt();
+      throw new ProcessorException(e);
+    }
+    m_full = m_current;
+    m_current = m_other;
+    m_other = null;
+    m_lock.notifyAll();
+  }
+
+  /**
+   * Writes buffers to the print stream as they fill up, and when the flush
+   * interval elapses
+   */
+  protected class BufferWriter implements Runnable
+  {
+    @Override
+    public void run()
+    {
+      for (;;)
+      {
+        StringBuilder batch;
+        synchronized (m_lock)
+        {
+          while (m_full == null)
+          {
+            if (m_current.length() == 0)
+            {
+              if (m_closing)
+              {
+                return;
+              }
+              try
+              {
+                m_lock.wait(m_flushInterval);
+              }
+              catch (InterruptedException e)
+              {
+                // Write what is left and stop
+                m_closing = true;
+              }
+            }
+            else
+            {
+              if (!m_closing)
+              {
+                try
+                {
+                  // Leave a chance for the buffer to fill up
+                  m_lock.wait(m_flushInterval);
+                }
+                catch (InterruptedException e)
+                {
+                  m_closing = true;
+                }
+              }
+              if (m_full == null && m_current.length() > 0)
+              {
+                handOff();
+              }
+            }
+          }
+          batch = m_full;
+          m_full = null;
+        }
+        m_out.append(batch);
+        m_out.flush();
+        synchronized (m_lock)
+        {
+          batch.setLength(0);
+          m_other = batch;
+          m_lock.notifyAll();
+        }
+      }
+    }
   }
 }
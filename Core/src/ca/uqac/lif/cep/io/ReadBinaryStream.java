@@ -0,0 +1,86 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import ca.uqac.lif.cep.ProcessorException;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+
+/**
+ * Reads events written by a {@link WriteBinaryStream} from a Java
+ * {@link InputStream}. The processor outputs one event for each event
+ * written, with the same type as the original one, and ends its trace when
+ * the stream ends.
+ * <p>
+ * Reading blocks until an event is completely received.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class ReadBinaryStream extends ReadInputStream
+{
+  /**
+   * The decoder used to read events
+   */
+  protected transient BinaryCodec.StreamDecoder m_decoder = null;
+
+  /**
+   * Creates a new binary stream reader
+   * 
+   * @param is
+   *          The input stream to read from
+   */
+  public ReadBinaryStream(InputStream is)
+  {
+    super(is);
+  }
+
+  @Override
+  protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    if (m_decoder == null)
+    {
+      m_decoder = new BinaryCodec.StreamDecoder(new BufferedInputStream(m_inputStream, m_chunkSize));
+    }
+    try
+    {
+      if (!m_decoder.hasNext())
+      {
+        return false;
+      }
+      outputs.add(new Object[] { m_decoder.read() });
+      return true;
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    if (m_decoder != null)
+    {
+      m_decoder.reset();
+    }
+  }
+}
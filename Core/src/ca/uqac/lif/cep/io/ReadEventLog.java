@@ -0,0 +1,393 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.tmf.Source;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+
+/**
+ * Replays the events of an event log written by a {@link WriteEventLog}.
+ * See {@link EventLog} for the layout of the log.
+ * <p>
+ * Segments are mapped into memory and read one after the other. Reading
+ * starts at offset 0, or at the offset given to {@link #seek(long)}.
+ * <p>
+ * By default, the source ends when it reaches the end of the log. In
+ * <em>tail</em> mode (see {@link #tail(boolean)}), the source instead keeps
+ * watching the log for events appended after it started reading; when no
+ * new event is available, it waits a short time and produces no event, so
+ * that a call to <tt>hasNextSoft</tt> answers <code>MAYBE</code>.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class ReadEventLog extends Source
+{
+  /**
+   * The directory of the log
+   */
+  protected final File m_directory;
+
+  /**
+   * The codec used to decode events
+   */
+  protected final EventCodec m_codec;
+
+  /**
+   * Whether to wait for new events at the end of the log
+   */
+  protected boolean m_tail = false;
+
+  /**
+   * In tail mode, the time to wait for new events, in milliseconds
+   */
+  protected long m_pollInterval = 10;
+
+  /**
+   * The offset reading starts from after a call to {@link #reset()}
+   */
+  protected long m_startOffset = 0;
+
+  /**
+   * The offset of the next event to read
+   */
+  protected long m_offset = 0;
+
+  /**
+   * The offset of the first event of the current segment
+   */
+  protected long m_segmentBase = -1;
+
+  /**
+   * The channel of the current segment, or <tt>null</tt> if no segment is
+   * open
+   */
+  protected transient FileChannel m_channel = null;
+
+  /**
+   * The contents of the current segment
+   */
+  protected transient ByteBuffer m_map = null;
+
+  /**
+   * The position of the next record in the current segment
+   */
+  protected int m_position = 0;
+
+  /**
+   * The number of records read so far in the current segment
+   */
+  protected long m_recordsRead = 0;
+
+  /**
+   * Creates a new log reader using Java serialization to decode events
+   * 
+   * @param directory
+   *          The directory of the log
+   */
+  public ReadEventLog(/*@ non_null @*/ File directory)
+  {
+    this(directory, EventCodec.JavaSerialization.instance);
+  }
+
+  /**
+   * Creates a new log reader
+   * 
+   * @param directory
+   *          The directory of the log
+   * @param codec
+   *          The codec used to decode events
+   */
+  public ReadEventLog(/*@ non_null @*/ File directory, /*@ non_null @*/ EventCodec codec)
+  {
+    super(1);
+    m_directory = directory;
+    m_codec = codec;
+  }
+
+  /**
+   * Sets whether to keep watching the log for new events once its end is
+   * reached
+   * 
+   * @param b
+   *          <tt>true</tt> to tail the log, <tt>false</tt> to end at the
+   *          end of the log (default)
+   * @return This log reader
+   */
+  public ReadEventLog tail(boolean b)
+  {
+    m_tail = b;
+    return this;
+  }
+
+  /**
+   * Sets the time to wait for new events at the end of the log, in tail mode
+   * 
+   * @param millis
+   *          The time, in milliseconds
+   * @return This log reader
+   */
+  public ReadEventLog setPollInterval(long millis)
+  {
+    m_pollInterval = millis;
+    return this;
+  }
+
+  /**
+   * Moves to an event of the log. The next event read by the source is the
+   * event at this offset, or the first event appended after the end of the
+   * log if the offset is beyond it.
+   * 
+   * @param offset
+   *          The offset
+   * @return This log reader
+   */
+  public synchronized ReadEventLog seek(long offset)
+  {
+    m_startOffset = offset;
+    m_offset = offset;
+    closeSegment();
+    return this;
+  }
+
+  /**
+   * Gets the offset of the next event the source will read
+   * 
+   * @return The offset
+   */
+  public synchronized long getOffset()
+  {
+    return m_offset;
+  }
+
+  @Override
+  protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    try
+    {
+      byte[] record = nextRecord();
+      if (record != null)
+      {
+        outputs.add(new Object[] { m_codec.decode(ByteBuffer.wrap(record)) });
+        m_offset++;
+        return true;
+      }
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    if (!m_tail)
+    {
+      return false;
+    }
+    try
+    {
+      Thread.sleep(m_pollInterval);
+    }
+    catch (InterruptedException e)
+    {
+      // Restore interrupted state
+      Thread.currentThread().interrupt();
+    }
+    return true;
+  }
+
+  /**
+   * Gets the next record of the log
+   * 
+   * @return The encoded event, or <tt>null</tt> if no complete record is
+   *         available
+   * @throws IOException
+   *           If reading fails
+   */
+  protected byte[] nextRecord() throws IOException
+  {
+    if (m_channel == null && !openSegment())
+    {
+      return null;
+    }
+    for (;;)
+    {
+      byte[] record = EventLog.readRecord(m_map, m_position);
+      if (record != null)
+      {
+        m_position += EventLog.HEADER_SIZE + record.length;
+        m_recordsRead++;
+        if (m_segmentBase + m_recordsRead > m_offset)
+        {
+          return record;
+        }
+        // Still skipping events before the offset we seeked to
+        continue;
+      }
+      if (m_channel.size() > m_map.limit())
+      {
+        // The segment has grown since it was mapped
+        map();
+        continue;
+      }
+      long next = nextSegment();
+      if (next < 0)
+      {
+        return null;
+      }
+      closeSegment();
+      if (!openSegment(next, next))
+      {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Opens the segment containing the event at the current offset
+   * 
+   * @return <tt>true</tt> if a segment was opened, <tt>false</tt> if the
+   *         log has no segment
+   * @throws IOException
+   *           If the segment cannot be opened
+   */
+  protected boolean openSegment() throws IOException
+  {
+    long[] segments = EventLog.listSegments(m_directory);
+    if (segments.length == 0)
+    {
+      return false;
+    }
+    long base = segments[0];
+    for (long b : segments)
+    {
+      if (b <= m_offset)
+      {
+        base = b;
+      }
+    }
+    return openSegment(base, m_offset);
+  }
+
+  /**
+   * Opens a segment
+   * 
+   * @param base
+   *          The offset of the first event of the segment
+   * @param offset
+   *          The offset of the next event to return
+   * @return <tt>true</tt> if the segment was opened, <tt>false</tt> if it
+   *         does not exist
+   * @throws IOException
+   *           If the segment cannot be opened
+   */
+  protected boolean openSegment(long base, long offset) throws IOException
+  {
+    File f = EventLog.segmentFile(m_directory, base);
+    if (!f.exists())
+    {
+      return false;
+    }
+    RandomAccessFile raf = new RandomAccessFile(f, "r");
+    m_channel = raf.getChannel();
+    m_segmentBase = base;
+    m_recordsRead = 0;
+    m_position = 0;
+    if (offset > m_offset)
+    {
+      m_offset = offset;
+    }
+    map();
+    return true;
+  }
+
+  /**
+   * Maps the current segment into memory, as it is now
+   * 
+   * @throws IOException
+   *           If the segment cannot be mapped
+   */
+  protected void map() throws IOException
+  {
+    long size = Math.min(m_channel.size(), Integer.MAX_VALUE);
+    m_map = m_channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+  }
+
+  /**
+   * Gets the offset of the first event of the segment following the
+   * current one
+   * 
+   * @return The offset, or -1 if there is no such segment
+   */
+  protected long nextSegment()
+  {
+    long[] segments = EventLog.listSegments(m_directory);
+    for (long b : segments)
+    {
+      if (b > m_segmentBase)
+      {
+        return b;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Closes the current segment
+   */
+  protected void closeSegment()
+  {
+    if (m_channel != null)
+    {
+      try
+      {
+        m_channel.close();
+      }
+      catch (IOException e)
+      {
+        // Nothing we can do
+      }
+    }
+    m_channel = null;
+    m_map = null;
+    m_segmentBase = -1;
+  }
+
+  @Override
+  public synchronized void reset()
+  {
+    super.reset();
+    seek(m_startOffset);
+  }
+
+  @Override
+  public ReadEventLog duplicate(boolean with_state)
+  {
+    ReadEventLog rel = new ReadEventLog(m_directory, m_codec);
+    rel.m_tail = m_tail;
+    rel.m_pollInterval = m_pollInterval;
+    rel.m_startOffset = m_startOffset;
+    rel.m_offset = with_state ? m_offset : m_startOffset;
+    return rel;
+  }
+}
@@ -17,16 +17,26 @@
  */
 package ca.uqac.lif.cep.io;
 
-import java.io.BufferedInputStream;
+import ca.uqac.lif.cep.ProcessorException;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.util.Queue;
-import java.util.Scanner;
 
 /**
  * Source that reads text lines from a Java {@link InputStream}. It is represented
  * graphically as:
  * <p>
  * <img src="{@docRoot}/doc-files/io/ReadLines.png" alt="ReadLines">
+ * <p>
+ * Lines are split by a {@link LineReader}, which reads the input through a
+ * byte channel. When the input is a file, the reader can also map the file
+ * into memory instead of copying its contents (see
+ * {@link #ReadLines(FileChannel, boolean)}).
  * 
  * @author Sylvain Hallé
  * @since 0.3
@@ -35,14 +45,25 @@ import java.util.Scanner;
 public class ReadLines extends ReadInputStream
 {
   /**
-   * The scanner to read from
+   * The channel to read from
+   */
+  protected transient ReadableByteChannel m_channel;
+
+  /**
+   * Whether to map the input file into memory
    */
-  protected transient Scanner m_scanner;
+  protected boolean m_mapped = false;
 
   /**
-   * The buffered input stream to wrap
+   * The charset of the text to read
    */
-  protected transient BufferedInputStream m_bufferedInputStream;
+  protected Charset m_charset = Charset.defaultCharset();
+
+  /**
+   * The object that splits the input into lines. It is created on the first
+   * call to {@link #compute(Object[], Queue)}.
+   */
+  protected transient LineReader m_reader = null;
 
   /**
    * Whether to add a carriage return at the end of each line
@@ -68,8 +89,63 @@ public class ReadLines extends ReadInputStream
   public ReadLines(InputStream is)
   {
     super(is);
-    m_bufferedInputStream = new BufferedInputStream(is);
-    m_scanner = new Scanner(m_bufferedInputStream);
+    if (is instanceof FileInputStream)
+    {
+      m_channel = ((FileInputStream) is).getChannel();
+    }
+    else
+    {
+      m_channel = Channels.newChannel(is);
+    }
+    setChunkSize(LineReader.DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Creates a new file reader from a byte channel
+   * 
+   * @param channel
+   *          The channel to read from
+   */
+  public ReadLines(ReadableByteChannel channel)
+  {
+    super(Channels.newInputStream(channel));
+    m_channel = channel;
+    setChunkSize(LineReader.DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Creates a new file reader from a file channel
+   * 
+   * @param channel
+   *          The channel to read from
+   * @param mapped
+   *          Set to <tt>true</tt> to map the file into memory, <tt>false</tt>
+   *          to copy its contents into a buffer
+   */
+  public ReadLines(FileChannel channel, boolean mapped)
+  {
+    this(channel);
+    m_mapped = mapped;
+    m_isFile = true;
+    if (mapped)
+    {
+      setChunkSize(LineReader.DEFAULT_MAP_SIZE);
+    }
+  }
+
+  /**
+   * Sets the charset of the text to read. By default, the platform's charset
+   * is used.
+   * 
+   * @param charset
+   *          The charset. Line feeds must be encoded as a single byte in this
+   *          charset; see {@link LineReader}.
+   * @return This reader
+   */
+  public ReadLines setCharset(Charset charset)
+  {
+    m_charset = charset;
+    return this;
   }
 
   /**
@@ -102,20 +178,32 @@ public class ReadLines extends ReadInputStream
   @SuppressWarnings("squid:S1168")
   protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
   {
-    if (m_scanner.hasNextLine())
+    String line;
+    try
     {
-      String line = m_scanner.nextLine();
-      if (m_trim)
+      if (m_reader == null)
       {
-        line = line.trim();
+        m_reader = new LineReader(m_channel, m_charset, m_mapped, m_chunkSize);
       }
-      if (m_addCrlf)
-      {
-        line += CRLF;
-      }
-      outputs.add(new Object[] { line });
-      return true;
+      line = m_reader.readLine();
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    if (line == null)
+    {
+      return false;
+    }
+    if (m_trim)
+    {
+      line = line.trim();
+    }
+    if (m_addCrlf)
+    {
+      line += CRLF;
     }
-    return false;
+    outputs.add(new Object[] { line });
+    return true;
   }
-}
\ No newline at end of file
+}
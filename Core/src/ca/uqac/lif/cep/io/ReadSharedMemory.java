@@ -0,0 +1,294 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.concurrency.WaitStrategy;
+import ca.uqac.lif.cep.tmf.Source;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+
+/**
+ * Receives the events sent by a {@link WriteSharedMemory} running in
+ * another process of the same host, through a ring buffer stored in a
+ * memory-mapped file (see {@link SharedRing}).
+ * <p>
+ * Reading waits, according to the processor's {@link WaitStrategy}, until
+ * the writer has created the file and the next event is available. The
+ * trace ends when the writer signals the end of its own trace. If the
+ * writer's process ends without doing so, the processor throws an
+ * exception instead of waiting forever.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class ReadSharedMemory extends Source
+{
+  /**
+   * The interval between two checks that the writer is alive, in
+   * nanoseconds
+   */
+  protected static final long LIVENESS_INTERVAL = 100000000L;
+
+  /**
+   * The file containing the ring
+   */
+  protected final File m_file;
+
+  /**
+   * The codec used to decode events
+   */
+  protected final EventCodec m_codec;
+
+  /**
+   * What to do while waiting for events
+   */
+  protected WaitStrategy m_waitStrategy = WaitStrategy.Park.instance;
+
+  /**
+   * The ring, or <tt>null</tt> if it is not yet open
+   */
+  protected transient SharedRing m_ring = null;
+
+  /**
+   * A view of the ring
+   */
+  protected transient ByteBuffer m_data = null;
+
+  /**
+   * The read sequence
+   */
+  protected long m_readSeq = 0;
+
+  /**
+   * The last value of the write sequence seen by the consumer
+   */
+  protected long m_cachedWriteSeq = 0;
+
+  /**
+   * Whether the end of the trace has been read
+   */
+  protected boolean m_ended = false;
+
+  /**
+   * Creates a new shared memory reader
+   * 
+   * @param file
+   *          The file containing the ring
+   */
+  public ReadSharedMemory(/*@ non_null @*/ File file)
+  {
+    this(file, BinaryCodec.instance);
+  }
+
+  /**
+   * Creates a new shared memory reader
+   * 
+   * @param file
+   *          The file containing the ring
+   * @param codec
+   *          The codec used to decode events
+   */
+  public ReadSharedMemory(/*@ non_null @*/ File file, /*@ non_null @*/ EventCodec codec)
+  {
+    super(1);
+    m_file = file;
+    m_codec = codec;
+  }
+
+  /**
+   * Sets what the processor does while waiting for events
+   * 
+   * @param strategy
+   *          The wait strategy
+   * @return This shared memory reader
+   */
+  public ReadSharedMemory setWaitStrategy(/*@ non_null @*/ WaitStrategy strategy)
+  {
+    m_waitStrategy = strategy;
+    return this;
+  }
+
+  @Override
+  protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    if (m_ended)
+    {
+      return false;
+    }
+    try
+    {
+      if (m_ring == null)
+      {
+        open();
+      }
+      for (;;)
+      {
+        awaitData();
+        int capacity = m_ring.getCapacity();
+        int index = (int) (m_readSeq & (capacity - 1));
+        int length = m_data.getInt(index);
+        if (length == SharedRing.PADDING)
+        {
+          m_readSeq += capacity - index;
+          continue;
+        }
+        if (length == SharedRing.END)
+        {
+          m_ended = true;
+          m_readSeq += SharedRing.align(4);
+          m_ring.putSequence(SharedRing.READ_OFFSET, m_readSeq);
+          close();
+          // The channel is over: remove the file, so that a new reader does
+          // not mistake it for a fresh one
+          m_file.delete();
+          return false;
+        }
+        ByteBuffer record = m_data.duplicate();
+        record.limit(index + 4 + length);
+        record.position(index + 4);
+        Object o = m_codec.decode(record);
+        m_readSeq += SharedRing.align(4 + length);
+        // The record has been decoded: its space can be reused
+        m_ring.putSequence(SharedRing.READ_OFFSET, m_readSeq);
+        outputs.add(new Object[] { o });
+        return true;
+      }
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+
+  /**
+   * Detaches from the ring
+   */
+  public synchronized void close()
+  {
+    if (m_ring != null)
+    {
+      m_ring.close();
+      m_ring = null;
+    }
+  }
+
+  @Override
+  public synchronized void reset()
+  {
+    super.reset();
+    close();
+    m_ended = false;
+  }
+
+  @Override
+  public Processor duplicate(boolean with_state)
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Waits until the writer has created the ring, and opens it
+   * 
+   * @throws IOException
+   *           If the ring cannot be opened
+   */
+  protected void open() throws IOException
+  {
+    int attempts = 0;
+    for (;;)
+    {
+      if (SharedRing.isReady(m_file))
+      {
+        try
+        {
+          m_ring = new SharedRing(m_file, -1);
+          break;
+        }
+        catch (IOException e)
+        {
+          // The writer is still initializing the file; try again
+        }
+      }
+      idle(attempts++);
+    }
+    m_data = m_ring.ring();
+    m_readSeq = m_ring.getSequence(SharedRing.READ_OFFSET);
+    m_cachedWriteSeq = m_readSeq;
+  }
+
+  /**
+   * Waits until the writer has published data past the read sequence
+   * 
+   * @throws IOException
+   *           If the writer has died
+   */
+  protected void awaitData() throws IOException
+  {
+    int attempts = 0;
+    long last_check = System.nanoTime();
+    while (m_cachedWriteSeq == m_readSeq)
+    {
+      m_cachedWriteSeq = m_ring.getSequence(SharedRing.WRITE_OFFSET);
+      if (m_cachedWriteSeq != m_readSeq)
+      {
+        return;
+      }
+      long now = System.nanoTime();
+      if (now - last_check >= LIVENESS_INTERVAL)
+      {
+        last_check = now;
+        if (!m_ring.isProducerAlive())
+        {
+          // Check one last time, in case the writer published just before
+          // ending
+          m_cachedWriteSeq = m_ring.getSequence(SharedRing.WRITE_OFFSET);
+          if (m_cachedWriteSeq == m_readSeq)
+          {
+            throw new IOException("The writer of the shared memory channel has died");
+          }
+          return;
+        }
+      }
+      idle(attempts++);
+    }
+  }
+
+  /**
+   * Waits according to the wait strategy
+   * 
+   * @param attempts
+   *          The number of attempts so far
+   */
+  protected void idle(int attempts)
+  {
+    try
+    {
+      m_waitStrategy.idle(attempts);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new ProcessorException(e);
+    }
+  }
+}
@@ -0,0 +1,332 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.tmf.Source;
+import java.io.BufferedInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Queue;
+
+/**
+ * Receives events sent by a {@link WriteSocket} over a TCP connection,
+ * and outputs them in the order they were sent. The processor listens on a
+ * port, accepts a single connection, and ends its trace when the writer
+ * signals the end of its own trace. A connection closed before this signal
+ * is reported as an error, since events may have been lost.
+ * <p>
+ * The processor controls the rate at which the writer sends events: it
+ * initially allows the writer to send a number of events (the
+ * <em>window</em>), and allows more as the events it has received are
+ * consumed.
+ * <p>
+ * Reading blocks until the writer has connected and the next event has
+ * arrived.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class ReadSocket extends Source
+{
+  /**
+   * The default number of events the writer may send ahead of the reader
+   */
+  public static final int DEFAULT_WINDOW = 1024;
+
+  /**
+   * The socket waiting for the writer to connect
+   */
+  protected transient ServerSocket m_server;
+
+  /**
+   * The number of events the writer may send ahead of the reader
+   */
+  protected int m_window = DEFAULT_WINDOW;
+
+  /**
+   * The connection with the writer, or <tt>null</tt> if it is not yet open
+   */
+  protected transient Socket m_socket = null;
+
+  /**
+   * The decoder of incoming events
+   */
+  protected transient FrameDecoder m_decoder = null;
+
+  /**
+   * The stream on which credit is granted to the writer
+   */
+  protected transient DataOutputStream m_out = null;
+
+  /**
+   * The number of events left to read in the current data frame
+   */
+  protected int m_remaining = 0;
+
+  /**
+   * The number of events consumed since credit was last granted
+   */
+  protected int m_consumed = 0;
+
+  /**
+   * Whether the end of the trace has been received
+   */
+  protected boolean m_ended = false;
+
+  /**
+   * Creates a new socket reader listening on a port of all the local
+   * interfaces
+   * 
+   * @param port
+   *          The port, or 0 to pick any free port (see {@link #getPort()})
+   */
+  public ReadSocket(int port)
+  {
+    this(new InetSocketAddress(port));
+  }
+
+  /**
+   * Creates a new socket reader
+   * 
+   * @param address
+   *          The local address to listen on
+   */
+  public ReadSocket(/*@ non_null @*/ InetSocketAddress address)
+  {
+    super(1);
+    try
+    {
+      m_server = new ServerSocket();
+      m_server.setReuseAddress(true);
+      m_server.bind(address);
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+
+  /**
+   * Sets the number of events the writer may send ahead of the reader
+   * 
+   * @param events
+   *          The number of events
+   * @return This socket reader
+   */
+  public ReadSocket setWindow(int events)
+  {
+    m_window = Math.max(1, events);
+    return this;
+  }
+
+  /**
+   * Gets the port the reader listens on
+   * 
+   * @return The port
+   */
+  public int getPort()
+  {
+    return m_server.getLocalPort();
+  }
+
+  @Override
+  protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    if (m_ended)
+    {
+      return false;
+    }
+    try
+    {
+      if (m_socket == null)
+      {
+        accept();
+      }
+      while (m_remaining == 0)
+      {
+        int tag = m_decoder.readFrameTag();
+        if (tag == SocketFrames.END)
+        {
+          m_ended = true;
+          closeConnection();
+          return false;
+        }
+        if (tag < 0)
+        {
+          // The writer crashed or the link was lost: events may be missing
+          m_ended = true;
+          closeConnection();
+          throw new IOException("Connection closed by the writer before the end of the trace");
+        }
+        if (tag != SocketFrames.DATA)
+        {
+          throw new IOException("Unexpected frame " + tag);
+        }
+        m_remaining = m_decoder.readFrameCount();
+      }
+      outputs.add(new Object[] { m_decoder.read() });
+      m_remaining--;
+      m_consumed++;
+      if (m_consumed >= m_window / 2 || m_consumed >= 64)
+      {
+        grant(m_consumed);
+        m_consumed = 0;
+      }
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    return true;
+  }
+
+  /**
+   * Closes the connection with the writer, if any, and stops listening
+   */
+  public synchronized void close()
+  {
+    closeConnection();
+    try
+    {
+      m_server.close();
+    }
+    catch (IOException e)
+    {
+      // Nothing we can do
+    }
+  }
+
+  @Override
+  public synchronized void reset()
+  {
+    super.reset();
+    // Wait for a new writer
+    closeConnection();
+    m_ended = false;
+  }
+
+  @Override
+  public Processor duplicate(boolean with_state)
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Waits for the writer to connect, and grants it its initial credit
+   * 
+   * @throws IOException
+   *           If the connection fails
+   */
+  protected void accept() throws IOException
+  {
+    Socket s = m_server.accept();
+    s.setTcpNoDelay(true);
+    m_socket = s;
+    m_decoder = new FrameDecoder(new BufferedInputStream(s.getInputStream(), 65536));
+    m_out = new DataOutputStream(s.getOutputStream());
+    m_remaining = 0;
+    m_consumed = 0;
+    grant(m_window);
+  }
+
+  /**
+   * Allows the writer to send more events. A writer that has already sent
+   * the end of its trace may have closed the connection; in such a case,
+   * the credit is simply not delivered.
+   * 
+   * @param events
+   *          The number of events
+   */
+  protected void grant(int events)
+  {
+    // Header and value in a single write, since Nagle's algorithm is off
+    byte[] frame = new byte[] { SocketFrames.CREDIT, (byte) (events >>> 24),
+        (byte) (events >>> 16), (byte) (events >>> 8), (byte) events };
+    try
+    {
+      m_out.write(frame);
+      m_out.flush();
+    }
+    catch (IOException e)
+    {
+      // The writer is gone; reading the rest of its frames will tell
+    }
+  }
+
+  /**
+   * Closes the connection with the writer, if any
+   */
+  protected void closeConnection()
+  {
+    if (m_socket == null)
+    {
+      return;
+    }
+    try
+    {
+      m_socket.close();
+    }
+    catch (IOException e)
+    {
+      // Nothing we can do
+    }
+    m_socket = null;
+    m_decoder = null;
+  }
+
+  /**
+   * Decoder that also reads the headers of data frames
+   */
+  protected static class FrameDecoder extends BinaryCodec.StreamDecoder
+  {
+    public FrameDecoder(BufferedInputStream is)
+    {
+      super(is);
+    }
+
+    /**
+     * Reads the tag of the next frame
+     * 
+     * @return The tag, or -1 if the stream has ended
+     * @throws IOException
+     *           If reading fails
+     */
+    public int readFrameTag() throws IOException
+    {
+      return hasNext() ? readByte() : -1;
+    }
+
+    /**
+     * Reads the number of events of a data frame
+     * 
+     * @return The number of events
+     * @throws IOException
+     *           If reading fails
+     */
+    public int readFrameCount() throws IOException
+    {
+      return (int) readFixed(4);
+    }
+  }
+}
@@ -18,15 +18,37 @@
 package ca.uqac.lif.cep.io;
 
 import ca.uqac.lif.cep.ProcessorException;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.Queue;
 
 /**
  * Extracts character strings from a Java {@link InputStream}.
+ * <p>
+ * The processor reads chunks of at most {@link #m_chunkSize} bytes, and
+ * decodes them into a character buffer; both buffers are reused from one
+ * chunk to the next. A read from an input stream blocks until some data is
+ * available. When the input is a {@link SelectableChannel}, such as a pipe or
+ * a socket, the processor instead waits on a {@link Selector} for at most
+ * a fixed amount of time (see {@link #setReadTimeout(long)}), and produces
+ * no event if nothing arrived in the meantime.
+ * <p>
+ * By default, each chunk is output as a new {@link String}. With
+ * {@link #outputCharSequence(boolean)}, the processor instead outputs a
+ * read-only {@link CharSequence} view of its character buffer, which avoids
+ * copying the characters. Such an event is only valid until the processor
+ * produces its next event; a downstream processor that needs to keep it
+ * must copy it first, e.g. by calling <tt>toString()</tt>.
  * 
  * @author Sylvain Hallé
  * @since 0.7
@@ -34,14 +56,48 @@ import java.util.Queue;
 public class ReadStringStream extends ReadInputStream
 {
   /**
-   * A reader to wrap around this input stream
+   * The channel to read from
    */
-  protected transient InputStreamReader m_inputStreamReader;
+  protected transient ReadableByteChannel m_channel;
 
   /**
-   * A buffered reader to wrap around the input stream
+   * A selector used to wait for data on selectable channels. It is opened
+   * when the processor first waits for data, and closed at the end of the
+   * channel and when the processor is reset.
    */
-  protected transient BufferedReader m_br;
+  protected transient Selector m_selector = null;
+
+  /**
+   * The maximum time, in milliseconds, to wait for data on a selectable
+   * channel
+   */
+  protected long m_readTimeout = 100;
+
+  /**
+   * The charset of the text to read
+   */
+  protected Charset m_charset = Charset.defaultCharset();
+
+  /**
+   * Whether to output chunks as views of the character buffer instead of
+   * strings
+   */
+  protected boolean m_charSequence = false;
+
+  /**
+   * The buffer bytes are read into
+   */
+  protected transient ByteBuffer m_bytes = null;
+
+  /**
+   * The buffer bytes are decoded into
+   */
+  protected transient CharBuffer m_chars = null;
+
+  /**
+   * The decoder turning bytes into characters
+   */
+  protected transient CharsetDecoder m_decoder = null;
 
   /**
    * Creates a new stream reader
@@ -52,8 +108,75 @@ public class ReadStringStream extends ReadInputStream
   public ReadStringStream(/* @NotNull */ InputStream is)
   {
     super(is);
-    m_inputStreamReader = new InputStreamReader(is);
-    m_br = new BufferedReader(m_inputStreamReader);
+    m_channel = Channels.newChannel(is);
+  }
+
+  /**
+   * Creates a new stream reader from a byte channel. If the channel is a
+   * {@link SelectableChannel}, it is put in non-blocking mode.
+   * 
+   * @param channel
+   *          The channel to read from
+   */
+  public ReadStringStream(/* @NotNull */ ReadableByteChannel channel)
+  {
+    super(Channels.newInputStream(channel));
+    m_channel = channel;
+    if (channel instanceof SelectableChannel)
+    {
+      try
+      {
+        ((SelectableChannel) channel).configureBlocking(false);
+      }
+      catch (IOException e)
+      {
+        throw new ProcessorException(e);
+      }
+    }
+  }
+
+  /**
+   * Sets the charset of the text to read. By default, the platform's charset
+   * is used.
+   * 
+   * @param charset
+   *          The charset
+   * @return This reader
+   */
+  public ReadStringStream setCharset(Charset charset)
+  {
+    m_charset = charset;
+    m_decoder = null;
+    return this;
+  }
+
+  /**
+   * Sets the maximum time to wait for data when reading from a selectable
+   * channel
+   * 
+   * @param timeout
+   *          The time, in milliseconds
+   * @return This reader
+   */
+  public ReadStringStream setReadTimeout(long timeout)
+  {
+    m_readTimeout = timeout;
+    return this;
+  }
+
+  /**
+   * Tells the reader to output each chunk as a read-only view of its
+   * character buffer instead of a string
+   * 
+   * @param b
+   *          <tt>true</tt> to output {@link CharSequence}s, <tt>false</tt> to
+   *          output strings
+   * @return This reader
+   */
+  public ReadStringStream outputCharSequence(boolean b)
+  {
+    m_charSequence = b;
+    return this;
   }
 
   @Override
@@ -66,40 +189,51 @@ public class ReadStringStream extends ReadInputStream
     }
     try
     {
-      if (m_br.ready())
+      prepareBuffers();
+      int bytes_read = read();
+      boolean end = bytes_read < 0;
+      ByteBuffer bytes = m_bytes;
+      CharBuffer chars = m_chars;
+      bytes.flip();
+      chars.clear();
+      m_decoder.decode(bytes, chars, end);
+      if (end)
+      {
+        m_decoder.flush(chars);
+        m_decoder.reset();
+      }
+      // Keep the bytes of an incomplete character for the next chunk
+      bytes.compact();
+      chars.flip();
+      if (chars.hasRemaining())
       {
-        char[] char_array = new char[m_chunkSize];
-        int chars_read = m_br.read(char_array, 0, m_chunkSize);
         // When the input is a pipe and we read the special character,
         // this indicates the end of transmission
-        if (chars_read > 0)
+        if (!m_isFile && chars.get(chars.limit() - 1) == END_CHARACTER.charAt(0))
         {
-          char[] new_array = Arrays.copyOf(char_array, chars_read);
-          String st = new String(new_array);
-          if (!m_isFile && st.endsWith(END_CHARACTER))
-          {
-            // We don't read a file, but the input stream
-            // has the EOT character: trim this EOT form the output
-            st = st.substring(0, st.length() - 1);
-            // And remember this stream is over
-            m_hasReadEot = true;
-          }
-          outputs.add(new Object[] { st });
-          return true;
+          // Trim the EOT from the output, and remember this stream is over
+          chars.limit(chars.limit() - 1);
+          m_hasReadEot = true;
         }
-      }
-      else
-      {
-        // If the underlying input source is not a pipe, the
-        // fact that the input stream is not ready means there
-        // is no more data to read.
-        if (m_isFile)
+        if (m_charSequence)
         {
-          return false;
+          outputs.add(new Object[] { chars.asReadOnlyBuffer() });
         }
+        else
+        {
+          outputs.add(new Object[] { chars.toString() });
+        }
+        return true;
+      }
+      if (end)
+      {
+        // Reads block until data is available, so the end of the stream
+        // is definitive, whatever its kind
+        closeSelector();
+        return false;
       }
-      // At this point, we haven't read bytes, but we don't know if we'll
-      // be able to read some in the future: return true just in case
+      // At this point, a selectable channel had no data before the read
+      // timeout, but it may have some in the future
       return true;
     }
     catch (IOException e)
@@ -107,4 +241,91 @@ public class ReadStringStream extends ReadInputStream
       throw new ProcessorException(e);
     }
   }
+
+  /**
+   * Allocates the buffers and the decoder, if the chunk size or the charset
+   * has changed since the last call
+   */
+  protected void prepareBuffers()
+  {
+    if (m_decoder == null)
+    {
+      m_decoder = m_charset.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      m_chars = null;
+    }
+    if (m_bytes == null || m_bytes.capacity() != m_chunkSize)
+    {
+      ByteBuffer bytes = ByteBuffer.allocate(m_chunkSize);
+      if (m_bytes != null)
+      {
+        // Keep the leftover bytes of an incomplete character
+        m_bytes.flip();
+        bytes.put(m_bytes);
+      }
+      m_bytes = bytes;
+      m_chars = null;
+    }
+    if (m_chars == null)
+    {
+      m_chars = CharBuffer.allocate((int) Math.ceil(m_chunkSize * (double) m_decoder.maxCharsPerByte()));
+    }
+  }
+
+  /**
+   * Reads bytes from the channel into {@link #m_bytes}. On a selectable
+   * channel, waits up to {@link #m_readTimeout} milliseconds for data to be
+   * available; otherwise, the read blocks until some data is available.
+   * 
+   * @return The number of bytes read, or -1 if the end of the channel has
+   *         been reached
+   * @throws IOException
+   *           If reading fails
+   */
+  protected int read() throws IOException
+  {
+    int n = m_channel.read(m_bytes);
+    if (n == 0 && m_channel instanceof SelectableChannel)
+    {
+      if (m_selector == null)
+      {
+        m_selector = Selector.open();
+        ((SelectableChannel) m_channel).register(m_selector, SelectionKey.OP_READ);
+      }
+      if (m_selector.select(m_readTimeout) > 0)
+      {
+        m_selector.selectedKeys().clear();
+      }
+      n = m_channel.read(m_bytes);
+    }
+    return n;
+  }
+
+  /**
+   * Closes the selector used to wait for data, if it is open
+   */
+  protected void closeSelector()
+  {
+    if (m_selector == null)
+    {
+      return;
+    }
+    try
+    {
+      m_selector.close();
+    }
+    catch (IOException e)
+    {
+      // Nothing we can do
+    }
+    m_selector = null;
+  }
+
+  @Override
+  public synchronized void reset()
+  {
+    super.reset();
+    closeSelector();
+  }
 }
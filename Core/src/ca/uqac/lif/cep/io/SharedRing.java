@@ -0,0 +1,421 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+/**
+ * A single-producer, single-consumer ring buffer of byte records, stored in
+ * a memory-mapped file so that two processes of the same host can share
+ * it. This class is used by {@link WriteSharedMemory} and
+ * {@link ReadSharedMemory}.
+ * <p>
+ * The file starts with a header, followed by the ring of records. The
+ * header contains the total number of bytes ever written to the ring by
+ * the producer (the <em>write sequence</em>) and read from it by the
+ * consumer (the <em>read sequence</em>), each on its own cache line. Each
+ * side only ever writes its own sequence, so that no lock is needed: the
+ * producer writes a record, and then publishes it by advancing the write
+ * sequence; the consumer reads the records up to the write sequence, and
+ * then frees their space by advancing the read sequence.
+ * <p>
+ * A record is a 4-byte length followed by the bytes of the record, padded
+ * to a multiple of 8 bytes. A negative length marks either padding up to
+ * the end of the ring (a record never wraps around it), or the end of the
+ * trace.
+ * <p>
+ * While it is alive, the producer holds a lock on a region of the file.
+ * The operating system releases this lock when the producer's process
+ * ends, which is how the consumer detects the death of a producer that did
+ * not signal the end of its trace.
+ * <p>
+ * A producer never truncates or rewrites an existing file, since a consumer
+ * may still have it mapped, and would crash on its next access to the
+ * truncated pages. It rather creates the new ring in a temporary file of
+ * the same directory, and renames it over the existing one. It holds the
+ * lock of the existing file while doing so, so that two producers cannot
+ * replace each other's ring; a consumer still attached to the old file
+ * sees that its producer is gone.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+class SharedRing
+{
+  /**
+   * A number identifying files containing a ring
+   */
+  static final int MAGIC = 0x42655033;
+
+  /**
+   * Offset of the magic number in the file
+   */
+  static final int MAGIC_OFFSET = 0;
+
+  /**
+   * Offset of the capacity of the ring in the file
+   */
+  static final int CAPACITY_OFFSET = 8;
+
+  /**
+   * Offset of the write sequence in the file
+   */
+  static final int WRITE_OFFSET = 64;
+
+  /**
+   * Offset of the read sequence in the file
+   */
+  static final int READ_OFFSET = 128;
+
+  /**
+   * Size of the header, and offset of the first byte of the ring
+   */
+  static final int HEADER_SIZE = 192;
+
+  /**
+   * Offset of the byte locked by the producer. It is far beyond the end of
+   * any ring, so that the lock does not depend on the capacity of the ring,
+   * and never covers the mapped contents of the file.
+   */
+  static final long LOCK_OFFSET = Long.MAX_VALUE - 1;
+
+  /**
+   * Length marking padding up to the end of the ring
+   */
+  static final int PADDING = -1;
+
+  /**
+   * Length marking the end of the trace
+   */
+  static final int END = -2;
+
+  /**
+   * The channel of the file
+   */
+  protected final FileChannel m_channel;
+
+  /**
+   * The contents of the file
+   */
+  protected final MappedByteBuffer m_map;
+
+  /**
+   * The size of the ring, in bytes; a power of 2
+   */
+  protected final int m_capacity;
+
+  /**
+   * A field written and read to order the accesses to the mapped memory.
+   * Java 6 has no explicit memory fences; a volatile write followed by a
+   * volatile read prevents memory accesses from being reordered across
+   * them, by the compiler and by the processor.
+   */
+  private volatile int m_fence = 0;
+
+  /**
+   * The lock held by the producer, or <tt>null</tt> if the ring was opened
+   * by the consumer
+   */
+  protected final FileLock m_producerLock;
+
+  /**
+   * Opens a ring
+   * 
+   * @param file
+   *          The file containing the ring
+   * @param capacity
+   *          The size of the ring in bytes, if the file is to be
+   *          initialized by the producer; otherwise, -1 to read it from the
+   *          file
+   * @throws IOException
+   *           If the file cannot be mapped, or if the producer's lock is
+   *           held by another producer
+   */
+  SharedRing(File file, int capacity) throws IOException
+  {
+    super();
+    if (capacity > 0)
+    {
+      // The existing file, created empty if there is none, is locked
+      // before being replaced, as it may be in use by a live producer
+      FileChannel old = new RandomAccessFile(file, "rw").getChannel();
+      try
+      {
+        lockProducer(old);
+        File tmp = File.createTempFile(file.getName(), ".tmp",
+            file.getAbsoluteFile().getParentFile());
+        RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+        m_channel = raf.getChannel();
+        try
+        {
+          m_producerLock = lockProducer(m_channel);
+          // The new file is zeroed
+          raf.setLength(HEADER_SIZE + (long) capacity);
+          m_map = map();
+          m_capacity = capacity;
+          m_map.putInt(CAPACITY_OFFSET, capacity);
+          fence();
+          m_map.putInt(MAGIC_OFFSET, MAGIC);
+          replace(tmp, file);
+        }
+        catch (IOException e)
+        {
+          m_channel.close();
+          if (!tmp.delete())
+          {
+            tmp.deleteOnExit();
+          }
+          throw e;
+        }
+      }
+      finally
+      {
+        // Closing the channel releases the lock of the old file
+        old.close();
+      }
+    }
+    else
+    {
+      m_channel = new RandomAccessFile(file, "rw").getChannel();
+      m_producerLock = null;
+      m_map = map();
+      if (m_map.getInt(MAGIC_OFFSET) != MAGIC)
+      {
+        m_channel.close();
+        throw new IOException("Not a shared memory channel");
+      }
+      fence();
+      m_capacity = m_map.getInt(CAPACITY_OFFSET);
+    }
+  }
+
+  /**
+   * Renames a file over another one
+   * 
+   * @param from
+   *          The file to rename
+   * @param to
+   *          The file to replace
+   * @throws IOException
+   *           If the file cannot be renamed
+   */
+  private static void replace(File from, File to) throws IOException
+  {
+    // On some platforms, a file cannot be renamed over an existing one
+    if (!from.renameTo(to) && !(to.delete() && from.renameTo(to)))
+    {
+      throw new IOException("Cannot replace " + to);
+    }
+  }
+
+  /**
+   * Maps the whole file into memory
+   * 
+   * @return The buffer
+   * @throws IOException
+   *           If the file cannot be mapped
+   */
+  private MappedByteBuffer map() throws IOException
+  {
+    MappedByteBuffer m = m_channel.map(FileChannel.MapMode.READ_WRITE, 0, m_channel.size());
+    m.order(ByteOrder.nativeOrder());
+    return m;
+  }
+
+  /**
+   * Determines if a file contains an initialized ring
+   * 
+   * @param file
+   *          The file
+   * @return <tt>true</tt> if the file contains a ring
+   */
+  static boolean isReady(File file)
+  {
+    return file.length() > HEADER_SIZE;
+  }
+
+  /**
+   * Orders memory accesses: the accesses made before the call are visible
+   * to other processes before the accesses made after it
+   */
+  void fence()
+  {
+    m_fence = 0;
+    if (m_fence != 0)
+    {
+      // Never happens; reading the field is what matters
+      m_fence = 0;
+    }
+  }
+
+  /**
+   * Reads a sequence from the header
+   * 
+   * @param offset
+   *          The offset of the sequence
+   * @return The value of the sequence
+   */
+  long getSequence(int offset)
+  {
+    long v = m_map.getLong(offset);
+    fence();
+    return v;
+  }
+
+  /**
+   * Writes a sequence to the header, after all the memory accesses made
+   * so far
+   * 
+   * @param offset
+   *          The offset of the sequence
+   * @param value
+   *          The value of the sequence
+   */
+  void putSequence(int offset, long value)
+  {
+    fence();
+    m_map.putLong(offset, value);
+  }
+
+  /**
+   * Gets a view of the ring. The view's position 0 is the first byte of
+   * the ring.
+   * 
+   * @return The view
+   */
+  ByteBuffer ring()
+  {
+    m_map.position(HEADER_SIZE);
+    ByteBuffer b = m_map.slice();
+    b.order(ByteOrder.nativeOrder());
+    m_map.position(0);
+    return b;
+  }
+
+  /**
+   * Takes the lock that signals the producer is alive
+   * 
+   * @param channel
+   *          The channel of the file to lock
+   * @return The lock
+   * @throws IOException
+   *           If the lock cannot be taken
+   */
+  private static FileLock lockProducer(FileChannel channel) throws IOException
+  {
+    FileLock lock;
+    try
+    {
+      lock = channel.tryLock(LOCK_OFFSET, 1, false);
+    }
+    catch (OverlappingFileLockException e)
+    {
+      // The other producer is in this very JVM
+      lock = null;
+    }
+    if (lock == null)
+    {
+      throw new IOException("Another producer is attached to this channel");
+    }
+    return lock;
+  }
+
+  /**
+   * Gets the lock that signals the producer is alive
+   * 
+   * @return The lock, or <tt>null</tt> if the ring was opened by the
+   *         consumer
+   */
+  FileLock getProducerLock()
+  {
+    return m_producerLock;
+  }
+
+  /**
+   * Determines if a producer is alive
+   * 
+   * @return <tt>false</tt> if no producer holds the lock
+   * @throws IOException
+   *           If the lock cannot be checked
+   */
+  boolean isProducerAlive() throws IOException
+  {
+    FileLock lock;
+    try
+    {
+      lock = m_channel.tryLock(LOCK_OFFSET, 1, false);
+    }
+    catch (OverlappingFileLockException e)
+    {
+      // The producer is in this very JVM
+      return true;
+    }
+    if (lock == null)
+    {
+      return true;
+    }
+    lock.release();
+    return false;
+  }
+
+  /**
+   * Gets the size of the ring
+   * 
+   * @return The size, in bytes
+   */
+  int getCapacity()
+  {
+    return m_capacity;
+  }
+
+  /**
+   * Rounds a record size up to a multiple of 8
+   * 
+   * @param size
+   *          The size
+   * @return The rounded size
+   */
+  static int align(int size)
+  {
+    return (size + 7) & ~7;
+  }
+
+  /**
+   * Closes the file. The mapping stays valid until it is garbage
+   * collected.
+   */
+  void close()
+  {
+    try
+    {
+      m_channel.close();
+    }
+    catch (IOException e)
+    {
+      // Nothing we can do
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+/**
+ * Constants of the protocol spoken between a {@link WriteSocket} and a
+ * {@link ReadSocket}.
+ * <p>
+ * The writer sends a sequence of frames. A <em>data</em> frame is the byte
+ * {@link #DATA}, followed by the number of events in the frame (a 4-byte,
+ * big-endian integer) and by the events themselves, encoded by a
+ * {@link BinaryCodec.Encoder} whose dictionary lasts for the whole
+ * connection. The <em>end</em> frame, made of the single byte {@link #END},
+ * signals the end of the trace.
+ * <p>
+ * In the other direction, the reader sends <em>credit</em> frames: the byte
+ * {@link #CREDIT} followed by a 4-byte integer <i>n</i>, meaning that the
+ * writer may send <i>n</i> more events. The writer never sends more events
+ * than the credit it has received, so that a slow reader holds back the
+ * writer instead of accumulating events in memory.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+final class SocketFrames
+{
+  /**
+   * Tag of a data frame
+   */
+  static final int DATA = 1;
+
+  /**
+   * Tag of the end frame
+   */
+  static final int END = 2;
+
+  /**
+   * Tag of a credit frame
+   */
+  static final int CREDIT = 3;
+
+  private SocketFrames()
+  {
+    // Utility class
+  }
+}
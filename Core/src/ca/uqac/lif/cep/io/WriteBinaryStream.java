@@ -0,0 +1,82 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Processor that writes events to a Java {@link OutputStream} in the compact
+ * binary form defined by {@link BinaryCodec}. Contrary to
+ * {@link WriteOutputStream}, which only accepts strings and byte arrays,
+ * this processor accepts any event the codec can handle, and the events can
+ * be read back as they were by a {@link ReadBinaryStream}.
+ * <p>
+ * Strings are added to a dictionary that lasts for the whole stream, so
+ * that a string occurring in many events is written in full only once.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class WriteBinaryStream extends WriteOutputStream
+{
+  /**
+   * The encoder used to write events
+   */
+  protected final BinaryCodec.Encoder m_encoder;
+
+  /**
+   * Creates a new binary stream writer
+   * 
+   * @param os
+   *          The output stream to send data to
+   */
+  public WriteBinaryStream(OutputStream os)
+  {
+    this(os, BinaryCodec.DEFAULT_DICTIONARY_SIZE);
+  }
+
+  /**
+   * Creates a new binary stream writer
+   * 
+   * @param os
+   *          The output stream to send data to
+   * @param dictionary_size
+   *          The maximum number of entries in the string dictionary
+   */
+  public WriteBinaryStream(OutputStream os, int dictionary_size)
+  {
+    super(os);
+    m_encoder = new BinaryCodec.Encoder(dictionary_size);
+  }
+
+  @Override
+  protected void append(Object o) throws IOException
+  {
+    m_encoder.clear();
+    m_encoder.write(o);
+    m_encoder.writeTo(m_outputStream);
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    m_encoder.reset();
+  }
+}
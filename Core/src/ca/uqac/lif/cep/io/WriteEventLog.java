@@ -0,0 +1,481 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.tmf.Sink;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+
+/**
+ * Appends input events to an event log, which can later be replayed with a
+ * {@link ReadEventLog}. See {@link EventLog} for the layout of the log.
+ * <p>
+ * Events are encoded with an {@link EventCodec}, and accumulated into a
+ * buffer. The buffer is written to the current segment and, unless
+ * disabled with {@link #setSync(boolean)}, forced to the storage device,
+ * in a single operation (a <em>commit</em>) when:
+ * <ul>
+ * <li>the buffer is full;</li>
+ * <li>a given number of events has been received since the last commit
+ * (see {@link #setCommitInterval(int, long)});</li>
+ * <li>a given time has elapsed since the last commit, the next time an
+ * event is received;</li>
+ * <li>the end of the trace is reached, or {@link #commit()} is called.</li>
+ * </ul>
+ * This "group commit" amortizes the cost of writing over many events. Events
+ * received since the last commit may be lost if the JVM crashes.
+ * <p>
+ * Since the processor has no thread of its own, the time limit is only
+ * checked when an event is received: a writer that receives no more events
+ * keeps its last events uncommitted until the end of the trace. To bound
+ * this delay, {@link #commit()} can be called periodically from another
+ * thread (for example by a
+ * {@link java.util.concurrent.ScheduledExecutorService
+ * ScheduledExecutorService}); the processor's lock makes such calls safe.
+ * <p>
+ * When the current segment reaches a given size, a new segment is started.
+ * If the log already exists, events are appended after its last complete
+ * record; a partially written record at the end of the log (for example
+ * after a crash) is removed.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class WriteEventLog extends Sink
+{
+  /**
+   * The default maximum size of a segment, in bytes
+   */
+  public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+  /**
+   * The default size of the commit buffer, in bytes
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+  /**
+   * The directory of the log
+   */
+  protected final File m_directory;
+
+  /**
+   * The codec used to encode events
+   */
+  protected final EventCodec m_codec;
+
+  /**
+   * The maximum size of a segment, in bytes
+   */
+  protected long m_segmentSize = DEFAULT_SEGMENT_SIZE;
+
+  /**
+   * The maximum number of events between two commits
+   */
+  protected int m_commitEvents = 1024;
+
+  /**
+   * The maximum time between two commits, in nanoseconds
+   */
+  protected long m_commitNanos = 100000000L;
+
+  /**
+   * Whether a commit forces the data to the storage device
+   */
+  protected boolean m_sync = true;
+
+  /**
+   * The buffer accumulating records until the next commit
+   */
+  protected transient ByteBuffer m_buffer = null;
+
+  /**
+   * The channel of the current segment, or <tt>null</tt> if the log is not
+   * open
+   */
+  protected transient FileChannel m_channel = null;
+
+  /**
+   * The size of the current segment, including the records not yet
+   * committed
+   */
+  protected long m_segmentBytes = 0;
+
+  /**
+   * The offset of the next event to be appended
+   */
+  protected long m_nextOffset = 0;
+
+  /**
+   * The number of events received since the last commit
+   */
+  protected int m_uncommitted = 0;
+
+  /**
+   * The time of the last commit, as given by {@link System#nanoTime()}
+   */
+  protected long m_lastCommit = 0;
+
+  /**
+   * Creates a new log writer using Java serialization to encode events
+   * 
+   * @param directory
+   *          The directory of the log. It is created if it does not exist.
+   */
+  public WriteEventLog(/*@ non_null @*/ File directory)
+  {
+    this(directory, EventCodec.JavaSerialization.instance);
+  }
+
+  /**
+   * Creates a new log writer
+   * 
+   * @param directory
+   *          The directory of the log. It is created if it does not exist.
+   * @param codec
+   *          The codec used to encode events
+   */
+  public WriteEventLog(/*@ non_null @*/ File directory, /*@ non_null @*/ EventCodec codec)
+  {
+    super(1);
+    m_directory = directory;
+    m_codec = codec;
+  }
+
+  /**
+   * Sets the size after which a new segment is started
+   * 
+   * @param size
+   *          The size, in bytes
+   * @return This log writer
+   */
+  public WriteEventLog setSegmentSize(long size)
+  {
+    m_segmentSize = size;
+    return this;
+  }
+
+  /**
+   * Sets when events are committed
+   * 
+   * @param events
+   *          The maximum number of events between two commits
+   * @param millis
+   *          The maximum time between two commits, in milliseconds
+   * @return This log writer
+   */
+  public WriteEventLog setCommitInterval(int events, long millis)
+  {
+    m_commitEvents = events;
+    m_commitNanos = millis * 1000000L;
+    return this;
+  }
+
+  /**
+   * Sets whether a commit forces the data to the storage device
+   * 
+   * @param b
+   *          <tt>true</tt> to force the data (default), <tt>false</tt> to
+   *          leave it to the operating system
+   * @return This log writer
+   */
+  public WriteEventLog setSync(boolean b)
+  {
+    m_sync = b;
+    return this;
+  }
+
+  /**
+   * Gets the offset the next event will have in the log
+   * 
+   * @return The offset
+   */
+  public long getNextOffset()
+  {
+    return m_nextOffset;
+  }
+
+  @Override
+  protected synchronized boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    try
+    {
+      if (m_channel == null)
+      {
+        open();
+      }
+      append(m_codec.encode(inputs[0]));
+      long now = System.nanoTime();
+      if (m_uncommitted >= m_commitEvents || now - m_lastCommit >= m_commitNanos)
+      {
+        commit();
+      }
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    return true;
+  }
+
+  @Override
+  protected boolean onEndOfTrace(Queue<Object[]> outputs)
+  {
+    try
+    {
+      close();
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    return false;
+  }
+
+  /**
+   * Adds a record to the commit buffer
+   * 
+   * @param bytes
+   *          The encoded event
+   * @throws IOException
+   *           If writing fails
+   */
+  protected void append(byte[] bytes) throws IOException
+  {
+    int size = EventLog.HEADER_SIZE + bytes.length;
+    if (m_segmentBytes > 0 && m_segmentBytes + size > m_segmentSize)
+    {
+      commit();
+      m_channel.close();
+      openSegment(m_nextOffset);
+    }
+    if (m_buffer.remaining() < size)
+    {
+      flushBuffer();
+    }
+    if (m_buffer.capacity() < size)
+    {
+      // The record is larger than the buffer: write it by itself
+      ByteBuffer b = ByteBuffer.allocate(size);
+      putRecord(b, bytes);
+      b.flip();
+      writeFully(b);
+    }
+    else
+    {
+      putRecord(m_buffer, bytes);
+    }
+    m_segmentBytes += size;
+    m_nextOffset++;
+    m_uncommitted++;
+  }
+
+  /**
+   * Writes the events received since the last commit to the log, and
+   * forces them to the storage device if required. This method can be
+   * called from any thread.
+   */
+  public synchronized void commit()
+  {
+    if (m_channel == null)
+    {
+      return;
+    }
+    try
+    {
+      flushBuffer();
+      if (m_sync)
+      {
+        m_channel.force(false);
+      }
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    m_uncommitted = 0;
+    m_lastCommit = System.nanoTime();
+  }
+
+  /**
+   * Commits the pending events and closes the log. The log is reopened if
+   * more events are received.
+   * 
+   * @throws IOException
+   *           If writing fails
+   */
+  public synchronized void close() throws IOException
+  {
+    if (m_channel == null)
+    {
+      return;
+    }
+    commit();
+    m_channel.close();
+    m_channel = null;
+  }
+
+  @Override
+  public synchronized void reset()
+  {
+    super.reset();
+    try
+    {
+      close();
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+
+  @Override
+  public Processor duplicate(boolean with_state)
+  {
+    // Two writers cannot append to the same log
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Opens the log, recovering its last segment if it exists
+   * 
+   * @throws IOException
+   *           If the log cannot be opened
+   */
+  protected void open() throws IOException
+  {
+    if (!m_directory.isDirectory() && !m_directory.mkdirs())
+    {
+      throw new IOException("Cannot create directory " + m_directory);
+    }
+    m_buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
+    long[] segments = EventLog.listSegments(m_directory);
+    if (segments.length == 0)
+    {
+      openSegment(0);
+    }
+    else
+    {
+      recover(segments[segments.length - 1]);
+    }
+    m_lastCommit = System.nanoTime();
+  }
+
+  /**
+   * Opens the last segment of an existing log, and truncates it after its
+   * last complete record
+   * 
+   * @param base
+   *          The offset of the first event of the segment
+   * @throws IOException
+   *           If the segment cannot be read
+   */
+  protected void recover(long base) throws IOException
+  {
+    RandomAccessFile raf = new RandomAccessFile(EventLog.segmentFile(m_directory, base), "rw");
+    FileChannel fc = raf.getChannel();
+    long size = fc.size();
+    int pos = 0;
+    long count = 0;
+    if (size > 0)
+    {
+      MappedByteBuffer map = fc.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      byte[] record;
+      while ((record = EventLog.readRecord(map, pos)) != null)
+      {
+        pos += EventLog.HEADER_SIZE + record.length;
+        count++;
+      }
+    }
+    if (pos < size)
+    {
+      fc.truncate(pos);
+    }
+    fc.position(pos);
+    m_channel = fc;
+    m_segmentBytes = pos;
+    m_nextOffset = base + count;
+  }
+
+  /**
+   * Creates a new segment and makes it the current one
+   * 
+   * @param base
+   *          The offset of the first event of the segment
+   * @throws IOException
+   *           If the segment cannot be created
+   */
+  protected void openSegment(long base) throws IOException
+  {
+    RandomAccessFile raf = new RandomAccessFile(EventLog.segmentFile(m_directory, base), "rw");
+    m_channel = raf.getChannel();
+    m_channel.truncate(0);
+    m_segmentBytes = 0;
+  }
+
+  /**
+   * Writes the contents of the commit buffer to the current segment
+   * 
+   * @throws IOException
+   *           If writing fails
+   */
+  protected void flushBuffer() throws IOException
+  {
+    m_buffer.flip();
+    writeFully(m_buffer);
+    m_buffer.clear();
+  }
+
+  /**
+   * Writes all the remaining bytes of a buffer to the current segment
+   * 
+   * @param b
+   *          The buffer
+   * @throws IOException
+   *           If writing fails
+   */
+  protected void writeFully(ByteBuffer b) throws IOException
+  {
+    while (b.hasRemaining())
+    {
+      m_channel.write(b);
+    }
+  }
+
+  /**
+   * Puts a record into a buffer
+   * 
+   * @param b
+   *          The buffer
+   * @param bytes
+   *          The encoded event
+   */
+  protected static void putRecord(ByteBuffer b, byte[] bytes)
+  {
+    b.putInt(bytes.length);
+    b.putInt(EventLog.checksum(bytes, 0, bytes.length));
+    b.put(bytes);
+  }
+}
@@ -0,0 +1,481 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.tmf.Sink;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Queue;
+
+/**
+ * Writes input events one after the other into a file, and starts a new
+ * file when the current one becomes too large, too old, or contains too
+ * many events. Files are named after a pattern in the same way as
+ * {@link WriteToFile}: the sequence <tt>%n</tt> is replaced by the number of
+ * the file, starting at 0.
+ * <p>
+ * Events are turned into bytes by an {@link EventCodec}. By default,
+ * byte arrays are written as they are, and other events are written as
+ * their character string form (see {@link EventCodec.Raw}). A separator,
+ * such as a newline, can be written after each event.
+ * <p>
+ * Writes are grouped: events are accumulated in a buffer, which is written
+ * to the file when it is full, every given number of events, or when some
+ * time has elapsed since the last write (see
+ * {@link #setCommitInterval(int, long) setCommitInterval()}). Optionally,
+ * each write can be forced to the storage device. Since the processor has
+ * no thread of its own, the time limits are checked each time an event is
+ * received; to bound the time events stay in the buffer when none arrive,
+ * {@link #commit()} can be called periodically from another thread.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ * @see WriteToFile
+ */
+@SuppressWarnings("squid:S2160")
+public class WriteRollingFile extends Sink
+{
+  /**
+   * The default size of the write buffer, in bytes
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+  /**
+   * The pattern used to create names for each successive file
+   */
+  protected String m_filenamePattern;
+
+  /**
+   * The codec used to encode events
+   */
+  protected final EventCodec m_codec;
+
+  /**
+   * The bytes written after each event
+   */
+  protected byte[] m_separator = new byte[0];
+
+  /**
+   * The maximum size of a file in bytes, or -1 for no limit
+   */
+  protected long m_maxBytes = -1;
+
+  /**
+   * The maximum number of events in a file, or -1 for no limit
+   */
+  protected long m_maxEvents = -1;
+
+  /**
+   * The maximum time during which events are written to the same file, in
+   * nanoseconds, or -1 for no limit
+   */
+  protected long m_maxNanos = -1;
+
+  /**
+   * The number of events after which the buffer is written
+   */
+  protected int m_commitEvents = 1024;
+
+  /**
+   * The time after which the buffer is written, in nanoseconds
+   */
+  protected long m_commitNanos = 100000000L;
+
+  /**
+   * Whether to force each write to the storage device
+   */
+  protected boolean m_sync = false;
+
+  /**
+   * A counter keeping track of the number of files output so far
+   */
+  protected int m_outputCount = 0;
+
+  /**
+   * The channel of the current file, or <tt>null</tt> if no file is open
+   */
+  protected transient FileChannel m_channel = null;
+
+  /**
+   * The buffer of bytes not yet written to the file
+   */
+  protected transient ByteBuffer m_buffer = null;
+
+  /**
+   * The number of bytes in the current file, including those in the buffer
+   */
+  protected long m_fileBytes = 0;
+
+  /**
+   * The number of events in the current file
+   */
+  protected long m_fileEvents = 0;
+
+  /**
+   * The moment the current file was opened, as given by
+   * {@link System#nanoTime()}
+   */
+  protected long m_fileOpened = 0;
+
+  /**
+   * The number of events in the buffer
+   */
+  protected int m_uncommitted = 0;
+
+  /**
+   * The moment of the last write, as given by {@link System#nanoTime()}
+   */
+  protected long m_lastCommit = 0;
+
+  /**
+   * Creates a new rolling file writer
+   * 
+   * @param pattern
+   *          The pattern used to create filenames
+   */
+  public WriteRollingFile(/*@ non_null @*/ String pattern)
+  {
+    this(pattern, EventCodec.Raw.instance);
+  }
+
+  /**
+   * Creates a new rolling file writer
+   * 
+   * @param pattern
+   *          The pattern used to create filenames
+   * @param codec
+   *          The codec used to encode events
+   */
+  public WriteRollingFile(/*@ non_null @*/ String pattern, /*@ non_null @*/ EventCodec codec)
+  {
+    super(1);
+    m_filenamePattern = pattern;
+    m_codec = codec;
+  }
+
+  /**
+   * Sets the string written after each event
+   * 
+   * @param separator
+   *          The separator, written in UTF-8
+   * @return This writer
+   */
+  public WriteRollingFile setSeparator(/*@ non_null @*/ String separator)
+  {
+    m_separator = separator.getBytes(Charset.forName("UTF-8"));
+    return this;
+  }
+
+  /**
+   * Starts a new file when the current one would exceed a size
+   * 
+   * @param bytes
+   *          The maximum size of a file, in bytes, or -1 for no limit. A
+   *          single event larger than this size is written alone in its
+   *          file.
+   * @return This writer
+   */
+  public WriteRollingFile rollOnSize(long bytes)
+  {
+    m_maxBytes = bytes;
+    return this;
+  }
+
+  /**
+   * Starts a new file when the current one contains a number of events
+   * 
+   * @param events
+   *          The maximum number of events in a file, or -1 for no limit
+   * @return This writer
+   */
+  public WriteRollingFile rollOnCount(long events)
+  {
+    m_maxEvents = events;
+    return this;
+  }
+
+  /**
+   * Starts a new file when events have been written to the current one for
+   * some time
+   * 
+   * @param millis
+   *          The time, in milliseconds, or -1 for no limit
+   * @return This writer
+   */
+  public WriteRollingFile rollOnTime(long millis)
+  {
+    m_maxNanos = millis < 0 ? -1 : millis * 1000000L;
+    return this;
+  }
+
+  /**
+   * Sets when the buffered events are written to the file
+   * 
+   * @param events
+   *          The number of events after which the buffer is written
+   * @param millis
+   *          The time after which the buffer is written, in milliseconds
+   * @return This writer
+   */
+  public WriteRollingFile setCommitInterval(int events, long millis)
+  {
+    m_commitEvents = events;
+    m_commitNanos = millis * 1000000L;
+    return this;
+  }
+
+  /**
+   * Sets whether each write is forced to the storage device
+   * 
+   * @param b
+   *          <tt>true</tt> to force writes, <tt>false</tt> otherwise
+   *          (default)
+   * @return This writer
+   */
+  public WriteRollingFile setSync(boolean b)
+  {
+    m_sync = b;
+    return this;
+  }
+
+  @Override
+  protected synchronized boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    try
+    {
+      byte[] bytes = m_codec.encode(inputs[0]);
+      int size = bytes.length + m_separator.length;
+      long now = System.nanoTime();
+      if (m_channel == null)
+      {
+        openFile(now);
+      }
+      else if (mustRoll(size, now))
+      {
+        close();
+        openFile(now);
+      }
+      append(bytes);
+      append(m_separator);
+      m_fileBytes += size;
+      m_fileEvents++;
+      m_uncommitted++;
+      if (m_uncommitted >= m_commitEvents || now - m_lastCommit >= m_commitNanos)
+      {
+        commit();
+      }
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    return true;
+  }
+
+  @Override
+  protected boolean onEndOfTrace(Queue<Object[]> outputs)
+  {
+    try
+    {
+      close();
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    return false;
+  }
+
+  /**
+   * Determines if a new file must be started before writing an event
+   * 
+   * @param size
+   *          The number of bytes of the event
+   * @param now
+   *          The current time, as given by {@link System#nanoTime()}
+   * @return <tt>true</tt> if a new file must be started
+   */
+  protected boolean mustRoll(int size, long now)
+  {
+    if (m_fileEvents == 0)
+    {
+      return false;
+    }
+    return (m_maxBytes >= 0 && m_fileBytes + size > m_maxBytes)
+        || (m_maxEvents >= 0 && m_fileEvents >= m_maxEvents)
+        || (m_maxNanos >= 0 && now - m_fileOpened >= m_maxNanos);
+  }
+
+  /**
+   * Adds bytes to the buffer, writing the buffer to the file if it is full
+   * 
+   * @param bytes
+   *          The bytes
+   * @throws IOException
+   *           If writing fails
+   */
+  protected void append(byte[] bytes) throws IOException
+  {
+    if (m_buffer.remaining() < bytes.length)
+    {
+      flushBuffer();
+      if (m_buffer.capacity() < bytes.length)
+      {
+        // Too large for the buffer: write the bytes by themselves
+        writeFully(ByteBuffer.wrap(bytes));
+        return;
+      }
+    }
+    m_buffer.put(bytes);
+  }
+
+  /**
+   * Writes the buffered events to the current file, and forces them to the
+   * storage device if required. This method can be called from any thread.
+   */
+  public synchronized void commit()
+  {
+    if (m_channel == null)
+    {
+      return;
+    }
+    try
+    {
+      flushBuffer();
+      if (m_sync)
+      {
+        m_channel.force(false);
+      }
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    m_uncommitted = 0;
+    m_lastCommit = System.nanoTime();
+  }
+
+  /**
+   * Writes the buffered events and closes the current file. The next event
+   * is written to a new file.
+   * 
+   * @throws IOException
+   *           If writing fails
+   */
+  public synchronized void close() throws IOException
+  {
+    if (m_channel == null)
+    {
+      return;
+    }
+    commit();
+    m_channel.close();
+    m_channel = null;
+  }
+
+  @Override
+  public synchronized void reset()
+  {
+    super.reset();
+    try
+    {
+      close();
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    m_outputCount = 0;
+  }
+
+  @Override
+  public Processor duplicate(boolean with_state)
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Generates the name of the next file to write to. This name is computed
+   * by replacing special characters in a predefined pattern with the
+   * current values held by the processor.
+   * @return The new filename
+   */
+  /*@ pure non_null @*/ protected String createFilename()
+  {
+    return m_filenamePattern.replaceAll("%n", Integer.toString(m_outputCount));
+  }
+
+  /**
+   * Opens the next file
+   * 
+   * @param now
+   *          The current time, as given by {@link System#nanoTime()}
+   * @throws IOException
+   *           If the file cannot be opened
+   */
+  protected void openFile(long now) throws IOException
+  {
+    File f = new File(createFilename());
+    m_outputCount++;
+    m_channel = new FileOutputStream(f).getChannel();
+    if (m_buffer == null)
+    {
+      m_buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
+    }
+    m_buffer.clear();
+    m_fileBytes = 0;
+    m_fileEvents = 0;
+    m_fileOpened = now;
+    m_lastCommit = now;
+  }
+
+  /**
+   * Writes the contents of the buffer to the current file
+   * 
+   * @throws IOException
+   *           If writing fails
+   */
+  protected void flushBuffer() throws IOException
+  {
+    m_buffer.flip();
+    writeFully(m_buffer);
+    m_buffer.clear();
+  }
+
+  /**
+   * Writes all the remaining bytes of a buffer to the current file
+   * 
+   * @param b
+   *          The buffer
+   * @throws IOException
+   *           If writing fails
+   */
+  protected void writeFully(ByteBuffer b) throws IOException
+  {
+    while (b.hasRemaining())
+    {
+      m_channel.write(b);
+    }
+  }
+}
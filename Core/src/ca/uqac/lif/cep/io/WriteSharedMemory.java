@@ -0,0 +1,309 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.concurrency.WaitStrategy;
+import ca.uqac.lif.cep.tmf.Sink;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileLock;
+import java.util.Queue;
+
+/**
+ * Sends events to a {@link ReadSharedMemory} running in another process of
+ * the same host, through a ring buffer stored in a memory-mapped file (see
+ * {@link SharedRing}). Handing an event over amounts to copying its
+ * encoded form into shared memory, without any system call.
+ * <p>
+ * The file is created when the first event is received; an existing file
+ * is replaced by a new one, rather than emptied, so that a reader still
+ * attached to it is not disturbed. When
+ * the ring is full, the processor waits for the reader to free some space,
+ * according to its {@link WaitStrategy}. The end of the trace is
+ * transmitted to the reader.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class WriteSharedMemory extends Sink
+{
+  /**
+   * The default size of the ring, in bytes
+   */
+  public static final int DEFAULT_CAPACITY = 1 << 20;
+
+  /**
+   * The file containing the ring
+   */
+  protected final File m_file;
+
+  /**
+   * The size of the ring, in bytes
+   */
+  protected final int m_capacity;
+
+  /**
+   * The codec used to encode events
+   */
+  protected final EventCodec m_codec;
+
+  /**
+   * What to do while waiting for space in the ring
+   */
+  protected WaitStrategy m_waitStrategy = WaitStrategy.Park.instance;
+
+  /**
+   * The ring, or <tt>null</tt> if it is not yet open
+   */
+  protected transient SharedRing m_ring = null;
+
+  /**
+   * A view of the ring
+   */
+  protected transient ByteBuffer m_data = null;
+
+  /**
+   * The lock signalling that the producer is alive
+   */
+  protected transient FileLock m_lock = null;
+
+  /**
+   * The write sequence
+   */
+  protected long m_writeSeq = 0;
+
+  /**
+   * The last value of the read sequence seen by the producer
+   */
+  protected long m_cachedReadSeq = 0;
+
+  /**
+   * Creates a new shared memory writer with a ring of default size
+   * 
+   * @param file
+   *          The file containing the ring
+   */
+  public WriteSharedMemory(/*@ non_null @*/ File file)
+  {
+    this(file, DEFAULT_CAPACITY, BinaryCodec.instance);
+  }
+
+  /**
+   * Creates a new shared memory writer
+   * 
+   * @param file
+   *          The file containing the ring
+   * @param capacity
+   *          The size of the ring, in bytes. Must be a power of 2; an event
+   *          must fit in the ring.
+   * @param codec
+   *          The codec used to encode events
+   */
+  public WriteSharedMemory(/*@ non_null @*/ File file, int capacity, /*@ non_null @*/ EventCodec codec)
+  {
+    super(1);
+    if (capacity < 16 || Integer.bitCount(capacity) != 1)
+    {
+      throw new IllegalArgumentException("The capacity must be a power of 2");
+    }
+    m_file = file;
+    m_capacity = capacity;
+    m_codec = codec;
+  }
+
+  /**
+   * Sets what the processor does while waiting for space in the ring
+   * 
+   * @param strategy
+   *          The wait strategy
+   * @return This shared memory writer
+   */
+  public WriteSharedMemory setWaitStrategy(/*@ non_null @*/ WaitStrategy strategy)
+  {
+    m_waitStrategy = strategy;
+    return this;
+  }
+
+  @Override
+  protected synchronized boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    try
+    {
+      if (m_ring == null)
+      {
+        open();
+      }
+      byte[] bytes = m_codec.encode(inputs[0]);
+      int index = reserve(4 + bytes.length);
+      m_data.putInt(index, bytes.length);
+      m_data.position(index + 4);
+      m_data.put(bytes);
+      publish(4 + bytes.length);
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    return true;
+  }
+
+  @Override
+  protected synchronized boolean onEndOfTrace(Queue<Object[]> outputs)
+  {
+    try
+    {
+      if (m_ring == null)
+      {
+        open();
+      }
+      int index = reserve(4);
+      m_data.putInt(index, SharedRing.END);
+      publish(4);
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    close();
+    return false;
+  }
+
+  /**
+   * Detaches from the ring, without signalling the end of the trace
+   */
+  public synchronized void close()
+  {
+    if (m_ring == null)
+    {
+      return;
+    }
+    try
+    {
+      m_lock.release();
+    }
+    catch (IOException e)
+    {
+      // Nothing we can do
+    }
+    m_ring.close();
+    m_ring = null;
+  }
+
+  @Override
+  public synchronized void reset()
+  {
+    super.reset();
+    close();
+  }
+
+  @Override
+  public Processor duplicate(boolean with_state)
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Creates the ring
+   * 
+   * @throws IOException
+   *           If the ring cannot be created
+   */
+  protected void open() throws IOException
+  {
+    m_ring = new SharedRing(m_file, m_capacity);
+    m_lock = m_ring.getProducerLock();
+    m_data = m_ring.ring();
+    m_writeSeq = 0;
+    m_cachedReadSeq = 0;
+  }
+
+  /**
+   * Waits until the ring has room for a record, skipping the end of the
+   * ring if the record does not fit in it
+   * 
+   * @param size
+   *          The size of the record, before padding
+   * @return The position of the record in the ring
+   * @throws IOException
+   *           If the record is larger than the ring
+   */
+  protected int reserve(int size) throws IOException
+  {
+    int aligned = SharedRing.align(size);
+    if (aligned > m_capacity)
+    {
+      throw new IOException("Event of " + size + " bytes does not fit in the shared ring");
+    }
+    int index = (int) (m_writeSeq & (m_capacity - 1));
+    int tail = m_capacity - index;
+    if (aligned > tail)
+    {
+      awaitSpace(m_writeSeq + tail + aligned);
+      m_data.putInt(index, SharedRing.PADDING);
+      m_writeSeq += tail;
+      return 0;
+    }
+    awaitSpace(m_writeSeq + aligned);
+    return index;
+  }
+
+  /**
+   * Makes the record written at the current position visible to the
+   * reader
+   * 
+   * @param size
+   *          The size of the record, before padding
+   */
+  protected void publish(int size)
+  {
+    m_writeSeq += SharedRing.align(size);
+    m_ring.putSequence(SharedRing.WRITE_OFFSET, m_writeSeq);
+  }
+
+  /**
+   * Waits until the reader has freed the ring up to a sequence
+   * 
+   * @param limit
+   *          The sequence
+   */
+  protected void awaitSpace(long limit)
+  {
+    int attempts = 0;
+    while (limit - m_cachedReadSeq > m_capacity)
+    {
+      m_cachedReadSeq = m_ring.getSequence(SharedRing.READ_OFFSET);
+      if (limit - m_cachedReadSeq <= m_capacity)
+      {
+        return;
+      }
+      try
+      {
+        m_waitStrategy.idle(attempts++);
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new ProcessorException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,360 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.tmf.Sink;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Queue;
+
+/**
+ * Sends events over a TCP connection to a {@link ReadSocket}, possibly
+ * running in another JVM or on another machine. Together, the two
+ * processors act as a {@link ca.uqac.lif.cep.Connector Connector} between
+ * two parts of a pipeline.
+ * <p>
+ * Events are encoded with a {@link BinaryCodec}, and sent in batches
+ * (see {@link SocketFrames} for the details of the protocol). A batch is
+ * sent when it is full, when the oldest event it contains has waited for
+ * the flush interval, when {@link #flush()} is called, and at the end of
+ * the trace, which is also transmitted to the reader. Since the processor
+ * has no thread of its own, the flush interval is only checked when events
+ * are received.
+ * <p>
+ * The reader grants the writer a limited number of events at a time. When
+ * this credit is exhausted, sending an event blocks until the reader has
+ * consumed some of the events already sent.
+ * <p>
+ * The connection is opened when the first event is received.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class WriteSocket extends Sink
+{
+  /**
+   * The default maximum number of events in a batch
+   */
+  public static final int DEFAULT_BATCH_SIZE = 64;
+
+  /**
+   * The maximum time to wait for the reader to close the connection at the
+   * end of the trace, in milliseconds
+   */
+  protected static final int LINGER_TIMEOUT = 10000;
+
+  /**
+   * The address of the reader
+   */
+  protected final InetSocketAddress m_address;
+
+  /**
+   * The maximum number of events in a batch
+   */
+  protected int m_batchSize = DEFAULT_BATCH_SIZE;
+
+  /**
+   * The maximum time an event waits in a batch, in nanoseconds
+   */
+  protected long m_flushNanos = 10000000L;
+
+  /**
+   * The socket, or <tt>null</tt> if the connection is not open
+   */
+  protected transient Socket m_socket = null;
+
+  /**
+   * The stream to the reader
+   */
+  protected transient DataOutputStream m_out = null;
+
+  /**
+   * The stream from the reader, from which credit is received
+   */
+  protected transient DataInputStream m_in = null;
+
+  /**
+   * The encoder for the events of the current batch
+   */
+  protected transient BinaryCodec.Encoder m_encoder = null;
+
+  /**
+   * The number of events in the current batch
+   */
+  protected int m_batchCount = 0;
+
+  /**
+   * The moment the first event of the current batch was received, as given
+   * by {@link System#nanoTime()}
+   */
+  protected long m_batchStart = 0;
+
+  /**
+   * The number of events that may still be sent
+   */
+  protected long m_credit = 0;
+
+  /**
+   * Creates a new socket writer
+   * 
+   * @param host
+   *          The host where the reader runs
+   * @param port
+   *          The port the reader listens to
+   */
+  public WriteSocket(/*@ non_null @*/ String host, int port)
+  {
+    super(1);
+    m_address = new InetSocketAddress(host, port);
+  }
+
+  /**
+   * Sets the maximum number of events in a batch
+   * 
+   * @param size
+   *          The number of events; 1 sends every event immediately
+   * @return This socket writer
+   */
+  public WriteSocket setBatchSize(int size)
+  {
+    m_batchSize = Math.max(1, size);
+    return this;
+  }
+
+  /**
+   * Sets the maximum time an event waits in a batch before being sent
+   * 
+   * @param millis
+   *          The time, in milliseconds
+   * @return This socket writer
+   */
+  public WriteSocket setFlushInterval(long millis)
+  {
+    m_flushNanos = millis * 1000000L;
+    return this;
+  }
+
+  @Override
+  protected synchronized boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    try
+    {
+      if (m_socket == null)
+      {
+        open();
+      }
+      if (m_batchCount == 0)
+      {
+        m_batchStart = System.nanoTime();
+      }
+      // Make sure the event can be sent before adding it to the batch
+      if (m_batchCount >= m_credit)
+      {
+        sendBatch();
+        awaitCredit();
+      }
+      m_encoder.write(inputs[0]);
+      m_batchCount++;
+      if (m_batchCount >= m_batchSize || System.nanoTime() - m_batchStart >= m_flushNanos)
+      {
+        sendBatch();
+      }
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    return true;
+  }
+
+  @Override
+  protected synchronized boolean onEndOfTrace(Queue<Object[]> outputs)
+  {
+    try
+    {
+      if (m_socket == null)
+      {
+        open();
+      }
+      sendBatch();
+      m_out.write(SocketFrames.END);
+      m_out.flush();
+      m_socket.shutdownOutput();
+      // Closing a socket with unread credit frames could reset the
+      // connection and lose events not yet read by the reader; wait until
+      // the reader closes its end instead
+      m_socket.setSoTimeout(LINGER_TIMEOUT);
+      try
+      {
+        while (m_in.read() >= 0)
+        {
+          // Discard remaining credit
+        }
+      }
+      catch (SocketTimeoutException e)
+      {
+        // Give up waiting
+      }
+      close();
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    return false;
+  }
+
+  /**
+   * Sends the events of the current batch. This method can be called from
+   * any thread, for example to bound the time events wait in a batch when
+   * none are received.
+   */
+  public synchronized void flush()
+  {
+    if (m_socket == null)
+    {
+      return;
+    }
+    try
+    {
+      sendBatch();
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+
+  /**
+   * Closes the connection, without signalling the end of the trace
+   */
+  public synchronized void close()
+  {
+    if (m_socket == null)
+    {
+      return;
+    }
+    try
+    {
+      m_socket.close();
+    }
+    catch (IOException e)
+    {
+      // Nothing we can do
+    }
+    m_socket = null;
+  }
+
+  @Override
+  public synchronized void reset()
+  {
+    super.reset();
+    close();
+  }
+
+  @Override
+  public Processor duplicate(boolean with_state)
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Opens the connection to the reader
+   * 
+   * @throws IOException
+   *           If the connection cannot be opened
+   */
+  protected void open() throws IOException
+  {
+    Socket s = new Socket();
+    s.setTcpNoDelay(true);
+    s.connect(m_address);
+    m_socket = s;
+    m_out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 65536));
+    m_in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+    m_encoder = new BinaryCodec.Encoder();
+    m_batchCount = 0;
+    m_credit = 0;
+  }
+
+  /**
+   * Sends the current batch, if it is not empty
+   * 
+   * @throws IOException
+   *           If writing to the socket fails
+   */
+  protected void sendBatch() throws IOException
+  {
+    if (m_batchCount == 0)
+    {
+      return;
+    }
+    m_out.write(SocketFrames.DATA);
+    m_out.writeInt(m_batchCount);
+    m_encoder.writeTo(m_out);
+    m_out.flush();
+    m_encoder.clear();
+    m_credit -= m_batchCount;
+    m_batchCount = 0;
+    // Take the credit that has arrived in the meantime
+    while (m_in.available() > 0)
+    {
+      readCredit();
+    }
+  }
+
+  /**
+   * Waits until the reader grants more credit
+   * 
+   * @throws IOException
+   *           If reading from the socket fails
+   */
+  protected void awaitCredit() throws IOException
+  {
+    while (m_credit <= 0)
+    {
+      readCredit();
+    }
+  }
+
+  /**
+   * Reads a credit frame
+   * 
+   * @throws IOException
+   *           If reading from the socket fails, or if the frame is not a
+   *           credit frame
+   */
+  protected void readCredit() throws IOException
+  {
+    int tag = m_in.read();
+    if (tag != SocketFrames.CREDIT)
+    {
+      throw new IOException(tag < 0 ? "Connection closed by the reader" : "Unexpected frame " + tag);
+    }
+    m_credit += m_in.readInt();
+  }
+}
@@ -35,6 +35,7 @@ import java.util.Queue;
  * @author Sylvain Hallé
  * @since 0.10
  * @see WriteOutputStream
+ * @see WriteRollingFile
  */
 public class WriteToFile extends Sink
 {
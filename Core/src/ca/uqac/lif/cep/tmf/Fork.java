@@ -28,6 +28,10 @@ import java.util.Queue;
  * It is represented graphically as:
  * <p>
  * <img src="{@docRoot}/doc-files/tmf/Fork.png" alt="Fork">
+ * <p>
+ * The fork pushes an event to each of its outputs in turn, in the thread of
+ * the caller. To evaluate the branches in parallel, use a
+ * {@link ca.uqac.lif.cep.concurrency.ParallelFork ParallelFork} instead.
  * 
  * @author Sylvain Hallé
  * @since 0.1
@@ -17,9 +17,13 @@
  */
 package ca.uqac.lif.cep.tmf;
 
+import ca.uqac.lif.cep.ExecutionMonitor;
 import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
 import ca.uqac.lif.cep.Pullable;
 import ca.uqac.lif.cep.Pushable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Processor that repeatedly pulls its input, and pushes the resulting events to
@@ -35,7 +39,8 @@ import ca.uqac.lif.cep.Pushable;
  * processor's {@link #start()} method. In the background, this will instantiate
  * a new thread, which will endlessly call <tt>pull()</tt> on whatever input is
  * connected to the pump, and then call <tt>push()</tt> on whatever input is
- * connected to it.
+ * connected to it. Interrupting the pump's thread stops it, just like a call
+ * to {@link #stop()}.
  * <p>
  * The opposite of the Pump is the {@link ca.uqac.lif.cep.tmf.Tank Tank}.
  * 
@@ -84,20 +89,16 @@ public class Pump extends Processor implements Runnable
     while (m_run && pullable.hasNext())
     {
       Object o = pullable.pull();
-      pushable.push(o);
-      if (m_interval >= 0)
+      if (!awaitDemand(pushable.pushFast(o)) || !pause())
       {
-        try
-        {
-          Thread.sleep(m_interval);
-        }
-        catch (InterruptedException e)
-        {
-          // Restore interrupted state
-          Thread.currentThread().interrupt();
-        }
+        m_run = false;
       }
     }
+    ExecutionMonitor monitor = ExecutionMonitor.current();
+    if (monitor != null)
+    {
+      monitor.endOfTrace(this, 0);
+    }
     pushable.notifyEndOfTrace();
   }
 
@@ -157,19 +158,77 @@ public class Pump extends Processor implements Runnable
     Pushable pushable = getPushableOutput(0);
     for (int i = 0; i < times; i++)
     {
-      pushable.push(pullable.pull());
-      if (m_interval >= 0)
+      if (!awaitDemand(pushable.pushFast(pullable.pull())) || !pause())
       {
-        try
-        {
-          Thread.sleep(m_interval);
-        }
-        catch (InterruptedException e)
-        {
-          // Restore interrupted state
-          Thread.currentThread().interrupt();
-        }
+        // The thread was interrupted: stop turning
+        return;
       }
     }
   }
+
+  /**
+   * Waits for the pump's interval between two events
+   * 
+   * @return <tt>false</tt> if the thread was interrupted while waiting,
+   *         <tt>true</tt> otherwise
+   */
+  protected boolean pause()
+  {
+    if (m_interval >= 0)
+    {
+      try
+      {
+        Thread.sleep(m_interval);
+      }
+      catch (InterruptedException e)
+      {
+        // Restore interrupted state
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Waits until a downstream push operation is done. Bounded or asynchronous
+   * processors downstream return a pending future when they cannot accept
+   * more events; waiting on it before pulling the next event keeps the pump
+   * from running ahead of its consumers. The wait is reported to the
+   * {@link ExecutionMonitor} currently installed, if any, as an overflow of
+   * the queue downstream.
+   * 
+   * @param f
+   *          The future returned by {@link Pushable#pushFast(Object)}
+   * @return <tt>false</tt> if the thread was interrupted while waiting,
+   *         <tt>true</tt> otherwise
+   */
+  protected boolean awaitDemand(Future<Pushable> f)
+  {
+    if (f.isDone())
+    {
+      return true;
+    }
+    ExecutionMonitor monitor = ExecutionMonitor.current();
+    if (monitor != null)
+    {
+      monitor.queueOverflow(this, 0, false);
+    }
+    try
+    {
+      f.get();
+    }
+    catch (InterruptedException e)
+    {
+      // Restore interrupted state; the caller stops, as every later wait
+      // would be interrupted at once
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    catch (ExecutionException e)
+    {
+      throw new ProcessorException(e);
+    }
+    return true;
+  }
 }
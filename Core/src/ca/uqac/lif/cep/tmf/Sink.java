@@ -17,7 +17,9 @@
  */
 package ca.uqac.lif.cep.tmf;
 
+import ca.uqac.lif.cep.LatencyHistogram;
 import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.ProcessorMetrics;
 import ca.uqac.lif.cep.Pullable;
 import ca.uqac.lif.cep.Pullable.PullableException;
 import ca.uqac.lif.cep.SynchronousProcessor;
@@ -49,6 +51,49 @@ public abstract class Sink extends SynchronousProcessor
     super(in_arity, 0);
   }
 
+  /**
+   * Sets whether the sink tracks the latency of the events it receives,
+   * measured from their entry into the pipeline. This enables the metrics
+   * of the sink; the latencies are then available from
+   * {@link #getLatencyHistogram()}, and through the sink's
+   * {@link ProcessorMetrics}. Only events stamped by an
+   * {@link ca.uqac.lif.cep.Ingress Ingress} are measured, for
+   * example those pushed by a {@link Source} with ingress timestamping.
+   * 
+   * @param b
+   *          <tt>true</tt> to track latencies, <tt>false</tt> otherwise
+   * @return This sink
+   */
+  public Sink setLatencyTracking(boolean b)
+  {
+    if (b)
+    {
+      setMetricsEnabled(true);
+    }
+    ProcessorMetrics metrics = m_metrics;
+    if (metrics != null)
+    {
+      metrics.setLatencyTracking(b);
+    }
+    return this;
+  }
+
+  /**
+   * Gets the distribution of the latencies of the events received by the
+   * sink
+   * 
+   * @return The histogram, or <tt>null</tt> if latencies are not tracked
+   */
+  public /*@ null @*/ LatencyHistogram getLatencyHistogram()
+  {
+    ProcessorMetrics metrics = m_metrics;
+    if (metrics == null)
+    {
+      return null;
+    }
+    return metrics.getLatencyHistogram();
+  }
+
   /**
    * Tells the sink to pull events from the pipeline
    */
@@ -18,6 +18,7 @@
 package ca.uqac.lif.cep.tmf;
 
 import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.ExecutionMonitor;
 import ca.uqac.lif.cep.Processor;
 import ca.uqac.lif.cep.ProcessorException;
 import ca.uqac.lif.cep.Pushable;
@@ -196,6 +197,11 @@ public class Slice extends UniformProcessor
           m_sinks.put(slice_id, sink);
           // Put dummy value temporarily
           m_lastValues.put(slice_id, null);
+          ExecutionMonitor monitor = ExecutionMonitor.current();
+          if (monitor != null)
+          {
+            monitor.sliceCreated(this, slice_id, m_slices.size());
+          }
         }
         slices_to_process.add(slice_id);
       }
@@ -263,6 +269,11 @@ public class Slice extends UniformProcessor
             // Yes: remove the processor for that slice
             m_slices.remove(s_id);
             m_sinks.remove(s_id);
+            ExecutionMonitor monitor = ExecutionMonitor.current();
+            if (monitor != null)
+            {
+              monitor.sliceEvicted(this, s_id, m_slices.size());
+            }
           }
           m_lastValues.put(s_id, out[0]);
         }
@@ -17,6 +17,7 @@
  */
 package ca.uqac.lif.cep.tmf;
 
+import ca.uqac.lif.cep.Ingress;
 import ca.uqac.lif.cep.ProcessorException;
 import ca.uqac.lif.cep.Pushable;
 import ca.uqac.lif.cep.Pushable.PushableException;
@@ -42,20 +43,63 @@ import java.util.concurrent.Future;
 @SuppressWarnings("squid:S2160")
 public abstract class Source extends SynchronousProcessor
 {
+  /**
+   * Whether the events pushed by this source are stamped with the time at
+   * which they enter the pipeline
+   */
+  protected boolean m_ingressTimestamping = false;
+
   public Source(int out_arity)
   {
     super(0, out_arity);
   }
 
+  /**
+   * Sets whether the events pushed by this source are stamped with the time
+   * at which they enter the pipeline, so that the processors downstream can
+   * track their latency. See {@link Ingress}.
+   * 
+   * @param b
+   *          <tt>true</tt> to stamp the events, <tt>false</tt> otherwise
+   *          (default)
+   * @return This source
+   */
+  public Source setIngressTimestamping(boolean b)
+  {
+    m_ingressTimestamping = b;
+    return this;
+  }
+
   /**
    * Tells the source to push events into the pipeline
    */
   public final void push()
+  {
+    if (!m_ingressTimestamping)
+    {
+      pushEvents();
+      return;
+    }
+    Ingress.begin();
+    try
+    {
+      pushEvents();
+    }
+    finally
+    {
+      Ingress.end();
+    }
+  }
+
+  /**
+   * Computes the events of the source and pushes them downstream
+   */
+  protected final void pushEvents()
   {
     Queue<Object[]> output = new ArrayDeque<Object[]>(1);
     try
     {
-      compute(null, output);
+      computeMeasured(null, output);
     }
     catch (ProcessorException e)
     {
@@ -68,15 +112,15 @@ public abstract class Source extends SynchronousProcessor
     for (Object[] evt : output)
     {
       @SuppressWarnings("unchecked")
-      Future<Pushable>[] futures = new Future[output.size()];
+      Future<Pushable>[] futures = new Future[m_outputArity];
       if (evt != null && !allNull(evt))
       {
-        for (int i = 0; i < output.size(); i++)
+        for (int i = 0; i < m_outputArity; i++)
         {
           Pushable p = m_outputPushables[i];
           futures[i] = p.pushFast(evt[i]);
         }
-        for (int i = 0; i < output.size(); i++)
+        for (int i = 0; i < m_outputArity; i++)
         {
           try
           {
@@ -17,11 +17,23 @@
  */
 package ca.uqac.lif.cep.tmf;
 
+import ca.uqac.lif.cep.ExecutionMonitor;
+import ca.uqac.lif.cep.NotifyingPullable;
 import ca.uqac.lif.cep.Processor;
 import ca.uqac.lif.cep.Pullable;
 import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.Readiness;
+import ca.uqac.lif.cep.concurrency.OverflowPolicy;
+import java.util.ArrayDeque;
 import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Accumulates pushed events into a queue until they are pulled. The Tank is a
@@ -32,6 +44,18 @@ import java.util.concurrent.Future;
  * <p>
  * <img src="{@docRoot}/doc-files/tmf/Tank.png" alt="Processor">
  * <p>
+ * By default, the tank is unbounded. It can also be given a capacity; in
+ * such a case, an {@link OverflowPolicy} determines what happens to events
+ * pushed to a full tank. With {@link OverflowPolicy#BLOCK}, a call to
+ * <tt>push</tt> waits until an event is pulled out of the tank, and the
+ * {@link Future} returned by <tt>pushFast</tt> only completes once the event
+ * has found room in the tank.
+ * <p>
+ * On the pull side, the tank can be given a timeout (see
+ * {@link #setPullTimeout(long, TimeUnit)}): a call to <tt>hasNext</tt> on an
+ * empty tank then waits up to that amount of time for an event to be pushed,
+ * instead of answering <tt>false</tt> right away.
+ * <p>
  * The opposite of the tank is the {@link ca.uqac.lif.cep.tmf.Pump Pump}.
  * 
  * @author Sylvain Hallé
@@ -40,6 +64,11 @@ import java.util.concurrent.Future;
 @SuppressWarnings("squid:S2160")
 public class Tank extends Processor
 {
+  /**
+   * A value indicating that a tank has no capacity limit
+   */
+  public static final int UNBOUNDED = -1;
+
   /**
    * A pushable
    */
@@ -51,23 +80,245 @@ public class Tank extends Processor
   protected QueuePullable m_pullable = null;
 
   /**
-   * Creates a new empty tank
+   * The maximum number of events in the tank, or {@link #UNBOUNDED}
+   */
+  protected final int m_capacity;
+
+  /**
+   * What happens when an event is pushed to a full tank
+   */
+  protected final OverflowPolicy m_policy;
+
+  /**
+   * When the policy is {@link OverflowPolicy#SAMPLE}, the number of incoming
+   * events out of which one is kept while the tank is full
+   */
+  protected int m_samplingInterval = 2;
+
+  /**
+   * The time, in nanoseconds, a call to <tt>hasNext</tt> waits for an event
+   * when the tank is empty
+   */
+  protected long m_pullTimeout = 0;
+
+  /**
+   * The number of events discarded because the tank was full
+   */
+  protected long m_dropCount = 0;
+
+  /**
+   * The number of events received since the tank became full, used for
+   * sampling
+   */
+  protected int m_overflowCount = 0;
+
+  /**
+   * Whether the end of the trace has been notified to this tank
+   */
+  protected boolean m_ended = false;
+
+  /**
+   * Events handed to <tt>pushFast</tt> that are waiting for room in the tank
+   */
+  protected final transient Queue<PendingPush> m_pending = new ArrayDeque<PendingPush>();
+
+  /**
+   * A lock protecting the contents of the tank
+   */
+  protected final transient ReentrantLock m_lock = new ReentrantLock();
+
+  /**
+   * A condition signalled when an event is added to the tank
+   */
+  protected final transient Condition m_notEmpty = m_lock.newCondition();
+
+  /**
+   * A condition signalled when an event is removed from the tank
+   */
+  protected final transient Condition m_notFull = m_lock.newCondition();
+
+  /**
+   * Creates a new empty tank with no capacity limit
    */
   public Tank()
+  {
+    this(UNBOUNDED, OverflowPolicy.BLOCK);
+  }
+
+  /**
+   * Creates a new empty tank
+   * 
+   * @param capacity
+   *          The maximum number of events in the tank, or {@link #UNBOUNDED}
+   * @param policy
+   *          What happens when an event is pushed to a full tank
+   */
+  public Tank(int capacity, OverflowPolicy policy)
   {
     super(1, 1);
+    if (capacity == 0 || capacity < UNBOUNDED)
+    {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    }
+    m_capacity = capacity;
+    m_policy = policy;
+  }
+
+  /**
+   * Sets the sampling interval used when the policy is
+   * {@link OverflowPolicy#SAMPLE}
+   * 
+   * @param interval
+   *          The number of incoming events out of which one is kept while the
+   *          tank is full
+   * @return This tank
+   */
+  public Tank setSamplingInterval(int interval)
+  {
+    if (interval < 1)
+    {
+      throw new IllegalArgumentException("Invalid sampling interval: " + interval);
+    }
+    m_samplingInterval = interval;
+    return this;
+  }
+
+  /**
+   * Sets the time a call to <tt>hasNext</tt> waits for an event when the
+   * tank is empty
+   * 
+   * @param timeout
+   *          The timeout; 0 means that <tt>hasNext</tt> does not wait
+   * @param unit
+   *          The unit of the timeout
+   * @return This tank
+   */
+  public Tank setPullTimeout(long timeout, TimeUnit unit)
+  {
+    m_pullTimeout = unit.toNanos(timeout);
+    return this;
+  }
+
+  /**
+   * Gets the maximum number of events in the tank
+   * 
+   * @return The capacity, or {@link #UNBOUNDED}
+   */
+  public int getCapacity()
+  {
+    return m_capacity;
+  }
+
+  /**
+   * Gets the policy applied when an event is pushed to a full tank
+   * 
+   * @return The policy
+   */
+  public OverflowPolicy getPolicy()
+  {
+    return m_policy;
+  }
+
+  /**
+   * Gets the number of events discarded so far because the tank was full
+   * 
+   * @return The number of events
+   */
+  public long getDropCount()
+  {
+    m_lock.lock();
+    try
+    {
+      return m_dropCount;
+    }
+    finally
+    {
+      m_lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of events currently in the tank
+   * 
+   * @return The number of events
+   */
+  public int size()
+  {
+    m_lock.lock();
+    try
+    {
+      return m_inputQueues[0].size();
+    }
+    finally
+    {
+      m_lock.unlock();
+    }
+  }
+
+  /**
+   * Removes an event from the tank, waiting up to a given time if the tank
+   * is empty
+   * 
+   * @param timeout
+   *          The maximum time to wait
+   * @param unit
+   *          The unit of the timeout
+   * @return The event, or <tt>null</tt> if no event was pushed in time, or if
+   *         the tank is empty and the end of the trace has been reached
+   * @throws InterruptedException
+   *           If the thread is interrupted while waiting
+   */
+  public Object pull(long timeout, TimeUnit unit) throws InterruptedException
+  {
+    m_lock.lock();
+    try
+    {
+      if (!awaitNotEmpty(unit.toNanos(timeout)))
+      {
+        return null;
+      }
+      return take();
+    }
+    finally
+    {
+      m_lock.unlock();
+    }
   }
 
   @Override
   public Tank duplicate(boolean with_state)
   {
-    Tank t = new Tank();
+    Tank t = new Tank(m_capacity, m_policy);
+    copyStateInto(t, with_state);
+    return t;
+  }
+
+  /**
+   * Copies the settings of this tank, and optionally its contents, into
+   * another tank
+   * 
+   * @param t
+   *          The tank to copy into
+   * @param with_state
+   *          Set to <tt>true</tt> to also copy the events in the tank
+   */
+  protected void copyStateInto(Tank t, boolean with_state)
+  {
+    t.m_samplingInterval = m_samplingInterval;
+    t.m_pullTimeout = m_pullTimeout;
     if (with_state)
     {
-      // Put in the tank what is in the current tank
-      t.m_inputQueues[0].addAll(m_inputQueues[0]);
+      m_lock.lock();
+      try
+      {
+        // Put in the tank what is in the current tank
+        t.m_inputQueues[0].addAll(m_inputQueues[0]);
+      }
+      finally
+      {
+        m_lock.unlock();
+      }
     }
-    return t;
   }
 
   @Override
@@ -75,7 +326,7 @@ public class Tank extends Processor
   {
     if (m_pushable == null)
     {
-      m_pushable = new QueuePushable(false);
+      m_pushable = new QueuePushable();
     }
     return m_pushable;
   }
@@ -90,8 +341,178 @@ public class Tank extends Processor
     return m_pullable;
   }
 
-  protected class QueuePullable implements Pullable
+  /**
+   * Determines if the tank has reached its capacity. This method must be
+   * called while holding the lock.
+   * 
+   * @return <tt>true</tt> if the tank is full, <tt>false</tt> otherwise
+   */
+  protected boolean isFull()
+  {
+    return m_capacity != UNBOUNDED && m_inputQueues[0].size() >= m_capacity;
+  }
+
+  /**
+   * Adds an event to the tank, applying the overflow policy if the tank is
+   * full. This method must be called while holding the lock, and is never
+   * called for a full tank under the {@link OverflowPolicy#BLOCK} policy.
+   * 
+   * @param o
+   *          The event
+   */
+  protected void offer(Object o)
+  {
+    Queue<Object> q = m_inputQueues[0];
+    if (!isFull())
+    {
+      q.add(o);
+      m_overflowCount = 0;
+      m_notEmpty.signalAll();
+      fireReady();
+      return;
+    }
+    if (countsDrops())
+    {
+      m_dropCount++;
+      reportOverflow(true);
+    }
+    switch (m_policy)
+    {
+    case DROP_OLDEST:
+      q.poll();
+      q.add(o);
+      break;
+    case SAMPLE:
+      m_overflowCount++;
+      if (m_overflowCount >= m_samplingInterval)
+      {
+        m_overflowCount = 0;
+        q.poll();
+        q.add(o);
+      }
+      break;
+    default:
+      // DROP_NEWEST: leave the tank as is
+      break;
+    }
+  }
+
+  /**
+   * Determines if the events discarded because the tank is full are counted
+   * in {@link #getDropCount()} and reported as overflows. This is not the
+   * case for tanks whose normal behavior is to discard events.
+   * 
+   * @return <tt>true</tt> if discarded events are counted, <tt>false</tt>
+   *         otherwise
+   */
+  protected boolean countsDrops()
   {
+    return true;
+  }
+
+  /**
+   * Reports to the {@link ExecutionMonitor} currently installed, if any, that
+   * an event was handed to the tank while it is full
+   * 
+   * @param dropped
+   *          <tt>true</tt> if an event is discarded, <tt>false</tt> if the
+   *          caller waits for room
+   */
+  protected void reportOverflow(boolean dropped)
+  {
+    ExecutionMonitor monitor = ExecutionMonitor.current();
+    if (monitor != null)
+    {
+      monitor.queueOverflow(this, 0, dropped);
+    }
+  }
+
+  /**
+   * Notifies the listeners registered on the tank's pullable that an event
+   * is available
+   */
+  protected void fireReady()
+  {
+    QueuePullable p = m_pullable;
+    if (p != null)
+    {
+      p.m_listeners.fire();
+    }
+  }
+
+  /**
+   * Removes the oldest event from the tank, and moves pending pushes into
+   * the room this creates. This method must be called while holding the
+   * lock.
+   * 
+   * @return The event, or <tt>null</tt> if the tank is empty
+   */
+  protected Object take()
+  {
+    Object o = m_inputQueues[0].poll();
+    while (!m_pending.isEmpty() && !isFull())
+    {
+      PendingPush p = m_pending.remove();
+      m_inputQueues[0].add(p.m_event);
+      p.m_done = true;
+    }
+    m_notFull.signalAll();
+    return o;
+  }
+
+  /**
+   * Waits until the tank contains an event. This method must be called while
+   * holding the lock.
+   * 
+   * @param nanos
+   *          The maximum time to wait, in nanoseconds
+   * @return <tt>true</tt> if the tank contains an event, <tt>false</tt>
+   *         otherwise
+   * @throws InterruptedException
+   *           If the thread is interrupted while waiting
+   */
+  protected boolean awaitNotEmpty(long nanos) throws InterruptedException
+  {
+    Queue<Object> q = m_inputQueues[0];
+    while (q.isEmpty() && !m_ended && nanos > 0)
+    {
+      nanos = m_notEmpty.awaitNanos(nanos);
+    }
+    return !q.isEmpty();
+  }
+
+  protected class QueuePullable implements NotifyingPullable
+  {
+    /**
+     * The listeners notified when an event is pushed into the tank
+     */
+    protected final Readiness.ListenerList m_listeners = new Readiness.ListenerList(this);
+
+    @Override
+    public boolean addReadyListener(ReadyListener l)
+    {
+      m_lock.lock();
+      try
+      {
+        m_listeners.add(l);
+        if (!m_inputQueues[0].isEmpty() || m_ended)
+        {
+          l.ready(this);
+        }
+      }
+      finally
+      {
+        m_lock.unlock();
+      }
+      return true;
+    }
+
+    @Override
+    public void removeReadyListener(ReadyListener l)
+    {
+      m_listeners.remove(l);
+    }
+
     @Override
     public Iterator<Object> iterator()
     {
@@ -107,18 +528,38 @@ public class Tank extends Processor
     @Override
     public Object pullSoft()
     {
-      synchronized (m_inputQueues[0])
+      m_lock.lock();
+      try
       {
-        return m_inputQueues[0].poll();
+        return take();
+      }
+      finally
+      {
+        m_lock.unlock();
       }
     }
 
     @Override
     public Object pull()
     {
-      synchronized (m_inputQueues[0])
+      m_lock.lock();
+      try
       {
-        return m_inputQueues[0].poll();
+        if (m_inputQueues[0].isEmpty())
+        {
+          awaitNotEmpty(m_pullTimeout);
+        }
+        return take();
+      }
+      catch (InterruptedException e)
+      {
+        // Restore interrupted state
+        Thread.currentThread().interrupt();
+        throw new PullableException(e, Tank.this);
+      }
+      finally
+      {
+        m_lock.unlock();
       }
     }
 
@@ -132,22 +573,38 @@ public class Tank extends Processor
     @Override
     public NextStatus hasNextSoft()
     {
-      synchronized (m_inputQueues[0])
+      m_lock.lock();
+      try
       {
         if (m_inputQueues[0].isEmpty())
         {
-          return NextStatus.MAYBE;
+          return m_ended ? NextStatus.NO : NextStatus.MAYBE;
         }
         return NextStatus.YES;
       }
+      finally
+      {
+        m_lock.unlock();
+      }
     }
 
     @Override
     public boolean hasNext()
     {
-      synchronized (m_inputQueues)
+      m_lock.lock();
+      try
+      {
+        return awaitNotEmpty(m_pullTimeout);
+      }
+      catch (InterruptedException e)
       {
-        return !m_inputQueues[0].isEmpty();
+        // Restore interrupted state
+        Thread.currentThread().interrupt();
+        throw new PullableException(e, Tank.this);
+      }
+      finally
+      {
+        m_lock.unlock();
       }
     }
 
@@ -186,24 +643,32 @@ public class Tank extends Processor
 
   protected class QueuePushable implements Pushable
   {
-    private final boolean m_singleObject;
-
-    public QueuePushable(boolean single_object)
-    {
-      super();
-      m_singleObject = single_object;
-    }
-
     @Override
     public Pushable push(Object o)
     {
-      synchronized (m_inputQueues[0])
+      m_lock.lock();
+      try
       {
-        if (m_singleObject)
+        if (m_policy == OverflowPolicy.BLOCK && (isFull() || !m_pending.isEmpty()))
         {
-          m_inputQueues[0].clear();
+          reportOverflow(false);
+          // Wait for room, and let events handed to pushFast go first
+          while (isFull() || !m_pending.isEmpty())
+          {
+            m_notFull.await();
+          }
         }
-        m_inputQueues[0].add(o);
+        offer(o);
+      }
+      catch (InterruptedException e)
+      {
+        // Restore interrupted state
+        Thread.currentThread().interrupt();
+        throw new PushableException(e, Tank.this);
+      }
+      finally
+      {
+        m_lock.unlock();
       }
       return this;
     }
@@ -211,15 +676,43 @@ public class Tank extends Processor
     @Override
     public Future<Pushable> pushFast(Object o)
     {
-      push(o);
+      m_lock.lock();
+      try
+      {
+        if (m_policy == OverflowPolicy.BLOCK && (isFull() || !m_pending.isEmpty()))
+        {
+          reportOverflow(false);
+          PendingPush p = new PendingPush(o, this);
+          m_pending.add(p);
+          return p;
+        }
+        offer(o);
+      }
+      finally
+      {
+        m_lock.unlock();
+      }
       return Pushable.NULL_FUTURE;
     }
 
     @Override
     public void notifyEndOfTrace() throws PushableException
     {
-      // TODO: to be verified
-      m_outputPushables[0].notifyEndOfTrace();
+      m_lock.lock();
+      try
+      {
+        m_ended = true;
+        m_notEmpty.signalAll();
+        fireReady();
+      }
+      finally
+      {
+        m_lock.unlock();
+      }
+      if (m_outputPushables[0] != null)
+      {
+        m_outputPushables[0].notifyEndOfTrace();
+      }
     }
 
     @Override
@@ -235,13 +728,169 @@ public class Tank extends Processor
     }
   }
 
+  /**
+   * A {@link Future} returned by <tt>pushFast</tt> when the tank is full. The
+   * future completes when the event is moved into the tank, which happens
+   * when enough events have been pulled out of it.
+   */
+  protected class PendingPush implements Future<Pushable>
+  {
+    /**
+     * The event waiting to be put into the tank
+     */
+    protected final Object m_event;
+
+    /**
+     * The pushable that received the event
+     */
+    protected final Pushable m_pushable;
+
+    /**
+     * Whether the event has been put into the tank
+     */
+    protected boolean m_done = false;
+
+    /**
+     * Whether the push has been cancelled
+     */
+    protected boolean m_cancelled = false;
+
+    /**
+     * Creates a new pending push
+     * 
+     * @param o
+     *          The event waiting to be put into the tank
+     * @param p
+     *          The pushable that received the event
+     */
+    PendingPush(Object o, Pushable p)
+    {
+      super();
+      m_event = o;
+      m_pushable = p;
+    }
+
+    @Override
+    public boolean cancel(boolean may_interrupt_if_running)
+    {
+      m_lock.lock();
+      try
+      {
+        if (m_done || m_cancelled)
+        {
+          return false;
+        }
+        m_cancelled = true;
+        m_pending.remove(this);
+        m_notFull.signalAll();
+        return true;
+      }
+      finally
+      {
+        m_lock.unlock();
+      }
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+      m_lock.lock();
+      try
+      {
+        return m_cancelled;
+      }
+      finally
+      {
+        m_lock.unlock();
+      }
+    }
+
+    @Override
+    public boolean isDone()
+    {
+      m_lock.lock();
+      try
+      {
+        return m_done || m_cancelled;
+      }
+      finally
+      {
+        m_lock.unlock();
+      }
+    }
+
+    @Override
+    public Pushable get() throws InterruptedException, ExecutionException
+    {
+      m_lock.lock();
+      try
+      {
+        while (!m_done && !m_cancelled)
+        {
+          m_notFull.await();
+        }
+        if (m_cancelled)
+        {
+          throw new CancellationException();
+        }
+        return m_pushable;
+      }
+      finally
+      {
+        m_lock.unlock();
+      }
+    }
+
+    @Override
+    public Pushable get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+      long nanos = unit.toNanos(timeout);
+      m_lock.lock();
+      try
+      {
+        while (!m_done && !m_cancelled)
+        {
+          if (nanos <= 0)
+          {
+            throw new TimeoutException();
+          }
+          nanos = m_notFull.awaitNanos(nanos);
+        }
+        if (m_cancelled)
+        {
+          throw new CancellationException();
+        }
+        return m_pushable;
+      }
+      finally
+      {
+        m_lock.unlock();
+      }
+    }
+  }
+
   @Override
   public void reset()
   {
-    super.reset();
-    synchronized (m_inputQueues[0])
+    m_lock.lock();
+    try
     {
+      super.reset();
       m_inputQueues[0].clear();
+      for (PendingPush p : m_pending)
+      {
+        p.m_cancelled = true;
+      }
+      m_pending.clear();
+      m_dropCount = 0;
+      m_overflowCount = 0;
+      m_ended = false;
+      m_notFull.signalAll();
+    }
+    finally
+    {
+      m_lock.unlock();
     }
   }
 }
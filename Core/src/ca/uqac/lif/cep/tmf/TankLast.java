@@ -17,11 +17,12 @@
  */
 package ca.uqac.lif.cep.tmf;
 
-import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.concurrency.OverflowPolicy;
 
 /**
  * Tank that, when pulled, creates an output event based on the last event
- * received
+ * received. This is a tank of capacity 1 (or more generally, <i>n</i>) that
+ * discards its oldest event when a new one is pushed into it.
  * 
  * @author Sylvain Hallé
  * @since 0.2.1
@@ -29,22 +30,41 @@ import ca.uqac.lif.cep.Pushable;
 @SuppressWarnings("squid:S2160")
 public class TankLast extends Tank
 {
+  /**
+   * Creates a new tank keeping only the last event received
+   */
+  public TankLast()
+  {
+    this(1);
+  }
+
+  /**
+   * Creates a new tank keeping only the last <i>n</i> events received
+   * 
+   * @param n
+   *          The number of events to keep
+   */
+  public TankLast(int n)
+  {
+    super(n, OverflowPolicy.DROP_OLDEST);
+  }
+
+  /**
+   * Keeping only the last events is the normal behavior of this tank: the
+   * events it discards are neither counted nor reported as overflows.
+   */
   @Override
-  public Pushable getPushableInput(int index)
+  protected boolean countsDrops()
   {
-    return new QueuePushable(true);
+    return false;
   }
 
   @Override
   public TankLast duplicate(boolean with_state)
   {
-    TankLast t = new TankLast();
-    if (with_state)
-    {
-      // Put in the tank what is in the current tank
-      t.m_inputQueues[0].addAll(m_inputQueues[0]);
-    }
+    TankLast t = new TankLast(m_capacity);
+    copyStateInto(t, with_state);
     return t;
   }
 
-}
\ No newline at end of file
+}
@@ -18,6 +18,7 @@
 package ca.uqac.lif.cep.tmf;
 
 import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.ExecutionMonitor;
 import ca.uqac.lif.cep.Processor;
 import ca.uqac.lif.cep.ProcessorException;
 import ca.uqac.lif.cep.Pushable;
@@ -108,6 +109,8 @@ public class Window extends AbstractWindow
     Object[] out = null;
     if (windows_ok) // All windows have the proper width
     {
+      ExecutionMonitor monitor = ExecutionMonitor.current();
+      Object token = monitor == null ? null : monitor.beginWindow(this);
       m_processor.reset();
       m_sink.reset();
       int input_arity = getInputArity();
@@ -143,6 +146,10 @@ public class Window extends AbstractWindow
         }
         out = m_sink.getLast();
       }
+      if (token != null)
+      {
+        monitor.endWindow(token, this, m_width);
+      }
     }
     if (out == null)
     {
@@ -18,12 +18,27 @@
 package ca.uqac.lif.cep.util;
 
 import ca.uqac.lif.cep.SynchronousProcessor;
+import java.nio.CharBuffer;
 import java.util.Queue;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Extracts chunks of an input stream based on a regular expression.
+ * <p>
+ * The characters received so far are kept in a buffer, from which matched
+ * chunks are removed as they are found; the buffer is compacted in place
+ * instead of being copied into a new string for every input event.
+ * <p>
+ * Patterns of the form <tt>(.*?)<i>d</i></tt> or <tt>.*?<i>d</i></tt>,
+ * where <i>d</i> is a fixed delimiter (such as <tt>,</tt> or
+ * <tt>\n</tt>), are recognized and handled without the regular expression
+ * engine: the processor simply looks for the next occurrence of the
+ * delimiter, and resumes this search where it stopped when new characters
+ * arrive. Splitting a stream in this way takes linear time, no matter how
+ * large the chunks are. For other patterns, the unmatched end of the buffer
+ * is searched again every time new characters arrive; setting a buffer
+ * limit with {@link #setBufferLimit(int)} bounds the cost of this search.
  * 
  * @author Sylvain Hallé
  * @since 0.7
@@ -31,15 +46,75 @@ import java.util.regex.Pattern;
 public class FindPattern extends SynchronousProcessor
 {
   /**
-   * The buffered contents of the string received so far
+   * A value indicating that the buffer has no size limit
    */
-  protected String m_contents;
+  public static final int UNBOUNDED = -1;
+
+  /**
+   * The characters received so far and not yet matched
+   */
+  protected char[] m_buffer;
+
+  /**
+   * The index of the first character of the buffer
+   */
+  protected int m_start;
+
+  /**
+   * The index after the last character of the buffer
+   */
+  protected int m_end;
+
+  /**
+   * The index (relative to {@link #m_start}) from which the search for the
+   * delimiter resumes, when the fast path is used
+   */
+  protected int m_searchFrom;
 
   /**
    * The pattern to extract from the input stream
    */
   protected Pattern m_pattern;
 
+  /**
+   * A matcher for the pattern, reused from one input event to the next
+   */
+  protected transient Matcher m_matcher;
+
+  /**
+   * If the pattern is a fixed delimiter preceded by a lazy "anything", the
+   * delimiter; otherwise <tt>null</tt>
+   */
+  protected String m_delimiter;
+
+  /**
+   * When {@link #m_delimiter} is not null, whether the output is the part
+   * before the delimiter (<tt>(.*?)d</tt>) or includes it (<tt>.*?d</tt>)
+   */
+  protected boolean m_excludeDelimiter;
+
+  /**
+   * When {@link #m_delimiter} is not null, whether the "anything" part of the
+   * pattern may contain line terminators
+   */
+  protected boolean m_dotAll;
+
+  /**
+   * The maximum number of unmatched characters to keep
+   */
+  protected int m_bufferLimit = UNBOUNDED;
+
+  /**
+   * The number of characters discarded because the buffer limit was reached
+   */
+  protected long m_discarded = 0;
+
+  /**
+   * Whether the buffer overflowed since the last match, in which case the
+   * next match is the end of a chunk that has already been discarded
+   */
+  protected boolean m_overflowed = false;
+
   /**
    * Trims the pattern from leading and trailing spaces
    */
@@ -65,8 +140,13 @@ public class FindPattern extends SynchronousProcessor
   public FindPattern(Pattern pattern)
   {
     super(1, 1);
-    m_contents = "";
+    m_buffer = new char[256];
+    m_start = 0;
+    m_end = 0;
+    m_searchFrom = 0;
     m_pattern = pattern;
+    m_matcher = pattern.matcher("");
+    parseDelimiter();
   }
 
   @Override
@@ -74,13 +154,30 @@ public class FindPattern extends SynchronousProcessor
   {
     FindPattern fp = new FindPattern(m_pattern);
     fp.m_trim = m_trim;
+    fp.m_bufferLimit = m_bufferLimit;
     if (with_state)
     {
-      fp.m_contents = new String(m_contents);
+      fp.m_buffer = m_buffer.clone();
+      fp.m_start = m_start;
+      fp.m_end = m_end;
+      fp.m_searchFrom = m_searchFrom;
+      fp.m_discarded = m_discarded;
+      fp.m_overflowed = m_overflowed;
     }
     return fp;
   }
 
+  @Override
+  public void reset()
+  {
+    super.reset();
+    m_start = 0;
+    m_end = 0;
+    m_searchFrom = 0;
+    m_discarded = 0;
+    m_overflowed = false;
+  }
+
   /**
    * Sets whether to apply <tt>trim()</tt> to each output event
    * 
@@ -94,39 +191,290 @@ public class FindPattern extends SynchronousProcessor
     return this;
   }
 
+  /**
+   * Sets the maximum number of unmatched characters the processor keeps.
+   * When this limit is exceeded, the unmatched characters are discarded,
+   * along with the rest of the chunk they belong to (i.e. everything up to
+   * the end of the next match).
+   * 
+   * @param limit
+   *          The number of characters, or {@link #UNBOUNDED}
+   * @return This scanner
+   */
+  public FindPattern setBufferLimit(int limit)
+  {
+    m_bufferLimit = limit;
+    return this;
+  }
+
+  /**
+   * Gets the number of characters discarded so far because the buffer limit
+   * was exceeded
+   * 
+   * @return The number of characters
+   */
+  public long getDiscardedCount()
+  {
+    return m_discarded;
+  }
+
   @Override
   protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
   {
-    m_contents += (String) inputs[0];
-    Matcher mat = m_pattern.matcher(m_contents);
+    append((CharSequence) inputs[0]);
+    if (m_delimiter != null)
+    {
+      findDelimiters(outputs);
+    }
+    else
+    {
+      findMatches(outputs);
+    }
+    if (m_bufferLimit != UNBOUNDED && m_end - m_start > m_bufferLimit)
+    {
+      m_discarded += m_end - m_start;
+      m_start = 0;
+      m_end = 0;
+      m_searchFrom = 0;
+      m_overflowed = true;
+    }
+    return true;
+  }
+
+  /**
+   * Finds the matches of a general pattern in the buffer
+   * 
+   * @param outputs
+   *          The queue where output events are added
+   */
+  protected void findMatches(Queue<Object[]> outputs)
+  {
+    Matcher mat = m_matcher;
+    mat.reset(CharBuffer.wrap(m_buffer, m_start, m_end - m_start));
     int last_end = 0;
     while (mat.find())
     {
-      if (mat.groupCount() > 0)
+      String s = mat.groupCount() > 0 ? mat.group(1) : mat.group(0);
+      output(s, outputs);
+      last_end = mat.end();
+    }
+    m_start += last_end;
+  }
+
+  /**
+   * Finds the occurrences of a fixed delimiter in the buffer
+   * 
+   * @param outputs
+   *          The queue where output events are added
+   */
+  protected void findDelimiters(Queue<Object[]> outputs)
+  {
+    char[] buf = m_buffer;
+    String delim = m_delimiter;
+    int d_len = delim.length();
+    char first = delim.charAt(0);
+    int i = m_start + m_searchFrom;
+    int last = m_end - d_len;
+    while (i <= last)
+    {
+      if (buf[i] != first || !delimiterAt(i))
       {
-        if (m_trim)
-        {
-          outputs.add(new Object[] { mat.group(1).trim() });
-        }
-        else
+        i++;
+        continue;
+      }
+      int from = m_start;
+      if (!m_dotAll)
+      {
+        // The "anything" part cannot span line terminators: the match
+        // starts after the last one before the delimiter
+        for (int j = i - 1; j >= m_start; j--)
         {
-          outputs.add(new Object[] { mat.group(1) });
+          if (isLineTerminator(buf[j]))
+          {
+            from = j + 1;
+            break;
+          }
         }
       }
+      int to = m_excludeDelimiter ? i : i + d_len;
+      output(new String(buf, from, to - from), outputs);
+      i += d_len;
+      m_start = i;
+    }
+    m_searchFrom = Math.max(0, i - m_start);
+  }
+
+  /**
+   * Checks whether the delimiter occurs at some position of the buffer
+   * 
+   * @param pos
+   *          The position
+   * @return <tt>true</tt> if the delimiter occurs at this position
+   */
+  protected boolean delimiterAt(int pos)
+  {
+    String delim = m_delimiter;
+    for (int k = 1; k < delim.length(); k++)
+    {
+      if (m_buffer[pos + k] != delim.charAt(k))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds a matched chunk to the output queue, unless it is the end of a
+   * chunk discarded because of the buffer limit
+   * 
+   * @param s
+   *          The chunk
+   * @param outputs
+   *          The queue where output events are added
+   */
+  protected void output(String s, Queue<Object[]> outputs)
+  {
+    if (m_overflowed)
+    {
+      m_overflowed = false;
+      m_discarded += s.length();
+      return;
+    }
+    outputs.add(new Object[] { m_trim ? s.trim() : s });
+  }
+
+  /**
+   * Appends characters at the end of the buffer, making room if necessary
+   * 
+   * @param cs
+   *          The characters
+   */
+  protected void append(CharSequence cs)
+  {
+    int len = cs.length();
+    int size = m_end - m_start;
+    if (m_end + len > m_buffer.length)
+    {
+      if (size + len <= m_buffer.length / 2)
+      {
+        // Enough room if we move the contents back to the start
+        System.arraycopy(m_buffer, m_start, m_buffer, 0, size);
+      }
       else
       {
-        if (m_trim)
+        char[] bigger = new char[Math.max(m_buffer.length * 2, size + len)];
+        System.arraycopy(m_buffer, m_start, bigger, 0, size);
+        m_buffer = bigger;
+      }
+      m_start = 0;
+      m_end = size;
+    }
+    if (cs instanceof String)
+    {
+      ((String) cs).getChars(0, len, m_buffer, m_end);
+    }
+    else
+    {
+      for (int i = 0; i < len; i++)
+      {
+        m_buffer[m_end + i] = cs.charAt(i);
+      }
+    }
+    m_end += len;
+  }
+
+  /**
+   * Checks whether the pattern is a fixed delimiter preceded by
+   * <tt>.*?</tt> or <tt>(.*?)</tt>, and sets {@link #m_delimiter}
+   * accordingly
+   */
+  protected void parseDelimiter()
+  {
+    m_delimiter = null;
+    int flags = m_pattern.flags();
+    if ((flags & ~Pattern.DOTALL) != 0)
+    {
+      return;
+    }
+    String regex = m_pattern.pattern();
+    boolean exclude;
+    String rest;
+    if (regex.startsWith("(.*?)"))
+    {
+      exclude = true;
+      rest = regex.substring(5);
+    }
+    else if (regex.startsWith(".*?"))
+    {
+      exclude = false;
+      rest = regex.substring(3);
+    }
+    else
+    {
+      return;
+    }
+    StringBuilder delim = new StringBuilder();
+    for (int i = 0; i < rest.length(); i++)
+    {
+      char c = rest.charAt(i);
+      if (c == '\\')
+      {
+        if (i + 1 >= rest.length())
+        {
+          return;
+        }
+        char e = rest.charAt(++i);
+        if (e == 'n')
+        {
+          delim.append('\n');
+        }
+        else if (e == 'r')
         {
-          outputs.add(new Object[] { mat.group(0).trim() });
+          delim.append('\r');
+        }
+        else if (e == 't')
+        {
+          delim.append('\t');
+        }
+        else if (Character.isLetterOrDigit(e))
+        {
+          // A character class or a back reference
+          return;
         }
         else
         {
-          outputs.add(new Object[] { mat.group(0) });
+          delim.append(e);
         }
       }
-      last_end = mat.end();
+      else if ("[](){}.*+?^$|".indexOf(c) >= 0)
+      {
+        return;
+      }
+      else
+      {
+        delim.append(c);
+      }
     }
-    m_contents = m_contents.substring(last_end);
-    return true;
+    if (delim.length() == 0)
+    {
+      return;
+    }
+    m_delimiter = delim.toString();
+    m_excludeDelimiter = exclude;
+    m_dotAll = (flags & Pattern.DOTALL) != 0;
+  }
+
+  /**
+   * Determines if a character is a line terminator, i.e. a character not
+   * matched by <tt>.</tt> in a regular expression
+   * 
+   * @param c
+   *          The character
+   * @return <tt>true</tt> if the character is a line terminator
+   */
+  protected static boolean isLineTerminator(char c)
+  {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
   }
 }
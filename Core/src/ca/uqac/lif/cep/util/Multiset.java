@@ -134,6 +134,21 @@ public class Multiset implements Set<Object>
     return this;
   }
 
+  /**
+   * Adds multiple copies of an element to this multiset
+   * @param o The element
+   * @param times The number of copies to add
+   * @return This multiset
+   */
+  public Multiset addElement(Object o, int times)
+  {
+    if (times > 0)
+    {
+      m_map.put(o, get(o) + times);
+    }
+    return this;
+  }
+
   @Override
   public boolean add(Object o)
   {
@@ -0,0 +1,197 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ca.uqac.lif.cep.concurrency.OverflowPolicy;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.IdentityFunction;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.Slice;
+import ca.uqac.lif.cep.tmf.Tank;
+import ca.uqac.lif.cep.tmf.Window;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Unit tests for {@link ExecutionMonitor}.
+ */
+public class ExecutionMonitorTest
+{
+	@After
+	public void tearDown()
+	{
+		ExecutionMonitor.install(null);
+	}
+	
+	@Test
+	public void testCompute()
+	{
+		ApplyFunction abs = new ApplyFunction(Numbers.absoluteValue);
+		Passthrough pt = new Passthrough();
+		QueueSink sink = new QueueSink();
+		Connector.connect(abs, pt, sink);
+		Log log = new Log();
+		ExecutionMonitor.install(log);
+		assertSame(log, ExecutionMonitor.current());
+		Pushable p = abs.getPushableInput();
+		p.push(-1);
+		p.push(2);
+		assertEquals(6, log.m_computes.size());
+		assertEquals("ApplyFunction:1", log.m_computes.get(0));
+		assertEquals("QueueSink:0", log.m_computes.get(2));
+		p.notifyEndOfTrace();
+		assertEquals(3, log.m_endOfTrace.size());
+		ExecutionMonitor.install(null);
+		p.push(3);
+		assertEquals(6, log.m_computes.size());
+	}
+	
+	@Test
+	public void testSlice()
+	{
+		// Each slice sums its events, and is removed once the sum exceeds 5
+		Slice slice = new Slice(new IdentityFunction(1),
+				new Cumulate(new CumulativeFunction<Number>(Numbers.addition)),
+				new FunctionTree(Numbers.isGreaterThan, StreamVariable.X, new Constant(5)));
+		QueueSink sink = new QueueSink();
+		Connector.connect(slice, sink);
+		Log log = new Log();
+		ExecutionMonitor.install(log);
+		Pushable p = slice.getPushableInput();
+		p.push(1);
+		p.push(4);
+		p.push(1);
+		assertEquals(2, log.m_slices.size());
+		assertEquals("+1/1", log.m_slices.get(0));
+		assertEquals("+4/2", log.m_slices.get(1));
+		p.push(4);
+		assertEquals(3, log.m_slices.size());
+		assertEquals("-4/1", log.m_slices.get(2));
+	}
+	
+	@Test
+	public void testWindow()
+	{
+		Window win = new Window(new Cumulate(new CumulativeFunction<Number>(Numbers.addition)), 2);
+		QueueSink sink = new QueueSink();
+		Connector.connect(win, sink);
+		Log log = new Log();
+		ExecutionMonitor.install(log);
+		Pushable p = win.getPushableInput();
+		for (int i = 0; i < 4; i++)
+		{
+			p.push(i);
+		}
+		// The window is full from the second event on
+		assertEquals(3, log.m_windows);
+	}
+	
+	@Test
+	public void testOverflow()
+	{
+		Tank tank = new Tank(2, OverflowPolicy.DROP_OLDEST);
+		Log log = new Log();
+		ExecutionMonitor.install(log);
+		Pushable p = tank.getPushableInput();
+		for (int i = 0; i < 5; i++)
+		{
+			p.push(i);
+		}
+		assertEquals(3, log.m_overflows.size());
+		assertEquals("Tank:0:true", log.m_overflows.get(0));
+	}
+	
+	/**
+	 * Monitor that logs the notifications it receives
+	 */
+	protected static class Log extends ExecutionMonitor
+	{
+		List<String> m_computes = new ArrayList<String>();
+		
+		List<String> m_slices = new ArrayList<String>();
+		
+		List<String> m_overflows = new ArrayList<String>();
+		
+		List<String> m_endOfTrace = new ArrayList<String>();
+		
+		int m_windows = 0;
+		
+		@Override
+		public Object beginCompute(Processor p)
+		{
+			return p;
+		}
+		
+		@Override
+		public void endCompute(Object token, Processor p, int fronts)
+		{
+			assertSame(p, token);
+			m_computes.add(p.getClass().getSimpleName() + ":" + fronts);
+		}
+		
+		@Override
+		public void sliceCreated(Processor slice, Object key, int active)
+		{
+			m_slices.add("+" + key + "/" + active);
+		}
+		
+		@Override
+		public void sliceEvicted(Processor slice, Object key, int active)
+		{
+			m_slices.add("-" + key + "/" + active);
+		}
+		
+		@Override
+		public Object beginWindow(Processor window)
+		{
+			return window;
+		}
+		
+		@Override
+		public void endWindow(Object token, Processor window, int width)
+		{
+			assertEquals(2, width);
+			m_windows++;
+		}
+		
+		@Override
+		public void queueOverflow(Processor p, int index, boolean dropped)
+		{
+			m_overflows.add(p.getClass().getSimpleName() + ":" + index + ":" + dropped);
+		}
+		
+		@Override
+		public void endOfTrace(Processor p, int index)
+		{
+			m_endOfTrace.add(p.getClass().getSimpleName());
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.tmf.Slice;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Unit tests for {@link ProcessorMetrics} and {@link MetricsRegistry}.
+ */
+public class MetricsTest
+{
+	@Test
+	public void testMetricsPush()
+	{
+		Passthrough pt = new Passthrough();
+		QueueSink sink = new QueueSink();
+		Connector.connect(pt, sink);
+		assertNull(pt.getMetrics());
+		pt.setMetricsEnabled(true);
+		ProcessorMetrics m = pt.getMetrics();
+		assertNotNull(m);
+		Pushable p = pt.getPushableInput();
+		for (int i = 0; i < 10; i++)
+		{
+			p.push(i);
+		}
+		ProcessorMetrics.Snapshot s = m.getSnapshot();
+		assertEquals(pt.getId(), s.getProcessorId());
+		assertEquals(10, s.getEventsIn(0));
+		assertEquals(10, s.getEventsOut(0));
+		assertEquals(10, s.getComputeCount());
+		assertTrue(s.getComputeTime() > 0);
+		assertFalse(s.isEndOfTrace());
+		assertEquals(-1, s.getActiveSliceCount());
+		p.notifyEndOfTrace();
+		assertTrue(m.isEndOfTrace());
+		m.reset();
+		assertEquals(0, m.getEventsIn()[0]);
+		pt.setMetricsEnabled(false);
+		assertNull(pt.getMetrics());
+		p.push(0);
+		assertEquals(0, m.getEventsIn()[0]);
+	}
+	
+	@Test
+	public void testMetricsPull()
+	{
+		QueueSource source = new QueueSource().setEvents(1, -2, 3);
+		ApplyFunction abs = new ApplyFunction(Numbers.absoluteValue);
+		Connector.connect(source, abs);
+		source.setMetricsEnabled(true);
+		abs.setMetricsEnabled(true);
+		Pullable p = abs.getPullableOutput();
+		for (int i = 0; i < 5; i++)
+		{
+			p.pull();
+		}
+		ProcessorMetrics.Snapshot s = abs.getMetrics().getSnapshot();
+		assertEquals(5, s.getEventsIn(0));
+		assertEquals(5, s.getEventsOut(0));
+		assertEquals(0, s.getInputQueueSize(0));
+		assertEquals(5, source.getMetrics().getEventsOut()[0]);
+	}
+	
+	@Test
+	public void testRegistry() throws Exception
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		QueueSource source = new QueueSource().setEvents(1, 2, 3, 4);
+		Slice slice = new Slice(Numbers.isEven, new Passthrough());
+		GroupProcessor group = new GroupProcessor(1, 1);
+		Passthrough inner = new Passthrough();
+		group.addProcessor(inner);
+		group.associateInput(0, inner, 0);
+		group.associateOutput(0, inner, 0);
+		QueueSink sink = new QueueSink();
+		Connector.connect(source, slice, group, sink);
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.registerAll(source);
+		assertNotNull(inner.getMetrics());
+		assertEquals(5, registry.getSnapshots().size());
+		for (int i = 0; i < 4; i++)
+		{
+			source.push();
+		}
+		ObjectName name = MetricsRegistry.getObjectName(slice);
+		assertTrue(server.isRegistered(name));
+		assertEquals(2, server.getAttribute(name, "ActiveSliceCount"));
+		assertEquals(4L, ((long[]) server.getAttribute(name, "EventsIn"))[0]);
+		assertEquals(4L, ((long[]) server.getAttribute(MetricsRegistry.getObjectName(inner), "EventsIn"))[0]);
+		List<ProcessorMetrics.Snapshot> snapshots = registry.getSnapshots();
+		assertEquals(source.getId(), snapshots.get(0).getProcessorId());
+		assertEquals(4, snapshots.get(0).getEventsOut(0));
+		registry.unregisterAll();
+		assertFalse(server.isRegistered(name));
+		assertNull(slice.getMetrics());
+		assertTrue(registry.getSnapshots().isEmpty());
+	}
+	
+	@Test
+	public void testLatencyHistogram()
+	{
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.getValueAtPercentile(99));
+		for (long v = 1; v <= 100000; v++)
+		{
+			h.record(v);
+		}
+		LatencyHistogram.Snapshot s = h.getSnapshot();
+		assertEquals(100000, s.getCount());
+		assertEquals(100000, s.getMax());
+		assertEquals(50000.5, s.getMean(), 0.001);
+		double[] expected = {50000, 90000, 99000, 99900, 99990};
+		long[] values = s.getPercentiles();
+		for (int i = 0; i < expected.length; i++)
+		{
+			// Values are within 1/64 of the exact value
+			assertEquals(expected[i], values[i], expected[i] / 64);
+			assertTrue(values[i] >= expected[i]);
+		}
+		assertEquals(values[2], s.getP99());
+		assertEquals(100000, s.getValueAtPercentile(100));
+		// Small values are exact
+		h.reset();
+		h.record(3);
+		h.record(-5);
+		assertEquals(2, h.getCount());
+		assertEquals(0, h.getValueAtPercentile(50));
+		assertEquals(3, h.getValueAtPercentile(100));
+	}
+	
+	@Test
+	public void testLatencyTracking()
+	{
+		QueueSource source = new QueueSource().setEvents(1, 2, 3);
+		source.setIngressTimestamping(true);
+		ProfilerTest.Spin spin = new ProfilerTest.Spin();
+		QueueSink sink = new QueueSink();
+		Connector.connect(source, spin, sink);
+		assertNull(sink.getLatencyHistogram());
+		sink.setLatencyTracking(true);
+		for (int i = 0; i < 20; i++)
+		{
+			source.push();
+		}
+		LatencyHistogram.Snapshot s = sink.getMetrics().getSnapshot().getLatency();
+		assertEquals(20, s.getCount());
+		// Every event spent some time in the processor upstream
+		assertTrue(s.getP50() >= ProfilerTest.Spin.DURATION);
+		assertTrue(s.getP9999() >= s.getP50());
+		assertEquals(Ingress.NONE, Ingress.getTimestamp());
+		// Events pushed without an ingress time are not measured
+		spin.getPushableInput().push(0);
+		assertEquals(20, sink.getLatencyHistogram().getCount());
+		Ingress.push(spin.getPushableInput(), 0);
+		assertEquals(21, sink.getLatencyHistogram().getCount());
+		sink.setLatencyTracking(false);
+		assertNull(sink.getLatencyHistogram());
+		assertNotNull(sink.getMetrics());
+	}
+	
+	@Test
+	public void testLatencyRegistry() throws Exception
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		QueueSource source = new QueueSource().setEvents(1, 2, 3);
+		source.setIngressTimestamping(true);
+		QueueSink sink = new QueueSink();
+		Connector.connect(source, sink);
+		sink.setLatencyTracking(true);
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.registerAll(source);
+		for (int i = 0; i < 10; i++)
+		{
+			source.push();
+		}
+		ObjectName name = MetricsRegistry.getObjectName(sink);
+		assertEquals(10L, server.getAttribute(name, "LatencyCount"));
+		long p99 = (Long) server.getAttribute(name, "LatencyP99");
+		assertTrue(p99 >= 0);
+		assertTrue(p99 <= (Long) server.getAttribute(name, "LatencyMax"));
+		assertEquals(-1L, server.getAttribute(MetricsRegistry.getObjectName(source), "LatencyP99"));
+		registry.unregisterAll();
+	}
+}
@@ -0,0 +1,196 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.PipelineGraph.Edge;
+import ca.uqac.lif.cep.PipelineGraph.EdgeType;
+import ca.uqac.lif.cep.PipelineGraph.Node;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.tmf.Fork;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Unit tests for the {@link PipelineGraph}.
+ * @author Sylvain Hallé
+ */
+public class PipelineGraphTest 
+{
+	@Test
+	public void testChain()
+	{
+		QueueSource source = new QueueSource();
+		Fork fork = new Fork(2);
+		ApplyFunction add = new ApplyFunction(Numbers.addition);
+		QueueSink sink = new QueueSink();
+		Connector.connect(source, fork);
+		Connector.connect(fork, 0, add, 0);
+		Connector.connect(fork, 1, add, 1);
+		Connector.connect(add, sink);
+		PipelineGraph g = PipelineGraph.of(sink);
+		assertEquals(4, g.size());
+		assertEquals(4, g.getEdges().size());
+		for (Edge e : g.getEdges())
+		{
+			assertEquals(EdgeType.CONNECTION, e.getType());
+			assertFalse(e.getSource().isInput());
+			assertTrue(e.getTarget().isInput());
+		}
+		Node n_add = g.getNode(add);
+		assertTrue(n_add.getInput(0).getTypes().contains(Number.class));
+		assertTrue(n_add.getOutput(0).getTypes().contains(Number.class));
+		assertEquals(1, n_add.getInput(1).getEdges().size());
+		assertEquals(g.getNode(fork), n_add.getInput(1).getEdges().get(0).getSource().getNode());
+		assertEquals(1, n_add.getInput(1).getEdges().get(0).getSource().getIndex());
+		assertTrue(g.isAcyclic());
+		List<Node> plan = g.getExecutionPlan();
+		assertEquals(4, plan.size());
+		assertEquals(source, plan.get(0).getProcessor());
+		assertEquals(fork, plan.get(1).getProcessor());
+		assertEquals(add, plan.get(2).getProcessor());
+		assertEquals(sink, plan.get(3).getProcessor());
+	}
+	
+	@Test
+	public void testGroup()
+	{
+		QueueSource source = new QueueSource();
+		Passthrough pt1 = new Passthrough(1);
+		Passthrough pt2 = new Passthrough(1);
+		GroupProcessor gp = new GroupProcessor(1, 1);
+		gp.addProcessors(pt1, pt2);
+		Connector.connect(pt1, pt2);
+		gp.associateInput(0, pt1, 0);
+		gp.associateOutput(0, pt2, 0);
+		QueueSink sink = new QueueSink();
+		Connector.connect(source, gp, sink);
+		PipelineGraph g = PipelineGraph.of(source);
+		assertEquals(5, g.size());
+		Node n_gp = g.getNode(gp);
+		assertTrue(n_gp.isGroup());
+		assertNull(n_gp.getParent());
+		assertEquals(2, n_gp.getChildren().size());
+		assertEquals(n_gp, g.getNode(pt1).getParent());
+		assertEquals(n_gp, g.getNode(pt2).getParent());
+		int connections = 0, inputs = 0, outputs = 0;
+		for (Edge e : g.getEdges())
+		{
+			switch (e.getType())
+			{
+			case CONNECTION:
+				connections++;
+				// Connections never cross the boundary of a group
+				assertEquals(e.getSource().getNode().getParent(), e.getTarget().getNode().getParent());
+				break;
+			case INPUT_ASSOCIATION:
+				inputs++;
+				assertEquals(n_gp.getInput(0), e.getSource());
+				assertEquals(g.getNode(pt1).getInput(0), e.getTarget());
+				break;
+			default:
+				outputs++;
+				assertEquals(g.getNode(pt2).getOutput(0), e.getSource());
+				assertEquals(n_gp.getOutput(0), e.getTarget());
+			}
+		}
+		assertEquals(3, connections);
+		assertEquals(1, inputs);
+		assertEquals(1, outputs);
+		List<Node> plan = g.getExecutionPlan();
+		assertEquals(4, plan.size());
+		assertEquals(source, plan.get(0).getProcessor());
+		assertEquals(pt1, plan.get(1).getProcessor());
+		assertEquals(pt2, plan.get(2).getProcessor());
+		assertEquals(sink, plan.get(3).getProcessor());
+		assertEquals(5, PipeCrawler.getAllProcessors(sink).size());
+	}
+	
+	@Test
+	public void testNestedGroup()
+	{
+		Passthrough pt = new Passthrough(1);
+		GroupProcessor inner = new GroupProcessor(1, 1);
+		inner.addProcessor(pt);
+		inner.associateInput(0, pt, 0);
+		inner.associateOutput(0, pt, 0);
+		GroupProcessor outer = new GroupProcessor(1, 1);
+		outer.addProcessor(inner);
+		outer.associateInput(0, inner, 0);
+		outer.associateOutput(0, inner, 0);
+		QueueSource source = new QueueSource();
+		QueueSink sink = new QueueSink();
+		Connector.connect(source, outer, sink);
+		PipelineGraph g = PipelineGraph.of(outer);
+		assertEquals(5, g.size());
+		assertEquals(g.getNode(inner), g.getNode(pt).getParent());
+		assertEquals(g.getNode(outer), g.getNode(inner).getParent());
+		List<Node> plan = g.getExecutionPlan();
+		assertEquals(3, plan.size());
+		assertEquals(source, plan.get(0).getProcessor());
+		assertEquals(pt, plan.get(1).getProcessor());
+		assertEquals(sink, plan.get(2).getProcessor());
+	}
+	
+	@Test
+	public void testLongChain()
+	{
+		// Longer than what the crawler used to visit
+		int length = 20000;
+		Passthrough first = new Passthrough(1);
+		Processor last = first;
+		for (int i = 1; i < length; i++)
+		{
+			Passthrough pt = new Passthrough(1);
+			Connector.connect(last, pt);
+			last = pt;
+		}
+		PipelineGraph g = PipelineGraph.of(last);
+		assertEquals(length, g.size());
+		assertEquals(length - 1, g.getEdges().size());
+		List<Node> plan = g.getExecutionPlan();
+		assertEquals(length, plan.size());
+		assertEquals(first, plan.get(0).getProcessor());
+		assertEquals(last, plan.get(length - 1).getProcessor());
+		GroupTest.CountCrawler crawler = new GroupTest.CountCrawler();
+		crawler.crawl(first);
+		assertEquals(length, crawler.m_visited.size());
+	}
+	
+	@Test
+	public void testCycle()
+	{
+		QueueSource source = new QueueSource();
+		Passthrough pt1 = new Passthrough(1);
+		Passthrough pt2 = new Passthrough(1);
+		Connector.connect(pt1, pt2);
+		Connector.connect(pt2, pt1);
+		Connector.connect(source, new QueueSink());
+		PipelineGraph g = PipelineGraph.of(pt1, source);
+		assertEquals(4, g.size());
+		assertFalse(g.isAcyclic());
+		assertEquals(2, g.getExecutionPlan().size());
+	}
+}
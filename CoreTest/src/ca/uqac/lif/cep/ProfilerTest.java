@@ -0,0 +1,148 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.PipelineProfiler.ProcessorProfile;
+import ca.uqac.lif.cep.tmf.CountDecimate;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.QueueSource;
+
+/**
+ * Unit tests for {@link PipelineProfiler}.
+ */
+public class ProfilerTest
+{
+	@Test
+	public void testProfilerPush() throws Exception
+	{
+		Passthrough pt = new Passthrough();
+		Spin spin = new Spin();
+		CountDecimate dec = new CountDecimate(2);
+		QueueSink sink = new QueueSink();
+		Connector.connect(pt, spin, dec, sink);
+		Pushable sink_in = sink.getPushableInput();
+		PipelineProfiler profiler = new PipelineProfiler();
+		profiler.install(pt);
+		assertNotSame(sink_in, dec.getPushableOutput(0));
+		Pushable p = profiler.wrap(pt.getPushableInput());
+		for (int i = 0; i < 100; i++)
+		{
+			p.push(i);
+		}
+		profiler.uninstall();
+		assertSame(sink_in, dec.getPushableOutput(0));
+		assertEquals(50, sink.getQueue().size());
+		List<ProcessorProfile> profiles = profiler.getProfiles();
+		assertEquals(4, profiles.size());
+		// The processor doing the most work comes first
+		ProcessorProfile pp = profiles.get(0);
+		assertSame(spin, pp.getProcessor());
+		assertEquals(100, pp.getCalls());
+		assertEquals(100, pp.getEventsIn());
+		assertEquals(100, pp.getEventsOut());
+		assertTrue(pp.getSelfTime() >= 100 * Spin.DURATION);
+		assertTrue(pp.getDownstreamTime() > 0);
+		assertTrue(pp.getDownstreamTime() < pp.getSelfTime());
+		pp = profiler.getProfile(dec);
+		assertEquals(0.5, pp.getSelectivity(), 0.0001);
+		assertTrue(profiler.getProfile(pt).getTotalTime() >= profiler.getProfile(spin).getTotalTime());
+		StringBuilder stacks = new StringBuilder();
+		profiler.writeCollapsedStacks(stacks);
+		String path = "Passthrough#" + pt.getId() + ";Spin#" + spin.getId();
+		assertTrue(stacks.toString().contains(path + " "));
+		assertTrue(stacks.toString().contains(path + ";CountDecimate#" + dec.getId()));
+		String report = profiler.getReport();
+		assertTrue(report.contains("100    Spin#" + spin.getId()));
+		assertTrue(report.contains("CountDecimate#" + dec.getId()));
+	}
+	
+	@Test
+	public void testProfilerPull()
+	{
+		QueueSource source = new QueueSource().setEvents(1, 2, 3);
+		Spin spin = new Spin();
+		Passthrough pt = new Passthrough();
+		Connector.connect(source, spin, pt);
+		GroupProcessor group = new GroupProcessor(1, 1);
+		Passthrough inner1 = new Passthrough();
+		Passthrough inner2 = new Passthrough();
+		Connector.connect(inner1, inner2);
+		group.addProcessors(inner1, inner2);
+		group.associateInput(0, inner1, 0);
+		group.associateOutput(0, inner2, 0);
+		Connector.connect(pt, group);
+		PipelineProfiler profiler = new PipelineProfiler();
+		profiler.install(source);
+		Pullable p = profiler.wrap(group.getPullableOutput());
+		for (int i = 0; i < 20; i++)
+		{
+			p.pull();
+		}
+		ProcessorProfile pp = profiler.getProfile(spin);
+		assertEquals(20, pp.getEventsIn());
+		assertEquals(20, pp.getEventsOut());
+		assertTrue(pp.getSelfTime() >= 20 * Spin.DURATION);
+		assertEquals(20, profiler.getProfile(source).getEventsOut());
+		// The connection inside the group is probed as well
+		assertEquals(20, profiler.getProfile(inner1).getEventsOut());
+		assertTrue(profiler.getProfile(group).getTotalTime() > pp.getTotalTime());
+		profiler.clear();
+		assertNull(profiler.getProfile(spin));
+	}
+	
+	/**
+	 * Processor that busy-waits for a fixed time on each event
+	 */
+	public static class Spin extends UniformProcessor
+	{
+		/**
+		 * The time spent on each event, in nanoseconds
+		 */
+		public static final long DURATION = 50000;
+		
+		public Spin()
+		{
+			super(1, 1);
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Object[] outputs)
+		{
+			long end = System.nanoTime() + DURATION;
+			while (System.nanoTime() < end)
+			{
+				// Wait
+			}
+			outputs[0] = inputs[0];
+			return true;
+		}
+
+		@Override
+		public Processor duplicate(boolean with_state)
+		{
+			return new Spin();
+		}
+	}
+}
@@ -24,8 +24,14 @@ import java.util.List;
 
 import org.junit.Test;
 
+import ca.uqac.lif.cep.AbstractEventTracker.EventFunction;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
 import ca.uqac.lif.cep.tmf.Passthrough;
 import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.tmf.QueueSource.QueueFunction;
+import ca.uqac.lif.cep.util.Numbers;
 import ca.uqac.lif.petitpoucet.BrokenChain;
 import ca.uqac.lif.petitpoucet.NodeFunction;
 import ca.uqac.lif.petitpoucet.ProvenanceNode;
@@ -66,6 +72,110 @@ public class ProvenanceTest
 		assertEquals(tracker, pt.getEventTracker());
 	}
 	
+	@Test
+	public void testCompactTree()
+	{
+		CompactEventTracker tracker = new CompactEventTracker();
+		Processor[] chain = compactChain(tracker, 100);
+		Processor abs = chain[1];
+		Processor sum = chain[2];
+		ProvenanceNode root = tracker.getProvenanceTree(sum.getId(), 0, 5);
+		assertEquals(new EventFunction(sum.getId(), 0, 5), root.getNodeFunction());
+		List<ProvenanceNode> parents = root.getParents();
+		assertEquals(2, parents.size());
+		assertEquals(new EventFunction(abs.getId(), 0, 5), parents.get(0).getNodeFunction());
+		assertEquals(new EventFunction(sum.getId(), 0, 4), parents.get(1).getNodeFunction());
+		ProvenanceNode source_node = parents.get(0).getParents().get(0);
+		assertEquals(new EventFunction(chain[0].getId(), 0, 5), source_node.getNodeFunction());
+		assertTrue(source_node.getParents().get(0).getNodeFunction() instanceof QueueFunction);
+		// The chain of partial sums goes back to the start value
+		ProvenanceNode n = root;
+		int depth = 0;
+		while (n.getParents().get(1).getNodeFunction() instanceof EventFunction)
+		{
+			n = n.getParents().get(1);
+			depth++;
+		}
+		assertEquals(5, depth);
+		assertTrue(n.getParents().get(1).getNodeFunction() instanceof Cumulate.StartValue);
+		assertTrue(tracker.getProvenanceTree(sum.getId(), 0, 100) instanceof BrokenChain);
+		// A long chain does not overflow the stack
+		assertNotNull(tracker.getProvenanceTree(sum.getId(), 0, 99));
+	}
+	
+	@Test
+	public void testCompactRetention()
+	{
+		CompactEventTracker tracker = new CompactEventTracker().setRetention(10);
+		Processor[] chain = compactChain(tracker, 1000);
+		Processor sum = chain[2];
+		// 3 streams, at most 2 associations per position
+		assertTrue(tracker.getAssociationCount() <= 3 * 10 * 2);
+		assertTrue(tracker.getProvenanceTree(sum.getId(), 0, 500) instanceof BrokenChain);
+		ProvenanceNode root = tracker.getProvenanceTree(sum.getId(), 0, 995);
+		assertEquals(2, root.getParents().size());
+		// The chain of partial sums is broken past the retention window
+		ProvenanceNode n = root;
+		while (n.getParents().size() == 2)
+		{
+			n = n.getParents().get(1);
+		}
+		assertTrue(n.getParents().get(0) instanceof BrokenChain);
+		assertEquals(new EventFunction(sum.getId(), 0, 989), n.getNodeFunction());
+	}
+	
+	@Test
+	public void testCompactMemoryBudget()
+	{
+		CompactEventTracker tracker = new CompactEventTracker()
+				.setMemoryBudget(100 * CompactEventTracker.BYTES_PER_ASSOCIATION);
+		Processor[] chain = compactChain(tracker, 1000);
+		assertTrue(tracker.getAssociationCount() <= 100);
+		assertTrue(tracker.getAssociationCount() > 0);
+		assertFalse(tracker.getProvenanceTree(chain[2].getId(), 0, 999) instanceof BrokenChain);
+		assertTrue(tracker.getProvenanceTree(chain[2].getId(), 0, 10) instanceof BrokenChain);
+		tracker.clear();
+		assertEquals(0, tracker.getAssociationCount());
+	}
+	
+	@Test
+	public void testCompactSampling()
+	{
+		CompactEventTracker tracker = new CompactEventTracker().setSamplingInterval(10);
+		Processor[] chain = compactChain(tracker, 100);
+		Processor abs = chain[1];
+		assertTrue(tracker.getProvenanceTree(abs.getId(), 0, 21) instanceof BrokenChain);
+		ProvenanceNode root = tracker.getProvenanceTree(abs.getId(), 0, 20);
+		ProvenanceNode source_node = root.getParents().get(0);
+		assertEquals(new EventFunction(chain[0].getId(), 0, 20), source_node.getNodeFunction());
+		assertTrue(source_node.getParents().get(0).getNodeFunction() instanceof QueueFunction);
+		// 10 positions of 3 streams, plus the start value of the sum
+		assertEquals(10 + 10 + 2 * 10, tracker.getAssociationCount());
+	}
+	
+	/**
+	 * Creates a chain of processors computing the cumulative sum of the
+	 * absolute value of a source, and pulls events from it
+	 * @param tracker The tracker to associate to the processors
+	 * @param n The number of events to pull
+	 * @return The source, the absolute value and the sum
+	 */
+	public static Processor[] compactChain(EventTracker tracker, int n)
+	{
+		QueueSource source = new QueueSource();
+		source.setEvents(new Object[]{1, -2, 3, -4});
+		ApplyFunction abs = new ApplyFunction(Numbers.absoluteValue);
+		Cumulate sum = new Cumulate(new CumulativeFunction<Number>(Numbers.addition));
+		Connector.connect(tracker, source, abs, sum);
+		tracker.setTo(source, abs, sum);
+		Pullable p = sum.getPullableOutput();
+		for (int i = 0; i < n; i++)
+		{
+			p.pull();
+		}
+		return new Processor[] {source, abs, sum};
+	}
+	
 	/**
 	 * A "dummy" event tracker that just records whatever calls have been made
 	 * to it. It is used for testing.
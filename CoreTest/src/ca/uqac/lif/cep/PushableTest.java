@@ -18,8 +18,12 @@
 package ca.uqac.lif.cep;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
 
 import ca.uqac.lif.cep.Pushable.PushableException;
@@ -29,7 +33,11 @@ import ca.uqac.lif.cep.functions.ApplyFunction;
 import ca.uqac.lif.cep.functions.FunctionTree;
 import ca.uqac.lif.cep.util.Numbers;
 import ca.uqac.lif.cep.functions.TurnInto;
+import ca.uqac.lif.cep.concurrency.OverflowPolicy;
+import ca.uqac.lif.cep.tmf.Passthrough;
 import ca.uqac.lif.cep.tmf.Pump;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.tmf.Tank;
 
 public class PushableTest
 {
@@ -121,4 +129,89 @@ public class PushableTest
 			PushableException pe = new PushableException(e, p);
 		}
 	}
+	
+	@Test(timeout=2000)
+	public void testPushFastDemand1() throws Exception
+	{
+		// Demand from a bounded tank goes through a unary processor
+		Passthrough pt = new Passthrough();
+		Tank t = new Tank(1, OverflowPolicy.BLOCK);
+		Connector.connect(pt, t);
+		Pushable p = pt.getPushableInput();
+		assertTrue(p.pushFast("a").isDone());
+		Future<Pushable> f = p.pushFast("b");
+		assertFalse(f.isDone());
+		assertEquals("a", t.getPullableOutput().pull());
+		assertTrue(f.isDone());
+		assertEquals("b", t.getPullableOutput().pull());
+	}
+	
+	@Test(timeout=2000)
+	public void testPushFastDemand2() throws Exception
+	{
+		// Demand goes through a processor of arity 2 and through a group
+		ApplyFunction add = new ApplyFunction(Numbers.addition);
+		GroupProcessor g = new GroupProcessor(2, 1);
+		g.addProcessor(add);
+		g.associateInput(0, add, 0);
+		g.associateInput(1, add, 1);
+		g.associateOutput(0, add, 0);
+		Tank t = new Tank(1, OverflowPolicy.BLOCK);
+		Connector.connect(g, t);
+		Pushable p1 = g.getPushableInput(0);
+		Pushable p2 = g.getPushableInput(1);
+		assertTrue(p1.pushFast(1).isDone());
+		assertTrue(p2.pushFast(2).isDone());
+		assertTrue(p1.pushFast(3).isDone());
+		Future<Pushable> f = p2.pushFast(4);
+		assertFalse(f.isDone());
+		assertEquals(3f, ((Number) t.getPullableOutput().pull()).floatValue(), 0.001f);
+		assertTrue(f.isDone());
+		assertEquals(7f, ((Number) t.getPullableOutput().pull()).floatValue(), 0.001f);
+	}
+	
+	@Test(timeout=5000)
+	public void testPumpDemand() throws Exception
+	{
+		QueueSource src = new QueueSource().setEvents(0, 1, 2, 3, 4);
+		final Pump pump = new Pump();
+		Tank t = new Tank(1, OverflowPolicy.BLOCK);
+		Connector.connect(src, pump, t);
+		Thread th = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				pump.turn(5);
+			}
+		});
+		th.start();
+		for (int i = 0; i < 5; i++)
+		{
+			// The pump never runs ahead of the tank's capacity
+			assertTrue(t.size() <= 1);
+			assertEquals(i, t.pull(1, TimeUnit.SECONDS));
+		}
+		th.join();
+	}
+	
+	@Test(timeout=5000)
+	public void testPumpInterrupted() throws Exception
+	{
+		// The source never ends, and the tank is never emptied
+		QueueSource src = new QueueSource().setEvents(0, 1, 2);
+		Pump pump = new Pump();
+		Tank t = new Tank(1, OverflowPolicy.BLOCK);
+		Connector.connect(src, pump, t);
+		Thread th = new Thread(pump);
+		th.start();
+		while (t.size() < 1)
+		{
+			Thread.sleep(1);
+		}
+		// The pump stops instead of ignoring the demand of the tank
+		th.interrupt();
+		th.join();
+		assertEquals(1, t.size());
+	}
 }
@@ -0,0 +1,128 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.NotifyingPullable.ReadyListener;
+import ca.uqac.lif.cep.Pullable.NextStatus;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.tmf.Tank;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Unit tests for {@link Readiness} and {@link NotifyingPullable}
+ * @author Sylvain Hallé
+ */
+public class ReadinessTest
+{
+	@Test(timeout=5000)
+	public void testAwaitTank() throws InterruptedException
+	{
+		final Tank t = new Tank();
+		Passthrough pt = new Passthrough();
+		Connector.connect(t, pt);
+		Pullable p = pt.getPullableOutput();
+		assertEquals(NextStatus.MAYBE, p.hasNextSoft());
+		Thread th = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Thread.sleep(100);
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				t.getPushableInput().push("foo");
+			}
+		});
+		th.start();
+		assertEquals(NextStatus.YES, Readiness.await(p, 4, TimeUnit.SECONDS));
+		assertEquals("foo", p.pullSoft());
+		th.join();
+	}
+	
+	@Test(timeout=5000)
+	public void testAwaitEnd() throws InterruptedException
+	{
+		Tank t = new Tank();
+		t.getPushableInput().notifyEndOfTrace();
+		assertEquals(NextStatus.NO, Readiness.await(t.getPullableOutput(), 4, TimeUnit.SECONDS));
+	}
+	
+	@Test(timeout=5000)
+	public void testAwaitAllInputs() throws InterruptedException
+	{
+		Tank t1 = new Tank();
+		Tank t2 = new Tank();
+		ApplyFunction add = new ApplyFunction(Numbers.addition);
+		Connector.connect(t1, 0, add, 0);
+		Connector.connect(t2, 0, add, 1);
+		Pullable p = add.getPullableOutput();
+		CountingListener l = new CountingListener();
+		assertTrue(((NotifyingPullable) p).addReadyListener(l));
+		t1.getPushableInput().push(1);
+		// One input is not enough to produce an output
+		assertEquals(0, l.m_count);
+		assertEquals(NextStatus.MAYBE, Readiness.await(p, 50, TimeUnit.MILLISECONDS));
+		t2.getPushableInput().push(2);
+		assertEquals(1, l.m_count);
+		((NotifyingPullable) p).removeReadyListener(l);
+		assertEquals(NextStatus.YES, Readiness.await(p, 4, TimeUnit.SECONDS));
+		assertEquals(3f, ((Number) p.pullSoft()).floatValue(), 0.001f);
+		t1.getPushableInput().push(1);
+		t2.getPushableInput().push(1);
+		assertEquals(1, l.m_count);
+	}
+	
+	@Test(timeout=5000)
+	public void testNotNotifying() throws InterruptedException
+	{
+		QueueSource src = new QueueSource().setEvents(1);
+		Passthrough pt = new Passthrough();
+		Connector.connect(src, pt);
+		Pullable p = pt.getPullableOutput();
+		// A source cannot tell when it has something new
+		assertFalse(((NotifyingPullable) p).addReadyListener(new CountingListener()));
+		assertEquals(NextStatus.YES, Readiness.await(p, 1, TimeUnit.SECONDS));
+	}
+	
+	/**
+	 * Listener that counts the notifications it receives
+	 */
+	protected static class CountingListener implements ReadyListener
+	{
+		volatile int m_count = 0;
+		
+		@Override
+		public void ready(Pullable p)
+		{
+			m_count++;
+		}
+	}
+}
@@ -19,8 +19,18 @@ package ca.uqac.lif.cep;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import org.junit.Test;
 
+import ca.uqac.lif.cep.functions.ContextAssignment;
+import ca.uqac.lif.cep.functions.ContextVariable;
+import ca.uqac.lif.cep.functions.Constant;
+
 /**
  * Unit tests for the {@link Context} object.
  */
@@ -43,5 +53,148 @@ public class TestContext
 		Context c2 = new Context(null);
 		assertTrue(c2.isEmpty());
 	}
+	
+	@Test
+	public void testSlot()
+	{
+		int slot = Context.slotOf("slot_a");
+		assertEquals(slot, Context.slotOf("slot_a"));
+		assertEquals("slot_a", Context.keyOf(slot));
+		assertFalse(slot == Context.slotOf("slot_b"));
+		Context c = new Context();
+		assertNull(c.getValue(slot));
+		c.putValue(slot, 3);
+		assertEquals(3, c.get("slot_a"));
+		c.put("slot_a", 4);
+		assertEquals(4, c.getValue(slot));
+		c.remove("slot_a");
+		assertNull(c.getValue(slot));
+		assertFalse(c.containsKey("slot_a"));
+		c.putValue(slot, null);
+		assertTrue(c.containsKey("slot_a"));
+		assertNull(c.getValue(slot));
+		c.put("slot_a", 5);
+		c.clear();
+		assertNull(c.getValue(slot));
+	}
+	
+	@Test
+	public void testSlotCopy()
+	{
+		int slot = Context.slotOf("slot_c");
+		Context c1 = new Context();
+		c1.putValue(slot, 1);
+		Context c2 = new Context(c1);
+		Context c3 = (Context) c1.clone();
+		c1.putValue(slot, 2);
+		assertEquals(1, c2.getValue(slot));
+		assertEquals(1, c3.getValue(slot));
+		assertEquals(2, c1.getValue(slot));
+		c3.putValue(slot, 3);
+		assertEquals(2, c1.getValue(slot));
+	}
+	
+	@Test
+	public void testSlotSerialization() throws IOException, ClassNotFoundException
+	{
+		int slot = Context.slotOf("slot_d");
+		Context c1 = new Context();
+		c1.putValue(slot, "foo");
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(c1);
+		oos.close();
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+		Context c2 = (Context) ois.readObject();
+		assertEquals("foo", c2.getValue(slot));
+		c2.putValue(slot, "bar");
+		assertEquals("bar", c2.get("slot_d"));
+	}
+	
+	@Test
+	public void testSlotViews()
+	{
+		int slot = Context.slotOf("slot_g");
+		Context c = new Context();
+		c.putValue(slot, 1);
+		try
+		{
+			c.entrySet().iterator().next().setValue(2);
+			fail("The entry set should be read-only");
+		}
+		catch (UnsupportedOperationException e)
+		{
+			// Expected
+		}
+		try
+		{
+			c.keySet().remove("slot_g");
+			fail("The key set should be read-only");
+		}
+		catch (UnsupportedOperationException e)
+		{
+			// Expected
+		}
+		try
+		{
+			c.values().clear();
+			fail("The values should be read-only");
+		}
+		catch (UnsupportedOperationException e)
+		{
+			// Expected
+		}
+		assertEquals(1, c.getValue(slot));
+		assertEquals(1, c.get("slot_g"));
+		// The views are still usable for reading, and by copies
+		assertTrue(c.keySet().contains("slot_g"));
+		assertEquals(c, new Context(c));
+		assertEquals(1, ((Context) c.clone()).getValue(slot));
+	}
+	
+	@Test
+	public void testSlotReplace()
+	{
+		int slot = Context.slotOf("slot_h");
+		Context c = new Context();
+		assertNull(c.getValue(slot));
+		assertNull(c.putIfAbsent("slot_h", 1));
+		assertEquals(1, c.getValue(slot));
+		assertEquals(1, c.putIfAbsent("slot_h", 2));
+		assertEquals(1, c.getValue(slot));
+		assertEquals(1, c.replace("slot_h", 3));
+		assertEquals(3, c.getValue(slot));
+		assertFalse(c.replace("slot_h", 1, 4));
+		assertTrue(c.replace("slot_h", 3, 4));
+		assertEquals(4, c.getValue(slot));
+		assertFalse(c.remove("slot_h", 3));
+		assertTrue(c.remove("slot_h", 4));
+		assertNull(c.getValue(slot));
+		assertNull(c.replace("slot_h", 5));
+		assertNull(c.getValue(slot));
+		assertFalse(c.containsKey("slot_h"));
+	}
+	
+	@Test
+	public void testContextVariable()
+	{
+		Context c = new Context();
+		// Key written before the variable is created
+		c.put("slot_e", 1);
+		ContextVariable v = new ContextVariable("slot_e");
+		ContextVariable w = new ContextVariable("slot_f");
+		Object[] out = new Object[1];
+		v.evaluate(new Object[0], out, c);
+		assertEquals(1, out[0]);
+		w.evaluate(new Object[0], out, c);
+		assertNull(out[0]);
+		w.evaluate(new Object[0], out, null);
+		assertNull(out[0]);
+		ContextAssignment ca = new ContextAssignment("slot_f", new Constant(2));
+		ca.assign(new Object[0], out, c);
+		assertEquals(2, c.get("slot_f"));
+		w.evaluate(new Object[0], out, c);
+		assertEquals(2, out[0]);
+	}
 
 }
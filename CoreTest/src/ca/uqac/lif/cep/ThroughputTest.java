@@ -33,6 +33,11 @@ import ca.uqac.lif.cep.tmf.QueueSink;
 import ca.uqac.lif.cep.tmf.QueueSource;
 import ca.uqac.lif.cep.tmf.Window;
 
+/**
+ * Rough throughput measurements, kept for reference. These tests do no
+ * warm-up and are not reliable; use the JMH benchmarks in the
+ * <tt>Benchmarks</tt> folder instead.
+ */
 @Ignore
 public class ThroughputTest
 {
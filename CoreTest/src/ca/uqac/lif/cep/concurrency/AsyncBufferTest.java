@@ -0,0 +1,310 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.concurrency;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.tmf.CallbackSink;
+import ca.uqac.lif.cep.tmf.Fork;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Unit tests for {@link AsyncBuffer}, {@link AsyncConnector} and
+ * {@link SpscRingBuffer}
+ * @author Sylvain Hallé
+ */
+public class AsyncBufferTest
+{
+	@Test(timeout=5000)
+	public void testPush()
+	{
+		Passthrough pt = new Passthrough();
+		AsyncBuffer buffer = new AsyncBuffer(8, WaitStrategy.Yield.instance);
+		ThreadSink sink = new ThreadSink();
+		Connector.connect(pt, buffer, sink);
+		Pushable p = pt.getPushableInput();
+		for (int i = 0; i < 1000; i++)
+		{
+			p.push(i);
+		}
+		p.notifyEndOfTrace();
+		assertEquals(1000, sink.m_count);
+		// The sink was evaluated in another thread
+		assertNotNull(sink.m_thread);
+		assertFalse(Thread.currentThread() == sink.m_thread);
+		assertEquals(0, buffer.getBacklog());
+	}
+	
+	@Test(timeout=5000)
+	public void testPull()
+	{
+		QueueSource source = new QueueSource().setEvents(0, 1, 2, 3, 4);
+		source.loop(false);
+		AsyncBuffer buffer = new AsyncBuffer(2, WaitStrategy.Park.instance);
+		Connector.connect(source, buffer);
+		Pullable p = buffer.getPullableOutput();
+		for (int i = 0; i < 5; i++)
+		{
+			assertTrue(p.hasNext());
+			assertEquals(i, p.pull());
+		}
+		assertFalse(p.hasNext());
+		assertEquals(Pullable.NextStatus.NO, p.hasNextSoft());
+	}
+	
+	@Test(timeout=5000)
+	public void testConnectorChain()
+	{
+		Passthrough pt1 = new Passthrough();
+		Passthrough pt2 = new Passthrough();
+		QueueSink sink = new QueueSink();
+		AsyncConnector.connect(pt1, pt2, sink);
+		Pushable p = pt1.getPushableInput();
+		p.push("foo");
+		p.push("bar");
+		p.notifyEndOfTrace();
+		Queue<Object> q = sink.getQueue();
+		assertEquals(2, q.size());
+		assertEquals("foo", q.remove());
+		assertEquals("bar", q.remove());
+	}
+	
+	@Test(expected=UnsupportedOperationException.class)
+	public void testConnectorChainArity()
+	{
+		// Two buffers would push into the same processor from two threads
+		AsyncConnector.connect(new Fork(2), new ApplyFunction(Numbers.addition));
+	}
+	
+	@Test(timeout=5000)
+	public void testPushFast() throws Exception
+	{
+		AsyncBuffer buffer = new AsyncBuffer(2, WaitStrategy.Yield.instance);
+		ParallelForkTest.BlockingSink sink = new ParallelForkTest.BlockingSink();
+		Connector.connect(buffer, sink);
+		Pushable p = buffer.getPushableInput();
+		// The sink blocks on the first event, so the ring eventually fills up
+		// and pushFast starts returning pending futures
+		Future<Pushable> f = Pushable.NULL_FUTURE;
+		int pushed = 0;
+		while (f.isDone())
+		{
+			f = p.pushFast(pushed++);
+		}
+		assertTrue(pushed <= 4);
+		sink.m_latch.countDown();
+		assertEquals(p, f.get());
+		p.notifyEndOfTrace();
+		assertEquals(pushed, sink.m_received);
+	}
+	
+	@Test(timeout=5000)
+	public void testPushFastDrain() throws Exception
+	{
+		AsyncBuffer buffer = new AsyncBuffer(2, WaitStrategy.Yield.instance);
+		ParallelForkTest.BlockingSink sink = new ParallelForkTest.BlockingSink();
+		Connector.connect(buffer, sink);
+		Pushable p = buffer.getPushableInput();
+		Future<Pushable> f = Pushable.NULL_FUTURE;
+		int pushed = 0;
+		while (f.isDone())
+		{
+			f = p.pushFast(pushed++);
+		}
+		sink.m_latch.countDown();
+		// The buffer's thread moves the pending event into the ring by
+		// itself, without any further call from upstream
+		while (sink.m_received < pushed)
+		{
+			Thread.sleep(1);
+		}
+		assertEquals(0, buffer.m_pushable.m_gate.size());
+		p.notifyEndOfTrace();
+	}
+	
+	@Test(timeout=5000)
+	public void testPushFastBounded() throws Exception
+	{
+		final AsyncBuffer buffer = new AsyncBuffer(2, WaitStrategy.Park.instance);
+		ParallelForkTest.BlockingSink sink = new ParallelForkTest.BlockingSink();
+		Connector.connect(buffer, sink);
+		final Pushable p = buffer.getPushableInput();
+		Thread pusher = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				// The futures are ignored
+				for (int i = 0; i < 20; i++)
+				{
+					p.pushFast(i);
+				}
+			}
+		};
+		pusher.start();
+		while (buffer.m_pushable.m_gate.size() < 2)
+		{
+			Thread.sleep(1);
+		}
+		// The pusher waits once the overflow queue is as large as the ring
+		Thread.sleep(100);
+		assertTrue(pusher.isAlive());
+		assertEquals(2, buffer.m_pushable.m_gate.size());
+		sink.m_latch.countDown();
+		pusher.join();
+		p.notifyEndOfTrace();
+		assertEquals(20, sink.m_received);
+	}
+	
+	@Test(timeout=5000)
+	public void testError()
+	{
+		AsyncBuffer buffer = new AsyncBuffer(4, WaitStrategy.Yield.instance);
+		Connector.connect(buffer, new ParallelForkTest.FailingSink());
+		Pushable p = buffer.getPushableInput();
+		try
+		{
+			for (int i = 0; i < 100; i++)
+			{
+				p.push(i);
+			}
+			p.notifyEndOfTrace();
+			fail("Expected an exception");
+		}
+		catch (Pushable.PushableException e)
+		{
+			// Expected
+		}
+	}
+	
+	@Test(timeout=5000)
+	public void testErrorNotException()
+	{
+		AsyncBuffer buffer = new AsyncBuffer(2, WaitStrategy.Park.instance);
+		CallbackSink sink = new CallbackSink(1)
+		{
+			@Override
+			public void processEvents(Object[] inputs)
+			{
+				throw new StackOverflowError();
+			}
+		};
+		Connector.connect(buffer, sink);
+		Pushable p = buffer.getPushableInput();
+		try
+		{
+			// The ring fills up once the thread has died; the pusher must not
+			// wait for it forever
+			for (int i = 0; i < 10; i++)
+			{
+				p.push(i);
+			}
+			p.notifyEndOfTrace();
+			fail("Expected an exception");
+		}
+		catch (Pushable.PushableException e)
+		{
+			assertTrue(e.getCause() instanceof StackOverflowError);
+		}
+	}
+	
+	@Test(timeout=5000)
+	public void testStopWhileBlocked() throws InterruptedException
+	{
+		final AsyncBuffer buffer = new AsyncBuffer(2, WaitStrategy.Park.instance);
+		ParallelForkTest.BlockingSink sink = new ParallelForkTest.BlockingSink();
+		Connector.connect(buffer, sink);
+		Thread pusher = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				Pushable p = buffer.getPushableInput();
+				p.push(0);
+				p.notifyEndOfTrace();
+			}
+		};
+		pusher.start();
+		// The end of the trace stays in the ring, behind the blocked event
+		while (buffer.getBacklog() < 1 || pusher.getState() != Thread.State.WAITING)
+		{
+			Thread.sleep(1);
+		}
+		// The pusher waits for the end of the trace to reach the sink, which
+		// never returns; the buffer must still be usable
+		buffer.stop();
+		buffer.reset();
+		pusher.join();
+	}
+	
+	@Test
+	public void testRingBuffer()
+	{
+		SpscRingBuffer ring = new SpscRingBuffer(3);
+		assertEquals(4, ring.getCapacity());
+		assertTrue(ring.isEmpty());
+		assertNull(ring.poll());
+		for (int i = 0; i < 4; i++)
+		{
+			assertTrue(ring.offer(i));
+		}
+		assertFalse(ring.offer(4));
+		assertEquals(4, ring.size());
+		assertEquals(0, ring.poll());
+		assertTrue(ring.offer(4));
+		for (int i = 1; i < 5; i++)
+		{
+			assertEquals(i, ring.poll());
+		}
+		assertNull(ring.poll());
+	}
+	
+	/**
+	 * Sink that counts events and remembers the thread that pushed them
+	 */
+	protected static class ThreadSink extends CallbackSink
+	{
+		volatile Thread m_thread = null;
+		
+		volatile int m_count = 0;
+		
+		public ThreadSink()
+		{
+			super(1);
+		}
+		
+		@Override
+		public void processEvents(Object[] inputs)
+		{
+			m_thread = Thread.currentThread();
+			m_count++;
+		}
+	}
+}
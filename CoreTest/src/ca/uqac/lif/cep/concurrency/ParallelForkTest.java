@@ -0,0 +1,266 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.concurrency;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.Pushable.PushableException;
+import ca.uqac.lif.cep.tmf.CallbackSink;
+import ca.uqac.lif.cep.tmf.QueueSink;
+
+/**
+ * Unit tests for {@link ParallelFork} and {@link MulticastRingBuffer}
+ * @author Sylvain Hallé
+ */
+public class ParallelForkTest
+{
+	@SuppressWarnings("unchecked")
+	@Test(timeout=5000)
+	public void testAllBranches()
+	{
+		ParallelFork fork = new ParallelFork(3, 16, OverflowPolicy.BLOCK, WaitStrategy.Yield.instance);
+		Queue<Object>[] queues = new Queue[3];
+		for (int i = 0; i < 3; i++)
+		{
+			QueueSink sink = new QueueSink();
+			Connector.connect(fork, i, sink, 0);
+			queues[i] = sink.getQueue();
+		}
+		Pushable p = fork.getPushableInput();
+		for (int i = 0; i < 1000; i++)
+		{
+			p.push(i);
+		}
+		p.notifyEndOfTrace();
+		for (int i = 0; i < 3; i++)
+		{
+			assertEquals(1000, queues[i].size());
+			for (int j = 0; j < 1000; j++)
+			{
+				assertEquals(j, queues[i].remove());
+			}
+			assertEquals(0, fork.getDropCount(i));
+		}
+	}
+	
+	@Test(timeout=5000)
+	public void testDropOldest() throws InterruptedException
+	{
+		ParallelFork fork = new ParallelFork(2, 4, OverflowPolicy.DROP_OLDEST, WaitStrategy.Park.instance);
+		QueueSink fast = new QueueSink();
+		Connector.connect(fork, 0, fast, 0);
+		BlockingSink slow = new BlockingSink();
+		Connector.connect(fork, 1, slow, 0);
+		Pushable p = fork.getPushableInput();
+		for (int i = 0; i < 100; i++)
+		{
+			// The slow branch is stuck, yet the pusher is never blocked
+			p.push(i);
+		}
+		slow.m_latch.countDown();
+		p.notifyEndOfTrace();
+		// Any branch may lose events, but every event is either received or dropped
+		assertEquals(100, fast.getQueue().size() + fork.getDropCount(0));
+		assertTrue(fork.getDropCount(1) > 0);
+		assertEquals(100, slow.m_received + fork.getDropCount(1));
+	}
+	
+	@Test(timeout=5000)
+	public void testError()
+	{
+		ParallelFork fork = new ParallelFork(1);
+		Connector.connect(fork, 0, new FailingSink(), 0);
+		Pushable p = fork.getPushableInput();
+		p.push(0);
+		try
+		{
+			p.notifyEndOfTrace();
+			fail("Expected an exception");
+		}
+		catch (Pushable.PushableException e)
+		{
+			// Expected
+		}
+	}
+	
+	@Test(timeout=5000)
+	public void testErrorNotException()
+	{
+		ParallelFork fork = new ParallelFork(1);
+		CallbackSink sink = new CallbackSink(1)
+		{
+			@Override
+			public void processEvents(Object[] inputs)
+			{
+				throw new StackOverflowError();
+			}
+		};
+		Connector.connect(fork, 0, sink, 0);
+		Pushable p = fork.getPushableInput();
+		p.push(0);
+		try
+		{
+			p.notifyEndOfTrace();
+			fail("Expected an exception");
+		}
+		catch (Pushable.PushableException e)
+		{
+			assertTrue(e.getCause() instanceof StackOverflowError);
+		}
+	}
+	
+	@Test(timeout=5000)
+	public void testStopWhileBlocked() throws InterruptedException
+	{
+		final ParallelFork fork = new ParallelFork(1, 2, OverflowPolicy.BLOCK, WaitStrategy.Park.instance);
+		BlockingSink sink = new BlockingSink();
+		Connector.connect(fork, 0, sink, 0);
+		Thread pusher = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				Pushable p = fork.getPushableInput();
+				for (int i = 0; i < 10; i++)
+				{
+					p.push(i);
+				}
+			}
+		};
+		pusher.start();
+		while (fork.getBacklog(0) < 2)
+		{
+			Thread.sleep(1);
+		}
+		// The pusher is blocked; the processor must still be usable
+		assertEquals(0, fork.getDropCount(0));
+		fork.stop();
+		pusher.join();
+	}
+	
+	@Test(timeout=5000)
+	public void testReset()
+	{
+		ParallelFork fork = new ParallelFork(1, 8, OverflowPolicy.BLOCK, WaitStrategy.BusySpin.instance);
+		QueueSink sink = new QueueSink();
+		Connector.connect(fork, sink);
+		Pushable p = fork.getPushableInput();
+		p.push(0);
+		p.notifyEndOfTrace();
+		fork.reset();
+		sink.reset();
+		p.push(1);
+		p.push(2);
+		p.notifyEndOfTrace();
+		Queue<Object> q = sink.getQueue();
+		assertEquals(2, q.size());
+		assertEquals(1, q.remove());
+		ParallelFork fork2 = fork.duplicate(false);
+		assertEquals(1, fork2.getOutputArity());
+	}
+	
+	@Test(timeout=5000)
+	public void testPushAfterEndOfTrace()
+	{
+		ParallelFork fork = new ParallelFork(1, 8, OverflowPolicy.BLOCK, WaitStrategy.BusySpin.instance);
+		QueueSink sink = new QueueSink();
+		Connector.connect(fork, sink);
+		Pushable p = fork.getPushableInput();
+		p.push(0);
+		p.notifyEndOfTrace();
+		try
+		{
+			p.push(1);
+			fail("Expected a PushableException");
+		}
+		catch (PushableException e)
+		{
+			// Expected
+		}
+		try
+		{
+			p.pushFast(2);
+			fail("Expected a PushableException");
+		}
+		catch (PushableException e)
+		{
+			// Expected
+		}
+		assertEquals(1, sink.getQueue().size());
+	}
+	
+	@Test(timeout=5000)
+	public void testRingBufferCapacity()
+	{
+		MulticastRingBuffer buffer = new MulticastRingBuffer(1, 5, OverflowPolicy.BLOCK, WaitStrategy.BusySpin.instance);
+		assertEquals(8, buffer.getCapacity());
+	}
+	
+	/**
+	 * Sink that waits on a latch before accepting its first event
+	 */
+	protected static class BlockingSink extends CallbackSink
+	{
+		CountDownLatch m_latch = new CountDownLatch(1);
+		
+		volatile int m_received = 0;
+		
+		public BlockingSink()
+		{
+			super(1);
+		}
+		
+		@Override
+		public void processEvents(Object[] inputs)
+		{
+			try
+			{
+				m_latch.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			m_received++;
+		}
+	}
+	
+	/**
+	 * Sink that throws an exception on every event
+	 */
+	protected static class FailingSink extends CallbackSink
+	{
+		public FailingSink()
+		{
+			super(1);
+		}
+		
+		@Override
+		public void processEvents(Object[] inputs)
+		{
+			throw new IllegalStateException("Failing on purpose");
+		}
+	}
+}
@@ -19,12 +19,17 @@ package ca.uqac.lif.cep.io;
 
 import static org.junit.Assert.*;
 
+import java.util.Queue;
+
 import org.junit.Assume;
 import org.junit.Test;
 
 import ca.uqac.lif.cep.Connector;
 import ca.uqac.lif.cep.Pullable;
 import ca.uqac.lif.cep.Pullable.PullableException;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.Pushable.PushableException;
+import ca.uqac.lif.cep.tmf.QueueSink;
 import ca.uqac.lif.cep.tmf.QueueSource;
 
 /**
@@ -81,4 +86,111 @@ public class CallerTest
 		String s = new String(bytes);
 		assertEquals("foo", s.trim());
 	}
+	
+	@Test(timeout=10000)
+	public void testPool()
+	{
+		Assume.assumeFalse(s_osName.contains("Windows"));
+		// cat echoes each request frame, which is a valid response frame
+		Call caller = new Call("cat").setPoolSize(1);
+		Pushable p = caller.getPushableInput();
+		QueueSink sink = new QueueSink();
+		Connector.connect(caller, sink);
+		for (int i = 0; i < 100; i++)
+		{
+			p.push(("event" + i).getBytes());
+		}
+		Queue<Object> q = sink.getQueue();
+		assertEquals(100, q.size());
+		for (int i = 0; i < 100; i++)
+		{
+			assertEquals("event" + i, new String((byte[]) q.remove()));
+		}
+		// A single process handled all the events
+		assertEquals(1, caller.m_pool.m_processes.size());
+		caller.stop();
+		assertEquals(0, caller.m_pool.m_processes.size());
+	}
+	
+	@Test(timeout=20000)
+	public void testPoolConcurrent() throws InterruptedException
+	{
+		Assume.assumeFalse(s_osName.contains("Windows"));
+		final Call caller = new Call("cat").setPoolSize(2);
+		final boolean[] ok = new boolean[4];
+		Thread[] threads = new Thread[ok.length];
+		for (int t = 0; t < threads.length; t++)
+		{
+			final int id = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run()
+				{
+					Call c = caller.duplicate(false);
+					QueueSink sink = new QueueSink();
+					Connector.connect(c, sink);
+					for (int i = 0; i < 200; i++)
+					{
+						c.getPushableInput().push((id + ":" + i).getBytes());
+					}
+					Queue<Object> q = sink.getQueue();
+					for (int i = 0; i < 200; i++)
+					{
+						if (!(id + ":" + i).equals(new String((byte[]) q.remove())))
+						{
+							return;
+						}
+					}
+					if (c.m_pool.m_processes.size() > 2)
+					{
+						return;
+					}
+					c.getPushableInput().notifyEndOfTrace();
+					ok[id] = true;
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+		{
+			t.join();
+		}
+		for (boolean b : ok)
+		{
+			assertTrue(b);
+		}
+		// The processes end with the trace of the last copy
+		assertEquals(0, caller.m_pool.m_processes.size());
+	}
+	
+	@Test(timeout=10000)
+	public void testPoolShared()
+	{
+		Assume.assumeFalse(s_osName.contains("Windows"));
+		Call c1 = new Call("cat").setPoolSize(2);
+		Call c2 = c1.duplicate(false);
+		Connector.connect(c1, new QueueSink());
+		QueueSink sink = new QueueSink();
+		Connector.connect(c2, sink);
+		c1.getPushableInput().push("foo".getBytes());
+		c2.getPushableInput().push("bar".getBytes());
+		// Stopping a copy leaves the processes of the other one alive
+		c1.stop();
+		c1.stop();
+		assertFalse(c1.m_pool.m_processes.isEmpty());
+		c2.getPushableInput().push("baz".getBytes());
+		Queue<Object> q = sink.getQueue();
+		assertEquals("bar", new String((byte[]) q.remove()));
+		assertEquals("baz", new String((byte[]) q.remove()));
+		c2.getPushableInput().notifyEndOfTrace();
+		assertTrue(c1.m_pool.m_processes.isEmpty());
+	}
+	
+	@Test(expected=PushableException.class)
+	public void testPoolCommandNotExists()
+	{
+		Call caller = new Call("foo").setPoolSize(2);
+		Connector.connect(caller, new QueueSink());
+		caller.getPushableInput().push(new byte[0]);
+	}
 }
@@ -21,19 +21,46 @@ import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 
 import org.junit.Assume;
 import org.junit.Test;
 
+import ca.uqac.lif.cep.AbstractEventTracker.EventFunction;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.ProvenanceTest;
 import ca.uqac.lif.cep.Pullable;
 import ca.uqac.lif.cep.Pullable.PullableException;
 import ca.uqac.lif.cep.Pushable;
 import ca.uqac.lif.cep.Pushable.PushableException;
+import ca.uqac.lif.cep.concurrency.WaitStrategy;
 import ca.uqac.lif.cep.util.FileHelper;
+import ca.uqac.lif.cep.util.Multiset;
+import ca.uqac.lif.petitpoucet.BrokenChain;
+import ca.uqac.lif.petitpoucet.ProvenanceNode;
 
 /**
  * Unit tests for input-output processors
@@ -96,7 +123,9 @@ public class IoTest
 		assertTrue(p.hasNext());
 		s = (String) p.next();
 		assertEquals("text.", s);
-		assertEquals(Pullable.NextStatus.MAYBE, p.hasNextSoft());
+		// A read blocks until data arrives, so the end of the stream is final
+		assertEquals(Pullable.NextStatus.NO, p.hasNextSoft());
+		assertFalse(p.hasNext());
 	}
 	
 	@Test
@@ -120,6 +149,43 @@ public class IoTest
 		assertFalse(p.hasNext());
 	}
 	
+	@Test(timeout=5000)
+	public void testStreamReaderPipe() throws IOException
+	{
+		Pipe pipe = Pipe.open();
+		ReadStringStream bsr = new ReadStringStream(pipe.source());
+		bsr.setReadTimeout(10).outputCharSequence(true);
+		Pullable p = bsr.getPullableOutput();
+		// Nothing written yet: the reader gives up after the timeout
+		assertEquals(Pullable.NextStatus.MAYBE, p.hasNextSoft());
+		pipe.sink().write(ByteBuffer.wrap("foo".getBytes()));
+		Object o = p.pull();
+		assertTrue(o instanceof CharSequence);
+		assertEquals("foo", o.toString());
+		pipe.sink().close();
+		assertFalse(p.hasNext());
+		// The selector is released along with the channel
+		assertNull(bsr.m_selector);
+	}
+	
+	@Test
+	public void testStreamReaderMultibyte() throws IOException
+	{
+		// A two-byte character split across two chunks
+		byte[] bytes = "ab\u00e9cd".getBytes("UTF-8");
+		ReadStringStream bsr = new ReadStringStream(new ByteArrayInputStream(bytes));
+		bsr.setCharset(Charset.forName("UTF-8"));
+		bsr.setChunkSize(3);
+		bsr.setIsFile(true);
+		Pullable p = bsr.getPullableOutput();
+		StringBuilder out = new StringBuilder();
+		while (p.hasNext())
+		{
+			out.append(p.pull());
+		}
+		assertEquals("ab\u00e9cd", out.toString());
+	}
+	
 	@Test
 	public void testUrlFeeder1() 
 	{
@@ -141,6 +207,342 @@ public class IoTest
 		p.pullSoft();
 	}
 	
+	@Test(timeout=10000)
+	public void testHttpGetLocal() throws IOException
+	{
+		LocalServer server = new LocalServer();
+		try
+		{
+			HttpGet hg = new HttpGet(server.getUrl()).setConditional(true);
+			Pullable p = hg.getPullableOutput();
+			assertEquals("hello \u00e9", p.pullSoft());
+			// Unchanged: the server answers 304 and no event is produced
+			assertNull(p.pullSoft());
+			server.m_body = "world";
+			server.m_etag = "\"v2\"";
+			assertEquals("world", p.pullSoft());
+			assertEquals(3, server.m_requests);
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+	
+	@Test(timeout=10000)
+	public void testHttpGetKeepAlive() throws IOException
+	{
+		LocalServer server = new LocalServer();
+		try
+		{
+			Pullable p = new HttpGet(server.getUrl()).getPullableOutput();
+			for (int i = 0; i < 5; i++)
+			{
+				assertEquals("hello \u00e9", p.pullSoft());
+			}
+			// All requests went through the same connection
+			assertEquals(5, server.m_requests);
+			assertEquals(1, server.m_clients.size());
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+	
+	@Test(timeout=10000)
+	public void testHttpGetAsync() throws IOException, InterruptedException
+	{
+		LocalServer server = new LocalServer();
+		try
+		{
+			HttpGet hg = new HttpGet(server.getUrl()).setAsync(true);
+			Pullable p = hg.getPullableOutput();
+			Object o = null;
+			while (o == null)
+			{
+				o = p.pullSoft();
+				Thread.sleep(1);
+			}
+			assertEquals("hello \u00e9", o);
+			server.m_status = 500;
+			try
+			{
+				while (p.pullSoft() == null)
+				{
+					Thread.sleep(1);
+				}
+				fail("Expected an exception");
+			}
+			catch (PullableException e)
+			{
+				// Expected
+			}
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+	
+	/**
+	 * A minimal HTTP server serving a single resource, used to test
+	 * {@link HttpGet} without a network connection
+	 */
+	protected static class LocalServer implements HttpHandler
+	{
+		protected final HttpServer m_server;
+		
+		protected volatile String m_body = "hello \u00e9";
+		
+		protected volatile String m_etag = "\"v1\"";
+		
+		protected volatile int m_status = 200;
+		
+		protected volatile int m_requests = 0;
+		
+		protected final Set<Object> m_clients = Collections.synchronizedSet(new HashSet<Object>());
+		
+		public LocalServer() throws IOException
+		{
+			m_server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+			m_server.createContext("/", this);
+			m_server.start();
+		}
+		
+		public String getUrl()
+		{
+			return "http://127.0.0.1:" + m_server.getAddress().getPort() + "/resource";
+		}
+		
+		public void stop()
+		{
+			m_server.stop(0);
+		}
+		
+		@Override
+		public void handle(HttpExchange ex) throws IOException
+		{
+			m_requests++;
+			m_clients.add(ex.getRemoteAddress());
+			ex.getResponseHeaders().add("ETag", m_etag);
+			if (m_status != 200)
+			{
+				ex.sendResponseHeaders(m_status, -1);
+			}
+			else if (m_etag.equals(ex.getRequestHeaders().getFirst("If-None-Match")))
+			{
+				ex.sendResponseHeaders(304, -1);
+			}
+			else
+			{
+				byte[] b = m_body.getBytes("UTF-8");
+				ex.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+				ex.sendResponseHeaders(200, b.length);
+				ex.getResponseBody().write(b);
+			}
+			ex.close();
+		}
+	}
+	
+	@Test(timeout=20000)
+	public void testSocket() throws InterruptedException
+	{
+		final ReadSocket rs = new ReadSocket(new InetSocketAddress("127.0.0.1", 0)).setWindow(16);
+		final WriteSocket ws = new WriteSocket("127.0.0.1", rs.getPort()).setBatchSize(5);
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run()
+			{
+				Pushable p = ws.getPushableInput();
+				for (int i = 0; i < 10000; i++)
+				{
+					p.push(Arrays.asList("event", i));
+				}
+				p.notifyEndOfTrace();
+			}
+		});
+		t.start();
+		Pullable p = rs.getPullableOutput();
+		for (int i = 0; i < 10000; i++)
+		{
+			assertTrue(p.hasNext());
+			assertEquals(Arrays.asList("event", i), p.pull());
+		}
+		assertFalse(p.hasNext());
+		t.join();
+		rs.close();
+	}
+	
+	@Test(timeout=20000)
+	public void testSocketClosedWithoutEnd() throws InterruptedException
+	{
+		ReadSocket rs = new ReadSocket(new InetSocketAddress("127.0.0.1", 0));
+		final WriteSocket ws = new WriteSocket("127.0.0.1", rs.getPort());
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run()
+			{
+				Pushable ps = ws.getPushableInput();
+				ps.push(0);
+				ps.push(1);
+				ws.flush();
+				// The writer goes away without signalling the end of the trace
+				ws.close();
+			}
+		});
+		t.start();
+		Pullable p = rs.getPullableOutput();
+		assertEquals(0, p.pull());
+		assertEquals(1, p.pull());
+		try
+		{
+			p.hasNext();
+			fail("Expected an exception");
+		}
+		catch (PullableException e)
+		{
+			assertTrue(e.getCause() instanceof ProcessorException);
+		}
+		t.join();
+		rs.close();
+	}
+	
+	@Test(timeout=20000)
+	public void testSocketCredit() throws InterruptedException
+	{
+		final ReadSocket rs = new ReadSocket(new InetSocketAddress("127.0.0.1", 0)).setWindow(8);
+		final WriteSocket ws = new WriteSocket("127.0.0.1", rs.getPort()).setBatchSize(1);
+		final int[] sent = new int[1];
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run()
+			{
+				Pushable p = ws.getPushableInput();
+				for (int i = 0; i < 100; i++)
+				{
+					p.push(i);
+					sent[0]++;
+				}
+				p.notifyEndOfTrace();
+			}
+		});
+		t.start();
+		Pullable p = rs.getPullableOutput();
+		assertEquals(0, p.pull());
+		Thread.sleep(200);
+		// The writer is held back by the reader
+		assertTrue(sent[0] <= 8);
+		for (int i = 1; i < 100; i++)
+		{
+			assertEquals(i, p.pull());
+		}
+		assertFalse(p.hasNext());
+		t.join();
+		rs.close();
+	}
+	
+	@Test(timeout=20000)
+	public void testSharedMemory() throws IOException, InterruptedException
+	{
+		final File f = File.createTempFile("beepbeep", ".ring");
+		f.delete();
+		// A small ring, so that the writer wraps around and waits for the reader
+		final WriteSharedMemory wsm = new WriteSharedMemory(f, 256, BinaryCodec.instance);
+		ReadSharedMemory rsm = new ReadSharedMemory(f).setWaitStrategy(WaitStrategy.Yield.instance);
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run()
+			{
+				Pushable p = wsm.getPushableInput();
+				for (int i = 0; i < 20000; i++)
+				{
+					p.push(i % 7 == 0 ? "event" + i : i);
+				}
+				p.notifyEndOfTrace();
+			}
+		});
+		t.start();
+		Pullable p = rsm.getPullableOutput();
+		for (int i = 0; i < 20000; i++)
+		{
+			assertTrue(p.hasNext());
+			assertEquals(i % 7 == 0 ? "event" + i : i, p.pull());
+		}
+		assertFalse(p.hasNext());
+		t.join();
+		assertFalse(f.exists());
+	}
+	
+	@Test(timeout=20000, expected=PullableException.class)
+	public void testSharedMemoryWriterDeath() throws IOException
+	{
+		File f = File.createTempFile("beepbeep", ".ring");
+		f.deleteOnExit();
+		WriteSharedMemory wsm = new WriteSharedMemory(f);
+		Pushable p = wsm.getPushableInput();
+		p.push("foo");
+		// The writer goes away without sending the end of the trace
+		wsm.close();
+		Pullable pl = new ReadSharedMemory(f).getPullableOutput();
+		assertEquals("foo", pl.pull());
+		pl.pull();
+	}
+	
+	@Test(timeout=20000)
+	public void testSharedMemorySecondWriter() throws IOException
+	{
+		File f = File.createTempFile("beepbeep", ".ring");
+		f.deleteOnExit();
+		WriteSharedMemory wsm1 = new WriteSharedMemory(f);
+		wsm1.getPushableInput().push("foo");
+		WriteSharedMemory wsm2 = new WriteSharedMemory(f, 256, BinaryCodec.instance);
+		try
+		{
+			wsm2.getPushableInput().push("bar");
+			fail("Expected an exception");
+		}
+		catch (Pushable.PushableException e)
+		{
+			assertTrue(e.getCause() instanceof ProcessorException);
+		}
+		// The ring of the first writer is left untouched
+		wsm1.getPushableInput().push("baz");
+		Pullable pl = new ReadSharedMemory(f).getPullableOutput();
+		assertEquals("foo", pl.pull());
+		assertEquals("baz", pl.pull());
+		wsm1.close();
+	}
+	
+	@Test(timeout=20000)
+	public void testSharedMemoryReplaced() throws IOException
+	{
+		File f = File.createTempFile("beepbeep", ".ring");
+		f.deleteOnExit();
+		WriteSharedMemory wsm1 = new WriteSharedMemory(f);
+		wsm1.getPushableInput().push("foo");
+		Pullable pl1 = new ReadSharedMemory(f).getPullableOutput();
+		assertEquals("foo", pl1.pull());
+		// The first writer dies without ending its trace, and a second one
+		// takes its place while the reader is still attached
+		wsm1.close();
+		WriteSharedMemory wsm2 = new WriteSharedMemory(f);
+		wsm2.getPushableInput().push("bar");
+		try
+		{
+			pl1.pull();
+			fail("Expected an exception");
+		}
+		catch (Pullable.PullableException e)
+		{
+			assertTrue(e.getCause() instanceof ProcessorException);
+		}
+		Pullable pl2 = new ReadSharedMemory(f).getPullableOutput();
+		assertEquals("bar", pl2.pull());
+		wsm2.getPushableInput().notifyEndOfTrace();
+		assertFalse(pl2.hasNext());
+	}
+	
 	@Test
 	public void testPrint()
 	{
@@ -178,6 +580,44 @@ public class IoTest
 		assertEquals("3.5 3 ", s);
 	}
 	
+	@Test(timeout=5000)
+	public void testPrintBuffered()
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		Print print = new Print(new PrintStream(baos)).setBuffered(true).setBufferSize(16);
+		print.setSeparator(" ");
+		Pushable p = print.getPushableInput();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+		{
+			p.push(i);
+			p.push(0.5f);
+			expected.append(i).append(" 0.5 ");
+		}
+		print.flush();
+		assertEquals(expected.toString(), new String(baos.toByteArray()));
+		p.push("foo");
+		p.notifyEndOfTrace();
+		expected.append("foo ");
+		assertEquals(expected.toString(), new String(baos.toByteArray()));
+	}
+	
+	@Test(timeout=5000)
+	public void testPrintBufferedInterval() throws InterruptedException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		Print print = new Print(new PrintStream(baos)).setBuffered(true).setFlushInterval(10);
+		Pushable p = print.getPushableInput();
+		p.push("foo");
+		// The buffer is far from full, but is written after some time
+		while (baos.size() == 0)
+		{
+			Thread.sleep(5);
+		}
+		assertEquals("foo,", new String(baos.toByteArray()));
+		print.close();
+	}
+	
 	@Test
 	public void testPrintException1() throws IOException
 	{
@@ -215,6 +655,385 @@ public class IoTest
 		assertFalse(p.hasNext());
 	}
 	
+	@Test
+	public void testLineReaderSmallBuffer() throws IOException
+	{
+		// Lines longer than the buffer, CRLF terminators and a last line
+		// without terminator
+		String long_line = "0123456789abcdefghijklmnopqrstuvwxyz";
+		byte[] bytes = ("foo\r\n" + long_line + "\n\nbar\u00e9").getBytes("UTF-8");
+		ReadLines lr = new ReadLines(new ByteArrayInputStream(bytes));
+		lr.setCharset(Charset.forName("UTF-8")).setChunkSize(4);
+		Pullable p = lr.getPullableOutput();
+		assertEquals("foo", p.pull());
+		assertEquals(long_line, p.pull());
+		assertEquals("", p.pull());
+		assertEquals("bar\u00e9", p.pull());
+		assertFalse(p.hasNext());
+	}
+	
+	@Test
+	public void testLineReaderMapped() throws IOException
+	{
+		File f = File.createTempFile("readlines", ".txt");
+		f.deleteOnExit();
+		FileOutputStream fos = new FileOutputStream(f);
+		for (int i = 0; i < 1000; i++)
+		{
+			fos.write(("line " + i + "\n").getBytes("UTF-8"));
+		}
+		fos.close();
+		FileInputStream fis = new FileInputStream(f);
+		// Use tiny windows to force remapping in the middle of lines
+		ReadLines lr = new ReadLines(fis.getChannel(), true);
+		lr.setChunkSize(7);
+		Pullable p = lr.getPullableOutput();
+		for (int i = 0; i < 1000; i++)
+		{
+			assertTrue(p.hasNext());
+			assertEquals("line " + i, p.pull());
+		}
+		assertFalse(p.hasNext());
+		fis.close();
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testLineReaderCharset()
+	{
+		new LineReader(Channels.newChannel(new ByteArrayInputStream(new byte[0])), 
+				Charset.forName("UTF-16"), 16);
+	}
+	
+	@Test
+	public void testEventLogSegments() throws IOException
+	{
+		File dir = createTempDirectory();
+		WriteEventLog wel = new WriteEventLog(dir).setSegmentSize(512);
+		Pushable p = wel.getPushableInput();
+		for (int i = 0; i < 100; i++)
+		{
+			p.push(i);
+		}
+		p.notifyEndOfTrace();
+		assertEquals(100, wel.getNextOffset());
+		assertTrue(EventLog.listSegments(dir).length > 1);
+		ReadEventLog rel = new ReadEventLog(dir);
+		Pullable pl = rel.getPullableOutput();
+		for (int i = 0; i < 100; i++)
+		{
+			assertTrue(pl.hasNext());
+			assertEquals(i, pl.pull());
+		}
+		assertFalse(pl.hasNext());
+		rel.seek(57);
+		pl = rel.getPullableOutput();
+		assertEquals(57, pl.pull());
+		assertEquals(58, rel.getOffset());
+		rel.reset();
+		assertEquals(57, pl.pull());
+		deleteDirectory(dir);
+	}
+	
+	@Test
+	public void testDiskEventTracker() throws IOException
+	{
+		File dir = createTempDirectory();
+		DiskEventTracker tracker = new DiskEventTracker(dir);
+		Processor[] chain = ProvenanceTest.compactChain(tracker, 100);
+		int sum = chain[2].getId();
+		checkDiskTree(tracker, chain);
+		long count = tracker.getAssociationCount();
+		tracker.close();
+		// The associations and connections are read back from the files
+		tracker = new DiskEventTracker(dir);
+		assertEquals(count, tracker.getAssociationCount());
+		checkDiskTree(tracker, chain);
+		assertTrue(tracker.getProvenanceTree(sum, 0, 100) instanceof BrokenChain);
+		assertTrue(tracker.getProvenanceTree(sum + 1000, 0, 0) instanceof BrokenChain);
+		// A long chain does not overflow the stack
+		assertNotNull(tracker.getProvenanceTree(sum, 0, 99));
+		tracker.close();
+		deleteDirectory(dir);
+	}
+	
+	@Test
+	public void testDiskEventTrackerAppend() throws IOException
+	{
+		File dir = createTempDirectory();
+		DiskEventTracker tracker = new DiskEventTracker(dir).setCacheSize(16);
+		Processor[] chain = ProvenanceTest.compactChain(tracker, 20000);
+		int abs = chain[1].getId();
+		// Queries are answered while associations are still being added
+		ProvenanceNode root = tracker.getProvenanceTree(abs, 0, 12345);
+		assertEquals(new EventFunction(chain[0].getId(), 0, 12345),
+				root.getParents().get(0).getNodeFunction());
+		assertTrue(tracker.getProvenanceTree(abs, 0, 20000) instanceof BrokenChain);
+		chain[2].getPullableOutput().pull();
+		root = tracker.getProvenanceTree(abs, 0, 20000);
+		assertEquals(new EventFunction(chain[0].getId(), 0, 20000),
+				root.getParents().get(0).getNodeFunction());
+		// An output event associated after being queried is not stale
+		tracker.associateToInput(abs, 0, 7, 0, 20000);
+		root = tracker.getProvenanceTree(abs, 0, 20000);
+		assertEquals(2, root.getParents().size());
+		tracker.close();
+		deleteDirectory(dir);
+	}
+	
+	@Test
+	public void testDiskEventTrackerOpenIndexes() throws IOException
+	{
+		File dir = createTempDirectory();
+		// Each query and each new association reopens a closed index
+		DiskEventTracker tracker = new DiskEventTracker(dir).setMaxOpenIndexes(1).setCacheSize(0);
+		Processor[] chain = ProvenanceTest.compactChain(tracker, 100);
+		checkDiskTree(tracker, chain);
+		tracker.sync();
+		checkDiskTree(tracker, chain);
+		tracker.close();
+		tracker = new DiskEventTracker(dir).setMaxOpenIndexes(2);
+		checkDiskTree(tracker, chain);
+		tracker.close();
+		deleteDirectory(dir);
+	}
+	
+	/**
+	 * Checks the provenance tree of an event of the chain created by
+	 * {@link ProvenanceTest#compactChain(ca.uqac.lif.cep.EventTracker, int)}
+	 * @param tracker The tracker
+	 * @param chain The processors of the chain
+	 */
+	protected static void checkDiskTree(DiskEventTracker tracker, Processor[] chain)
+	{
+		ProvenanceNode root = tracker.getProvenanceTree(chain[2].getId(), 0, 5);
+		assertEquals(2, root.getParents().size());
+		assertEquals(new EventFunction(chain[1].getId(), 0, 5), root.getParents().get(0).getNodeFunction());
+		assertEquals(new EventFunction(chain[2].getId(), 0, 4), root.getParents().get(1).getNodeFunction());
+		ProvenanceNode source_node = root.getParents().get(0).getParents().get(0);
+		assertEquals(new EventFunction(chain[0].getId(), 0, 5), source_node.getNodeFunction());
+		assertEquals("BP" + chain[0].getId() + ".Q.1",
+				source_node.getParents().get(0).getNodeFunction().getDataPointId());
+	}
+	
+	@Test
+	public void testEventLogRecovery() throws IOException
+	{
+		File dir = createTempDirectory();
+		WriteEventLog wel = new WriteEventLog(dir);
+		Pushable p = wel.getPushableInput();
+		p.push("foo");
+		p.push("bar");
+		p.notifyEndOfTrace();
+		// Simulate a record torn by a crash
+		long[] segments = EventLog.listSegments(dir);
+		FileOutputStream fos = new FileOutputStream(EventLog.segmentFile(dir, segments[0]), true);
+		fos.write(new byte[] {0, 0, 0, 20, 1, 2, 3});
+		fos.close();
+		wel = new WriteEventLog(dir);
+		p = wel.getPushableInput();
+		p.push("baz");
+		p.notifyEndOfTrace();
+		assertEquals(3, wel.getNextOffset());
+		Pullable pl = new ReadEventLog(dir).getPullableOutput();
+		assertEquals("foo", pl.pull());
+		assertEquals("bar", pl.pull());
+		assertEquals("baz", pl.pull());
+		assertFalse(pl.hasNext());
+		deleteDirectory(dir);
+	}
+	
+	@Test(timeout=10000)
+	public void testEventLogTail() throws IOException
+	{
+		File dir = createTempDirectory();
+		WriteEventLog wel = new WriteEventLog(dir).setSegmentSize(256).setSync(false);
+		Pushable p = wel.getPushableInput();
+		p.push(0);
+		wel.commit();
+		ReadEventLog rel = new ReadEventLog(dir).tail(true).setPollInterval(1);
+		Pullable pl = rel.getPullableOutput();
+		assertEquals(0, pl.pull());
+		assertEquals(Pullable.NextStatus.MAYBE, pl.hasNextSoft());
+		for (int i = 1; i < 50; i++)
+		{
+			p.push(i);
+			wel.commit();
+			Object o = null;
+			while (o == null)
+			{
+				o = pl.pullSoft();
+			}
+			assertEquals(i, o);
+		}
+		wel.close();
+		deleteDirectory(dir);
+	}
+	
+	@Test
+	public void testBinaryCodec() throws IOException
+	{
+		Multiset ms = new Multiset();
+		ms.addElement("a", 3);
+		ms.addElement(4);
+		Map<Object,Object> map = new HashMap<Object,Object>();
+		map.put("k", Arrays.asList(1, -2L, 3.5f, -4.25d));
+		map.put(7, new HashSet<Object>(Arrays.asList("x", "\u00e9\u20ac")));
+		Object[] values = new Object[] {null, true, false, 0, -1, Integer.MAX_VALUE, 
+				Integer.MIN_VALUE, Long.MIN_VALUE, (short) -300, (byte) 12, Double.NaN,
+				"", "hello", "h\u00e9llo \ud83d\ude00", map, Arrays.asList("a", "a", null)};
+		for (Object o : values)
+		{
+			byte[] b = BinaryCodec.instance.encode(o);
+			assertEquals(o, BinaryCodec.instance.decode(ByteBuffer.wrap(b)));
+		}
+		Multiset ms2 = (Multiset) BinaryCodec.instance.decode(ByteBuffer.wrap(
+				BinaryCodec.instance.encode(ms)));
+		assertEquals(2, ms2.keySet().size());
+		assertEquals(3, ms2.get("a"));
+		assertEquals(1, ms2.get(4));
+		Object[] front = (Object[]) BinaryCodec.instance.decode(ByteBuffer.wrap(
+				BinaryCodec.instance.encode(new Object[] {1, "a", new byte[] {5, 6}})));
+		assertEquals(3, front.length);
+		assertEquals(1, front[0]);
+		assertEquals("a", front[1]);
+		assertArrayEquals(new byte[] {5, 6}, (byte[]) front[2]);
+		assertEquals(2, BinaryCodec.instance.encode(-64).length);
+	}
+	
+	@Test(expected=IOException.class)
+	public void testBinaryCodecUnsupported() throws IOException
+	{
+		BinaryCodec.instance.encode(new Object());
+	}
+	
+	@Test
+	public void testBinaryCodecRollback() throws IOException
+	{
+		BinaryCodec.Encoder enc = new BinaryCodec.Encoder();
+		try
+		{
+			enc.write(Arrays.asList("hello", new Object()));
+			fail("Expected an exception");
+		}
+		catch (IOException e)
+		{
+			// Expected
+		}
+		assertEquals(0, enc.size());
+		// "hello" must be defined again, and not referred to
+		enc.write("hello");
+		enc.write("hello");
+		BinaryCodec.Decoder dec = new BinaryCodec.BufferDecoder(ByteBuffer.wrap(enc.toByteArray()));
+		assertEquals("hello", dec.read());
+		assertEquals("hello", dec.read());
+	}
+	
+	@Test
+	public void testBinaryCodecCorruptLength() throws IOException
+	{
+		// Tags for an array and a byte array, followed by a length of 2^31-1
+		byte[][] inputs = new byte[][] {{13, -1, -1, -1, -1, 7, 0}, {12, -1, -1, -1, -1, 7, 0}};
+		for (byte[] in : inputs)
+		{
+			try
+			{
+				new BinaryCodec.BufferDecoder(ByteBuffer.wrap(in)).read();
+				fail("Expected an exception");
+			}
+			catch (IOException e)
+			{
+				// Expected
+			}
+			try
+			{
+				new BinaryCodec.StreamDecoder(new ByteArrayInputStream(in)).read();
+				fail("Expected an exception");
+			}
+			catch (IOException e)
+			{
+				// Expected
+			}
+		}
+		// Values longer than what is allocated at once
+		byte[] big = new byte[200000];
+		new Random(0).nextBytes(big);
+		Object[] front = new Object[100000];
+		Arrays.fill(front, 1);
+		BinaryCodec.Encoder enc = new BinaryCodec.Encoder();
+		enc.write(big);
+		enc.write(front);
+		BinaryCodec.Decoder dec = new BinaryCodec.StreamDecoder(new ByteArrayInputStream(enc.toByteArray()));
+		assertArrayEquals(big, (byte[]) dec.read());
+		assertArrayEquals(front, (Object[]) dec.read());
+	}
+	
+	@Test
+	public void testBinaryStream() throws IOException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		WriteBinaryStream wbs = new WriteBinaryStream(baos);
+		Pushable p = wbs.getPushableInput();
+		for (int i = 0; i < 100; i++)
+		{
+			p.push(Arrays.asList("temperature", i));
+		}
+		// The string is written only once
+		assertTrue(baos.size() < 100 * 8);
+		ReadBinaryStream rbs = new ReadBinaryStream(new ByteArrayInputStream(baos.toByteArray()));
+		Pullable pl = rbs.getPullableOutput();
+		for (int i = 0; i < 100; i++)
+		{
+			assertTrue(pl.hasNext());
+			assertEquals(Arrays.asList("temperature", i), pl.pull());
+		}
+		assertFalse(pl.hasNext());
+	}
+	
+	@Test
+	public void testRollingFile() throws IOException
+	{
+		File dir = createTempDirectory();
+		WriteRollingFile wrf = new WriteRollingFile(new File(dir, "out-%n.txt").getPath())
+				.setSeparator("\n").rollOnCount(4);
+		Pushable p = wrf.getPushableInput();
+		for (int i = 0; i < 10; i++)
+		{
+			p.push(i);
+		}
+		p.push(new byte[] {65, 66});
+		p.notifyEndOfTrace();
+		assertEquals("0\n1\n2\n3\n", new String(FileHelper.readToBytes(new File(dir, "out-0.txt"))));
+		assertEquals("4\n5\n6\n7\n", new String(FileHelper.readToBytes(new File(dir, "out-1.txt"))));
+		assertEquals("8\n9\nAB\n", new String(FileHelper.readToBytes(new File(dir, "out-2.txt"))));
+		assertFalse(new File(dir, "out-3.txt").exists());
+		deleteDirectory(dir);
+	}
+	
+	@Test
+	public void testRollingFileSize() throws IOException
+	{
+		File dir = createTempDirectory();
+		WriteRollingFile wrf = new WriteRollingFile(new File(dir, "out-%n.bin").getPath(), 
+				BinaryCodec.instance).rollOnSize(100).setSync(true);
+		Pushable p = wrf.getPushableInput();
+		for (int i = 0; i < 100; i++)
+		{
+			p.push(i);
+		}
+		wrf.close();
+		int total = 0;
+		File[] files = dir.listFiles();
+		for (File f : files)
+		{
+			assertTrue(f.length() <= 100);
+			total += f.length();
+		}
+		assertEquals(3, files.length);
+		// 64 numbers fit on 2 bytes, the others on 3
+		assertEquals(64 * 2 + 36 * 3, total);
+		deleteDirectory(dir);
+	}
+	
 	@Test
 	public void testOutputStreamProcessor1() throws IOException
 	{
@@ -269,6 +1088,35 @@ public class IoTest
 		p.push(new Object());
 	}
 	
+	/**
+	 * Creates an empty temporary directory
+	 * @return The directory
+	 */
+	protected static File createTempDirectory() throws IOException
+	{
+		File f = File.createTempFile("beepbeep", "");
+		f.delete();
+		f.mkdir();
+		return f;
+	}
+	
+	/**
+	 * Deletes a directory and the files it contains
+	 * @param dir The directory
+	 */
+	protected static void deleteDirectory(File dir)
+	{
+		File[] files = dir.listFiles();
+		if (files != null)
+		{
+			for (File f : files)
+			{
+				f.delete();
+			}
+		}
+		dir.delete();
+	}
+	
 	/**
 	 * Dummy class to throw an exception
 	 */
@@ -21,6 +21,8 @@ import static org.junit.Assert.*;
 
 import java.util.Queue;
 import java.util.Vector;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -28,6 +30,7 @@ import ca.uqac.lif.cep.Connector;
 import ca.uqac.lif.cep.Pullable;
 import ca.uqac.lif.cep.Pushable;
 import ca.uqac.lif.cep.Utilities;
+import ca.uqac.lif.cep.concurrency.OverflowPolicy;
 import ca.uqac.lif.cep.functions.StreamVariable;
 import ca.uqac.lif.cep.functions.TurnInto;
 import ca.uqac.lif.cep.functions.Constant;
@@ -504,6 +507,120 @@ public class TmfTest
 		pl.stop();
 	}
 
+	@Test(timeout=2000)
+	public void testTankBlock() throws Exception
+	{
+		Tank t = new Tank(2, OverflowPolicy.BLOCK);
+		Pushable ps = t.getPushableInput();
+		Pullable pl = t.getPullableOutput();
+		assertTrue(ps.pushFast("a").isDone());
+		assertTrue(ps.pushFast("b").isDone());
+		Future<Pushable> f = ps.pushFast("c");
+		assertFalse(f.isDone());
+		assertEquals(2, t.size());
+		assertEquals("a", pl.pull());
+		// Pulling made room for the pending event
+		assertTrue(f.isDone());
+		assertEquals(ps, f.get());
+		assertEquals(2, t.size());
+		assertEquals("b", pl.pull());
+		assertEquals("c", pl.pull());
+		assertEquals(0, t.getDropCount());
+	}
+	
+	@Test(timeout=2000)
+	public void testTankBlockingPush() throws InterruptedException
+	{
+		final Tank t = new Tank(1, OverflowPolicy.BLOCK);
+		final Pushable ps = t.getPushableInput();
+		ps.push("a");
+		Thread th = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				ps.push("b");
+			}
+		});
+		th.start();
+		Thread.sleep(100);
+		// The pusher waits until there is room
+		assertTrue(th.isAlive());
+		assertEquals("a", t.getPullableOutput().pull());
+		th.join();
+		assertEquals("b", t.getPullableOutput().pull());
+	}
+	
+	@Test
+	public void testTankDrop()
+	{
+		Tank newest = new Tank(2, OverflowPolicy.DROP_NEWEST);
+		Tank oldest = new Tank(2, OverflowPolicy.DROP_OLDEST);
+		Tank sample = new Tank(2, OverflowPolicy.SAMPLE).setSamplingInterval(3);
+		for (int i = 0; i < 8; i++)
+		{
+			newest.getPushableInput().push(i);
+			oldest.getPushableInput().push(i);
+			sample.getPushableInput().push(i);
+		}
+		assertEquals(6, newest.getDropCount());
+		assertEquals(0, newest.getPullableOutput().pull());
+		assertEquals(1, newest.getPullableOutput().pull());
+		assertEquals(6, oldest.getDropCount());
+		assertEquals(6, oldest.getPullableOutput().pull());
+		assertEquals(7, oldest.getPullableOutput().pull());
+		// Events 4 and 7 are kept, out of the six overflowing events
+		assertEquals(6, sample.getDropCount());
+		assertEquals(4, sample.getPullableOutput().pull());
+		assertEquals(7, sample.getPullableOutput().pull());
+		assertNull(sample.getPullableOutput().pull());
+	}
+	
+	@Test
+	public void testTankLastNoDrop()
+	{
+		TankLast t = new TankLast();
+		for (int i = 0; i < 8; i++)
+		{
+			t.getPushableInput().push(i);
+		}
+		// Replacing the last event is not an overflow
+		assertEquals(0, t.getDropCount());
+		assertEquals(7, t.getPullableOutput().pull());
+	}
+	
+	@Test(timeout=2000)
+	public void testTankPullTimeout() throws InterruptedException
+	{
+		final Tank t = new Tank().setPullTimeout(1500, TimeUnit.MILLISECONDS);
+		Pullable pl = t.getPullableOutput();
+		Thread th = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Thread.sleep(100);
+				}
+				catch (InterruptedException e)
+				{
+					// Do nothing
+				}
+				t.getPushableInput().push("foo");
+				t.getPushableInput().notifyEndOfTrace();
+			}
+		});
+		th.start();
+		assertTrue(pl.hasNext());
+		assertEquals("foo", pl.pull());
+		th.join();
+		// At the end of the trace, hasNext no longer waits
+		assertFalse(pl.hasNext());
+		assertEquals(Pullable.NextStatus.NO, pl.hasNextSoft());
+		assertNull(t.pull(10, TimeUnit.MILLISECONDS));
+	}
+
 	@Test(timeout=1000)
 	public void testTimeDecimate() throws InterruptedException
 	{
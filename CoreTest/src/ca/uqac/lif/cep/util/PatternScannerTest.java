@@ -21,6 +21,7 @@ import static org.junit.Assert.*;
 
 import java.util.Queue;
 import java.util.Vector;
+import java.util.regex.Pattern;
 
 import org.junit.Test;
 
@@ -157,4 +158,71 @@ public class PatternScannerTest
 		assertFalse(p.hasNext());
 	}
 	
+	@Test
+	public void testDelimiterLargeRecord() 
+	{
+		// A record split into many small chunks
+		FindPattern mf = new FindPattern("(.*?);");
+		QueueSink qsink = new QueueSink(1);
+		Queue<Object> queue = qsink.getQueue(0);
+		Connector.connect(mf, qsink);
+		Pushable in = mf.getPushableInput(0);
+		StringBuilder record = new StringBuilder();
+		for (int i = 0; i < 10000; i++)
+		{
+			in.push("abcde");
+			record.append("abcde");
+		}
+		assertEquals(0, queue.size());
+		in.push(";x;");
+		assertEquals(2, queue.size());
+		assertEquals(record.toString(), queue.remove());
+		assertEquals("x", queue.remove());
+	}
+	
+	@Test
+	public void testDelimiterSameAsRegex() 
+	{
+		// The fast path and the regex engine must agree, including on
+		// line terminators that "." does not match
+		String[] chunks = new String[] {"ab\nc,", ",d", "e\r\n", "f,,g,", "h"};
+		String[] regexes = new String[] {"(.*?),", ".*?,", "(.*?)\\n", "(.*?),"};
+		int[] flags = new int[] {0, 0, 0, Pattern.DOTALL};
+		for (int r = 0; r < regexes.length; r++)
+		{
+			FindPattern fast = new FindPattern(Pattern.compile(regexes[r], flags[r])).trim(false);
+			// Same pattern, written in a way the fast path does not recognize
+			FindPattern slow = new FindPattern(Pattern.compile("(?:" + regexes[r] + ")", flags[r])).trim(false);
+			assertNotNull(fast.m_delimiter);
+			assertNull(slow.m_delimiter);
+			QueueSink s1 = new QueueSink(1);
+			QueueSink s2 = new QueueSink(1);
+			Connector.connect(fast, s1);
+			Connector.connect(slow, s2);
+			for (String chunk : chunks)
+			{
+				fast.getPushableInput(0).push(chunk);
+				slow.getPushableInput(0).push(chunk);
+			}
+			assertEquals(regexes[r], new Vector<Object>(s2.getQueue(0)), new Vector<Object>(s1.getQueue(0)));
+		}
+	}
+	
+	@Test
+	public void testBufferLimit() 
+	{
+		FindPattern mf = new FindPattern("(.*?),").setBufferLimit(8);
+		QueueSink qsink = new QueueSink(1);
+		Queue<Object> queue = qsink.getQueue(0);
+		Connector.connect(mf, qsink);
+		Pushable in = mf.getPushableInput(0);
+		in.push("ab,cdefg");
+		in.push("hijkl");
+		// The record starting with "cde" is too long, and is skipped
+		in.push("mn,op,");
+		assertEquals(2, queue.size());
+		assertEquals("ab", queue.remove());
+		assertEquals("op", queue.remove());
+		assertEquals(12, mf.getDiscardedCount());
+	}
 }
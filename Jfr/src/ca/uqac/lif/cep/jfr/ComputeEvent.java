@@ -0,0 +1,44 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event emitted when a processor performs a computation on an
+ * input front. Only computations longer than 1&nbsp;ms are recorded by
+ * default; the threshold can be changed in the recording settings.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@Name("ca.uqac.lif.cep.Compute")
+@Label("Processor Computation")
+@Description("A processor computed output fronts from an input front")
+@Threshold("1 ms")
+public class ComputeEvent extends ProcessorEvent
+{
+  /**
+   * The number of output fronts produced by the computation
+   */
+  @Label("Output Fronts")
+  protected int fronts;
+}
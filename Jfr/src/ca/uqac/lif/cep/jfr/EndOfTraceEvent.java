@@ -0,0 +1,41 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event emitted when a processor is notified of the end of an
+ * input trace, or notifies its outputs of the end of its trace.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@Name("ca.uqac.lif.cep.EndOfTrace")
+@Label("End of Trace")
+@Description("A processor reached the end of a trace")
+public class EndOfTraceEvent extends ProcessorEvent
+{
+  /**
+   * The index of the input stream
+   */
+  @Label("Stream Index")
+  protected int streamIndex;
+}
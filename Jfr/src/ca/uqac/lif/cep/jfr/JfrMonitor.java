@@ -0,0 +1,221 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.jfr;
+
+import ca.uqac.lif.cep.ExecutionMonitor;
+import ca.uqac.lif.cep.Processor;
+import jdk.jfr.EventType;
+
+/**
+ * Execution monitor that emits Java Flight Recorder events. Once installed
+ * with {@link #install()}, the engine produces the following events, which
+ * appear under the "BeepBeep" category of JFR tools such as JDK Mission
+ * Control or <tt>jfr print</tt>:
+ * <ul>
+ * <li>{@link ComputeEvent}: a computation of a processor, with its
+ * duration and the number of output fronts it produced;</li>
+ * <li>{@link SliceCreatedEvent} and {@link SliceEvictedEvent}: the creation
+ * and removal of a slice by a {@link ca.uqac.lif.cep.tmf.Slice Slice};</li>
+ * <li>{@link WindowEvent}: a recomputation of a
+ * {@link ca.uqac.lif.cep.tmf.Window Window};</li>
+ * <li>{@link QueueOverflowEvent}: an event handed to a full
+ * {@link ca.uqac.lif.cep.tmf.Tank Tank}, or a
+ * {@link ca.uqac.lif.cep.tmf.Pump Pump} waiting for room downstream;</li>
+ * <li>{@link EndOfTraceEvent}: the propagation of the end of a trace.</li>
+ * </ul>
+ * When no recording is in progress, or when an event type is disabled in the
+ * recording settings, the monitor returns after checking a flag, and no
+ * event object is created. Computations and window recomputations are only
+ * recorded above a duration threshold (1&nbsp;ms by default), so that the
+ * monitor can be left installed in production.
+ * <p>
+ * For example, to record the events of a pipeline:
+ * <pre>
+ * JfrMonitor.install();
+ * // then run the JVM with -XX:StartFlightRecording=filename=rec.jfr
+ * </pre>
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class JfrMonitor extends ExecutionMonitor
+{
+  /**
+   * The single visible instance of the monitor
+   */
+  public static final JfrMonitor instance = new JfrMonitor();
+
+  /**
+   * The type of {@link ComputeEvent}
+   */
+  protected static final EventType COMPUTE = EventType.getEventType(ComputeEvent.class);
+
+  /**
+   * The type of {@link WindowEvent}
+   */
+  protected static final EventType WINDOW = EventType.getEventType(WindowEvent.class);
+
+  /**
+   * The type of {@link SliceCreatedEvent}
+   */
+  protected static final EventType SLICE_CREATED = EventType.getEventType(SliceCreatedEvent.class);
+
+  /**
+   * The type of {@link SliceEvictedEvent}
+   */
+  protected static final EventType SLICE_EVICTED = EventType.getEventType(SliceEvictedEvent.class);
+
+  /**
+   * The type of {@link QueueOverflowEvent}
+   */
+  protected static final EventType QUEUE_OVERFLOW = EventType.getEventType(QueueOverflowEvent.class);
+
+  /**
+   * The type of {@link EndOfTraceEvent}
+   */
+  protected static final EventType END_OF_TRACE = EventType.getEventType(EndOfTraceEvent.class);
+
+  protected JfrMonitor()
+  {
+    super();
+  }
+
+  /**
+   * Installs the monitor, replacing any monitor currently installed
+   */
+  public static void install()
+  {
+    ExecutionMonitor.install(instance);
+  }
+
+  /**
+   * Removes the monitor, if it is currently installed
+   */
+  public static void uninstall()
+  {
+    if (ExecutionMonitor.current() == instance)
+    {
+      ExecutionMonitor.install(null);
+    }
+  }
+
+  @Override
+  public Object beginCompute(Processor p)
+  {
+    if (!COMPUTE.isEnabled())
+    {
+      return null;
+    }
+    ComputeEvent e = new ComputeEvent();
+    e.begin();
+    return e;
+  }
+
+  @Override
+  public void endCompute(Object token, Processor p, int fronts)
+  {
+    ComputeEvent e = (ComputeEvent) token;
+    e.end();
+    if (e.shouldCommit())
+    {
+      e.setProcessor(p);
+      e.fronts = fronts;
+      e.commit();
+    }
+  }
+
+  @Override
+  public Object beginWindow(Processor window)
+  {
+    if (!WINDOW.isEnabled())
+    {
+      return null;
+    }
+    WindowEvent e = new WindowEvent();
+    e.begin();
+    return e;
+  }
+
+  @Override
+  public void endWindow(Object token, Processor window, int width)
+  {
+    WindowEvent e = (WindowEvent) token;
+    e.end();
+    if (e.shouldCommit())
+    {
+      e.setProcessor(window);
+      e.width = width;
+      e.commit();
+    }
+  }
+
+  @Override
+  public void sliceCreated(Processor slice, Object key, int active)
+  {
+    if (!SLICE_CREATED.isEnabled())
+    {
+      return;
+    }
+    SliceCreatedEvent e = new SliceCreatedEvent();
+    e.setProcessor(slice);
+    e.key = String.valueOf(key);
+    e.activeSlices = active;
+    e.commit();
+  }
+
+  @Override
+  public void sliceEvicted(Processor slice, Object key, int active)
+  {
+    if (!SLICE_EVICTED.isEnabled())
+    {
+      return;
+    }
+    SliceEvictedEvent e = new SliceEvictedEvent();
+    e.setProcessor(slice);
+    e.key = String.valueOf(key);
+    e.activeSlices = active;
+    e.commit();
+  }
+
+  @Override
+  public void queueOverflow(Processor p, int index, boolean dropped)
+  {
+    if (!QUEUE_OVERFLOW.isEnabled())
+    {
+      return;
+    }
+    QueueOverflowEvent e = new QueueOverflowEvent();
+    e.setProcessor(p);
+    e.streamIndex = index;
+    e.dropped = dropped;
+    e.commit();
+  }
+
+  @Override
+  public void endOfTrace(Processor p, int index)
+  {
+    if (!END_OF_TRACE.isEnabled())
+    {
+      return;
+    }
+    EndOfTraceEvent e = new EndOfTraceEvent();
+    e.setProcessor(p);
+    e.streamIndex = index;
+    e.commit();
+  }
+}
@@ -0,0 +1,61 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.jfr;
+
+import ca.uqac.lif.cep.Processor;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event about a processor. The stack trace is not
+ * recorded, as it would cost more than the event itself; the processor is
+ * identified by its ID and its class.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@Category({"BeepBeep", "Processors"})
+@StackTrace(false)
+public abstract class ProcessorEvent extends Event
+{
+  /**
+   * The ID of the processor
+   */
+  @Label("Processor ID")
+  protected int processorId;
+
+  /**
+   * The name of the class of the processor
+   */
+  @Label("Processor Type")
+  protected String processorType;
+
+  /**
+   * Sets the processor the event is about
+   * 
+   * @param p
+   *          The processor
+   */
+  public void setProcessor(Processor p)
+  {
+    processorId = p.getId();
+    processorType = p.getClass().getSimpleName();
+  }
+}
@@ -0,0 +1,48 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event emitted when an event is handed to a bounded queue
+ * that is full.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@Name("ca.uqac.lif.cep.QueueOverflow")
+@Label("Queue Overflow")
+@Description("An event was handed to a full queue")
+public class QueueOverflowEvent extends ProcessorEvent
+{
+  /**
+   * The index of the stream the queue is attached to
+   */
+  @Label("Stream Index")
+  protected int streamIndex;
+
+  /**
+   * Whether an event was discarded, rather than the caller waiting for
+   * room in the queue
+   */
+  @Label("Dropped")
+  protected boolean dropped;
+}
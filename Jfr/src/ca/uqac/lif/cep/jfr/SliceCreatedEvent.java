@@ -0,0 +1,46 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event emitted when a slice processor creates a new slice.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@Name("ca.uqac.lif.cep.SliceCreated")
+@Label("Slice Created")
+@Description("A slice processor created a slice for a new key")
+public class SliceCreatedEvent extends ProcessorEvent
+{
+  /**
+   * The value of the slicing function for the slice
+   */
+  @Label("Key")
+  protected String key;
+
+  /**
+   * The number of slices after the creation
+   */
+  @Label("Active Slices")
+  protected int activeSlices;
+}
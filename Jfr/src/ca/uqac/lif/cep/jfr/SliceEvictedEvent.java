@@ -0,0 +1,47 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2019 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event emitted when a slice processor removes a slice for
+ * which its cleaning function returned true.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@Name("ca.uqac.lif.cep.SliceEvicted")
+@Label("Slice Evicted")
+@Description("A slice processor removed a slice")
+public class SliceEvictedEvent extends ProcessorEvent
+{
+  /**
+   * The value of the slicing function for the slice
+   */
+  @Label("Key")
+  protected String key;
+
+  /**
+   * The number of slices after the removal
+   */
+  @Label("Active Slices")
+  protected int activeSlices;
+}